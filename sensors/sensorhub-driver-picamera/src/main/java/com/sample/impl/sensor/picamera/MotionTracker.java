@@ -0,0 +1,334 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.picamera;
+
+import com.sample.impl.sensor.picamera.config.TrackingParameters;
+import com.sample.impl.sensor.picamera.helpers.MotionCentroid;
+import com.sample.impl.sensor.picamera.helpers.PidController;
+import org.bytedeco.javacv.Frame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tilts the camera toward moving objects, closing the loop on the device.
+ * <p>
+ * The grab thread offers decoded frames at twice the update rate, each one downscaled to a small luma picture
+ * in a triple buffer so neither thread waits for the other. A dedicated scheduled thread analyzes the
+ * latest picture with a {@link MotionCentroid}, converts the vertical position of the moving pixels to
+ * an angular error and feeds it to a {@link PidController} whose correction becomes the new target of
+ * the {@link TiltController}, the same path the tilt commands take.
+ * <p>
+ * Only the latest picture is kept, and pictures older than the maximum latency when their turn comes
+ * are dropped, so the loop never acts on stale frames. Pictures captured while the servo moves, or
+ * before the picture settled, show motion of the whole scene and are skipped. The time from grab to
+ * tilt target is measured for every correction.
+ *
+ * @author your_name
+ * @since date
+ */
+public class MotionTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(MotionTracker.class);
+
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 1000;
+    private static final long STATISTICS_PERIOD_NANOS = 60_000_000_000L;
+
+    private final TiltController tiltController;
+    private final TrackingParameters parameters;
+    private final int width;
+    private final int height;
+    private final long periodNanos;
+    private final long maxLatencyNanos;
+    private final long settleNanos;
+
+    private final MotionCentroid motion;
+    private final PidController pid;
+
+    /**
+     * Triple buffer: written by the grab thread, latest complete picture, analyzed by the tracking thread
+     */
+    private byte[] writeBuffer;
+    private byte[] latestBuffer;
+    private byte[] workBuffer;
+    private long latestNanos;
+    private boolean hasLatest = false;
+    private long nextOfferNanos = 0;
+
+    private ScheduledExecutorService scheduler;
+
+    private long lastUpdateNanos = 0;
+    private long stillSinceNanos = 0;
+    private long nextStatisticsNanos = 0;
+
+    private volatile long correctionCount = 0;
+    private volatile long staleCount = 0;
+    private volatile long totalLatencyNanos = 0;
+    private volatile long maxLatencyNanosSeen = 0;
+
+    /**
+     * Constructor
+     *
+     * @param tiltController Servo trajectory receiving the tilt corrections
+     * @param parameters     Analysis size, motion detection, gains, update rate and latency bound
+     */
+    public MotionTracker(TiltController tiltController, TrackingParameters parameters) {
+
+        this.tiltController = tiltController;
+        this.parameters = parameters;
+
+        width = Math.max(8, parameters.analysisWidth);
+        height = Math.max(8, parameters.analysisHeight);
+        periodNanos = 1_000_000_000L / Math.max(1, parameters.updateRate);
+        maxLatencyNanos = Math.max(1, parameters.maxLatency) * 1_000_000L;
+        settleNanos = Math.max(0, parameters.settleTime) * 1_000_000L;
+
+        motion = new MotionCentroid(width, height, parameters.motionThreshold, parameters.minMotionArea / 100);
+        pid = new PidController(parameters.kp, parameters.ki, parameters.kd, parameters.maxStep);
+
+        writeBuffer = new byte[width * height];
+        latestBuffer = new byte[width * height];
+        workBuffer = new byte[width * height];
+    }
+
+    /**
+     * Starts the tracking thread
+     */
+    public synchronized void start() {
+
+        if (scheduler != null) {
+
+            return;
+        }
+
+        hasLatest = false;
+        nextOfferNanos = 0;
+        lastUpdateNanos = 0;
+        stillSinceNanos = 0;
+        nextStatisticsNanos = System.nanoTime() + STATISTICS_PERIOD_NANOS;
+
+        motion.reset();
+        pid.reset();
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+
+            Thread thread = new Thread(runnable, "tilt-tracking");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        scheduler.scheduleAtFixedRate(this::tick, periodNanos, periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops the tracking thread, the servo finishes its current move
+     */
+    public synchronized void stop() {
+
+        if (scheduler == null) {
+
+            return;
+        }
+
+        scheduler.shutdownNow();
+
+        try {
+
+            scheduler.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+        }
+
+        scheduler = null;
+
+        logStatistics();
+    }
+
+    /**
+     * Offers a decoded frame, to be called from the grab thread only. Frames arriving within half an
+     * update period of the previous offered frame are ignored, so the downscaling costs the grab thread little.
+     *
+     * @param frame     Decoded frame with 8-bit packed BGR or gray pixels, not retained
+     * @param grabNanos {@link System#nanoTime()} when the frame was grabbed
+     */
+    public void offer(Frame frame, long grabNanos) {
+
+        if (grabNanos < nextOfferNanos || frame.imageDepth != Frame.DEPTH_UBYTE
+                || (frame.imageChannels != 3 && frame.imageChannels != 1)) {
+
+            return;
+        }
+
+        nextOfferNanos = grabNanos + periodNanos / 2;
+
+        MotionCentroid.downscaleLuma(frame, writeBuffer, width, height);
+
+        synchronized (this) {
+
+            byte[] buffer = latestBuffer;
+            latestBuffer = writeBuffer;
+            writeBuffer = buffer;
+
+            latestNanos = grabNanos;
+            hasLatest = true;
+        }
+    }
+
+    /**
+     * @return Number of tilt corrections made
+     */
+    public long getCorrectionCount() {
+
+        return correctionCount;
+    }
+
+    /**
+     * @return Number of pictures dropped because they were older than the maximum latency
+     */
+    public long getStaleCount() {
+
+        return staleCount;
+    }
+
+    /**
+     * @return Mean time from grab to tilt target of the corrections, in milliseconds
+     */
+    public double getMeanLatencyMillis() {
+
+        long count = correctionCount;
+
+        return count > 0 ? totalLatencyNanos / (count * 1e6) : 0;
+    }
+
+    /**
+     * @return Longest time from grab to tilt target of a correction, in milliseconds
+     */
+    public double getMaxLatencyMillis() {
+
+        return maxLatencyNanosSeen / 1e6;
+    }
+
+    private void tick() {
+
+        try {
+
+            track();
+
+        } catch (RuntimeException e) {
+
+            // An exception would cancel the scheduled task
+            logger.error("Failed to track motion", e);
+        }
+    }
+
+    private void track() {
+
+        long now = System.nanoTime();
+
+        if (now >= nextStatisticsNanos) {
+
+            nextStatisticsNanos = now + STATISTICS_PERIOD_NANOS;
+
+            logStatistics();
+        }
+
+        if (tiltController.isMoving()) {
+
+            // The whole scene moves with the camera, differencing only resumes once it settled
+            stillSinceNanos = now;
+
+            motion.reset();
+
+            return;
+        }
+
+        long frameNanos;
+
+        synchronized (this) {
+
+            if (!hasLatest) {
+
+                return;
+            }
+
+            byte[] buffer = workBuffer;
+            workBuffer = latestBuffer;
+            latestBuffer = buffer;
+
+            frameNanos = latestNanos;
+            hasLatest = false;
+        }
+
+        if (now - frameNanos > maxLatencyNanos) {
+
+            ++staleCount;
+
+            motion.reset();
+
+            return;
+        }
+
+        if (frameNanos - stillSinceNanos < settleNanos) {
+
+            return;
+        }
+
+        if (!motion.update(workBuffer)) {
+
+            // Target lost or not moving, the accumulated error no longer applies
+            pid.reset();
+            lastUpdateNanos = 0;
+
+            return;
+        }
+
+        // Positive when the target is below the center of the picture
+        double error = motion.getCentroidY() * parameters.verticalFieldOfView / 2;
+
+        double dt = lastUpdateNanos > 0 ? Math.min(1.0, (frameNanos - lastUpdateNanos) / 1e9) : periodNanos / 1e9;
+
+        lastUpdateNanos = frameNanos;
+
+        double correction = pid.update(error, dt);
+
+        if (Math.abs(error) < parameters.deadband) {
+
+            return;
+        }
+
+        float target = tiltController.getAngle() + (float) (parameters.invertTilt ? correction : -correction);
+
+        tiltController.setTarget(target);
+
+        long latency = System.nanoTime() - frameNanos;
+
+        totalLatencyNanos += latency;
+        maxLatencyNanosSeen = Math.max(maxLatencyNanosSeen, latency);
+        ++correctionCount;
+
+        logger.trace("Target at {} deg, {} moving pixels, tilting to {} deg", error, motion.getMotionCount(), target);
+    }
+
+    private void logStatistics() {
+
+        logger.debug("Tracking: {} corrections, {} stale pictures, latency mean {} ms, max {} ms",
+                correctionCount, staleCount, getMeanLatencyMillis(), getMaxLatencyMillis());
+    }
+}
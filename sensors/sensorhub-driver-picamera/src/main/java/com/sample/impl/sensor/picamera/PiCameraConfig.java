@@ -13,7 +13,11 @@
 ******************************* END LICENSE BLOCK ***************************/
 package com.sample.impl.sensor.picamera;
 
+import com.sample.impl.sensor.picamera.config.AdaptiveParameters;
 import com.sample.impl.sensor.picamera.config.CameraPinConfig;
+import com.sample.impl.sensor.picamera.config.OrientationParameters;
+import com.sample.impl.sensor.picamera.config.TiltParameters;
+import com.sample.impl.sensor.picamera.config.TrackingParameters;
 import com.sample.impl.sensor.picamera.config.VideoParameters;
 //import org.opencv.video.Video;
 import org.sensorhub.api.config.DisplayInfo;
@@ -50,16 +54,40 @@ public class PiCameraConfig extends SensorConfig {
     @DisplayInfo(label = "Video Camera Parameters", desc = "Parameters for camera configuration")
     public VideoParameters videoParameters = new VideoParameters();
 
-//    /**
-//     * Pin configuration
-//     */
-//    @DisplayInfo.Required
-//    @DisplayInfo(label = "PinConfig", desc = "Pin configuration for tilt servo")
-//    public CameraPinConfig cameraPinConfig = new CameraPinConfig();
+    /**
+     * Adaptation of the stream to its consumers
+     */
+    @DisplayInfo(label = "Adaptive Streaming", desc = "Quality and frame rate following the pace of the subscribers")
+    public AdaptiveParameters adaptiveParameters = new AdaptiveParameters();
 
-//    @DisplayInfo.Required
-//    @DisplayInfo(label = "Connect to GPIO", desc = "Choose whether or not to connect to pi GPIO")
-//    public boolean isGPIOConnected = true;
+    /**
+     * Tilt servo motion
+     */
+    @DisplayInfo(label = "Tilt Parameters", desc = "Speed and acceleration limits of the tilt servo")
+    public TiltParameters tiltParameters = new TiltParameters();
+
+    /**
+     * Closed-loop tilt tracking
+     */
+    @DisplayInfo(label = "Tracking Parameters", desc = "Tilting toward moving objects detected in the video feed")
+    public TrackingParameters trackingParameters = new TrackingParameters();
+
+    /**
+     * Camera orientation attached to the frames
+     */
+    @DisplayInfo(label = "Orientation Parameters", desc = "Frames published with the tilt angle and IMU attitude at capture time")
+    public OrientationParameters orientationParameters = new OrientationParameters();
+
+    /**
+     * Pin configuration
+     */
+    @DisplayInfo.Required
+    @DisplayInfo(label = "PinConfig", desc = "Pin configuration for tilt servo")
+    public CameraPinConfig cameraPinConfig = new CameraPinConfig();
+
+    @DisplayInfo.Required
+    @DisplayInfo(label = "Connect to GPIO", desc = "Choose whether or not to connect to pi GPIO, the tilt servo is simulated otherwise")
+    public boolean isGPIOConnected = false;
 
 //    @DisplayInfo.Required
 //    @DisplayInfo(desc = "PiCamera Location")
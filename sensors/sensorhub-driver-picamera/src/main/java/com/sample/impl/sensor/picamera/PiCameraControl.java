@@ -1,15 +1,20 @@
 package com.sample.impl.sensor.picamera;
 
+import com.sample.impl.utils.camera.CoalescingCommandExecutor;
 import net.opengis.swe.v20.DataBlock;
 import net.opengis.swe.v20.DataComponent;
 import net.opengis.swe.v20.DataRecord;
 import org.sensorhub.api.command.CommandException;
+import org.sensorhub.api.command.CommandStatus;
+import org.sensorhub.api.command.ICommandData;
 import org.sensorhub.api.command.ICommandReceiver;
+import org.sensorhub.api.command.ICommandStatus;
 import org.sensorhub.api.sensor.SensorException;
 import org.sensorhub.impl.sensor.AbstractSensorControl;
 import org.vast.swe.SWEHelper;
 
 import javax.validation.constraints.Max;
+import java.util.concurrent.CompletableFuture;
 
 public class PiCameraControl extends AbstractSensorControl<PiCameraSensor> {
 
@@ -19,8 +24,12 @@ public class PiCameraControl extends AbstractSensorControl<PiCameraSensor> {
     private static final float MAX_TILT_ANGLE = 120f;
     private static final float MIN_TILT_ANGLE = 0f;
 
+    private final CoalescingCommandExecutor executor;
+
     protected PiCameraControl(PiCameraSensor parentSensor) {
         super(SENSOR_CONTROL_NAME, parentSensor);
+
+        executor = new CoalescingCommandExecutor(SENSOR_CONTROL_NAME);
     }
 
     protected static float getMinTiltAngle() {
@@ -37,23 +46,29 @@ public class PiCameraControl extends AbstractSensorControl<PiCameraSensor> {
     }
 
     @Override
-    protected boolean execCommand(DataBlock cmdData) {
+    public CompletableFuture<ICommandStatus> submitCommand(ICommandData command) {
+
+        float angle;
 
         try {
 
-            DataRecord commandData = commandDataStruct.copy();
+            angle = readAngle(command.getParams());
 
-            commandData.setData(cmdData);
+        } catch (RuntimeException e) {
 
-            DataComponent tiltComponent = commandData.getField("Angle");
+            return CompletableFuture.completedFuture(CommandStatus.failed(command.getID(), e.getMessage()));
+        }
 
-            DataBlock data = tiltComponent.getData();
+        // Returns right away, tilt commands still queued are superseded by the latest one
+        return executor.submit("tilt", command, () -> parentSensor.tilt(angle));
+    }
 
-            float angle = data.getIntValue();
+    @Override
+    protected boolean execCommand(DataBlock cmdData) {
 
-            angle = (angle <= MIN_TILT_ANGLE) ? MIN_TILT_ANGLE : Math.min(angle, MAX_TILT_ANGLE);
+        try {
 
-//            parentSensor.tilt(angle);
+            parentSensor.tilt(readAngle(cmdData));
 
         } catch (Exception e) {
 
@@ -64,6 +79,35 @@ public class PiCameraControl extends AbstractSensorControl<PiCameraSensor> {
         return true;
     }
 
+    /**
+     * @return Command execution statistics
+     */
+    public CoalescingCommandExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Stops the command thread, commands not yet executed are rejected
+     */
+    protected void stop() {
+        executor.stop();
+    }
+
+    private float readAngle(DataBlock cmdData) {
+
+        DataRecord commandData = commandDataStruct.copy();
+
+        commandData.setData(cmdData);
+
+        DataComponent tiltComponent = commandData.getField("Angle");
+
+        DataBlock data = tiltComponent.getData();
+
+        float angle = data.getFloatValue();
+
+        return (angle <= MIN_TILT_ANGLE) ? MIN_TILT_ANGLE : Math.min(angle, MAX_TILT_ANGLE);
+    }
+
     protected void init() {
 
         SWEHelper sweFactory = new SWEHelper();
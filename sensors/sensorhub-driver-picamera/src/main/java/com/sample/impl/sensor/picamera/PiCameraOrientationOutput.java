@@ -0,0 +1,290 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.picamera;
+
+import com.sample.impl.sensor.picamera.config.OrientationParameters;
+import com.sample.impl.sensor.picamera.config.VideoParameters;
+import com.sample.impl.sensor.picamera.helpers.AttitudeRing;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataComponent;
+import net.opengis.swe.v20.DataEncoding;
+import net.opengis.swe.v20.DataStream;
+import net.opengis.swe.v20.DataType;
+import net.opengis.swe.v20.Vector;
+import org.sensorhub.api.common.SensorHubException;
+import org.sensorhub.api.data.DataEvent;
+import org.sensorhub.api.data.IStreamingDataInterface;
+import org.sensorhub.api.event.Event;
+import org.sensorhub.api.event.IEventListener;
+import org.sensorhub.api.sensor.ISensorModule;
+import org.sensorhub.impl.sensor.AbstractSensorOutput;
+import org.sensorhub.impl.sensor.videocam.VideoCamHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vast.data.AbstractDataBlock;
+import org.vast.data.DataBlockMixed;
+import org.vast.swe.SWEHelper;
+import org.vast.swe.helper.GeoPosHelper;
+
+/**
+ * Video frames of {@link PiCameraOutput} along with the orientation of the camera when they were captured.
+ * <p>
+ * Each record carries the tilt angle sampled when the frame was grabbed and the attitude of an IMU
+ * mounted with the camera, such as the BNO08x, interpolated at the frame time. IMU samples are received
+ * from the IMU driver output into a lock-free {@link AttitudeRing}, so attaching the attitude never
+ * blocks the IMU or the camera, and consumers no longer join the two streams by time.
+ *
+ * @author your_name
+ * @since date
+ */
+public class PiCameraOrientationOutput extends AbstractSensorOutput<PiCameraSensor> {
+
+    private static final String SENSOR_OUTPUT_NAME = "PiCameraOrientedVideo";
+    private static final String SENSOR_OUTPUT_LABEL = "OrientedCameraSensor";
+    private static final String SENSOR_OUTPUT_DESCRIPTION = "Pi Camera Video Feed with Camera Orientation";
+
+    /**
+     * Flat indices of the record fields preceding the picture, and index of the picture block
+     */
+    private static final int TIME_INDEX = 0;
+    private static final int TILT_INDEX = 1;
+    private static final int ATTITUDE_INDEX = 2;
+    private static final int IMAGE_BLOCK_INDEX = 3;
+
+    /**
+     * Flat indices of the time stamp and the attitude quaternion in the IMU records
+     */
+    private static final int IMU_TIME_INDEX = 0;
+    private static final int IMU_ATTITUDE_INDEX = 1;
+
+    private static final Logger logger = LoggerFactory.getLogger(PiCameraOrientationOutput.class);
+
+    private DataComponent dataStruct;
+    private DataEncoding dataEncoding;
+
+    private AttitudeRing attitudeRing;
+    private final float[] attitude = new float[4];
+    private long maxImuGap;
+
+    private IStreamingDataInterface imuOutput;
+    private final IEventListener imuListener = this::handleImuEvent;
+
+    private volatile long framesWithoutAttitude = 0;
+
+    /**
+     * Constructor
+     *
+     * @param parentSensor Sensor driver providing this output
+     */
+    PiCameraOrientationOutput(PiCameraSensor parentSensor) {
+
+        super(SENSOR_OUTPUT_NAME, parentSensor);
+
+        logger.debug("PiCameraOrientationOutput created");
+    }
+
+    /**
+     * Initializes the data structure for the output, defining the fields, their ordering,
+     * and data types.
+     */
+    void doInit() {
+
+        logger.debug("Initializing PiCameraOrientationOutput");
+
+        OrientationParameters orientationParameters = parentSensor.getConfiguration().orientationParameters;
+
+        attitudeRing = new AttitudeRing(orientationParameters.imuBufferSize);
+        maxImuGap = Math.max(1, orientationParameters.maxImuGap);
+
+        VideoParameters videoParameters = parentSensor.getConfiguration().videoParameters;
+
+        GeoPosHelper sweFactory = new GeoPosHelper();
+
+        DataStream videoDef = new VideoCamHelper().newVideoOutputMJPEG(getName(),
+                videoParameters.videoFrameWidth, videoParameters.videoFrameHeight);
+
+        Vector quaternion = sweFactory.newQuatOrientationENU(null);
+        quaternion.setDataType(DataType.FLOAT);
+
+        // The scalar fields come first so they keep fixed flat indices whatever the picture size
+        dataStruct = sweFactory.createRecord()
+                .name(getName())
+                .label(SENSOR_OUTPUT_LABEL)
+                .description(SENSOR_OUTPUT_DESCRIPTION)
+                .definition(SWEHelper.getPropertyUri("OrientedVideoFrame"))
+                .addField("time", sweFactory.createTime()
+                        .asSamplingTimeIsoUTC())
+                .addField("tiltAngle", sweFactory.createQuantity()
+                        .definition(SWEHelper.getPropertyUri("servo-angle"))
+                        .label("Tilt")
+                        .description("Angle of the tilt servo when the frame was grabbed, simulated without GPIO")
+                        .uomCode("deg")
+                        .dataType(DataType.FLOAT))
+                .addField("attitude", quaternion)
+                .addField("img", videoDef.getElementType().getComponent(1).copy())
+                .build();
+
+        dataEncoding = videoDef.getEncoding();
+
+        logger.debug("Initializing PiCameraOrientationOutput Complete");
+    }
+
+    /**
+     * Subscribes to the IMU output, frames are published with a NaN attitude if the IMU is not available
+     */
+    public void doStart() {
+
+        attitudeRing.clear();
+
+        framesWithoutAttitude = 0;
+
+        OrientationParameters orientationParameters = parentSensor.getConfiguration().orientationParameters;
+
+        if (orientationParameters.imuModuleId == null || orientationParameters.imuModuleId.isEmpty()) {
+
+            return;
+        }
+
+        try {
+
+            var moduleRegistry = parentSensor.getParentHub().getModuleRegistry();
+
+            ISensorModule<?> imu = (ISensorModule<?>) moduleRegistry.getModuleById(orientationParameters.imuModuleId);
+
+            imuOutput = imu.getOutputs().get(orientationParameters.imuOutputName);
+
+            if (imuOutput == null) {
+
+                logger.warn("IMU module {} has no output {}, frames are published without attitude",
+                        orientationParameters.imuModuleId, orientationParameters.imuOutputName);
+
+                return;
+            }
+
+            imuOutput.registerListener(imuListener);
+
+            logger.info("Attaching attitude from {} output {}", orientationParameters.imuModuleId, orientationParameters.imuOutputName);
+
+        } catch (SensorHubException | ClassCastException e) {
+
+            logger.warn("IMU module {} not available, frames are published without attitude: {}",
+                    orientationParameters.imuModuleId, e.getMessage());
+        }
+    }
+
+    /**
+     * Unsubscribes from the IMU output
+     */
+    public void doStop() {
+
+        if (imuOutput != null) {
+
+            imuOutput.unregisterListener(imuListener);
+            imuOutput = null;
+        }
+
+        logger.debug("{} frames published without attitude", framesWithoutAttitude);
+    }
+
+    /**
+     * Publishes a frame with the camera orientation at its capture time, to be called from the grab thread
+     *
+     * @param frameTime Frame time in milliseconds since epoch
+     * @param tiltAngle Tilt angle when the frame was grabbed, in degrees, NaN if unknown
+     * @param imageData JPEG picture, not copied
+     */
+    void publishFrame(long frameTime, float tiltAngle, byte[] imageData) {
+
+        DataBlock dataBlock;
+        if (latestRecord == null) {
+
+            dataBlock = dataStruct.createDataBlock();
+
+        } else {
+
+            dataBlock = latestRecord.renew();
+        }
+
+        dataBlock.setDoubleValue(TIME_INDEX, frameTime / 1000d);
+        dataBlock.setFloatValue(TILT_INDEX, tiltAngle);
+
+        if (!attitudeRing.interpolate(frameTime, maxImuGap, attitude)) {
+
+            attitude[0] = attitude[1] = attitude[2] = attitude[3] = Float.NaN;
+
+            ++framesWithoutAttitude;
+        }
+
+        for (int idx = 0; idx < 4; ++idx) {
+
+            dataBlock.setFloatValue(ATTITUDE_INDEX + idx, attitude[idx]);
+        }
+
+        AbstractDataBlock frameData = ((DataBlockMixed) dataBlock).getUnderlyingObject()[IMAGE_BLOCK_INDEX];
+        frameData.setUnderlyingObject(imageData);
+
+        latestRecord = dataBlock;
+        latestRecordTime = System.currentTimeMillis();
+
+        eventHandler.publish(new DataEvent(latestRecordTime, this, dataBlock));
+    }
+
+    /**
+     * @return Number of frames published without attitude since the output started
+     */
+    public long getFramesWithoutAttitude() {
+
+        return framesWithoutAttitude;
+    }
+
+    @Override
+    public DataComponent getRecordDescription() {
+
+        return dataStruct;
+    }
+
+    @Override
+    public DataEncoding getRecommendedEncoding() {
+
+        return dataEncoding;
+    }
+
+    @Override
+    public double getAverageSamplingPeriod() {
+
+        return parentSensor.output.getAverageSamplingPeriod();
+    }
+
+    /**
+     * Stores the attitude of IMU records, on the thread publishing them
+     */
+    private void handleImuEvent(Event event) {
+
+        if (!(event instanceof DataEvent)) {
+
+            return;
+        }
+
+        for (DataBlock record : ((DataEvent) event).getRecords()) {
+
+            long sampleTime = Math.round(record.getDoubleValue(IMU_TIME_INDEX) * 1000);
+
+            attitudeRing.add(sampleTime,
+                    record.getFloatValue(IMU_ATTITUDE_INDEX),
+                    record.getFloatValue(IMU_ATTITUDE_INDEX + 1),
+                    record.getFloatValue(IMU_ATTITUDE_INDEX + 2),
+                    record.getFloatValue(IMU_ATTITUDE_INDEX + 3));
+        }
+    }
+}
@@ -13,7 +13,14 @@
  ******************************* END LICENSE BLOCK ***************************/
 package com.sample.impl.sensor.picamera;
 
+import com.sample.impl.sensor.picamera.config.AdaptiveParameters;
+import com.sample.impl.sensor.picamera.config.VideoParameters;
+import com.sample.impl.utils.camera.AdaptiveQualityController;
+import com.sample.impl.utils.camera.FrameClock;
+import com.sample.impl.utils.camera.MjpegEncoder;
 import net.opengis.swe.v20.*;
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.ffmpeg.avutil.AVRational;
 import org.bytedeco.javacv.*;
 import org.bytedeco.javacv.Frame;
 import org.sensorhub.api.data.DataEvent;
@@ -29,14 +36,20 @@ import org.vast.swe.SWEHelper;
 import org.vast.swe.helper.GeoPosHelper;
 import org.vast.swe.helper.RasterHelper;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.lang.Boolean;
 import java.util.Arrays;
 
+import static org.bytedeco.ffmpeg.global.avcodec.AV_CODEC_ID_MJPEG;
+import static org.bytedeco.ffmpeg.global.avcodec.av_packet_unref;
+import static org.bytedeco.ffmpeg.global.avutil.AV_NOPTS_VALUE;
+import static org.bytedeco.ffmpeg.global.avutil.av_make_q;
+import static org.bytedeco.ffmpeg.global.avutil.av_rescale_q;
+
 /**
  * Output specification and provider for {@link PiCameraSensor}.
+ * <p>
+ * Devices delivering MJPEG are captured in compressed form, each JPEG picture being published as read
+ * from V4L2. Other devices are decoded and every frame encoded to JPEG.
  *
  * @author your_name
  * @since date
@@ -47,9 +60,23 @@ public class PiCameraOutput extends AbstractSensorOutput<PiCameraSensor> impleme
     private static final String SENSOR_OUTPUT_LABEL = "CameraSensor";
     private static final String SENSOR_OUTPUT_DESCRIPTION = "Pi Camera Video Feed";
     private static final String VIDEO_FORMAT = "h264";
+    private static final String VIDEO_DEVICE = "/dev/video0";
+    private static final String V4L2_FORMAT = "video4linux2";
+    private static final String COMPRESSED_FORMAT = "mjpeg";
+    private static final AVRational MICROSECONDS = av_make_q(1, 1_000_000);
 
     private FrameGrabber frameGrabber;
 
+    /**
+     * True while the grabber asks the device for MJPEG, false once it decodes frames
+     */
+    private boolean compressedGrabber = false;
+
+    /**
+     * True while the device pictures are published without decoding and encoding
+     */
+    private volatile boolean passThrough = false;
+
     private static final Logger logger = LoggerFactory.getLogger(PiCameraOutput.class);
 
     private DataComponent dataStruct;
@@ -62,6 +89,9 @@ public class PiCameraOutput extends AbstractSensorOutput<PiCameraSensor> impleme
     private int setCount = 0;
     private final long[] timingHistogram = new long[MAX_NUM_TIMING_SAMPLES];
     private final Object histogramLock = new Object();
+    private long lastFrameTime = 0;
+
+    private final FrameClock frameClock = new FrameClock();
 
     private Thread worker;
 
@@ -85,21 +115,13 @@ public class PiCameraOutput extends AbstractSensorOutput<PiCameraSensor> impleme
 
         logger.debug("Initializing PiCameraOutput");
 
-        try {
+        VideoParameters videoParameters = parentSensor.getConfiguration().videoParameters;
 
-//            frameGrabber = FrameGrabber.createDefault(0);
-            frameGrabber = FrameGrabber.createDefault("/dev/video0");
+        // Tracking analyzes the decoded pixels, which pass-through never produces.
+        // The sensor creates its tracker before initializing this output.
+        compressedGrabber = videoParameters.compressedCapture && parentSensor.getMotionTracker() == null;
 
-        } catch (Exception e) {
-
-            logger.debug("Unable to connect to camera\n{}", e.getMessage());
-
-            throw new SensorException("Failed to establish connection with camera", e);
-        }
-
-        frameGrabber.setFormat(VIDEO_FORMAT);
-        frameGrabber.setImageHeight(parentSensor.getConfiguration().videoParameters.videoFrameHeight);
-        frameGrabber.setImageWidth(parentSensor.getConfiguration().videoParameters.videoFrameWidth);
+        frameGrabber = compressedGrabber ? createCompressedGrabber(videoParameters) : createDecodingGrabber(videoParameters);
 
         int videoFrameHeight = frameGrabber.getImageHeight();
         int videoFrameWidth = frameGrabber.getImageWidth();
@@ -152,7 +174,7 @@ public class PiCameraOutput extends AbstractSensorOutput<PiCameraSensor> impleme
 
             try {
 
-                frameGrabber.start();
+                startGrabber();
                 worker.start();
 
             } catch (FrameGrabber.Exception e) {
@@ -173,6 +195,94 @@ public class PiCameraOutput extends AbstractSensorOutput<PiCameraSensor> impleme
         //worker.start();
     }
 
+    /**
+     * Starts the grabber, falling back to decoding and encoding if the device has no MJPEG format
+     *
+     * @throws FrameGrabber.Exception if the grabber cannot be started
+     * @throws SensorException        if the fallback grabber cannot be created
+     */
+    private void startGrabber() throws FrameGrabber.Exception, SensorException {
+
+        passThrough = false;
+
+        if (compressedGrabber) {
+
+            try {
+
+                frameGrabber.start();
+
+                // V4L2 may still pick another format than the requested one
+                if (((FFmpegFrameGrabber) frameGrabber).getVideoCodec() == AV_CODEC_ID_MJPEG) {
+
+                    passThrough = true;
+
+                    logger.info("Capturing MJPEG from {}, frames are published without re-encoding", VIDEO_DEVICE);
+
+                    return;
+                }
+
+                logger.info("{} delivers {}, not MJPEG", VIDEO_DEVICE, ((FFmpegFrameGrabber) frameGrabber).getVideoCodecName());
+
+                frameGrabber.stop();
+
+            } catch (FrameGrabber.Exception e) {
+
+                logger.info("{} has no MJPEG format: {}", VIDEO_DEVICE, e.getMessage());
+            }
+
+            logger.info("Falling back to decoding and encoding frames");
+
+            frameGrabber.release();
+
+            // The device formats do not change, later starts go straight to decoding
+            compressedGrabber = false;
+            frameGrabber = createDecodingGrabber(parentSensor.getConfiguration().videoParameters);
+        }
+
+        frameGrabber.start();
+    }
+
+    /**
+     * Creates a grabber asking the device for MJPEG, whose packets are the JPEG pictures
+     */
+    private FrameGrabber createCompressedGrabber(VideoParameters videoParameters) {
+
+        FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(VIDEO_DEVICE);
+
+        grabber.setFormat(V4L2_FORMAT);
+        grabber.setOption("input_format", COMPRESSED_FORMAT);
+        grabber.setImageHeight(videoParameters.videoFrameHeight);
+        grabber.setImageWidth(videoParameters.videoFrameWidth);
+
+        return grabber;
+    }
+
+    /**
+     * Creates a grabber decoding the device frames
+     */
+    private FrameGrabber createDecodingGrabber(VideoParameters videoParameters) throws SensorException {
+
+        FrameGrabber grabber;
+
+        try {
+
+//            grabber = FrameGrabber.createDefault(0);
+            grabber = FrameGrabber.createDefault(VIDEO_DEVICE);
+
+        } catch (Exception e) {
+
+            logger.debug("Unable to connect to camera\n{}", e.getMessage());
+
+            throw new SensorException("Failed to establish connection with camera", e);
+        }
+
+        grabber.setFormat(VIDEO_FORMAT);
+        grabber.setImageHeight(videoParameters.videoFrameHeight);
+        grabber.setImageWidth(videoParameters.videoFrameWidth);
+
+        return grabber;
+    }
+
     /**
      * Terminates processing data for output
      */
@@ -226,6 +336,7 @@ public class PiCameraOutput extends AbstractSensorOutput<PiCameraSensor> impleme
     public double getAverageSamplingPeriod() {
 
         long accumulator = 0;
+        int sampleCount;
 
         synchronized (histogramLock) {
 
@@ -233,9 +344,12 @@ public class PiCameraOutput extends AbstractSensorOutput<PiCameraSensor> impleme
 
                 accumulator += timingHistogram[idx];
             }
+
+            sampleCount = Math.min(setCount, MAX_NUM_TIMING_SAMPLES);
         }
 
-        return accumulator / (double) MAX_NUM_TIMING_SAMPLES;
+        // Frame times are in milliseconds, the sampling period in seconds
+        return sampleCount > 0 ? accumulator / (sampleCount * 1000d) : 0;
     }
 
     @Override
@@ -243,13 +357,133 @@ public class PiCameraOutput extends AbstractSensorOutput<PiCameraSensor> impleme
 
         boolean processSets = true;
 
-        long lastSetTimeMillis = System.currentTimeMillis();
+        // Timestamps of a new grabber session start over
+        boolean sensorTimestamps = parentSensor.getConfiguration().videoParameters.sensorTimestamps;
+
+        frameClock.reset();
+
+        synchronized (histogramLock) {
+
+            lastFrameTime = 0;
+        }
+
+        int maxJpegQuality = parentSensor.getConfiguration().videoParameters.jpegQuality;
+
+        // Owned by the worker thread, reuses its native buffers for every frame
+        MjpegEncoder encoder = new MjpegEncoder(maxJpegQuality);
+
+        // Publication is synchronous, subscribers falling behind show as latency on this thread
+        AdaptiveParameters adaptiveParameters = parentSensor.getConfiguration().adaptiveParameters;
+
+        AdaptiveQualityController controller = adaptiveParameters.enabled
+                ? new AdaptiveQualityController(adaptiveParameters.targetLatency, adaptiveParameters.bandwidthLimit * 1000L)
+                : null;
+
+        MotionTracker tracker = parentSensor.getMotionTracker();
+
+        PiCameraOrientationOutput orientationOutput = parentSensor.getOrientationOutput();
+
+        long minFrameIntervalMillis = 0;
+        long nextFrameTimeMillis = 0;
+        long nextAdjustTimeMillis = System.currentTimeMillis() + adaptiveParameters.adjustPeriod;
 
         try {
 
             while (processSets) {
 
-                Frame frame = frameGrabber.grab();
+                Frame frame = null;
+                byte[] imageData = null;
+                long sensorMicros;
+
+                if (passThrough) {
+
+                    AVPacket packet = ((FFmpegFrameGrabber) frameGrabber).grabPacket();
+
+                    if (packet == null) {
+
+                        logger.info("End of camera stream");
+
+                        break;
+                    }
+
+                    try {
+
+                        // The packet holds the JPEG picture as delivered by the device
+                        imageData = new byte[packet.size()];
+                        packet.data().get(imageData);
+
+                        sensorMicros = getPacketMicros(packet);
+
+                    } finally {
+
+                        av_packet_unref(packet);
+                    }
+
+                } else {
+
+                    frame = frameGrabber.grab();
+
+                    if (frame == null) {
+
+                        logger.info("End of camera stream");
+
+                        break;
+                    }
+
+                    sensorMicros = frame.timestamp;
+                }
+
+                long grabNanos = System.nanoTime();
+                long grabTimeMillis = System.currentTimeMillis();
+
+                // The grabber gives the time the driver stamped the frame at capture, in microseconds
+                long frameTime = sensorTimestamps ? frameClock.toUtcMillis(sensorMicros, grabNanos) : grabTimeMillis;
+
+                // The servo keeps moving while the frame is encoded, its angle is taken right after the grab
+                float tiltAngle = orientationOutput != null ? parentSensor.getTiltAngle() : Float.NaN;
+
+                // Tracking sees every frame, including the ones the regulated frame rate skips
+                if (tracker != null && frame != null) {
+
+                    tracker.offer(frame, grabNanos);
+                }
+
+                if (controller != null && grabTimeMillis >= nextAdjustTimeMillis) {
+
+                    nextAdjustTimeMillis = grabTimeMillis + Math.max(100, adaptiveParameters.adjustPeriod);
+
+                    if (controller.update(0, 0)) {
+
+                        // Has no effect on pictures compressed by the device, only their rate is lowered
+                        encoder.setQuality(AdaptiveQualityController.interpolate(controller.getQualityFactor(),
+                                adaptiveParameters.minJpegQuality, maxJpegQuality));
+
+                        int frameRate = AdaptiveQualityController.interpolate(controller.getFrameRateFactor(),
+                                adaptiveParameters.minFrameRate, adaptiveParameters.maxFrameRate);
+
+                        minFrameIntervalMillis = frameRate < adaptiveParameters.maxFrameRate ? 1000L / Math.max(1, frameRate) : 0;
+
+                        logger.debug("Stream level {}: JPEG quality {}, {} fps, latency {} ms",
+                                controller.getLevel(), encoder.getQuality(), frameRate, controller.getLatency());
+                    }
+                }
+
+                // Frames in excess of the regulated frame rate are skipped before encoding
+                if (minFrameIntervalMillis > 0) {
+
+                    if (grabTimeMillis < nextFrameTimeMillis) {
+
+                        synchronized (processingLock) {
+
+                            processSets = !stopProcessing;
+                        }
+
+                        continue;
+                    }
+
+                    nextFrameTimeMillis = grabTimeMillis - nextFrameTimeMillis > minFrameIntervalMillis
+                            ? grabTimeMillis + minFrameIntervalMillis : nextFrameTimeMillis + minFrameIntervalMillis;
+                }
 
                 DataBlock dataBlock;
                 if (latestRecord == null) {
@@ -263,18 +497,18 @@ public class PiCameraOutput extends AbstractSensorOutput<PiCameraSensor> impleme
 
                 synchronized (histogramLock) {
 
-                    int setIndex = setCount % MAX_NUM_TIMING_SAMPLES;
+                    if (lastFrameTime > 0) {
 
-                    // Get a sampling time for latest set based on previous set sampling time
-                    timingHistogram[setIndex] = System.currentTimeMillis() - lastSetTimeMillis;
+                        // Interval between the frame times of consecutive published frames
+                        timingHistogram[setCount % MAX_NUM_TIMING_SAMPLES] = frameTime - lastFrameTime;
 
-                    // Set latest sampling time to now
-                    lastSetTimeMillis = timingHistogram[setIndex];
-                }
+                        ++setCount;
+                    }
 
-                ++setCount;
+                    lastFrameTime = frameTime;
+                }
 
-                double timestamp = System.currentTimeMillis() / 1000d;
+                double timestamp = frameTime / 1000d;
 
                 // populate sample time
                 dataBlock.setDoubleValue(0, timestamp);
@@ -282,19 +516,10 @@ public class PiCameraOutput extends AbstractSensorOutput<PiCameraSensor> impleme
                 // extract frame data as byte array and populate videoFrame field
                 AbstractDataBlock frameData = ((DataBlockMixed) dataBlock).getUnderlyingObject()[1];
 
-                BufferedImage image = new Java2DFrameConverter().convert(frame);
-
-                ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-
-                byte[] imageData;
-
-                ImageIO.write(image,"jpg",byteArrayOutputStream);
-
-                byteArrayOutputStream.flush();
-
-                imageData = byteArrayOutputStream.toByteArray();
+                if (!passThrough) {
 
-                byteArrayOutputStream.close();
+                    imageData = encoder.encode(frame);
+                }
 
                 // publish byte array to data record
 
@@ -306,6 +531,16 @@ public class PiCameraOutput extends AbstractSensorOutput<PiCameraSensor> impleme
 
                 eventHandler.publish(new DataEvent(latestRecordTime, PiCameraOutput.this, dataBlock));
 
+                if (orientationOutput != null) {
+
+                    orientationOutput.publishFrame(frameTime, tiltAngle, imageData);
+                }
+
+                if (controller != null) {
+
+                    controller.recordFrame(imageData.length, System.currentTimeMillis() - grabTimeMillis);
+                }
+
                 synchronized (processingLock) {
 
                     processSets = !stopProcessing;
@@ -318,6 +553,8 @@ public class PiCameraOutput extends AbstractSensorOutput<PiCameraSensor> impleme
 
         } finally {
 
+            encoder.close();
+
             // Reset the flag so that when driver is restarted loop thread continues
             // until doStop called on the output again
             stopProcessing = false;
@@ -325,4 +562,23 @@ public class PiCameraOutput extends AbstractSensorOutput<PiCameraSensor> impleme
             logger.debug("Terminating worker thread: {}", this.name);
         }
     }
+
+    /**
+     * Converts the timestamp of a packet to microseconds
+     *
+     * @return Packet timestamp in microseconds, 0 if the packet has none
+     */
+    private long getPacketMicros(AVPacket packet) {
+
+        if (packet.pts() == AV_NOPTS_VALUE) {
+
+            return 0;
+        }
+
+        AVRational timeBase = ((FFmpegFrameGrabber) frameGrabber).getFormatContext()
+                .streams(packet.stream_index()).time_base();
+
+        // rescaling in one multiplication would overflow for large time stamps
+        return av_rescale_q(packet.pts(), timeBase, MICROSECONDS);
+    }
 }
@@ -13,24 +13,14 @@
  ******************************* END LICENSE BLOCK ***************************/
 package com.sample.impl.sensor.picamera;
 
-//import com.pi4j.Pi4J;
-//import com.pi4j.context.Context;
-//import com.pi4j.context.ContextConfig;
-//import com.pi4j.context.ContextProperties;
-//import com.pi4j.event.InitializedListener;
-//import com.pi4j.event.ShutdownListener;
-//import com.pi4j.exception.ShutdownException;
-//import com.pi4j.io.pwm.Pwm;
-//import com.pi4j.library.pigpio.PiGpio;
-//import com.pi4j.platform.Platforms;
-//import com.pi4j.plugin.pigpio.provider.gpio.digital.PiGpioDigitalInputProvider;
-//import com.pi4j.plugin.pigpio.provider.gpio.digital.PiGpioDigitalOutputProvider;
-//import com.pi4j.plugin.pigpio.provider.pwm.PiGpioPwmProvider;
-//import com.pi4j.plugin.raspberrypi.platform.RaspberryPiPlatform;
-//import com.pi4j.provider.Providers;
-//import com.pi4j.registry.Registry;
-//import com.sample.impl.sensor.picamera.helpers.PIN;
-//import com.sample.impl.sensor.picamera.helpers.ServoMotor;
+import com.pi4j.Pi4J;
+import com.pi4j.context.Context;
+import com.pi4j.library.pigpio.PiGpio;
+import com.pi4j.plugin.pigpio.provider.gpio.digital.PiGpioDigitalInputProvider;
+import com.pi4j.plugin.pigpio.provider.gpio.digital.PiGpioDigitalOutputProvider;
+import com.pi4j.plugin.pigpio.provider.pwm.PiGpioPwmProvider;
+import com.pi4j.plugin.raspberrypi.platform.RaspberryPiPlatform;
+import com.sample.impl.sensor.picamera.helpers.ServoMotor;
 import net.opengis.sensorml.v20.PhysicalSystem;
 import org.sensorhub.api.common.SensorHubException;
 import org.sensorhub.impl.sensor.AbstractSensorModule;
@@ -38,8 +28,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.vast.sensorML.SMLHelper;
 
-//import static com.pi4j.plugin.pigpio.provider.gpio.digital.PiGpioDigitalOutputProvider.*;
-
 /**
  * Sensor driver providing sensor description, output registration, initialization and shutdown of driver and outputs.
  *
@@ -50,9 +38,13 @@ public class PiCameraSensor extends AbstractSensorModule<PiCameraConfig> {
 
     private static final Logger logger = LoggerFactory.getLogger(PiCameraSensor.class);
 
-//    Context pi4j;
-//    ServoMotor servoMotor;
+    Context pi4j;
+    volatile ServoMotor servoMotor;
     PiCameraOutput output;
+    PiCameraOrientationOutput orientationOutput;
+    TiltController tiltController;
+    PiCameraControl control;
+    MotionTracker motionTracker;
 
     @Override
     protected void updateSensorDescription() {
@@ -89,6 +81,14 @@ public class PiCameraSensor extends AbstractSensorModule<PiCameraConfig> {
         generateUniqueID("urn:osh:sensor:", config.serialNumber);
         generateXmlID("PI_CAMERA", config.serialNumber);
 
+        // Commands only set the target, the servo follows a smooth trajectory on its own thread.
+        // Without GPIO the trajectory drives a simulated servo, which only reports its angle.
+        tiltController = new TiltController(this::setServoAngle, config.tiltParameters,
+                PiCameraControl.getMinTiltAngle(), PiCameraControl.getMaxTiltAngle());
+
+        motionTracker = config.trackingParameters.enabled
+                ? new MotionTracker(tiltController, config.trackingParameters) : null;
+
         // Create and initialize output
         output = new PiCameraOutput(this);
 
@@ -97,48 +97,54 @@ public class PiCameraSensor extends AbstractSensorModule<PiCameraConfig> {
 
         output.doInit();
 
-//        // check config for whether you connect to GPIO
-//        if(config.isGPIOConnected) {
-//
-//        // initialize PI4J with PWM provider
-//        final var piGpio = PiGpio.newNativeInstance();
-//        pi4j = Pi4J.newContextBuilder()
-//                .noAutoDetect()
-//                .add(new RaspberryPiPlatform() {
-//                    @Override
-//                    protected String[] getProviders() {
-//                        return new String[]{};
-//                    }
-//                })
-//                .add(PiGpioDigitalInputProvider.newInstance(piGpio),
-//                        newInstance(piGpio),
-//                        PiGpioPwmProvider.newInstance(piGpio)
-//                )
-//                .build();
-//
-//        // Example servo implementation from
-//        // https://pi4j.com/examples/components/servo/
-//        servoMotor = new ServoMotor(pi4j, config.cameraPinConfig.pinConfig, 50, PiCameraControl.getMinTiltAngle(), PiCameraControl.getMaxTiltAngle(), 2.0f, 12f);
-//
-//        PiCameraControl control = new PiCameraControl(this);
-//
-//        addControlInput(control);
-//
-//        control.init();
-//
-//        }
+        if (config.orientationParameters.enabled) {
+
+            orientationOutput = new PiCameraOrientationOutput(this);
+
+            addOutput(orientationOutput, false);
+
+            orientationOutput.doInit();
+        }
+
+        control = new PiCameraControl(this);
+
+        addControlInput(control);
+
+        control.init();
 
     }
 
     @Override
     public void doStart() throws SensorHubException {
 
+        if (null != orientationOutput) {
+
+            // Receive IMU samples before the first frame needs them
+            orientationOutput.doStart();
+        }
+
         if (null != output) {
 
             // Allocate necessary resources and start outputs
             output.doStart();
         }
 
+        if (config.isGPIOConnected) {
+
+            connectServo();
+        }
+
+        if (null != tiltController) {
+
+            // The servo rests at the maximum tilt angle while the sensor is stopped
+            tiltController.start(PiCameraControl.getMaxTiltAngle());
+        }
+
+        if (null != motionTracker) {
+
+            motionTracker.start();
+        }
+
     }
 
     @Override
@@ -149,8 +155,27 @@ public class PiCameraSensor extends AbstractSensorModule<PiCameraConfig> {
             output.doStop();
         }
 
-//        servoMotor.setAngle(PiCameraControl.getMaxTiltAngle());
-//        pi4j.shutdown();
+        if (null != orientationOutput) {
+
+            orientationOutput.doStop();
+        }
+
+        if (null != motionTracker) {
+
+            motionTracker.stop();
+        }
+
+        if (null != control) {
+
+            control.stop();
+        }
+
+        if (null != tiltController) {
+
+            tiltController.stop();
+        }
+
+        disconnectServo();
 
     }
 
@@ -161,15 +186,112 @@ public class PiCameraSensor extends AbstractSensorModule<PiCameraConfig> {
         return output.isAlive();
     }
 
-//    protected void tilt(float angle) {
-//
-//        if (servoMotor != null) {
-//            logger.info("Tilting by " + angle + " degrees");
-//            servoMotor.setAngle(angle);
-//        } else {
-//            logger.error("Servo Motor not initialized");
-//        }
-//
-//    }
+    /**
+     * @return Frames with the camera orientation, null if disabled
+     */
+    PiCameraOrientationOutput getOrientationOutput() {
+
+        return orientationOutput;
+    }
+
+    /**
+     * @return Latest angle written to the tilt servo, simulated or not, in degrees, NaN before init
+     */
+    float getTiltAngle() {
+
+        return tiltController != null ? tiltController.getAngle() : Float.NaN;
+    }
+
+    /**
+     * @return Closed-loop tilt tracking, null if tracking is disabled
+     */
+    MotionTracker getMotionTracker() {
+
+        return motionTracker;
+    }
+
+    /**
+     * Moves the camera toward the given tilt angle, replacing any angle not reached yet
+     *
+     * @param angle Target angle in degrees
+     */
+    protected void tilt(float angle) {
+
+        if (tiltController != null) {
+            logger.debug("Tilting to {} degrees", angle);
+            tiltController.setTarget(angle);
+        } else {
+            logger.error("Servo Motor not initialized");
+        }
+
+    }
+
+    /**
+     * Drives the tilt servo through the GPIO, falling back to the simulated servo if it is not available
+     */
+    private void connectServo() {
+
+        try {
+
+            // initialize PI4J with PWM provider
+            final var piGpio = PiGpio.newNativeInstance();
+            pi4j = Pi4J.newContextBuilder()
+                    .noAutoDetect()
+                    .add(new RaspberryPiPlatform() {
+                        @Override
+                        protected String[] getProviders() {
+                            return new String[]{};
+                        }
+                    })
+                    .add(PiGpioDigitalInputProvider.newInstance(piGpio),
+                            PiGpioDigitalOutputProvider.newInstance(piGpio),
+                            PiGpioPwmProvider.newInstance(piGpio)
+                    )
+                    .build();
+
+            // Example servo implementation from
+            // https://pi4j.com/examples/components/servo/
+            servoMotor = new ServoMotor(pi4j, config.cameraPinConfig.pinConfig, 50, PiCameraControl.getMinTiltAngle(), PiCameraControl.getMaxTiltAngle(), 2.0f, 12f);
+
+        } catch (RuntimeException | UnsatisfiedLinkError e) {
+
+            logger.warn("Tilt servo not available on GPIO, simulating it", e);
+
+            disconnectServo();
+        }
+    }
+
+    /**
+     * Parks the servo and releases the GPIO
+     */
+    private void disconnectServo() {
+
+        ServoMotor servo = servoMotor;
+        servoMotor = null;
+
+        if (servo != null) {
+
+            servo.setAngle(PiCameraControl.getMaxTiltAngle());
+        }
+
+        if (pi4j != null) {
+
+            pi4j.shutdown();
+            pi4j = null;
+        }
+    }
+
+    /**
+     * Receives the angles of the tilt trajectory, on the trajectory thread
+     */
+    private void setServoAngle(float angle) {
+
+        ServoMotor servo = servoMotor;
+
+        if (servo != null) {
+
+            servo.setAngle(angle);
+        }
+    }
 
 }
@@ -0,0 +1,229 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.picamera;
+
+import com.sample.impl.sensor.picamera.config.TiltParameters;
+import com.sample.impl.sensor.picamera.helpers.TrajectoryPlanner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves the tilt servo along a smooth trajectory toward the latest commanded angle.
+ * <p>
+ * Commands only record their target, so a burst of commands coalesces into the latest one and never
+ * blocks the caller. A dedicated scheduled thread steps a {@link TrajectoryPlanner} at a fixed rate and
+ * writes the servo only when its angle moved by more than the deadband. The thread stops ticking once
+ * the servo settles, leaving the PWM untouched until the next command.
+ *
+ * @author your_name
+ * @since date
+ */
+public class TiltController {
+
+    /**
+     * Receives the successive angles of the trajectory, on the trajectory thread
+     */
+    public interface AngleSink {
+
+        void setAngle(float angle);
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(TiltController.class);
+
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 1000;
+
+    private final AngleSink sink;
+    private final TiltParameters parameters;
+    private final float minAngle;
+    private final float maxAngle;
+    private final long periodNanos;
+
+    private TrajectoryPlanner planner;
+    private float writtenAngle;
+
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> task;
+    private Float pendingTarget;
+
+    /**
+     * Constructor
+     *
+     * @param sink       Servo driven along the trajectory
+     * @param parameters Velocity and acceleration limits, update rate and deadband
+     * @param minAngle   Lowest angle the servo can be commanded to, in degrees
+     * @param maxAngle   Highest angle the servo can be commanded to, in degrees
+     */
+    public TiltController(AngleSink sink, TiltParameters parameters, float minAngle, float maxAngle) {
+
+        this.sink = sink;
+        this.parameters = parameters;
+        this.minAngle = minAngle;
+        this.maxAngle = maxAngle;
+
+        periodNanos = 1_000_000_000L / Math.max(1, parameters.updateRate);
+    }
+
+    /**
+     * Starts the trajectory thread, moving the servo straight to its initial angle
+     *
+     * @param initialAngle Angle of the servo at rest, in degrees
+     */
+    public synchronized void start(float initialAngle) {
+
+        if (scheduler != null) {
+
+            return;
+        }
+
+        float angle = clamp(initialAngle);
+
+        planner = new TrajectoryPlanner(parameters.maxVelocity, parameters.maxAcceleration, angle);
+        pendingTarget = null;
+
+        writtenAngle = angle;
+        sink.setAngle(angle);
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+
+            Thread thread = new Thread(runnable, "tilt-trajectory");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+    }
+
+    /**
+     * Stops the trajectory thread, the servo stays where it is
+     */
+    public synchronized void stop() {
+
+        if (scheduler == null) {
+
+            return;
+        }
+
+        scheduler.shutdownNow();
+
+        try {
+
+            scheduler.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+        }
+
+        scheduler = null;
+        task = null;
+    }
+
+    /**
+     * Sets the angle to move to, replacing any target not reached yet. Returns immediately.
+     *
+     * @param angle Target angle in degrees, clamped to the servo range
+     */
+    public synchronized void setTarget(float angle) {
+
+        if (scheduler == null) {
+
+            logger.warn("Tilt controller not started, ignoring target {}", angle);
+
+            return;
+        }
+
+        pendingTarget = clamp(angle);
+
+        if (task == null) {
+
+            task = scheduler.scheduleAtFixedRate(this::tick, 0, periodNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * @return Latest angle written to the servo, in degrees
+     */
+    public synchronized float getAngle() {
+
+        return writtenAngle;
+    }
+
+    /**
+     * @return true while the servo follows a trajectory toward its target
+     */
+    public synchronized boolean isMoving() {
+
+        return task != null;
+    }
+
+    private void tick() {
+
+        Float target;
+
+        synchronized (this) {
+
+            target = pendingTarget;
+            pendingTarget = null;
+        }
+
+        if (target != null) {
+
+            planner.setTarget(target);
+        }
+
+        float angle = (float) planner.step(periodNanos / 1e9);
+
+        boolean settled = planner.isSettled();
+
+        // Small moves are not worth a PWM update, but the final angle always is
+        if (Math.abs(angle - writtenAngle) >= parameters.deadband || (settled && angle != writtenAngle)) {
+
+            try {
+
+                sink.setAngle(angle);
+
+            } catch (RuntimeException e) {
+
+                logger.error("Failed to set tilt angle to {}", angle, e);
+            }
+
+            synchronized (this) {
+
+                writtenAngle = angle;
+            }
+        }
+
+        if (settled) {
+
+            synchronized (this) {
+
+                // A target set since the start of this tick keeps the trajectory running
+                if (pendingTarget == null && task != null) {
+
+                    task.cancel(false);
+                    task = null;
+                }
+            }
+        }
+    }
+
+    private float clamp(float angle) {
+
+        return Math.max(minAngle, Math.min(maxAngle, angle));
+    }
+}
@@ -0,0 +1,28 @@
+package com.sample.impl.sensor.picamera.config;
+
+import org.sensorhub.api.config.DisplayInfo;
+
+public class AdaptiveParameters {
+
+    @DisplayInfo(desc = "Lower quality and frame rate while subscribers cannot keep up, raise them again once they do")
+    public boolean enabled = false;
+
+    @DisplayInfo(desc = "Period between two adjustments, in milliseconds")
+    public int adjustPeriod = 1000;
+
+    @DisplayInfo(desc = "Time from capture to publication above which the stream backs off, in milliseconds")
+    public int targetLatency = 500;
+
+    @DisplayInfo(desc = "Bitrate of the published stream above which it backs off, in kilobits per second, 0 for no limit")
+    public int bandwidthLimit = 0;
+
+    @DisplayInfo(desc = "Lowest JPEG quality, the highest being the configured video quality")
+    public int minJpegQuality = 30;
+
+    @DisplayInfo(desc = "Lowest frame rate")
+    public int minFrameRate = 5;
+
+    @DisplayInfo(desc = "Highest frame rate, the rate of the camera when the stream is not under pressure")
+    public int maxFrameRate = 30;
+
+}
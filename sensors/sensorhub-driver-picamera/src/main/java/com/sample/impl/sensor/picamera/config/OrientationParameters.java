@@ -0,0 +1,25 @@
+package com.sample.impl.sensor.picamera.config;
+
+import org.sensorhub.api.config.DisplayInfo;
+import org.sensorhub.api.sensor.ISensorModule;
+
+public class OrientationParameters {
+
+    @DisplayInfo(desc = "Publish every frame along with the tilt angle and the IMU attitude at its capture time")
+    public boolean enabled = false;
+
+    @DisplayInfo.FieldType(DisplayInfo.FieldType.Type.MODULE_ID)
+    @DisplayInfo.ModuleType(ISensorModule.class)
+    @DisplayInfo(label = "IMU Module", desc = "IMU driver mounted with the camera, such as the BNO08x driver, empty for the tilt angle only")
+    public String imuModuleId = "";
+
+    @DisplayInfo(desc = "Name of the IMU output giving a time stamp followed by the attitude quaternion")
+    public String imuOutputName = "imuData";
+
+    @DisplayInfo(desc = "Longest interval between IMU samples, or age of the latest sample, for which the attitude is interpolated, in milliseconds")
+    public int maxImuGap = 100;
+
+    @DisplayInfo(desc = "Number of IMU samples kept to cover the capture latency of the frames")
+    public int imuBufferSize = 512;
+
+}
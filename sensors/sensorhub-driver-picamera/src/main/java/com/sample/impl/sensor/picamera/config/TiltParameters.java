@@ -0,0 +1,19 @@
+package com.sample.impl.sensor.picamera.config;
+
+import org.sensorhub.api.config.DisplayInfo;
+
+public class TiltParameters {
+
+    @DisplayInfo(desc = "Maximum speed of the tilt servo, in degrees per second")
+    public double maxVelocity = 90;
+
+    @DisplayInfo(desc = "Maximum acceleration of the tilt servo, in degrees per second squared")
+    public double maxAcceleration = 360;
+
+    @DisplayInfo(desc = "Rate at which the servo position is updated along its trajectory, in hertz, at most the PWM frequency")
+    public int updateRate = 50;
+
+    @DisplayInfo(desc = "Smallest change of angle written to the servo, in degrees")
+    public double deadband = 0.25;
+
+}
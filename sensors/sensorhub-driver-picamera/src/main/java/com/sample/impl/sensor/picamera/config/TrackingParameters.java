@@ -0,0 +1,52 @@
+package com.sample.impl.sensor.picamera.config;
+
+import org.sensorhub.api.config.DisplayInfo;
+
+public class TrackingParameters {
+
+    @DisplayInfo(desc = "Tilt the camera toward moving objects, frames are then always decoded")
+    public boolean enabled = false;
+
+    @DisplayInfo(desc = "Rate at which frames are analyzed and the tilt corrected, in hertz")
+    public int updateRate = 10;
+
+    @DisplayInfo(desc = "Width of the downscaled luma picture used to detect motion")
+    public int analysisWidth = 80;
+
+    @DisplayInfo(desc = "Height of the downscaled luma picture used to detect motion")
+    public int analysisHeight = 60;
+
+    @DisplayInfo(desc = "Change of luma between two analyzed frames above which a pixel is moving, from 1 to 255")
+    public int motionThreshold = 24;
+
+    @DisplayInfo(desc = "Share of moving pixels below which no target is tracked, in percent")
+    public double minMotionArea = 0.5;
+
+    @DisplayInfo(desc = "Vertical field of view of the camera, in degrees")
+    public double verticalFieldOfView = 48.8;
+
+    @DisplayInfo(desc = "Proportional gain, in degrees of tilt per degree of error")
+    public double kp = 0.6;
+
+    @DisplayInfo(desc = "Integral gain, in degrees of tilt per degree of error and second")
+    public double ki = 0.1;
+
+    @DisplayInfo(desc = "Derivative gain, in degrees of tilt per degree of error per second")
+    public double kd = 0.05;
+
+    @DisplayInfo(desc = "Largest tilt correction applied at once, in degrees")
+    public double maxStep = 10;
+
+    @DisplayInfo(desc = "Error below which the tilt is left alone, in degrees")
+    public double deadband = 1.0;
+
+    @DisplayInfo(desc = "Age of a frame above which it is too late to act on it, in milliseconds")
+    public int maxLatency = 150;
+
+    @DisplayInfo(desc = "Time for the picture to settle after the servo stops, in milliseconds")
+    public int settleTime = 100;
+
+    @DisplayInfo(desc = "Set when a higher tilt angle moves the picture down rather than up")
+    public boolean invertTilt = false;
+
+}
@@ -12,4 +12,13 @@ public class VideoParameters {
     @DisplayInfo(desc = "Height of video frames")
     public int videoFrameHeight = 720;
 
+    @DisplayInfo(desc = "Quality of the published JPEG frames, from 1 to 100")
+    public int jpegQuality = 80;
+
+    @DisplayInfo(desc = "Ask the camera for MJPEG and publish its pictures without re-encoding, falls back to encoding when the camera has no compressed format")
+    public boolean compressedCapture = true;
+
+    @DisplayInfo(desc = "Stamp frames with the time the camera captured them, as given by the frame grabber, instead of the time they reach the driver")
+    public boolean sensorTimestamps = true;
+
 }
@@ -0,0 +1,269 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.picamera.helpers;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free ring of timestamped attitude quaternions, written by a single thread and read by any number
+ * of threads.
+ * <p>
+ * Each slot holds a sequence number, the sample time and the four quaternion components packed as float
+ * bits, all in one {@link AtomicLongArray}. The writer marks a slot odd while it rewrites it, so a reader
+ * detects a slot overwritten under its feet and skips it instead of waiting. Readers look up the two
+ * samples bracketing a time and interpolate between them along the shortest arc.
+ *
+ * @author your_name
+ * @since date
+ */
+public class AttitudeRing {
+
+    private static final int SLOT_SEQUENCE = 0;
+    private static final int SLOT_TIME = 1;
+    private static final int SLOT_XY = 2;
+    private static final int SLOT_ZW = 3;
+    private static final int SLOT_SIZE = 4;
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicLongArray slots;
+
+    /**
+     * Number of samples written so far, the latest one being in slot (count - 1) & mask
+     */
+    private final AtomicLong count = new AtomicLong();
+
+    private volatile long latestTime = Long.MIN_VALUE;
+
+    /**
+     * Constructor
+     *
+     * @param capacity Number of samples kept, rounded up to a power of two
+     */
+    public AttitudeRing(int capacity) {
+
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+
+        this.capacity = size;
+        mask = size - 1;
+        slots = new AtomicLongArray(size * SLOT_SIZE);
+    }
+
+    /**
+     * Appends a sample, to be called from a single writer thread. Samples not newer than the latest one
+     * are ignored, so the ring stays ordered by time.
+     *
+     * @param time Sample time in milliseconds since epoch
+     * @param x    Quaternion x component
+     * @param y    Quaternion y component
+     * @param z    Quaternion z component
+     * @param w    Quaternion scalar component
+     * @return true if the sample was added
+     */
+    public boolean add(long time, float x, float y, float z, float w) {
+
+        if (time <= latestTime) {
+
+            return false;
+        }
+
+        long index = count.get();
+        int base = (int) (index & mask) * SLOT_SIZE;
+
+        // Odd while the slot is rewritten, then even and unique to this sample
+        slots.set(base + SLOT_SEQUENCE, 2 * index + 1);
+
+        slots.set(base + SLOT_TIME, time);
+        slots.set(base + SLOT_XY, pack(x, y));
+        slots.set(base + SLOT_ZW, pack(z, w));
+
+        slots.set(base + SLOT_SEQUENCE, 2 * index + 2);
+
+        latestTime = time;
+        count.set(index + 1);
+
+        return true;
+    }
+
+    /**
+     * Interpolates the attitude at a given time between the two samples surrounding it
+     *
+     * @param time   Time in milliseconds since epoch
+     * @param maxGap Longest interval between the surrounding samples, and longest time past the latest
+     *               sample, for which an attitude is given, in milliseconds
+     * @param result Receives the x, y, z and scalar components of the unit quaternion
+     * @return true if the attitude is known at that time
+     */
+    public boolean interpolate(long time, long maxGap, float[] result) {
+
+        long written = count.get();
+        long oldest = Math.max(0, written - capacity + 1);
+
+        float[] later = null;
+        long laterTime = 0;
+        float[] sample = new float[4];
+
+        // Frames are recent, so the surrounding samples are found close to the latest one
+        for (long index = written - 1; index >= oldest; --index) {
+
+            long sampleTime = read(index, sample);
+
+            if (sampleTime == Long.MIN_VALUE) {
+
+                // Overwritten by the writer, older slots are gone too
+                break;
+            }
+
+            if (sampleTime <= time) {
+
+                if (later == null) {
+
+                    // Past the latest sample, hold it for a short while
+                    if (time - sampleTime > maxGap) {
+
+                        return false;
+                    }
+
+                    System.arraycopy(sample, 0, result, 0, 4);
+
+                    return true;
+                }
+
+                if (laterTime - sampleTime > maxGap) {
+
+                    return false;
+                }
+
+                slerp(sample, later, (double) (time - sampleTime) / (laterTime - sampleTime), result);
+
+                return true;
+            }
+
+            later = sample.clone();
+            laterTime = sampleTime;
+        }
+
+        return false;
+    }
+
+    /**
+     * @return Number of samples added since the ring was created or cleared
+     */
+    public long getCount() {
+
+        return count.get();
+    }
+
+    /**
+     * Forgets all samples, must not be called while the writer adds samples
+     */
+    public void clear() {
+
+        count.set(0);
+        latestTime = Long.MIN_VALUE;
+
+        for (int idx = 0; idx < capacity; ++idx) {
+
+            slots.set(idx * SLOT_SIZE + SLOT_SEQUENCE, 0);
+        }
+    }
+
+    /**
+     * Reads a sample, consistent thanks to the slot sequence number
+     *
+     * @return Sample time, {@link Long#MIN_VALUE} if the slot no longer holds that sample
+     */
+    private long read(long index, float[] sample) {
+
+        int base = (int) (index & mask) * SLOT_SIZE;
+        long expected = 2 * index + 2;
+
+        if (slots.get(base + SLOT_SEQUENCE) != expected) {
+
+            return Long.MIN_VALUE;
+        }
+
+        long time = slots.get(base + SLOT_TIME);
+        long xy = slots.get(base + SLOT_XY);
+        long zw = slots.get(base + SLOT_ZW);
+
+        if (slots.get(base + SLOT_SEQUENCE) != expected) {
+
+            return Long.MIN_VALUE;
+        }
+
+        sample[0] = Float.intBitsToFloat((int) (xy >>> 32));
+        sample[1] = Float.intBitsToFloat((int) xy);
+        sample[2] = Float.intBitsToFloat((int) (zw >>> 32));
+        sample[3] = Float.intBitsToFloat((int) zw);
+
+        return time;
+    }
+
+    private static long pack(float high, float low) {
+
+        return ((long) Float.floatToRawIntBits(high) << 32) | (Float.floatToRawIntBits(low) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Spherical linear interpolation between two quaternions, along the shortest arc
+     */
+    static void slerp(float[] from, float[] to, double fraction, float[] result) {
+
+        double dot = from[0] * to[0] + from[1] * to[1] + from[2] * to[2] + from[3] * to[3];
+
+        // q and -q are the same attitude, go the short way
+        double sign = dot < 0 ? -1 : 1;
+        dot = Math.abs(dot);
+
+        double fromWeight;
+        double toWeight;
+
+        if (dot > 0.9995) {
+
+            // Nearly identical attitudes, linear interpolation is accurate and avoids dividing by ~0
+            fromWeight = 1 - fraction;
+            toWeight = fraction;
+
+        } else {
+
+            double angle = Math.acos(dot);
+            double sinAngle = Math.sin(angle);
+
+            fromWeight = Math.sin((1 - fraction) * angle) / sinAngle;
+            toWeight = Math.sin(fraction * angle) / sinAngle;
+        }
+
+        double norm = 0;
+
+        for (int idx = 0; idx < 4; ++idx) {
+
+            double value = fromWeight * from[idx] + sign * toWeight * to[idx];
+
+            result[idx] = (float) value;
+            norm += value * value;
+        }
+
+        norm = Math.sqrt(norm);
+
+        if (norm > 0) {
+
+            for (int idx = 0; idx < 4; ++idx) {
+
+                result[idx] /= norm;
+            }
+        }
+    }
+}
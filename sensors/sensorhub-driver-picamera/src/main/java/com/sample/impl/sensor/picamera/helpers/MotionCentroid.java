@@ -0,0 +1,195 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.picamera.helpers;
+
+import org.bytedeco.javacv.Frame;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Locates motion in small luma pictures by differencing consecutive pictures.
+ * <p>
+ * Pixels whose luma changed by more than a threshold since the previous picture are counted as moving,
+ * and the centroid of the moving pixels gives the position of the target. Pictures are downscaled from
+ * the decoded frames beforehand, which keeps the analysis to a few thousand pixels whatever the frame size.
+ * <p>
+ * Not thread safe, meant to be updated by a single thread.
+ *
+ * @author your_name
+ * @since date
+ */
+public class MotionCentroid {
+
+    private final int width;
+    private final int height;
+    private final int threshold;
+    private final int minMotionCount;
+
+    private final byte[] previous;
+    private boolean hasPrevious = false;
+
+    private double centroidX;
+    private double centroidY;
+    private int motionCount;
+
+    /**
+     * Constructor
+     *
+     * @param width         Width of the analyzed pictures
+     * @param height        Height of the analyzed pictures
+     * @param threshold     Change of luma above which a pixel is moving
+     * @param minMotionArea Share of moving pixels below which there is no target, from 0 to 1
+     */
+    public MotionCentroid(int width, int height, int threshold, double minMotionArea) {
+
+        this.width = width;
+        this.height = height;
+        this.threshold = threshold;
+
+        minMotionCount = Math.max(1, (int) Math.round(minMotionArea * width * height));
+
+        previous = new byte[width * height];
+    }
+
+    /**
+     * Compares a picture to the previous one and locates the moving pixels
+     *
+     * @param luma Picture of width by height luma values
+     * @return true if enough pixels moved for the centroid to be meaningful
+     */
+    public boolean update(byte[] luma) {
+
+        long sumX = 0;
+        long sumY = 0;
+        int count = 0;
+
+        if (hasPrevious) {
+
+            int index = 0;
+
+            for (int y = 0; y < height; ++y) {
+
+                for (int x = 0; x < width; ++x, ++index) {
+
+                    if (Math.abs((luma[index] & 0xFF) - (previous[index] & 0xFF)) > threshold) {
+
+                        sumX += x;
+                        sumY += y;
+                        ++count;
+                    }
+                }
+            }
+        }
+
+        System.arraycopy(luma, 0, previous, 0, previous.length);
+        hasPrevious = true;
+
+        motionCount = count;
+
+        if (count < minMotionCount) {
+
+            return false;
+        }
+
+        // Pixel centers mapped to -1 at the left or top edge and 1 at the right or bottom edge
+        centroidX = 2 * ((double) sumX / count + 0.5) / width - 1;
+        centroidY = 2 * ((double) sumY / count + 0.5) / height - 1;
+
+        return true;
+    }
+
+    /**
+     * Forgets the previous picture, to be called when the camera moved
+     */
+    public void reset() {
+
+        hasPrevious = false;
+        motionCount = 0;
+    }
+
+    /**
+     * @return Horizontal position of the moving pixels, from -1 at the left edge to 1 at the right edge
+     */
+    public double getCentroidX() {
+
+        return centroidX;
+    }
+
+    /**
+     * @return Vertical position of the moving pixels, from -1 at the top edge to 1 at the bottom edge
+     */
+    public double getCentroidY() {
+
+        return centroidY;
+    }
+
+    /**
+     * @return Number of moving pixels found by the latest update
+     */
+    public int getMotionCount() {
+
+        return motionCount;
+    }
+
+    /**
+     * Downscales a frame with 8-bit packed BGR or gray pixels to luma, averaging four samples per picture pixel
+     *
+     * @param frame  Decoded frame
+     * @param luma   Receives width by height luma values
+     * @param width  Width of the downscaled picture
+     * @param height Height of the downscaled picture
+     */
+    public static void downscaleLuma(Frame frame, byte[] luma, int width, int height) {
+
+        ByteBuffer buffer = (ByteBuffer) frame.image[0];
+
+        int channels = frame.imageChannels;
+        int stride = frame.imageStride;
+
+        int index = 0;
+
+        for (int y = 0; y < height; ++y) {
+
+            // Rows at a quarter and three quarters of the cell
+            int row0 = ((4 * y + 1) * frame.imageHeight / (4 * height)) * stride;
+            int row1 = ((4 * y + 3) * frame.imageHeight / (4 * height)) * stride;
+
+            for (int x = 0; x < width; ++x, ++index) {
+
+                int column0 = ((4 * x + 1) * frame.imageWidth / (4 * width)) * channels;
+                int column1 = ((4 * x + 3) * frame.imageWidth / (4 * width)) * channels;
+
+                int sum = sample(buffer, row0 + column0, channels) + sample(buffer, row0 + column1, channels)
+                        + sample(buffer, row1 + column0, channels) + sample(buffer, row1 + column1, channels);
+
+                luma[index] = (byte) (sum >> 2);
+            }
+        }
+    }
+
+    private static int sample(ByteBuffer buffer, int offset, int channels) {
+
+        if (channels == 1) {
+
+            return buffer.get(offset) & 0xFF;
+        }
+
+        int blue = buffer.get(offset) & 0xFF;
+        int green = buffer.get(offset + 1) & 0xFF;
+        int red = buffer.get(offset + 2) & 0xFF;
+
+        // BT.601 luma in fixed point
+        return (29 * blue + 150 * green + 77 * red) >> 8;
+    }
+}
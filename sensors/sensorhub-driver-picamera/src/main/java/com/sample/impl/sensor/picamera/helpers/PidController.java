@@ -0,0 +1,98 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.picamera.helpers;
+
+/**
+ * Proportional integral derivative controller with a bounded output.
+ * <p>
+ * The integral term is clamped so that it alone never exceeds the output limit, which keeps it from
+ * winding up while the output saturates. The derivative is taken on the error and skipped on the first
+ * update after a reset.
+ * <p>
+ * Not thread safe, meant to be updated by a single thread.
+ *
+ * @author your_name
+ * @since date
+ */
+public class PidController {
+
+    private final double kp;
+    private final double ki;
+    private final double kd;
+    private final double outputLimit;
+
+    private double integral = 0;
+    private double previousError = 0;
+    private boolean hasPreviousError = false;
+
+    /**
+     * Constructor
+     *
+     * @param kp          Proportional gain
+     * @param ki          Integral gain, per second
+     * @param kd          Derivative gain, in seconds
+     * @param outputLimit Largest magnitude of the output
+     */
+    public PidController(double kp, double ki, double kd, double outputLimit) {
+
+        this.kp = kp;
+        this.ki = ki;
+        this.kd = kd;
+        this.outputLimit = Math.abs(outputLimit);
+    }
+
+    /**
+     * Computes the correction for a new error measurement
+     *
+     * @param error Error, setpoint minus measurement
+     * @param dt    Time since the previous update, in seconds
+     * @return Correction, within the output limit
+     */
+    public double update(double error, double dt) {
+
+        double output = kp * error;
+
+        if (dt > 0) {
+
+            if (ki != 0) {
+
+                double integralLimit = outputLimit / Math.abs(ki);
+
+                integral = Math.max(-integralLimit, Math.min(integralLimit, integral + error * dt));
+
+                output += ki * integral;
+            }
+
+            if (hasPreviousError) {
+
+                output += kd * (error - previousError) / dt;
+            }
+        }
+
+        previousError = error;
+        hasPreviousError = true;
+
+        return Math.max(-outputLimit, Math.min(outputLimit, output));
+    }
+
+    /**
+     * Forgets the accumulated error, to be called when the measurement is lost
+     */
+    public void reset() {
+
+        integral = 0;
+        previousError = 0;
+        hasPreviousError = false;
+    }
+}
@@ -60,6 +60,11 @@ public class ServoMotor extends PwmActuator {
      */
     private float maxRange = 1;
 
+    /**
+     * Duty cycle last written to the PWM, NaN while the PWM is off
+     */
+    private float dutyCycle = Float.NaN;
+
     /**
      * Creates a new step motor component with the default pin, angle range as well as duty cycle range.
      *
@@ -117,6 +122,7 @@ public class ServoMotor extends PwmActuator {
         setAngle(0);
         delay(Duration.ofSeconds(1));
         super.reset();
+        dutyCycle = Float.NaN;
     }
 
     private void delay(Duration duration) {
@@ -135,7 +141,7 @@ public class ServoMotor extends PwmActuator {
      * @param angle New absolute angle
      */
     public void setAngle(float angle) {
-        pwm.on(mapAngleToDutyCycle(angle));
+        setDutyCycle(mapAngleToDutyCycle(angle));
     }
 
     /**
@@ -167,7 +173,7 @@ public class ServoMotor extends PwmActuator {
      * @param maxValue Maximum range value
      */
     public void moveOnRange(float value, float minValue, float maxValue) {
-        pwm.on(mapToDutyCycle(value, minValue, maxValue));
+        setDutyCycle(mapToDutyCycle(value, minValue, maxValue));
     }
 
     /**
@@ -200,6 +206,19 @@ public class ServoMotor extends PwmActuator {
         return maxAngle;
     }
 
+    /**
+     * Writes the duty cycle to the PWM unless it is already set, rewriting it restarts the pulse train.
+     *
+     * @param dutyCycle Duty cycle as float, between 0 and 100
+     */
+    private void setDutyCycle(float dutyCycle) {
+        if (dutyCycle == this.dutyCycle) {
+            return;
+        }
+        pwm.on(dutyCycle);
+        this.dutyCycle = dutyCycle;
+    }
+
     /**
      * Helper function to map an angle between {@link #minAngle} and {@link #maxAngle} to the configured duty cycle range.
      *
@@ -0,0 +1,134 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.picamera.helpers;
+
+/**
+ * Time-optimal single axis trajectory toward a target that may change at any time, within velocity
+ * and acceleration limits.
+ * <p>
+ * Each step accelerates toward the target up to the maximum velocity, or decelerates once the remaining
+ * distance is the braking distance, giving a trapezoidal velocity profile. A new target simply bends the
+ * current motion: the velocity stays continuous, the axis brakes and reverses if the target moved behind it.
+ * <p>
+ * Not thread safe, meant to be stepped by a single thread.
+ *
+ * @author your_name
+ * @since date
+ */
+public class TrajectoryPlanner {
+
+    /**
+     * Distance to the target below which the axis settles on it, in position units
+     */
+    private static final double SETTLE_DISTANCE = 1e-3;
+
+    private final double maxVelocity;
+    private final double maxAcceleration;
+
+    private double position;
+    private double velocity = 0;
+    private double target;
+
+    /**
+     * Constructor
+     *
+     * @param maxVelocity     Maximum velocity in position units per second
+     * @param maxAcceleration Maximum acceleration in position units per second squared
+     * @param position        Initial position, at rest
+     */
+    public TrajectoryPlanner(double maxVelocity, double maxAcceleration, double position) {
+
+        this.maxVelocity = Math.abs(maxVelocity);
+        this.maxAcceleration = Math.abs(maxAcceleration);
+        this.position = position;
+        this.target = position;
+    }
+
+    /**
+     * Replaces the target, the motion toward the previous one is not finished
+     *
+     * @param target New target position
+     */
+    public void setTarget(double target) {
+
+        this.target = target;
+    }
+
+    /**
+     * Advances the motion
+     *
+     * @param dt Time step in seconds
+     * @return Position at the end of the step
+     */
+    public double step(double dt) {
+
+        double error = target - position;
+        double maxVelocityChange = maxAcceleration * dt;
+
+        if (Math.abs(error) <= SETTLE_DISTANCE && Math.abs(velocity) <= maxVelocityChange) {
+
+            position = target;
+            velocity = 0;
+
+            return position;
+        }
+
+        double direction = Math.signum(error);
+
+        // Fastest velocity from which the axis stops exactly on the target, braking by the maximum velocity change
+        // over a whole number of steps, the last one no faster than that change: the discrete counterpart of sqrt(2 a d)
+        double distance = Math.abs(error);
+        double brakingSteps = Math.max(1, Math.ceil(Math.sqrt(0.25 + 2 * distance / (maxVelocityChange * dt)) - 0.5 - 1e-9));
+        double brakingVelocity = distance / (brakingSteps * dt) + maxVelocityChange * (brakingSteps - 1) / 2;
+        double desiredVelocity = direction * Math.min(maxVelocity, brakingVelocity);
+
+        velocity += Math.max(-maxVelocityChange, Math.min(maxVelocityChange, desiredVelocity - velocity));
+
+        double next = position + velocity * dt;
+
+        // Rounding can pass the target on the last step of braking, which then ends on the target
+        if ((target - next) * direction < 0 && Math.abs(velocity) <= brakingVelocity + maxVelocityChange) {
+
+            next = target;
+            velocity = error / dt;
+        }
+
+        position = next;
+
+        return position;
+    }
+
+    /**
+     * @return true once the axis rests on its target
+     */
+    public boolean isSettled() {
+
+        return position == target && velocity == 0;
+    }
+
+    public double getPosition() {
+
+        return position;
+    }
+
+    public double getVelocity() {
+
+        return velocity;
+    }
+
+    public double getTarget() {
+
+        return target;
+    }
+}
@@ -0,0 +1,136 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.picamera;
+
+import com.sample.impl.sensor.picamera.config.TiltParameters;
+import com.sample.impl.sensor.picamera.config.TrackingParameters;
+import org.bytedeco.javacv.Frame;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class TestMotionTracker {
+
+    private static final int WIDTH = 80;
+    private static final int HEIGHT = 60;
+    private static final int BLOCK_SIZE = 8;
+    private static final long FRAME_PERIOD_MILLIS = 20;
+    private static final long TRACKING_TIMEOUT_MILLIS = 3000;
+
+    private final TrackingParameters parameters = new TrackingParameters();
+    private final TiltParameters tiltParameters = new TiltParameters();
+
+    private TiltController tiltController;
+    private MotionTracker tracker;
+
+    @Before
+    public void setup() {
+
+        parameters.analysisWidth = WIDTH;
+        parameters.analysisHeight = HEIGHT;
+        parameters.settleTime = 0;
+
+        tiltController = new TiltController(angle -> { }, tiltParameters, -45, 45);
+        tiltController.start(0);
+
+        tracker = new MotionTracker(tiltController, parameters);
+        tracker.start();
+    }
+
+    @After
+    public void cleanup() {
+
+        tracker.stop();
+        tiltController.stop();
+    }
+
+    @Test(timeout = 10000)
+    public void testTiltsTowardMotionBelowCenter() throws Exception {
+
+        long deadline = System.currentTimeMillis() + TRACKING_TIMEOUT_MILLIS;
+
+        for (int idx = 0; tracker.getCorrectionCount() == 0 && System.currentTimeMillis() < deadline; ++idx) {
+
+            // A block sliding along the bottom of the picture
+            tracker.offer(frame((idx * BLOCK_SIZE) % (WIDTH - BLOCK_SIZE), HEIGHT - BLOCK_SIZE), System.nanoTime());
+
+            Thread.sleep(FRAME_PERIOD_MILLIS);
+        }
+
+        assertTrue(tracker.getCorrectionCount() > 0);
+
+        // A higher angle moves the picture up, so the camera tilts down toward the target
+        while (tiltController.isMoving()) {
+
+            Thread.sleep(FRAME_PERIOD_MILLIS);
+        }
+
+        assertTrue(tiltController.getAngle() < 0);
+    }
+
+    @Test(timeout = 10000)
+    public void testLeavesStillSceneAlone() throws Exception {
+
+        for (int idx = 0; idx < 25; ++idx) {
+
+            tracker.offer(frame(0, HEIGHT - BLOCK_SIZE), System.nanoTime());
+
+            Thread.sleep(FRAME_PERIOD_MILLIS);
+        }
+
+        assertEquals(0, tracker.getCorrectionCount());
+        assertEquals(0, tracker.getStaleCount());
+        assertEquals(0, tiltController.getAngle(), 0);
+    }
+
+    @Test(timeout = 10000)
+    public void testDropsStalePictures() throws Exception {
+
+        long grabNanos = System.nanoTime() - 2 * parameters.maxLatency * 1_000_000L;
+
+        tracker.offer(frame(0, HEIGHT - BLOCK_SIZE), grabNanos);
+
+        long deadline = System.currentTimeMillis() + TRACKING_TIMEOUT_MILLIS;
+
+        while (tracker.getStaleCount() == 0 && System.currentTimeMillis() < deadline) {
+
+            Thread.sleep(FRAME_PERIOD_MILLIS);
+        }
+
+        assertEquals(1, tracker.getStaleCount());
+        assertEquals(0, tracker.getCorrectionCount());
+    }
+
+    private static Frame frame(int blockX, int blockY) {
+
+        Frame frame = new Frame(WIDTH, HEIGHT, Frame.DEPTH_UBYTE, 1);
+        ByteBuffer buffer = (ByteBuffer) frame.image[0];
+
+        for (int y = 0; y < HEIGHT; ++y) {
+
+            for (int x = 0; x < WIDTH; ++x) {
+
+                boolean inBlock = x >= blockX && x < blockX + BLOCK_SIZE && y >= blockY && y < blockY + BLOCK_SIZE;
+
+                buffer.put(y * frame.imageStride + x, (byte) (inBlock ? 200 : 50));
+            }
+        }
+
+        return frame;
+    }
+}
@@ -0,0 +1,170 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.picamera;
+
+import com.sample.impl.sensor.picamera.config.TiltParameters;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestTiltController {
+
+    private static final float MIN_ANGLE = -45;
+    private static final float MAX_ANGLE = 45;
+    private static final long SETTLE_TIMEOUT_MILLIS = 5000;
+
+    private final List<Float> angles = new ArrayList<>();
+    private final TiltParameters parameters = new TiltParameters();
+
+    private TiltController controller;
+
+    @Before
+    public void setup() {
+
+        parameters.maxVelocity = 180;
+        parameters.maxAcceleration = 1800;
+        parameters.updateRate = 200;
+        parameters.deadband = 0.25;
+    }
+
+    @After
+    public void cleanup() {
+
+        if (controller != null) {
+
+            controller.stop();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testMovesToTargetSmoothly() throws Exception {
+
+        start(0);
+
+        controller.setTarget(30);
+
+        awaitSettled();
+
+        List<Float> written = getAngles();
+
+        assertEquals(30, written.get(written.size() - 1), 0);
+        assertEquals(30, controller.getAngle(), 0);
+
+        double maxStep = parameters.maxVelocity / parameters.updateRate + 1e-3;
+
+        for (int idx = 1; idx < written.size(); ++idx) {
+
+            float step = written.get(idx) - written.get(idx - 1);
+
+            // Moving one way, no faster than the velocity limit, and never by less than the deadband but at the end
+            assertTrue(step > 0);
+            assertTrue(step <= maxStep);
+
+            if (idx < written.size() - 1) {
+
+                assertTrue(step >= parameters.deadband);
+            }
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testClampsToEndStops() throws Exception {
+
+        start(100);
+
+        assertEquals(MAX_ANGLE, controller.getAngle(), 0);
+
+        controller.setTarget(-90);
+
+        awaitSettled();
+
+        for (float angle : getAngles()) {
+
+            assertTrue(angle >= MIN_ANGLE && angle <= MAX_ANGLE);
+        }
+
+        assertEquals(MIN_ANGLE, controller.getAngle(), 0);
+    }
+
+    @Test(timeout = 10000)
+    public void testRetargetsBeforeSettling() throws Exception {
+
+        start(0);
+
+        controller.setTarget(40);
+
+        Thread.sleep(100);
+
+        assertTrue(controller.isMoving());
+
+        controller.setTarget(-10);
+
+        awaitSettled();
+
+        assertEquals(-10, controller.getAngle(), 0);
+
+        // The servo reverses without jumping
+        List<Float> written = getAngles();
+        double maxStep = parameters.maxVelocity / parameters.updateRate + 1e-3;
+
+        for (int idx = 1; idx < written.size(); ++idx) {
+
+            assertTrue(Math.abs(written.get(idx) - written.get(idx - 1)) <= maxStep);
+        }
+    }
+
+    @Test
+    public void testIgnoresTargetWhenStopped() {
+
+        controller = new TiltController(this::record, parameters, MIN_ANGLE, MAX_ANGLE);
+
+        controller.setTarget(10);
+
+        assertFalse(controller.isMoving());
+        assertTrue(getAngles().isEmpty());
+    }
+
+    private void start(float initialAngle) {
+
+        controller = new TiltController(this::record, parameters, MIN_ANGLE, MAX_ANGLE);
+        controller.start(initialAngle);
+    }
+
+    private void awaitSettled() throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + SETTLE_TIMEOUT_MILLIS;
+
+        while (controller.isMoving() && System.currentTimeMillis() < deadline) {
+
+            Thread.sleep(10);
+        }
+
+        assertFalse(controller.isMoving());
+    }
+
+    private synchronized void record(float angle) {
+
+        angles.add(angle);
+    }
+
+    private synchronized List<Float> getAngles() {
+
+        return new ArrayList<>(angles);
+    }
+}
@@ -0,0 +1,240 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.picamera.helpers;
+
+import org.junit.Test;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class TestAttitudeRing {
+
+    private static final long MAX_GAP = 100;
+    private static final double EPSILON = 1e-5;
+    private static final long PERIOD = 2000;
+
+    private final float[] result = new float[4];
+
+    @Test
+    public void testRoundsCapacityToPowerOfTwo() {
+
+        AttitudeRing ring = new AttitudeRing(5);
+
+        // Eight slots, the oldest one being the next to be rewritten
+        for (int idx = 0; idx < 20; ++idx) {
+
+            ring.add(idx * 10, 0, 0, 0, 1);
+        }
+
+        assertTrue(ring.interpolate(130, MAX_GAP, result));
+        assertFalse(ring.interpolate(125, MAX_GAP, result));
+    }
+
+    @Test
+    public void testInterpolatesBetweenSamples() {
+
+        AttitudeRing ring = new AttitudeRing(16);
+
+        addYaw(ring, 1000, 0);
+        addYaw(ring, 1100, Math.PI / 2);
+
+        assertTrue(ring.interpolate(1000, MAX_GAP, result));
+        assertYaw(0, result);
+
+        assertTrue(ring.interpolate(1025, MAX_GAP, result));
+        assertYaw(Math.PI / 8, result);
+
+        assertTrue(ring.interpolate(1050, MAX_GAP, result));
+        assertYaw(Math.PI / 4, result);
+    }
+
+    @Test
+    public void testInterpolatesAlongShortestArc() {
+
+        AttitudeRing ring = new AttitudeRing(16);
+
+        addYaw(ring, 0, 0);
+
+        // Same attitude as a quarter turn, with the opposite sign
+        double half = Math.PI / 4;
+        ring.add(100, 0, 0, (float) -Math.sin(half), (float) -Math.cos(half));
+
+        assertTrue(ring.interpolate(50, MAX_GAP, result));
+        assertYaw(Math.PI / 4, result);
+    }
+
+    @Test
+    public void testRejectsTimeBeforeOldestSample() {
+
+        AttitudeRing ring = new AttitudeRing(4);
+
+        assertFalse(ring.interpolate(0, MAX_GAP, result));
+
+        addYaw(ring, 1000, 0);
+        addYaw(ring, 1010, 0.1);
+
+        assertFalse(ring.interpolate(999, MAX_GAP, result));
+
+        // Once overwritten, the early samples are gone
+        for (int idx = 2; idx < 10; ++idx) {
+
+            addYaw(ring, 1000 + idx * 10, idx * 0.1);
+        }
+
+        assertFalse(ring.interpolate(1005, MAX_GAP, result));
+        assertTrue(ring.interpolate(1085, MAX_GAP, result));
+        assertYaw(0.85, result);
+    }
+
+    @Test
+    public void testHoldsLatestSampleForMaxGap() {
+
+        AttitudeRing ring = new AttitudeRing(4);
+
+        addYaw(ring, 1000, 0.5);
+
+        assertTrue(ring.interpolate(1000 + MAX_GAP, MAX_GAP, result));
+        assertYaw(0.5, result);
+
+        assertFalse(ring.interpolate(1001 + MAX_GAP, MAX_GAP, result));
+    }
+
+    @Test
+    public void testRejectsGapBetweenSamples() {
+
+        AttitudeRing ring = new AttitudeRing(4);
+
+        addYaw(ring, 1000, 0);
+        addYaw(ring, 1001 + MAX_GAP, 0.5);
+
+        assertFalse(ring.interpolate(1050, MAX_GAP, result));
+        assertTrue(ring.interpolate(1001 + MAX_GAP, MAX_GAP, result));
+    }
+
+    @Test
+    public void testIgnoresSamplesOutOfOrder() {
+
+        AttitudeRing ring = new AttitudeRing(4);
+
+        assertTrue(addYaw(ring, 1000, 0));
+        assertFalse(addYaw(ring, 1000, 1));
+        assertFalse(addYaw(ring, 900, 1));
+
+        assertEquals(1, ring.getCount());
+    }
+
+    @Test
+    public void testClearForgetsSamples() {
+
+        AttitudeRing ring = new AttitudeRing(4);
+
+        addYaw(ring, 1000, 0);
+        ring.clear();
+
+        assertEquals(0, ring.getCount());
+        assertFalse(ring.interpolate(1000, MAX_GAP, result));
+
+        // Earlier times are accepted again
+        assertTrue(addYaw(ring, 500, 0.2));
+        assertTrue(ring.interpolate(500, MAX_GAP, result));
+        assertYaw(0.2, result);
+    }
+
+    @Test(timeout = 20000)
+    public void testReadersNeverSeeTornSamples() throws Exception {
+
+        AttitudeRing ring = new AttitudeRing(8);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        // Samples at even times with a yaw known from the time, so any mix of two samples shows up
+        Thread writer = new Thread(() -> {
+
+            for (long time = 2; running.get(); time += 2) {
+
+                addYaw(ring, time, yawAt(time));
+            }
+        });
+
+        Thread[] readers = new Thread[2];
+
+        for (int idx = 0; idx < readers.length; ++idx) {
+
+            readers[idx] = new Thread(() -> {
+
+                float[] attitude = new float[4];
+
+                try {
+
+                    for (int lookup = 0; lookup < 200_000; ++lookup) {
+
+                        // Halfway between two samples, one of them possibly being rewritten
+                        long time = 2 * (ring.getCount() - ThreadLocalRandom.current().nextInt(1, 12)) + 1;
+
+                        if (time % PERIOD != PERIOD - 1 && ring.interpolate(time, MAX_GAP, attitude)) {
+
+                            assertYaw((yawAt(time - 1) + yawAt(time + 1)) / 2, attitude);
+                        }
+                    }
+
+                } catch (Throwable e) {
+
+                    failure.compareAndSet(null, e);
+                }
+            });
+        }
+
+        writer.start();
+
+        for (Thread reader : readers) {
+
+            reader.start();
+        }
+
+        for (Thread reader : readers) {
+
+            reader.join();
+        }
+
+        running.set(false);
+        writer.join();
+
+        if (failure.get() != null) {
+
+            throw new AssertionError(failure.get());
+        }
+    }
+
+    private static double yawAt(long time) {
+
+        // Wraps around so the float components stay accurate
+        return (time % PERIOD) * 0.001;
+    }
+
+    private static boolean addYaw(AttitudeRing ring, long time, double yaw) {
+
+        return ring.add(time, 0, 0, (float) Math.sin(yaw / 2), (float) Math.cos(yaw / 2));
+    }
+
+    private static void assertYaw(double yaw, float[] attitude) {
+
+        assertEquals(0, attitude[0], EPSILON);
+        assertEquals(0, attitude[1], EPSILON);
+        assertEquals(Math.sin(yaw / 2), attitude[2], EPSILON);
+        assertEquals(Math.cos(yaw / 2), attitude[3], EPSILON);
+    }
+}
@@ -0,0 +1,162 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.picamera.helpers;
+
+import org.bytedeco.javacv.Frame;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class TestMotionCentroid {
+
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 8;
+    private static final int THRESHOLD = 20;
+    private static final byte BACKGROUND = 50;
+    private static final double EPSILON = 1e-9;
+
+    private final MotionCentroid motion = new MotionCentroid(WIDTH, HEIGHT, THRESHOLD, 0.05);
+
+    @Test
+    public void testFirstPictureHasNoMotion() {
+
+        assertFalse(motion.update(picture()));
+        assertEquals(0, motion.getMotionCount());
+    }
+
+    @Test
+    public void testEmptyMaskHasNoCentroid() {
+
+        motion.update(picture());
+
+        assertFalse(motion.update(picture()));
+        assertEquals(0, motion.getMotionCount());
+        assertFalse(Double.isNaN(motion.getCentroidX()));
+        assertFalse(Double.isNaN(motion.getCentroidY()));
+    }
+
+    @Test
+    public void testLocatesMovingPixels() {
+
+        motion.update(picture());
+
+        byte[] luma = picture();
+        fill(luma, 6, 6, 2, 2, (byte) 200);
+
+        assertTrue(motion.update(luma));
+        assertEquals(4, motion.getMotionCount());
+
+        // Pixel centers 6.5 and 7.5 out of 8
+        assertEquals(0.75, motion.getCentroidX(), EPSILON);
+        assertEquals(0.75, motion.getCentroidY(), EPSILON);
+
+        // Moving back is motion too, at the same place
+        assertTrue(motion.update(picture()));
+        assertEquals(0.75, motion.getCentroidX(), EPSILON);
+
+        luma = picture();
+        fill(luma, 0, 0, 3, 1, (byte) 200);
+
+        assertTrue(motion.update(luma));
+        assertEquals(-0.625, motion.getCentroidX(), EPSILON);
+        assertEquals(-0.875, motion.getCentroidY(), EPSILON);
+    }
+
+    @Test
+    public void testIgnoresSmallChanges() {
+
+        motion.update(picture());
+
+        byte[] luma = picture();
+
+        // At the threshold the pixel is not moving, and a single moving pixel is below the minimum area
+        fill(luma, 0, 0, WIDTH, HEIGHT, (byte) (BACKGROUND + THRESHOLD));
+        fill(luma, 3, 3, 1, 1, (byte) 200);
+
+        assertFalse(motion.update(luma));
+        assertEquals(1, motion.getMotionCount());
+    }
+
+    @Test
+    public void testResetForgetsPreviousPicture() {
+
+        motion.update(picture());
+        motion.reset();
+
+        byte[] luma = picture();
+        fill(luma, 0, 0, WIDTH, HEIGHT, (byte) 200);
+
+        assertFalse(motion.update(luma));
+        assertEquals(0, motion.getMotionCount());
+    }
+
+    @Test
+    public void testDownscalesGrayAndColorFrames() {
+
+        byte[] luma = new byte[WIDTH * HEIGHT];
+
+        Frame gray = new Frame(4 * WIDTH, 4 * HEIGHT, Frame.DEPTH_UBYTE, 1);
+        fillFrame(gray, (byte) 100);
+
+        MotionCentroid.downscaleLuma(gray, luma, WIDTH, HEIGHT);
+
+        for (byte value : luma) {
+
+            assertEquals(100, value & 0xFF);
+        }
+
+        Frame color = new Frame(4 * WIDTH, 4 * HEIGHT, Frame.DEPTH_UBYTE, 3);
+        fillFrame(color, (byte) 200);
+
+        MotionCentroid.downscaleLuma(color, luma, WIDTH, HEIGHT);
+
+        // The luma weights add up to one for a gray color
+        for (byte value : luma) {
+
+            assertEquals(200, value & 0xFF);
+        }
+    }
+
+    private static byte[] picture() {
+
+        byte[] luma = new byte[WIDTH * HEIGHT];
+
+        Arrays.fill(luma, BACKGROUND);
+
+        return luma;
+    }
+
+    private static void fill(byte[] luma, int x, int y, int width, int height, byte value) {
+
+        for (int row = y; row < y + height; ++row) {
+
+            Arrays.fill(luma, row * WIDTH + x, row * WIDTH + x + width, value);
+        }
+    }
+
+    private static void fillFrame(Frame frame, byte value) {
+
+        ByteBuffer buffer = (ByteBuffer) frame.image[0];
+
+        while (buffer.hasRemaining()) {
+
+            buffer.put(value);
+        }
+
+        buffer.clear();
+    }
+}
@@ -0,0 +1,93 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.picamera.helpers;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestPidController {
+
+    private static final double DT = 0.1;
+    private static final double EPSILON = 1e-9;
+
+    @Test
+    public void testProportionalOutputIsClamped() {
+
+        PidController pid = new PidController(0.5, 0, 0, 2);
+
+        assertEquals(1, pid.update(2, DT), EPSILON);
+        assertEquals(2, pid.update(10, DT), EPSILON);
+        assertEquals(-2, pid.update(-10, DT), EPSILON);
+    }
+
+    @Test
+    public void testIntegralDoesNotWindUp() {
+
+        PidController pid = new PidController(0, 1, 0, 1);
+
+        // Saturated for ten seconds, an unbounded integral would reach 100
+        for (int idx = 0; idx < 100; ++idx) {
+
+            assertEquals(1, pid.update(10, DT), EPSILON);
+        }
+
+        // The output leaves saturation as soon as the error reverses
+        assertEquals(0.9, pid.update(-1, DT), EPSILON);
+
+        double output = 0;
+
+        for (int idx = 0; idx < 10; ++idx) {
+
+            output = pid.update(-1, DT);
+        }
+
+        assertTrue(output < 0);
+    }
+
+    @Test
+    public void testSkipsDerivativeOnFirstSample() {
+
+        PidController pid = new PidController(0, 0, 1, 100);
+
+        // No previous error, a jump from zero is not a rate of change
+        assertEquals(0, pid.update(5, DT), EPSILON);
+        assertEquals(10, pid.update(6, DT), EPSILON);
+        assertEquals(0, pid.update(6, DT), EPSILON);
+    }
+
+    @Test
+    public void testResetForgetsIntegralAndPreviousError() {
+
+        PidController pid = new PidController(0, 1, 1, 100);
+
+        pid.update(4, DT);
+        pid.update(8, DT);
+
+        pid.reset();
+
+        // Only the new integral, error times dt, without derivative
+        assertEquals(0.3, pid.update(3, DT), EPSILON);
+    }
+
+    @Test
+    public void testIgnoresIntegralAndDerivativeWithoutElapsedTime() {
+
+        PidController pid = new PidController(1, 1, 1, 100);
+
+        pid.update(1, DT);
+
+        assertEquals(5, pid.update(5, 0), EPSILON);
+    }
+}
@@ -0,0 +1,225 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.picamera.helpers;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestTrajectoryPlanner {
+
+    private static final double MAX_VELOCITY = 90;
+    private static final double MAX_ACCELERATION = 360;
+    private static final double DT = 0.02;
+    private static final double EPSILON = 1e-9;
+    private static final int MAX_STEPS = 1000;
+
+    private final TrajectoryPlanner planner = new TrajectoryPlanner(MAX_VELOCITY, MAX_ACCELERATION, 0);
+
+    @Test
+    public void testStartsAtRest() {
+
+        assertTrue(planner.isSettled());
+        assertEquals(0, planner.step(DT), 0);
+        assertEquals(0, planner.getVelocity(), 0);
+    }
+
+    @Test
+    public void testRespectsVelocityAndAccelerationLimits() {
+
+        planner.setTarget(90);
+
+        int steps = stepToTarget();
+
+        assertEquals(90, planner.getPosition(), 0);
+        assertEquals(0, planner.getVelocity(), 0);
+
+        // Cruise for 1 s after accelerating then braking for 0.25 s each, within a few steps
+        double duration = steps * DT;
+        double minDuration = 90 / MAX_VELOCITY + MAX_VELOCITY / MAX_ACCELERATION;
+
+        assertTrue("Took " + duration + " s", duration >= minDuration - DT && duration <= minDuration + 5 * DT);
+    }
+
+    @Test
+    public void testReachesMaxVelocityOnLongMoves() {
+
+        planner.setTarget(90);
+
+        double maxSpeed = 0;
+
+        while (!planner.isSettled()) {
+
+            planner.step(DT);
+            maxSpeed = Math.max(maxSpeed, Math.abs(planner.getVelocity()));
+        }
+
+        assertEquals(MAX_VELOCITY, maxSpeed, EPSILON);
+    }
+
+    @Test
+    public void testShortMoveNeverReachesMaxVelocity() {
+
+        planner.setTarget(2);
+
+        double maxSpeed = 0;
+
+        while (!planner.isSettled()) {
+
+            planner.step(DT);
+            maxSpeed = Math.max(maxSpeed, Math.abs(planner.getVelocity()));
+        }
+
+        assertEquals(2, planner.getPosition(), 0);
+
+        // Triangular profile peaking at sqrt(a d)
+        assertTrue(maxSpeed < MAX_VELOCITY);
+        assertEquals(Math.sqrt(MAX_ACCELERATION * 2), maxSpeed, MAX_ACCELERATION * DT);
+    }
+
+    @Test
+    public void testNeverOvershootsTarget() {
+
+        planner.setTarget(-37.5);
+
+        double previous = planner.getPosition();
+
+        while (!planner.isSettled()) {
+
+            double position = planner.step(DT);
+
+            assertTrue(position <= previous);
+            assertTrue(position >= -37.5);
+
+            previous = position;
+        }
+
+        assertEquals(-37.5, planner.getPosition(), 0);
+    }
+
+    @Test
+    public void testRetargetingMidMoveKeepsVelocityContinuous() {
+
+        planner.setTarget(90);
+
+        for (int step = 0; step < 25; ++step) {
+
+            planner.step(DT);
+        }
+
+        assertTrue(planner.getVelocity() > 0);
+
+        // The new target lies behind, the axis brakes and reverses
+        planner.setTarget(-30);
+
+        boolean reversed = false;
+        double previousVelocity = planner.getVelocity();
+        double highest = planner.getPosition();
+
+        for (int step = 0; step < MAX_STEPS && !planner.isSettled(); ++step) {
+
+            planner.step(DT);
+
+            assertTrue(Math.abs(planner.getVelocity() - previousVelocity) <= MAX_ACCELERATION * DT + EPSILON);
+            assertTrue(Math.abs(planner.getVelocity()) <= MAX_VELOCITY + EPSILON);
+
+            reversed |= planner.getVelocity() < 0;
+            highest = Math.max(highest, planner.getPosition());
+            previousVelocity = planner.getVelocity();
+        }
+
+        assertTrue(reversed);
+        assertTrue(planner.isSettled());
+        assertEquals(-30, planner.getPosition(), 0);
+
+        // Braking from the velocity reached carried the axis further before reversing
+        assertTrue(highest > 20);
+    }
+
+    @Test
+    public void testRetargetingAheadKeepsGoing() {
+
+        planner.setTarget(10);
+
+        for (int step = 0; step < 10; ++step) {
+
+            planner.step(DT);
+        }
+
+        planner.setTarget(60);
+
+        double previous = planner.getPosition();
+
+        while (!planner.isSettled()) {
+
+            double position = planner.step(DT);
+
+            assertTrue(position >= previous);
+
+            previous = position;
+        }
+
+        assertEquals(60, planner.getPosition(), 0);
+    }
+
+    @Test
+    public void testSettlesWithVariousTimeSteps() {
+
+        for (double dt : new double[]{0.001, 0.0137, 0.05, 0.1}) {
+
+            TrajectoryPlanner variable = new TrajectoryPlanner(MAX_VELOCITY, MAX_ACCELERATION, 10);
+            variable.setTarget(-25.3);
+
+            double previousVelocity = 0;
+
+            for (int step = 0; step < 100_000 && !variable.isSettled(); ++step) {
+
+                variable.step(dt);
+
+                assertTrue(Math.abs(variable.getVelocity() - previousVelocity) <= MAX_ACCELERATION * dt + EPSILON);
+
+                previousVelocity = variable.getVelocity();
+            }
+
+            assertTrue("dt " + dt, variable.isSettled());
+            assertEquals(-25.3, variable.getPosition(), 0);
+        }
+    }
+
+    /**
+     * Steps the planner until it settles, checking the limits at each step
+     *
+     * @return Number of steps taken
+     */
+    private int stepToTarget() {
+
+        double previousVelocity = planner.getVelocity();
+        int steps = 0;
+
+        while (!planner.isSettled() && steps < MAX_STEPS) {
+
+            planner.step(DT);
+            ++steps;
+
+            assertTrue(Math.abs(planner.getVelocity()) <= MAX_VELOCITY + EPSILON);
+            assertTrue(Math.abs(planner.getVelocity() - previousVelocity) <= MAX_ACCELERATION * DT + EPSILON);
+
+            previousVelocity = planner.getVelocity();
+        }
+
+        assertTrue(planner.isSettled());
+
+        return steps;
+    }
+}
@@ -0,0 +1,212 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam;
+
+import com.sample.impl.sensor.rpicam.config.AdaptiveParameters;
+import com.sample.impl.sensor.rpicam.config.OutputMode;
+import com.sample.impl.sensor.rpicam.config.VideoParameters;
+import com.sample.impl.utils.camera.AdaptiveQualityController;
+import org.sensorhub.api.sensor.SensorException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adapts the video stream of a {@link PiCameraOutput} to the pace of its consumers, keeping latency bounded
+ * when they fall behind instead of letting queues grow.
+ * <p>
+ * An {@link AdaptiveQualityController} evaluates the fill of the encode queue, the dropped frames, and the
+ * latency and size of the published frames every period. In MJPEG mode its decisions apply to the next
+ * encoded frame, as a JPEG quality and a decimation of the encoded frames. In H.264 mode the bitrate and
+ * frame rate can only be changed by restarting libcamera-vid, so they are applied at most once per holdoff.
+ *
+ * @author your_name
+ * @since date
+ */
+public class BackpressureRegulator {
+
+    private static final Logger logger = LoggerFactory.getLogger(BackpressureRegulator.class);
+
+    private static final long MIN_ADJUST_PERIOD_MILLIS = 100;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 10000;
+
+    private final PiCameraOutput output;
+    private final AdaptiveParameters parameters;
+    private final OutputMode outputMode;
+    private final int maxJpegQuality;
+    private final int maxFrameRate;
+    private final long restartHoldoffNanos;
+
+    private final AdaptiveQualityController controller;
+
+    private ScheduledExecutorService scheduler;
+
+    // Only accessed from the scheduler thread
+    private long lastDroppedCount;
+    private long lastRestartNanos;
+    private int appliedBitrate;
+    private int appliedFrameRate;
+
+    /**
+     * Constructor
+     *
+     * @param output          Output whose stream is regulated
+     * @param parameters      Bounds and targets of the regulation
+     * @param videoParameters Video configuration, providing the highest quality and frame rate
+     */
+    public BackpressureRegulator(PiCameraOutput output, AdaptiveParameters parameters, VideoParameters videoParameters) {
+
+        this.output = output;
+        this.parameters = parameters;
+
+        outputMode = videoParameters.outputMode;
+        maxJpegQuality = videoParameters.jpegQuality;
+        maxFrameRate = videoParameters.videoFrameRate;
+        restartHoldoffNanos = TimeUnit.SECONDS.toNanos(Math.max(0, parameters.restartHoldoff));
+
+        controller = new AdaptiveQualityController(parameters.targetLatency, parameters.bandwidthLimit * 1000L);
+    }
+
+    /**
+     * Starts regulating, to be called once the output has been started
+     */
+    public synchronized void start() {
+
+        if (scheduler != null) {
+
+            return;
+        }
+
+        lastDroppedCount = output.getDroppedCount();
+        lastRestartNanos = System.nanoTime();
+        appliedBitrate = output.getStreamBitrate();
+        appliedFrameRate = output.getStreamFrameRate();
+
+        long period = Math.max(MIN_ADJUST_PERIOD_MILLIS, parameters.adjustPeriod);
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+
+            Thread thread = new Thread(runnable, output.getName() + "-regulator");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        scheduler.scheduleWithFixedDelay(this::adjust, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops regulating, waiting for a restart in progress to complete, to be called before the output is stopped
+     */
+    public synchronized void stop() {
+
+        if (scheduler == null) {
+
+            return;
+        }
+
+        scheduler.shutdown();
+
+        try {
+
+            scheduler.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+        }
+
+        scheduler = null;
+    }
+
+    /**
+     * Accounts for a published frame, to be called from the publishing thread
+     *
+     * @param frameSize     Size of the encoded frame in bytes
+     * @param latencyMillis Time from capture to publication
+     */
+    public void recordFrame(int frameSize, long latencyMillis) {
+
+        controller.recordFrame(frameSize, latencyMillis);
+    }
+
+    /**
+     * @return Current level of the stream, from 0 to 1, 1 being the configured quality and frame rate
+     */
+    public double getLevel() {
+
+        return controller.getLevel();
+    }
+
+    private void adjust() {
+
+        try {
+
+            long droppedCount = output.getDroppedCount();
+
+            boolean changed = controller.update(output.getQueueFill(), droppedCount - lastDroppedCount);
+
+            lastDroppedCount = droppedCount;
+
+            int frameRate = AdaptiveQualityController.interpolate(controller.getFrameRateFactor(),
+                    parameters.minFrameRate, maxFrameRate);
+
+            if (outputMode == OutputMode.MJPEG) {
+
+                if (changed) {
+
+                    int quality = AdaptiveQualityController.interpolate(controller.getQualityFactor(),
+                            parameters.minJpegQuality, maxJpegQuality);
+
+                    logger.debug("Stream level {}: JPEG quality {}, {} fps, latency {} ms, {} bit/s",
+                            controller.getLevel(), quality, frameRate, controller.getLatency(), controller.getBitrate());
+
+                    output.setStreamQuality(quality, frameRate);
+                }
+
+                return;
+            }
+
+            int bitrate = AdaptiveQualityController.interpolate(controller.getQualityFactor(),
+                    parameters.minBitrate, parameters.maxBitrate);
+
+            // A restart costs a gap in the stream, the decision waits for the holdoff and applies the latest target
+            long now = System.nanoTime();
+
+            if ((bitrate != appliedBitrate || frameRate != appliedFrameRate)
+                    && now - lastRestartNanos >= restartHoldoffNanos) {
+
+                logger.info("Stream level {}: restarting at {} bit/s, {} fps, latency {} ms",
+                        controller.getLevel(), bitrate, frameRate, controller.getLatency());
+
+                lastRestartNanos = now;
+                appliedBitrate = bitrate;
+                appliedFrameRate = frameRate;
+
+                output.setStreamRate(bitrate, frameRate);
+            }
+
+        } catch (SensorException e) {
+
+            logger.error("Failed to apply stream settings", e);
+
+        } catch (RuntimeException e) {
+
+            logger.error("Failed to regulate stream", e);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam;
+
+import com.sample.impl.sensor.rpicam.config.WatchdogParameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Supervises the camera session of a {@link PiCameraOutput} and restarts it when frames stop arriving.
+ * <p>
+ * A stall is detected when no access unit, or no decoded picture when the stream is decoded, arrived
+ * within the stall timeout, when the first frame did not arrive within the startup timeout after a start,
+ * or when libcamera-vid or the decoder thread died. The first restart happens right away, further
+ * attempts for the same failure are delayed by an exponential backoff. The time to recover is measured
+ * from the last frame before the failure to the first frame after it.
+ *
+ * @author your_name
+ * @since date
+ */
+public class CaptureWatchdog {
+
+    /**
+     * Camera session supervised by the watchdog
+     */
+    public interface Session {
+
+        String getName();
+
+        boolean isAlive();
+
+        long getLastFrameNanos();
+
+        void doStart() throws Exception;
+
+        void doStop();
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(CaptureWatchdog.class);
+
+    private static final long MIN_CHECK_PERIOD_MILLIS = 100;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 10000;
+
+    private final Session output;
+    private final LongSupplier clock;
+    private final long stallTimeoutNanos;
+    private final long startupTimeoutNanos;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+    private final long checkPeriodMillis;
+
+    private ScheduledExecutorService scheduler;
+
+    // Only accessed from the scheduler thread
+    private long sessionStartNanos;
+    private long nextRestartNanos;
+    private long failureNanos;
+    private boolean recovering = false;
+    private int attempts = 0;
+
+    private volatile long restartCount = 0;
+    private volatile long recoveryCount = 0;
+    private volatile long totalRecoveryNanos = 0;
+    private volatile long lastRecoveryNanos = 0;
+
+    /**
+     * Constructor
+     *
+     * @param output     Output whose camera session is supervised
+     * @param parameters Timeouts and backoff
+     */
+    public CaptureWatchdog(Session output, WatchdogParameters parameters) {
+
+        this(output, parameters, System::nanoTime);
+    }
+
+    /**
+     * Constructor with a given clock, for tests
+     *
+     * @param output     Output whose camera session is supervised
+     * @param parameters Timeouts and backoff
+     * @param clock      Current time in nanoseconds, on the clock of {@link Session#getLastFrameNanos()}
+     */
+    CaptureWatchdog(Session output, WatchdogParameters parameters, LongSupplier clock) {
+
+        this.output = output;
+        this.clock = clock;
+
+        stallTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(parameters.stallTimeout);
+        startupTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(parameters.startupTimeout);
+        initialBackoffNanos = TimeUnit.MILLISECONDS.toNanos(parameters.initialBackoff);
+        maxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(parameters.maxBackoff);
+        checkPeriodMillis = Math.max(MIN_CHECK_PERIOD_MILLIS, parameters.stallTimeout / 4);
+    }
+
+    /**
+     * Starts supervising, to be called once the output has been started
+     */
+    public synchronized void start() {
+
+        if (scheduler != null) {
+
+            return;
+        }
+
+        sessionStartNanos = clock.getAsLong();
+        nextRestartNanos = sessionStartNanos;
+        recovering = false;
+        attempts = 0;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+
+            Thread thread = new Thread(runnable, output.getName() + "-watchdog");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        scheduler.scheduleWithFixedDelay(this::check, checkPeriodMillis, checkPeriodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops supervising, waiting for a restart in progress to complete, to be called before the output is stopped
+     */
+    public synchronized void stop() {
+
+        if (scheduler == null) {
+
+            return;
+        }
+
+        scheduler.shutdown();
+
+        try {
+
+            scheduler.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+        }
+
+        scheduler = null;
+    }
+
+    public long getRestartCount() {
+
+        return restartCount;
+    }
+
+    public long getRecoveryCount() {
+
+        return recoveryCount;
+    }
+
+    /**
+     * @return Mean time between the last frame before a failure and the first frame after it, in milliseconds
+     */
+    public double getMeanTimeToRecoverMillis() {
+
+        long recoveries = recoveryCount;
+
+        return recoveries > 0 ? totalRecoveryNanos / (double) recoveries / 1e6 : 0;
+    }
+
+    /**
+     * @return Time to recover from the latest failure, in milliseconds
+     */
+    public double getLastTimeToRecoverMillis() {
+
+        return lastRecoveryNanos / 1e6;
+    }
+
+    /**
+     * Checks for a stall and restarts the camera session if needed, on the scheduler thread only
+     */
+    void check() {
+
+        try {
+
+            long now = clock.getAsLong();
+            long lastFrameNanos = output.getLastFrameNanos();
+
+            if (recovering && lastFrameNanos != 0) {
+
+                lastRecoveryNanos = lastFrameNanos - failureNanos;
+                totalRecoveryNanos += lastRecoveryNanos;
+                ++recoveryCount;
+
+                recovering = false;
+                attempts = 0;
+
+                logger.info("Camera recovered after {} ms and {} restart(s)", lastRecoveryNanos / 1000000, restartCount);
+            }
+
+            boolean stalled;
+
+            if (!output.isAlive()) {
+
+                stalled = true;
+
+            } else if (lastFrameNanos == 0) {
+
+                stalled = now - sessionStartNanos > startupTimeoutNanos;
+
+            } else {
+
+                stalled = now - lastFrameNanos > stallTimeoutNanos;
+            }
+
+            if (!stalled || now - nextRestartNanos < 0) {
+
+                return;
+            }
+
+            if (!recovering) {
+
+                recovering = true;
+                failureNanos = lastFrameNanos != 0 ? lastFrameNanos : sessionStartNanos;
+
+                logger.warn("Camera stalled, no frame for {} ms", (now - failureNanos) / 1000000);
+            }
+
+            restart();
+
+        } catch (RuntimeException e) {
+
+            logger.error("Error in camera watchdog", e);
+        }
+    }
+
+    private void restart() {
+
+        ++restartCount;
+
+        logger.info("Restarting camera session, attempt {}", attempts + 1);
+
+        output.doStop();
+
+        try {
+
+            output.doStart();
+
+        } catch (Exception e) {
+
+            logger.error("Failed to restart camera session", e);
+        }
+
+        sessionStartNanos = clock.getAsLong();
+
+        // First attempt for a failure is immediate, then backoff doubles up to the maximum
+        long backoff = attempts == 0 ? 0 : Math.min(maxBackoffNanos, initialBackoffNanos << Math.min(attempts - 1, 30));
+
+        nextRestartNanos = sessionStartNanos + backoff;
+
+        ++attempts;
+    }
+}
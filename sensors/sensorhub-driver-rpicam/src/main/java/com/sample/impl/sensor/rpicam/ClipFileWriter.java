@@ -0,0 +1,116 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Writes each recorded clip to its own file as a raw elementary stream, H.264 Annex B or concatenated
+ * JPEG pictures, which common players and muxers read as is.
+ *
+ * @author your_name
+ * @since date
+ */
+public class ClipFileWriter implements ClipRecorder.ClipSink {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClipFileWriter.class);
+
+    private static final DateTimeFormatter FILE_TIME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
+
+    private static final int WRITE_BUFFER_SIZE = 256 * 1024;
+
+    private final Path directory;
+    private final String prefix;
+    private final String extension;
+
+    private OutputStream clipStream;
+    private Path clipFile;
+
+    /**
+     * Constructor
+     *
+     * @param directory Directory the clips are written to, created if needed
+     * @param prefix    Prefix of the clip file names
+     * @param extension Extension of the clip file names, matching the encoding
+     */
+    public ClipFileWriter(String directory, String prefix, String extension) {
+
+        this.directory = Paths.get(directory);
+        this.prefix = prefix;
+        this.extension = extension;
+    }
+
+    @Override
+    public void beginClip(long clipId, long startTime) throws IOException {
+
+        Files.createDirectories(directory);
+
+        clipFile = directory.resolve(prefix + "-" + FILE_TIME_FORMAT.format(Instant.ofEpochMilli(startTime))
+                + "-" + clipId + "." + extension);
+
+        clipStream = new BufferedOutputStream(Files.newOutputStream(clipFile), WRITE_BUFFER_SIZE);
+
+        logger.info("Writing clip {} to {}", clipId, clipFile);
+    }
+
+    @Override
+    public void writeFrame(long frameTime, byte[] frameData) throws IOException {
+
+        // The clip could not be opened, the failure has been reported already
+        if (clipStream != null) {
+
+            try {
+
+                clipStream.write(frameData);
+
+            } catch (IOException e) {
+
+                // Gives up on the clip rather than failing on every frame
+                endClip();
+
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void endClip() throws IOException {
+
+        if (clipStream != null) {
+
+            try {
+
+                clipStream.close();
+
+                logger.info("Clip file {} complete", clipFile);
+
+            } finally {
+
+                clipStream = null;
+            }
+        }
+    }
+}
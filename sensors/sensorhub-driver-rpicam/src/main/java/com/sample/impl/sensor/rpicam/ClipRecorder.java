@@ -0,0 +1,266 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam;
+
+import com.sample.impl.sensor.rpicam.config.ClipParameters;
+import com.sample.impl.sensor.rpicam.helpers.PreEventBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records clips made of the video preceding an event and the video following it.
+ * <p>
+ * Every encoded frame published by the video output goes through a {@link PreEventBuffer}. When an
+ * event is triggered the buffered pre-roll is flushed to the clip sinks, followed by the live frames
+ * until the post-roll has elapsed. An event occurring while a clip is being recorded extends the clip.
+ * <p>
+ * Sinks are called on a dedicated writer thread, so writing a clip never holds back the capture.
+ *
+ * @author your_name
+ * @since date
+ */
+public class ClipRecorder {
+
+    /**
+     * Receives the frames of the recorded clips, on the writer thread
+     */
+    public interface ClipSink {
+
+        void beginClip(long clipId, long startTime) throws Exception;
+
+        void writeFrame(long frameTime, byte[] frameData) throws Exception;
+
+        void endClip() throws Exception;
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(ClipRecorder.class);
+
+    private static final long WRITER_TERMINATION_TIMEOUT_MILLIS = 5000;
+
+    private final List<ClipSink> sinks;
+    private final long postRollMillis;
+    private final PreEventBuffer preEventBuffer;
+
+    private ExecutorService writer;
+
+    private boolean recording = false;
+    private long clipId = 0;
+    private long clipEndTime = 0;
+    private long lastFrameTime = 0;
+
+    /**
+     * Constructor
+     *
+     * @param parameters Pre-roll and post-roll configuration
+     * @param sinks      Destinations of the recorded clips
+     */
+    public ClipRecorder(ClipParameters parameters, List<ClipSink> sinks) {
+
+        this.sinks = new ArrayList<>(sinks);
+
+        postRollMillis = Math.max(0, parameters.postRollDuration) * 1000L;
+
+        preEventBuffer = new PreEventBuffer(Math.max(0, parameters.preRollSize) * 1024L,
+                Math.max(0, parameters.preRollDuration) * 1000L);
+    }
+
+    /**
+     * Starts buffering the frames of a new camera session
+     */
+    public synchronized void start() {
+
+        if (writer != null) {
+
+            return;
+        }
+
+        // Frames of a previous session cannot be followed by the frames of the new one
+        preEventBuffer.clear();
+
+        writer = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "clip-writer"));
+    }
+
+    /**
+     * Ends the clip being recorded, if any, and waits for the pending frames to be written
+     */
+    public void stop() {
+
+        ExecutorService executor;
+
+        synchronized (this) {
+
+            if (writer == null) {
+
+                return;
+            }
+
+            if (recording) {
+
+                endClip();
+            }
+
+            preEventBuffer.clear();
+
+            executor = writer;
+            writer = null;
+        }
+
+        executor.shutdown();
+
+        try {
+
+            if (!executor.awaitTermination(WRITER_TERMINATION_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+
+                logger.warn("Clip writer did not terminate, discarding pending frames");
+
+                executor.shutdownNow();
+            }
+
+        } catch (InterruptedException e) {
+
+            executor.shutdownNow();
+
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Records the video around an event: the buffered pre-roll, then the live frames until the post-roll
+     * has elapsed. Extends the clip being recorded, if any.
+     *
+     * @param postRollMillis Video recorded after the event in milliseconds, 0 or less for the configured post-roll
+     * @return Identifier of the clip the event is recorded in, or -1 if the camera is not running
+     */
+    public synchronized long trigger(long postRollMillis) {
+
+        if (writer == null) {
+
+            return -1;
+        }
+
+        long eventTime = Math.max(System.currentTimeMillis(), lastFrameTime);
+        long endTime = eventTime + (postRollMillis > 0 ? postRollMillis : this.postRollMillis);
+
+        if (recording) {
+
+            clipEndTime = Math.max(clipEndTime, endTime);
+
+            logger.info("Clip {} extended to {}", clipId, clipEndTime);
+
+            return clipId;
+        }
+
+        List<PreEventBuffer.BufferedFrame> preRoll = preEventBuffer.getFrames();
+
+        long id = ++clipId;
+        long startTime = preRoll.isEmpty() ? eventTime : preRoll.get(0).getFrameTime();
+
+        recording = true;
+        clipEndTime = endTime;
+
+        logger.info("Recording clip {} with {} ms of pre-roll", id, preEventBuffer.getDuration());
+
+        dispatch(sink -> sink.beginClip(id, startTime));
+
+        for (PreEventBuffer.BufferedFrame frame : preRoll) {
+
+            dispatch(sink -> sink.writeFrame(frame.getFrameTime(), frame.getFrameData()));
+        }
+
+        return id;
+    }
+
+    /**
+     * Adds an encoded frame to the pre-event buffer and to the clip being recorded, if any
+     *
+     * @param frameTime Frame time in milliseconds since epoch
+     * @param frameData Encoded frame, held by reference and never modified
+     * @param keyFrame  True if the frame can be decoded on its own
+     */
+    public synchronized void addFrame(long frameTime, byte[] frameData, boolean keyFrame) {
+
+        if (writer == null) {
+
+            return;
+        }
+
+        lastFrameTime = frameTime;
+
+        preEventBuffer.add(frameTime, frameData, keyFrame);
+
+        if (recording) {
+
+            dispatch(sink -> sink.writeFrame(frameTime, frameData));
+
+            if (frameTime >= clipEndTime) {
+
+                endClip();
+            }
+        }
+    }
+
+    public synchronized boolean isRecording() {
+
+        return recording;
+    }
+
+    /**
+     * @return Duration of video currently available as pre-roll, in milliseconds
+     */
+    public synchronized long getPreRollDuration() {
+
+        return preEventBuffer.getDuration();
+    }
+
+    private void endClip() {
+
+        recording = false;
+
+        logger.info("Clip {} complete", clipId);
+
+        dispatch(ClipSink::endClip);
+    }
+
+    /**
+     * Hands a call over to the writer thread for every sink, a failing sink does not affect the others
+     */
+    private void dispatch(SinkCall call) {
+
+        writer.execute(() -> {
+
+            for (ClipSink sink : sinks) {
+
+                try {
+
+                    call.apply(sink);
+
+                } catch (Exception e) {
+
+                    logger.error("Failed to write clip to {}", sink.getClass().getSimpleName(), e);
+                }
+            }
+        });
+    }
+
+    private interface SinkCall {
+
+        void apply(ClipSink sink) throws Exception;
+    }
+}
@@ -0,0 +1,554 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam;
+
+import com.sample.impl.sensor.rpicam.config.OverflowPolicy;
+import com.sample.impl.sensor.rpicam.config.PipelineParameters;
+import com.sample.impl.sensor.rpicam.helpers.BoundedFrameQueue;
+import com.sample.impl.sensor.rpicam.helpers.LatencyTelemetry;
+import org.bytedeco.javacv.Frame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Encode and publish stages fed by the thread grabbing decoded frames.
+ * <p>
+ * Decoded frames are copied into pooled frames and queued in a {@link BoundedFrameQueue} drained by a
+ * pool of encoder threads. A pooled frame goes back to the pool as soon as it is encoded, and its encoded
+ * data is handed to a single publisher thread which restores capture order. The encoded frames waiting
+ * for the publisher are bounded separately and the overflow policy applies there too, so unless the
+ * policy is {@link OverflowPolicy#BLOCK}, a slow encode or publish never stalls the grab thread.
+ * Frames dropped on overflow leave a gap in the sequence that the publisher skips.
+ *
+ * @author your_name
+ * @since date
+ */
+public class FramePipeline {
+
+    /**
+     * Encodes a decoded frame, each encoder thread gets its own instance and closes it when terminating
+     */
+    public interface FrameEncoder extends AutoCloseable {
+
+        byte[] encode(Frame frame) throws Exception;
+
+        @Override
+        default void close() {
+        }
+    }
+
+    /**
+     * Receives the encoded frames in capture order, on the publisher thread
+     */
+    public interface FramePublisher {
+
+        void publish(long frameTime, byte[] frameData);
+    }
+
+    /**
+     * Pooled decoded frame, from the grab thread to an encoder
+     */
+    private static class PipelineFrame {
+
+        long sequence;
+        long frameTime;
+        long queuedNanos;
+        Frame frame;
+    }
+
+    /**
+     * Frame waiting for the publisher, without payload if it was dropped or failed to encode
+     */
+    private static class EncodedFrame {
+
+        final long sequence;
+        final long frameTime;
+        byte[] encoded;
+
+        EncodedFrame(long sequence, long frameTime, byte[] encoded) {
+
+            this.sequence = sequence;
+            this.frameTime = frameTime;
+            this.encoded = encoded;
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(FramePipeline.class);
+
+    private static final long THREAD_JOIN_TIMEOUT_MILLIS = 2000;
+
+    private final String name;
+    private final PipelineParameters parameters;
+    private final Supplier<FrameEncoder> encoderFactory;
+    private final FramePublisher publisher;
+    private final LatencyTelemetry telemetry;
+
+    private final BlockingQueue<PipelineFrame> freeFrames;
+    private BoundedFrameQueue<PipelineFrame> encodeQueue;
+
+    private final Object reorderLock = new Object();
+    private final PriorityQueue<EncodedFrame> encodedFrames =
+            new PriorityQueue<>(Comparator.comparingLong(encodedFrame -> encodedFrame.sequence));
+    private final int maxPendingFrames;
+    private int pendingFrames;
+    private long nextPublishSequence;
+    private long nextSubmitSequence;
+
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean running = false;
+
+    private volatile long submittedCount = 0;
+    private volatile long publishedCount = 0;
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong overflowCount = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param name           Name used for the pipeline threads
+     * @param parameters     Number of encoder threads, queue capacity and overflow policy
+     * @param encoderFactory Creates the encoder used by each encoder thread
+     * @param publisher      Receives encoded frames in capture order
+     * @param telemetry      Receives the convert, queue and encode durations of every frame
+     */
+    public FramePipeline(String name, PipelineParameters parameters, Supplier<FrameEncoder> encoderFactory,
+                         FramePublisher publisher, LatencyTelemetry telemetry) {
+
+        this.name = name;
+        this.parameters = parameters;
+        this.encoderFactory = encoderFactory;
+        this.publisher = publisher;
+        this.telemetry = telemetry;
+
+        // Enough frames for a full queue, one frame in each encoder and the frame being copied by the
+        // grab thread. Encoded frames no longer hold a pooled frame, so publishing never drains the pool.
+        int poolSize = Math.max(1, parameters.queueCapacity) + Math.max(1, parameters.encoderThreads) + 1;
+
+        // Encoded frames waiting for an earlier one to be encoded, or for the publisher to catch up
+        maxPendingFrames = Math.max(1, parameters.queueCapacity) + Math.max(1, parameters.encoderThreads);
+
+        freeFrames = new ArrayBlockingQueue<>(poolSize);
+
+        for (int idx = 0; idx < poolSize; ++idx) {
+
+            freeFrames.add(new PipelineFrame());
+        }
+    }
+
+    /**
+     * Starts the encoder and publisher threads
+     */
+    public synchronized void start() {
+
+        if (running) {
+
+            return;
+        }
+
+        encodeQueue = new BoundedFrameQueue<>(parameters.queueCapacity, parameters.overflowPolicy, this::discard);
+
+        clearEncodedFrames();
+
+        nextSubmitSequence = 0;
+        nextPublishSequence = 0;
+        running = true;
+
+        for (int idx = 0; idx < Math.max(1, parameters.encoderThreads); ++idx) {
+
+            threads.add(new Thread(this::encodeFrames, name + "-encoder-" + idx));
+        }
+
+        threads.add(new Thread(this::publishFrames, name + "-publisher"));
+
+        threads.forEach(Thread::start);
+    }
+
+    /**
+     * Stops all stages, frames still in the pipeline are discarded
+     */
+    public synchronized void stop() {
+
+        if (!running) {
+
+            return;
+        }
+
+        running = false;
+
+        encodeQueue.close();
+
+        synchronized (reorderLock) {
+
+            reorderLock.notifyAll();
+        }
+
+        for (Thread thread : threads) {
+
+            try {
+
+                thread.join(THREAD_JOIN_TIMEOUT_MILLIS);
+
+                if (thread.isAlive()) {
+
+                    thread.interrupt();
+                }
+
+            } catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        threads.clear();
+
+        clearEncodedFrames();
+    }
+
+    /**
+     * Queues a decoded frame for encoding, to be called from the grab thread only.
+     * The frame content is copied, so the grabber can reuse it as soon as this method returns.
+     *
+     * @param frame     Decoded frame
+     * @param frameTime Frame time in milliseconds since epoch
+     * @return true if the frame was queued, false if it was dropped
+     * @throws InterruptedException if interrupted while waiting with the {@link OverflowPolicy#BLOCK} policy
+     */
+    public boolean submit(Frame frame, long frameTime) throws InterruptedException {
+
+        if (!running) {
+
+            return false;
+        }
+
+        PipelineFrame pipelineFrame = freeFrames.poll();
+
+        if (pipelineFrame == null) {
+
+            if (parameters.overflowPolicy != OverflowPolicy.BLOCK) {
+
+                // No sequence number taken yet, so the publisher has no gap to skip
+                overflowCount.incrementAndGet();
+
+                return false;
+            }
+
+            pipelineFrame = freeFrames.take();
+        }
+
+        long convertStart = System.nanoTime();
+
+        pipelineFrame.frame = copyFrame(frame, pipelineFrame.frame);
+
+        pipelineFrame.queuedNanos = System.nanoTime();
+        pipelineFrame.sequence = nextSubmitSequence++;
+        pipelineFrame.frameTime = frameTime;
+
+        telemetry.record(LatencyTelemetry.Stage.CONVERT, pipelineFrame.queuedNanos - convertStart);
+
+        ++submittedCount;
+
+        return encodeQueue.put(pipelineFrame);
+    }
+
+    public long getSubmittedCount() {
+
+        return submittedCount;
+    }
+
+    public long getPublishedCount() {
+
+        return publishedCount;
+    }
+
+    /**
+     * @return Number of frames dropped on overflow of any stage or because they failed to encode
+     */
+    public long getDroppedCount() {
+
+        BoundedFrameQueue<PipelineFrame> queue = encodeQueue;
+
+        return failedCount.get() + overflowCount.get() + (queue != null ? queue.getDroppedCount() : 0);
+    }
+
+    public int getQueueSize() {
+
+        BoundedFrameQueue<PipelineFrame> queue = encodeQueue;
+
+        return queue != null ? queue.size() : 0;
+    }
+
+    private void encodeFrames() {
+
+        FrameEncoder encoder = encoderFactory.get();
+
+        try {
+
+            PipelineFrame pipelineFrame;
+
+            while ((pipelineFrame = encodeQueue.take()) != null) {
+
+                long encodeStart = System.nanoTime();
+
+                telemetry.record(LatencyTelemetry.Stage.QUEUE, encodeStart - pipelineFrame.queuedNanos);
+
+                byte[] encoded = null;
+
+                try {
+
+                    encoded = encoder.encode(pipelineFrame.frame);
+
+                    telemetry.record(LatencyTelemetry.Stage.ENCODE, System.nanoTime() - encodeStart);
+
+                } catch (Exception e) {
+
+                    logger.error("Failed to encode frame {}", pipelineFrame.sequence, e);
+
+                    failedCount.incrementAndGet();
+                }
+
+                long sequence = pipelineFrame.sequence;
+                long frameTime = pipelineFrame.frameTime;
+
+                // The decoded picture is no longer needed, the next grabbed frame can use it
+                freeFrames.offer(pipelineFrame);
+
+                complete(new EncodedFrame(sequence, frameTime, encoded));
+            }
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+
+        } finally {
+
+            encoder.close();
+        }
+
+        logger.debug("Terminating encoder thread: {}", Thread.currentThread().getName());
+    }
+
+    private void publishFrames() {
+
+        try {
+
+            while (true) {
+
+                EncodedFrame encodedFrame;
+
+                synchronized (reorderLock) {
+
+                    while (running && (encodedFrames.isEmpty() || encodedFrames.peek().sequence != nextPublishSequence)) {
+
+                        reorderLock.wait();
+                    }
+
+                    if (!running) {
+
+                        break;
+                    }
+
+                    encodedFrame = encodedFrames.poll();
+                    ++nextPublishSequence;
+
+                    if (encodedFrame.encoded != null) {
+
+                        --pendingFrames;
+                    }
+
+                    // Wakes up encoders waiting for room with the BLOCK policy
+                    reorderLock.notifyAll();
+                }
+
+                // Frames dropped or failed to encode have no payload and are skipped
+                if (encodedFrame.encoded != null) {
+
+                    try {
+
+                        publisher.publish(encodedFrame.frameTime, encodedFrame.encoded);
+
+                        ++publishedCount;
+
+                    } catch (RuntimeException e) {
+
+                        logger.error("Failed to publish frame {}", encodedFrame.sequence, e);
+                    }
+                }
+            }
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+        }
+
+        logger.debug("Terminating publisher thread: {}", Thread.currentThread().getName());
+    }
+
+    /**
+     * Hands an encoded frame over to the publisher, applying the overflow policy if too many frames are waiting.
+     * The frame the publisher waits for is always accepted, so the publisher keeps going.
+     *
+     * @throws InterruptedException if interrupted while waiting with the {@link OverflowPolicy#BLOCK} policy
+     */
+    private void complete(EncodedFrame encodedFrame) throws InterruptedException {
+
+        synchronized (reorderLock) {
+
+            while (encodedFrame.encoded != null && pendingFrames >= maxPendingFrames
+                    && encodedFrame.sequence != nextPublishSequence) {
+
+                if (parameters.overflowPolicy == OverflowPolicy.BLOCK) {
+
+                    if (!running) {
+
+                        return;
+                    }
+
+                    reorderLock.wait();
+
+                } else {
+
+                    EncodedFrame dropped = parameters.overflowPolicy == OverflowPolicy.DROP_OLDEST
+                            ? oldestPendingFrame() : encodedFrame;
+
+                    // The dropped frame stays in the sequence as a gap
+                    if (dropped != encodedFrame) {
+
+                        --pendingFrames;
+                    }
+
+                    dropped.encoded = null;
+
+                    overflowCount.incrementAndGet();
+                }
+            }
+
+            encodedFrames.add(encodedFrame);
+
+            if (encodedFrame.encoded != null) {
+
+                ++pendingFrames;
+            }
+
+            reorderLock.notifyAll();
+        }
+    }
+
+    /**
+     * Records a frame that never made it to an encoder as a gap in the sequence and recycles it
+     */
+    private void discard(PipelineFrame pipelineFrame) {
+
+        EncodedFrame gap = new EncodedFrame(pipelineFrame.sequence, pipelineFrame.frameTime, null);
+
+        freeFrames.offer(pipelineFrame);
+
+        synchronized (reorderLock) {
+
+            encodedFrames.add(gap);
+
+            reorderLock.notifyAll();
+        }
+    }
+
+    /**
+     * @return Waiting frame with the lowest sequence that still has a payload, called with the reorder lock held
+     */
+    private EncodedFrame oldestPendingFrame() {
+
+        EncodedFrame oldest = null;
+
+        for (EncodedFrame encodedFrame : encodedFrames) {
+
+            if (encodedFrame.encoded != null && (oldest == null || encodedFrame.sequence < oldest.sequence)) {
+
+                oldest = encodedFrame;
+            }
+        }
+
+        return oldest;
+    }
+
+    private void clearEncodedFrames() {
+
+        synchronized (reorderLock) {
+
+            encodedFrames.clear();
+            pendingFrames = 0;
+        }
+    }
+
+    /**
+     * Copies a decoded frame into a reusable frame
+     *
+     * @param source      Decoded frame
+     * @param destination Frame reused if it has the same size and format as the source, may be null
+     * @return The destination frame, or a new frame if it could not be reused
+     */
+    static Frame copyFrame(Frame source, Frame destination) {
+
+        if (destination == null
+                || destination.imageWidth != source.imageWidth
+                || destination.imageHeight != source.imageHeight
+                || destination.imageChannels != source.imageChannels
+                || destination.imageDepth != source.imageDepth) {
+
+            destination = new Frame(source.imageWidth, source.imageHeight, source.imageDepth, source.imageChannels);
+        }
+
+        copyImage(source, destination);
+
+        return destination;
+    }
+
+    /**
+     * Copies the pixels of a decoded frame, row by row if the line strides differ
+     */
+    private static void copyImage(Frame source, Frame destination) {
+
+        ByteBuffer sourceBuffer = ((ByteBuffer) source.image[0]).duplicate();
+        ByteBuffer destinationBuffer = ((ByteBuffer) destination.image[0]).duplicate();
+
+        int rowLength = source.imageWidth * source.imageChannels * Math.max(1, Math.abs(source.imageDepth) / 8);
+
+        if (source.imageStride == destination.imageStride) {
+
+            int length = source.imageStride * source.imageHeight;
+
+            sourceBuffer.clear().limit(length);
+            destinationBuffer.clear();
+            destinationBuffer.put(sourceBuffer);
+
+        } else {
+
+            for (int row = 0; row < source.imageHeight; ++row) {
+
+                int sourceOffset = row * source.imageStride;
+
+                sourceBuffer.clear().position(sourceOffset).limit(sourceOffset + rowLength);
+                destinationBuffer.clear().position(row * destination.imageStride);
+                destinationBuffer.put(sourceBuffer);
+            }
+        }
+    }
+}
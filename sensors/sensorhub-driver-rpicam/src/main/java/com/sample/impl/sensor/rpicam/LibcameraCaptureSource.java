@@ -0,0 +1,510 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam;
+
+import com.sample.impl.sensor.rpicam.config.OverflowPolicy;
+import com.sample.impl.sensor.rpicam.helpers.AccessUnit;
+import com.sample.impl.sensor.rpicam.helpers.AnnexBParser;
+import com.sample.impl.sensor.rpicam.helpers.BoundedFrameQueue;
+import com.sample.impl.sensor.rpicam.helpers.DirectBufferRing;
+import com.sample.impl.utils.camera.FrameClock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs libcamera-vid with its encoded H.264 stream written to a named pipe and splits the stream into access units.
+ * <p>
+ * A reader thread drains the pipe through a file channel straight into a ring of direct buffers, while a
+ * parser thread detects access unit boundaries in the filled buffers. Complete access units are queued
+ * for a dispatch thread calling the listener, so a slow listener never holds back parsing. When the
+ * queue is full the access unit is dropped, along with the following ones until the next keyframe since
+ * they could not be decoded without it. Only a parser unable to keep up with libcamera-vid fills the
+ * ring, making the reader and in turn libcamera-vid wait.
+ * <p>
+ * With sensor timestamps enabled and supported by libcamera-vid, it also writes the metadata of every frame
+ * to a named pipe, and each access unit is stamped with the time its frame was captured rather than the
+ * time it was read.
+ *
+ * @author your_name
+ * @since date
+ */
+public class LibcameraCaptureSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(LibcameraCaptureSource.class);
+
+    private static final String LIBCAMERA_VID = "/usr/bin/libcamera-vid";
+    private static final int DEFAULT_BUFFER_COUNT = 32;
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final int DISPATCH_QUEUE_CAPACITY = 64;
+    private static final long PROCESS_EXIT_TIMEOUT_MILLIS = 2000;
+
+    private volatile List<String> command;
+    private final DirectBufferRing bufferRing;
+    private final AnnexBParser parser;
+    private final AnnexBParser.AccessUnitListener listener;
+    private final boolean sensorTimestamps;
+    private final FrameClock frameClock = new FrameClock();
+
+    private SensorTimestampReader timestampReader;
+    private long frameIndex = 0;
+
+    private Process process;
+    private Path streamPipe;
+    private volatile boolean pipeOpened = false;
+    private Thread readerThread;
+    private Thread parserThread;
+    private Thread dispatchThread;
+    private volatile boolean running = false;
+
+    private BoundedFrameQueue<AccessUnit> dispatchQueue;
+    private boolean resyncing = false;
+
+    private volatile long bytesRead = 0;
+    private volatile long accessUnitCount = 0;
+    private volatile long skippedCount = 0;
+
+    /**
+     * Constructor
+     *
+     * @param arguments        libcamera-vid arguments, the output is always redirected to a named pipe
+     * @param sensorTimestamps True to stamp the access units with the sensor timestamps of their frames
+     * @param listener         Listener receiving the parsed access units, called on the dispatch thread
+     */
+    public LibcameraCaptureSource(List<String> arguments, boolean sensorTimestamps,
+                                  AnnexBParser.AccessUnitListener listener) {
+
+        setArguments(arguments);
+
+        this.sensorTimestamps = sensorTimestamps;
+        this.listener = listener;
+
+        bufferRing = new DirectBufferRing(DEFAULT_BUFFER_COUNT, DEFAULT_BUFFER_SIZE);
+
+        parser = new AnnexBParser(accessUnit -> {
+
+            ++accessUnitCount;
+
+            dispatch(stamp(accessUnit));
+        });
+    }
+
+    /**
+     * Replaces the libcamera-vid arguments, taking effect the next time the process is started
+     *
+     * @param arguments libcamera-vid arguments, the output is always redirected to a named pipe
+     */
+    public void setArguments(List<String> arguments) {
+
+        List<String> newCommand = new ArrayList<>();
+        newCommand.add(LIBCAMERA_VID);
+        newCommand.addAll(arguments);
+
+        command = newCommand;
+    }
+
+    /**
+     * Starts libcamera-vid along with the reader, parser and dispatch threads
+     *
+     * @throws IOException if the process cannot be started
+     */
+    public synchronized void start() throws IOException {
+
+        if (running) {
+
+            return;
+        }
+
+        parser.reset();
+        bufferRing.reset();
+
+        resyncing = false;
+        dispatchQueue = new BoundedFrameQueue<>(DISPATCH_QUEUE_CAPACITY, OverflowPolicy.DROP_NEWEST, accessUnit -> {});
+
+        // Read through a file channel, the process stdout stream would copy every byte once more
+        streamPipe = SensorTimestampReader.createPipe("libcamera-video-");
+        pipeOpened = false;
+
+        List<String> processCommand = new ArrayList<>(command);
+        processCommand.add("-o");
+        processCommand.add(streamPipe.toString());
+
+        frameIndex = 0;
+        frameClock.reset();
+        timestampReader = null;
+
+        if (sensorTimestamps && SensorTimestampReader.isSupported(LIBCAMERA_VID)) {
+
+            SensorTimestampReader reader = new SensorTimestampReader();
+
+            try {
+
+                processCommand.addAll(reader.create());
+
+                reader.start();
+
+                timestampReader = reader;
+
+            } catch (IOException e) {
+
+                logger.warn("Sensor timestamps not available, frames are stamped on arrival", e);
+            }
+        }
+
+        ProcessBuilder builder = new ProcessBuilder(processCommand);
+        builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+
+        try {
+
+            process = builder.start();
+
+        } catch (IOException e) {
+
+            stopTimestampReader();
+            deleteStreamPipe();
+
+            throw e;
+        }
+
+        logger.info("Started {}", String.join(" ", processCommand));
+
+        running = true;
+
+        readerThread = new Thread(this::readStream, "libcamera-reader");
+        parserThread = new Thread(this::parseStream, "libcamera-parser");
+        dispatchThread = new Thread(this::dispatchAccessUnits, "libcamera-dispatch");
+
+        dispatchThread.start();
+        parserThread.start();
+        readerThread.start();
+    }
+
+    /**
+     * Terminates libcamera-vid and waits for the reader and parser threads to finish
+     */
+    public synchronized void stop() {
+
+        if (!running) {
+
+            return;
+        }
+
+        running = false;
+
+        if (process != null) {
+
+            process.destroy();
+
+            try {
+
+                if (!process.waitFor(PROCESS_EXIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+
+                    process.destroyForcibly();
+                }
+
+            } catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+            }
+
+            logger.info("libcamera-vid process stopped");
+        }
+
+        // Opening the pipe blocks until a writer shows up, be that writer if libcamera-vid never was
+        if (!pipeOpened) {
+
+            try (FileOutputStream unblock = new FileOutputStream(streamPipe.toFile())) {
+
+                logger.debug("Unblocked stream reader");
+
+            } catch (IOException e) {
+
+                logger.debug("Failed to unblock stream reader", e);
+            }
+        }
+
+        joinThread(readerThread);
+        joinThread(parserThread);
+
+        dispatchQueue.close();
+
+        joinThread(dispatchThread);
+
+        stopTimestampReader();
+        deleteStreamPipe();
+    }
+
+    /**
+     * @return true while libcamera-vid is running and its stream is being parsed
+     */
+    public boolean isAlive() {
+
+        return running && process != null && process.isAlive()
+                && parserThread != null && parserThread.isAlive()
+                && dispatchThread != null && dispatchThread.isAlive();
+    }
+
+    public long getBytesRead() {
+
+        return bytesRead;
+    }
+
+    public long getAccessUnitCount() {
+
+        return accessUnitCount;
+    }
+
+    /**
+     * @return Number of access units dropped because the listener could not keep up, including those skipped
+     * until the next keyframe
+     */
+    public long getDroppedCount() {
+
+        BoundedFrameQueue<AccessUnit> queue = dispatchQueue;
+
+        return skippedCount + (queue != null ? queue.getDroppedCount() : 0);
+    }
+
+    /**
+     * @return Highest number of filled buffers waiting to be parsed, reaching the ring size means the reader stalled
+     */
+    public int getMaxBacklog() {
+
+        return bufferRing.getMaxFilledCount();
+    }
+
+    /**
+     * Replaces the arrival time of an access unit by the sensor timestamp of its frame mapped to UTC,
+     * access units are counted on the parser thread in the order libcamera-vid wrote their metadata
+     */
+    private AccessUnit stamp(AccessUnit accessUnit) {
+
+        SensorTimestampReader reader = timestampReader;
+
+        long index = frameIndex++;
+
+        if (reader == null) {
+
+            return accessUnit;
+        }
+
+        long arrivalNanos = System.nanoTime();
+        long sensorMicros = reader.getSensorMicros(index, arrivalNanos);
+
+        if (sensorMicros < 0) {
+
+            return accessUnit;
+        }
+
+        long frameTime = frameClock.toUtcMillis(sensorMicros, arrivalNanos);
+
+        return new AccessUnit(accessUnit.getData(), accessUnit.isKeyFrame(), frameTime);
+    }
+
+    /**
+     * Queues an access unit for the listener, on the parser thread only
+     */
+    private void dispatch(AccessUnit accessUnit) {
+
+        // After a drop the following access units reference a missing picture, skip them until the next keyframe
+        if (resyncing && !accessUnit.isKeyFrame()) {
+
+            ++skippedCount;
+
+            return;
+        }
+
+        try {
+
+            resyncing = !dispatchQueue.put(accessUnit);
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void dispatchAccessUnits() {
+
+        try {
+
+            AccessUnit accessUnit;
+
+            while ((accessUnit = dispatchQueue.take()) != null) {
+
+                try {
+
+                    listener.onAccessUnit(accessUnit);
+
+                } catch (RuntimeException e) {
+
+                    logger.error("Error handling access unit", e);
+                }
+            }
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+
+        } finally {
+
+            logger.debug("Terminating dispatch thread");
+        }
+    }
+
+    private void stopTimestampReader() {
+
+        if (timestampReader != null) {
+
+            timestampReader.stop();
+            timestampReader = null;
+        }
+    }
+
+    private void deleteStreamPipe() {
+
+        try {
+
+            Files.deleteIfExists(streamPipe);
+
+        } catch (IOException e) {
+
+            logger.warn("Failed to delete {}", streamPipe, e);
+        }
+    }
+
+    private void readStream() {
+
+        try (FileChannel channel = FileChannel.open(streamPipe, StandardOpenOption.READ)) {
+
+            pipeOpened = true;
+
+            while (running) {
+
+                ByteBuffer buffer = bufferRing.acquire();
+
+                // Reads all data available in the pipe, blocking only if there is none
+                int count = channel.read(buffer);
+
+                if (count < 0) {
+
+                    bufferRing.release(buffer);
+
+                    break;
+                }
+
+                bytesRead += count;
+
+                bufferRing.submit(buffer);
+            }
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+
+        } catch (IOException e) {
+
+            if (running) {
+
+                logger.error("Error reading libcamera-vid output", e);
+            }
+
+        } finally {
+
+            pipeOpened = true;
+
+            bufferRing.submitEndOfStream();
+
+            logger.debug("Terminating reader thread");
+        }
+    }
+
+    private void parseStream() {
+
+        try {
+
+            while (true) {
+
+                ByteBuffer buffer = bufferRing.take();
+
+                if (buffer == DirectBufferRing.END_OF_STREAM) {
+
+                    parser.flush();
+
+                    break;
+                }
+
+                try {
+
+                    parser.parse(buffer);
+
+                } catch (RuntimeException e) {
+
+                    logger.error("Error parsing access unit", e);
+
+                } finally {
+
+                    bufferRing.release(buffer);
+                }
+            }
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+
+        } finally {
+
+            if (running) {
+
+                logger.warn("libcamera-vid stream ended unexpectedly");
+            }
+
+            // Nothing more to dispatch, the dispatch thread ends once the queue is drained
+            dispatchQueue.finish();
+
+            logger.debug("Terminating parser thread");
+        }
+    }
+
+    private void joinThread(Thread thread) {
+
+        if (thread != null && thread != Thread.currentThread()) {
+
+            try {
+
+                thread.join(PROCESS_EXIT_TIMEOUT_MILLIS);
+
+                if (thread.isAlive()) {
+
+                    thread.interrupt();
+                }
+
+            } catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,290 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Starts the camera when the outputs get their first subscriber and stops it once they have had none
+ * for a grace period.
+ * <p>
+ * Consumers subscribe through the hub event bus rather than on the outputs, so the subscriber count is
+ * polled on a dedicated thread, which also starts and stops the capture so nothing waits for the camera
+ * process. A capture that fails to start is retried with a growing delay while subscribers remain.
+ *
+ * @author your_name
+ * @since date
+ */
+public class OnDemandCapture {
+
+    /**
+     * Starts and stops the camera session
+     */
+    public interface CaptureControl {
+
+        void startCapture() throws Exception;
+
+        void stopCapture() throws Exception;
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(OnDemandCapture.class);
+
+    static final long POLL_PERIOD_MILLIS = 1000;
+    static final long MAX_RETRY_DELAY_MILLIS = 30000;
+
+    private final CaptureControl captureControl;
+    private final IntSupplier subscriberCount;
+    private final long gracePeriodMillis;
+    private final LongSupplier clock;
+
+    private volatile boolean enabled = false;
+
+    private ScheduledExecutorService scheduler;
+
+    // Only changed from the scheduler thread
+    private volatile boolean capturing = false;
+    private long idleSince = -1;
+    private long retryDelayMillis = 0;
+    private long retryAt = -1;
+
+    /**
+     * Constructor
+     *
+     * @param captureControl    Starts and stops the camera session
+     * @param subscriberCount   Current number of subscribers to the watched outputs
+     * @param gracePeriodMillis Time the camera keeps running without subscribers
+     */
+    public OnDemandCapture(CaptureControl captureControl, IntSupplier subscriberCount, long gracePeriodMillis) {
+
+        this(captureControl, subscriberCount, gracePeriodMillis, System::currentTimeMillis);
+    }
+
+    /**
+     * Constructor with a given clock, for tests
+     *
+     * @param captureControl    Starts and stops the camera session
+     * @param subscriberCount   Current number of subscribers to the watched outputs
+     * @param gracePeriodMillis Time the camera keeps running without subscribers
+     * @param clock             Current time in milliseconds
+     */
+    OnDemandCapture(CaptureControl captureControl, IntSupplier subscriberCount, long gracePeriodMillis, LongSupplier clock) {
+
+        this.captureControl = captureControl;
+        this.subscriberCount = subscriberCount;
+        this.gracePeriodMillis = Math.max(0, gracePeriodMillis);
+        this.clock = clock;
+    }
+
+    /**
+     * Starts following the subscribers, the camera starts right away if there are some already
+     */
+    public synchronized void enable() {
+
+        if (enabled) {
+
+            return;
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+
+            Thread thread = new Thread(runnable, "on-demand-capture");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        enabled = true;
+
+        awaitReconcile();
+
+        scheduler.scheduleWithFixedDelay(this::reconcile, POLL_PERIOD_MILLIS, POLL_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops following the subscribers and stops the camera if running, without grace period
+     */
+    public synchronized void disable() {
+
+        if (!enabled) {
+
+            return;
+        }
+
+        enabled = false;
+
+        awaitReconcile();
+
+        scheduler.shutdownNow();
+        scheduler = null;
+    }
+
+    /**
+     * Checks the subscribers right away instead of waiting for the next poll
+     */
+    public void subscribersChanged() {
+
+        requestReconcile();
+    }
+
+    /**
+     * @return Number of subscribers to the watched outputs, 0 if it cannot be read
+     */
+    public int getSubscriberCount() {
+
+        try {
+
+            return Math.max(0, subscriberCount.getAsInt());
+
+        } catch (RuntimeException e) {
+
+            logger.debug("Failed to read subscriber count", e);
+
+            return 0;
+        }
+    }
+
+    /**
+     * @return true while the camera session is running
+     */
+    public boolean isCapturing() {
+
+        return capturing;
+    }
+
+    private void requestReconcile() {
+
+        ScheduledExecutorService executor = scheduler;
+
+        if (executor != null) {
+
+            try {
+
+                executor.execute(this::reconcile);
+
+            } catch (RejectedExecutionException e) {
+
+                // Disabled in the meantime, nothing left to reconcile
+            }
+        }
+    }
+
+    /**
+     * Brings the capture state in line with the subscribers and waits until done
+     */
+    void awaitReconcile() {
+
+        try {
+
+            scheduler.submit(this::reconcile).get();
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+
+        } catch (ExecutionException e) {
+
+            logger.error("Failed to update capture state", e.getCause());
+        }
+    }
+
+    /**
+     * Brings the capture state in line with the subscribers, on the scheduler thread only
+     */
+    private void reconcile() {
+
+        int subscribers = enabled ? getSubscriberCount() : 0;
+
+        if (subscribers > 0) {
+
+            idleSince = -1;
+
+            if (!capturing && clock.getAsLong() >= retryAt) {
+
+                logger.info("Starting capture for {} subscriber(s)", subscribers);
+
+                capturing = true;
+
+                try {
+
+                    captureControl.startCapture();
+
+                    retryDelayMillis = 0;
+                    retryAt = -1;
+
+                } catch (Exception e) {
+
+                    stopCapture();
+
+                    // Polling picks the start up again once the delay has passed
+                    retryDelayMillis = Math.min(MAX_RETRY_DELAY_MILLIS, Math.max(POLL_PERIOD_MILLIS, retryDelayMillis * 2));
+                    retryAt = clock.getAsLong() + retryDelayMillis;
+
+                    logger.error("Failed to start capture, retrying in {} ms", retryDelayMillis, e);
+                }
+            }
+
+        } else if (capturing) {
+
+            long now = clock.getAsLong();
+
+            if (idleSince < 0) {
+
+                idleSince = now;
+            }
+
+            long remaining = idleSince + gracePeriodMillis - now;
+
+            if (!enabled || remaining <= 0) {
+
+                logger.info("Stopping capture, no subscriber for {} ms", now - idleSince);
+
+                stopCapture();
+
+            } else if (remaining < POLL_PERIOD_MILLIS) {
+
+                scheduler.schedule(this::reconcile, remaining, TimeUnit.MILLISECONDS);
+            }
+
+        } else {
+
+            // Nobody left waiting for the camera, the next subscriber starts it right away
+            retryDelayMillis = 0;
+            retryAt = -1;
+        }
+    }
+
+    private void stopCapture() {
+
+        capturing = false;
+        idleSince = -1;
+
+        try {
+
+            captureControl.stopCapture();
+
+        } catch (Exception e) {
+
+            logger.error("Failed to stop capture", e);
+        }
+    }
+}
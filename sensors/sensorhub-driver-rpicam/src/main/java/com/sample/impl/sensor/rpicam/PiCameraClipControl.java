@@ -0,0 +1,82 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam;
+
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataComponent;
+import net.opengis.swe.v20.DataRecord;
+import org.sensorhub.api.command.CommandException;
+import org.sensorhub.impl.sensor.AbstractSensorControl;
+import org.vast.swe.SWEHelper;
+
+/**
+ * Control input triggering the recording of a clip around an event by the {@link ClipRecorder}
+ * of {@link PiCameraSensor}.
+ *
+ * @author your_name
+ * @since date
+ */
+public class PiCameraClipControl extends AbstractSensorControl<PiCameraSensor> {
+
+    private static final String SENSOR_CONTROL_NAME = "PiCameraClipControl";
+
+    private DataRecord commandDataStruct;
+
+    protected PiCameraClipControl(PiCameraSensor parentSensor) {
+
+        super(SENSOR_CONTROL_NAME, parentSensor);
+    }
+
+    @Override
+    public DataComponent getCommandDescription() {
+
+        return commandDataStruct;
+    }
+
+    @Override
+    protected boolean execCommand(DataBlock cmdData) throws CommandException {
+
+        double postRollDuration = cmdData.getDoubleValue(0);
+
+        if (postRollDuration < 0) {
+
+            throw new CommandException("Post-roll duration cannot be negative");
+        }
+
+        if (parentSensor.triggerClip((long) (postRollDuration * 1000)) < 0) {
+
+            throw new CommandException("Camera is not running, no clip can be recorded");
+        }
+
+        return true;
+    }
+
+    protected void init() {
+
+        SWEHelper sweFactory = new SWEHelper();
+
+        commandDataStruct = sweFactory.createRecord()
+                .name(getName())
+                .label("Trigger Clip")
+                .updatable(true)
+                .definition(SWEHelper.getPropertyUri("TriggerClip"))
+                .description("Records the video preceding and following an event")
+                .addField("postRollDuration", sweFactory.createQuantity()
+                        .label("Post-Roll Duration")
+                        .description("Video recorded after the event, 0 for the configured duration")
+                        .uomCode("s")
+                        .value(0.0))
+                .build();
+    }
+}
@@ -0,0 +1,154 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam;
+
+import com.sample.impl.sensor.rpicam.config.OutputMode;
+import com.sample.impl.sensor.rpicam.config.VideoParameters;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataComponent;
+import net.opengis.swe.v20.DataEncoding;
+import net.opengis.swe.v20.DataStream;
+import org.sensorhub.api.data.DataEvent;
+import org.sensorhub.impl.sensor.AbstractSensorOutput;
+import org.sensorhub.impl.sensor.videocam.VideoCamHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vast.data.AbstractDataBlock;
+import org.vast.data.DataBlockMixed;
+
+/**
+ * Video recorded around triggered events by the {@link ClipRecorder}.
+ * <p>
+ * Only the frames of the clips are published, with their original sampling time, so a storage
+ * attached to this output keeps the video surrounding events instead of the continuous stream.
+ *
+ * @author your_name
+ * @since date
+ */
+public class PiCameraClipOutput extends AbstractSensorOutput<PiCameraSensor> implements ClipRecorder.ClipSink {
+
+    private static final String SENSOR_OUTPUT_NAME = "PiCameraClip";
+    private static final String SENSOR_OUTPUT_LABEL = "CameraClip";
+    private static final String SENSOR_OUTPUT_DESCRIPTION = "Pi Camera Video Recorded Around Events";
+
+    private static final Logger logger = LoggerFactory.getLogger(PiCameraClipOutput.class);
+
+    private DataComponent dataStruct;
+    private DataEncoding dataEncoding;
+
+    private double samplingPeriod;
+
+    /**
+     * Constructor
+     *
+     * @param parentSensor Sensor driver providing this output
+     */
+    PiCameraClipOutput(PiCameraSensor parentSensor) {
+
+        super(SENSOR_OUTPUT_NAME, parentSensor);
+
+        logger.debug("PiCameraClipOutput created");
+    }
+
+    /**
+     * Initializes the data structure for the output, the same as the video output
+     */
+    void doInit() {
+
+        logger.debug("Initializing PiCameraClipOutput");
+
+        VideoParameters videoParameters = parentSensor.getConfiguration().videoParameters;
+
+        samplingPeriod = 1d / Math.max(1, videoParameters.videoFrameRate);
+
+        VideoCamHelper sweFactory = new VideoCamHelper();
+
+        DataStream outputDef;
+
+        if (videoParameters.outputMode == OutputMode.H264) {
+
+            outputDef = sweFactory.newVideoOutputH264(getName(),
+                    videoParameters.videoFrameWidth, videoParameters.videoFrameHeight);
+
+        } else {
+
+            outputDef = sweFactory.newVideoOutputMJPEG(getName(),
+                    videoParameters.videoFrameWidth, videoParameters.videoFrameHeight);
+        }
+
+        dataStruct = outputDef.getElementType();
+
+        dataStruct.setLabel(SENSOR_OUTPUT_LABEL);
+
+        dataStruct.setDescription(SENSOR_OUTPUT_DESCRIPTION);
+
+        dataEncoding = outputDef.getEncoding();
+
+        logger.debug("Initializing PiCameraClipOutput Complete");
+    }
+
+    @Override
+    public void beginClip(long clipId, long startTime) {
+
+        logger.debug("Publishing clip {}", clipId);
+    }
+
+    @Override
+    public void writeFrame(long frameTime, byte[] frameData) {
+
+        DataBlock dataBlock;
+        if (latestRecord == null) {
+
+            dataBlock = dataStruct.createDataBlock();
+
+        } else {
+
+            dataBlock = latestRecord.renew();
+        }
+
+        dataBlock.setDoubleValue(0, frameTime / 1000d);
+
+        AbstractDataBlock frameBlock = ((DataBlockMixed) dataBlock).getUnderlyingObject()[1];
+        frameBlock.setUnderlyingObject(frameData);
+
+        latestRecord = dataBlock;
+        latestRecordTime = System.currentTimeMillis();
+
+        eventHandler.publish(new DataEvent(latestRecordTime, this, dataBlock));
+    }
+
+    @Override
+    public void endClip() {
+
+        logger.debug("Clip published");
+    }
+
+    @Override
+    public DataComponent getRecordDescription() {
+
+        return dataStruct;
+    }
+
+    @Override
+    public DataEncoding getRecommendedEncoding() {
+
+        return dataEncoding;
+    }
+
+    @Override
+    public double getAverageSamplingPeriod() {
+
+        return samplingPeriod;
+    }
+}
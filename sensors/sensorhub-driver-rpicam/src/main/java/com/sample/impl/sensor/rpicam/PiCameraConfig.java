@@ -13,7 +13,16 @@
 ******************************* END LICENSE BLOCK ***************************/
 package com.sample.impl.sensor.rpicam;
 
+import com.sample.impl.sensor.rpicam.config.AdaptiveParameters;
+import com.sample.impl.sensor.rpicam.config.ClipParameters;
+import com.sample.impl.sensor.rpicam.config.OnDemandParameters;
+import com.sample.impl.sensor.rpicam.config.PipelineParameters;
+import com.sample.impl.sensor.rpicam.config.PreviewParameters;
+import com.sample.impl.sensor.rpicam.config.RegionOfInterest;
+import com.sample.impl.sensor.rpicam.config.StillParameters;
+import com.sample.impl.sensor.rpicam.config.TimeLapseParameters;
 import com.sample.impl.sensor.rpicam.config.VideoParameters;
+import com.sample.impl.sensor.rpicam.config.WatchdogParameters;
 import org.sensorhub.api.config.DisplayInfo;
 import org.sensorhub.api.sensor.PositionConfig;
 import org.sensorhub.api.sensor.SensorConfig;
@@ -48,6 +57,60 @@ public class PiCameraConfig extends SensorConfig {
     @DisplayInfo(label = "Video Camera Parameters", desc = "Parameters for camera configuration")
     public VideoParameters videoParameters = new VideoParameters();
 
+    /**
+     * Capture, encode and publish pipeline configuration
+     */
+    @DisplayInfo(label = "Pipeline Parameters", desc = "Threading and queueing of the frame encoding pipeline")
+    public PipelineParameters pipelineParameters = new PipelineParameters();
+
+    /**
+     * Low resolution preview stream configuration
+     */
+    @DisplayInfo(label = "Preview Parameters", desc = "Size and rate of the preview stream")
+    public PreviewParameters previewParameters = new PreviewParameters();
+
+    /**
+     * Region of the frame published at startup, can be changed at runtime through the control input
+     */
+    @DisplayInfo(label = "Region Of Interest", desc = "Crop and scale of the published frames")
+    public RegionOfInterest regionOfInterest = new RegionOfInterest();
+
+    /**
+     * On-demand capture configuration
+     */
+    @DisplayInfo(label = "On-Demand Capture", desc = "Run the camera only while its outputs have subscribers")
+    public OnDemandParameters onDemandParameters = new OnDemandParameters();
+
+    /**
+     * Stall detection and restart configuration
+     */
+    @DisplayInfo(label = "Watchdog Parameters", desc = "Detection of camera stalls and automatic restart")
+    public WatchdogParameters watchdogParameters = new WatchdogParameters();
+
+    /**
+     * Event clip recording configuration
+     */
+    @DisplayInfo(label = "Clip Parameters", desc = "Recording of the video preceding and following triggered events")
+    public ClipParameters clipParameters = new ClipParameters();
+
+    /**
+     * Still burst capture configuration
+     */
+    @DisplayInfo(label = "Still Parameters", desc = "Bursts of stills taken while the video keeps running")
+    public StillParameters stillParameters = new StillParameters();
+
+    /**
+     * Adaptation of the stream to its consumers
+     */
+    @DisplayInfo(label = "Adaptive Streaming", desc = "Quality, bitrate and frame rate following the pace of the subscribers")
+    public AdaptiveParameters adaptiveParameters = new AdaptiveParameters();
+
+    /**
+     * Time-lapse capture configuration
+     */
+    @DisplayInfo(label = "Time-Lapse Parameters", desc = "Single stills taken on a schedule in place of the video stream")
+    public TimeLapseParameters timeLapseParameters = new TimeLapseParameters();
+
 //    /**
 //     * Pin configuration
 //     */
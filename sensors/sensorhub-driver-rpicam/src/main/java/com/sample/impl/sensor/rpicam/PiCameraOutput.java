@@ -13,10 +13,17 @@
  ******************************* END LICENSE BLOCK ***************************/
 package com.sample.impl.sensor.rpicam;
 
+import com.sample.impl.sensor.rpicam.config.OutputMode;
+import com.sample.impl.sensor.rpicam.config.RegionOfInterest;
+import com.sample.impl.sensor.rpicam.config.VideoParameters;
+import com.sample.impl.sensor.rpicam.helpers.AccessUnit;
+import com.sample.impl.sensor.rpicam.helpers.AccessUnitInputStream;
+import com.sample.impl.sensor.rpicam.helpers.LatencyTelemetry;
+import com.sample.impl.utils.camera.MjpegEncoder;
 import net.opengis.swe.v20.*;
 import org.bytedeco.javacv.*;
-//import org.bytedeco.javacv.OpenCVFrameGrabber;
 import org.sensorhub.api.data.DataEvent;
+import org.sensorhub.api.event.IEventListener;
 import org.sensorhub.api.sensor.SensorException;
 import org.sensorhub.impl.sensor.AbstractSensorOutput;
 import org.sensorhub.impl.sensor.videocam.VideoCamHelper;
@@ -25,10 +32,10 @@ import org.slf4j.LoggerFactory;
 import org.vast.data.AbstractDataBlock;
 import org.vast.data.DataBlockMixed;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.lang.Boolean;
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.bytedeco.ffmpeg.global.avutil.AV_PIX_FMT_BGR24;
 
 
@@ -38,16 +45,24 @@ import static org.bytedeco.ffmpeg.global.avutil.AV_PIX_FMT_BGR24;
  * @author your_name
  * @since date
  */
-public class PiCameraOutput extends AbstractSensorOutput<PiCameraSensor> implements Runnable {
+public class PiCameraOutput extends AbstractSensorOutput<PiCameraSensor> implements Runnable, CaptureWatchdog.Session {
 
     private static final String SENSOR_OUTPUT_NAME = "PiCameraOutput";
     private static final String SENSOR_OUTPUT_LABEL = "CameraSensor";
     private static final String SENSOR_OUTPUT_DESCRIPTION = "Pi Camera Video Feed";
     private static final String VIDEO_FORMAT = "h264";
-    private static final String VIDEO_STREAM_URL = "udp://192.168.1.185:8554";
 
-    private FrameGrabber frameGrabber;
-//    private OpenCVFrameGrabber frameGrabber;
+    /**
+     * Number of access units buffered between the capture source and the decoder, about one second of video
+     */
+    private static final int DECODER_QUEUE_CAPACITY = 30;
+
+    /**
+     * Frame rate the decoder assumes for the raw camera stream, only used to number the decoded pictures
+     */
+    private static final int DECODER_FRAME_RATE = 25;
+
+    private static final long WORKER_JOIN_TIMEOUT_MILLIS = 2000;
 
     private static final Logger logger = LoggerFactory.getLogger(com.sample.impl.sensor.rpicam.PiCameraOutput.class);
 
@@ -61,10 +76,55 @@ public class PiCameraOutput extends AbstractSensorOutput<PiCameraSensor> impleme
     private int setCount = 0;
     private final long[] timingHistogram = new long[MAX_NUM_TIMING_SAMPLES];
     private final Object histogramLock = new Object();
+    private long lastFrameTime = 0;
 
     private Thread worker;
 
-    private Process libcameraProcess;
+    private LibcameraCaptureSource captureSource;
+
+    private AccessUnitInputStream decoderInput;
+
+    private FramePipeline pipeline;
+
+    private OutputMode outputMode;
+
+    private PiCameraPreviewOutput previewOutput;
+
+    private PiCameraStillOutput stillOutput;
+
+    private ClipRecorder clipRecorder;
+
+    private BackpressureRegulator regulator;
+
+    /**
+     * Stream settings, adjusted at runtime by the regulator: JPEG quality and minimum time between two
+     * encoded frames in MJPEG mode, libcamera-vid bitrate (0 for its default) and frame rate in H.264 mode
+     */
+    private volatile int jpegQuality;
+    private volatile long minFrameIntervalMillis = 0;
+    private long nextEncodedFrameTime = 0;
+    private int streamBitrate = 0;
+    private int streamFrameRate;
+
+    /**
+     * Region of the frame published, applied by libcamera in H.264 mode and by the encoders in MJPEG mode
+     */
+    private volatile RegionOfInterest regionOfInterest;
+
+    /**
+     * True if the camera stream is decoded, to be re-encoded or to feed the preview and stills
+     */
+    private boolean decoding;
+
+    private final LatencyTelemetry telemetry = new LatencyTelemetry();
+
+    private volatile long publishedCount = 0;
+
+    /**
+     * {@link System#nanoTime()} of the latest access unit and decoded picture, 0 until the first one after a start
+     */
+    private volatile long lastAccessUnitNanos = 0;
+    private volatile long lastDecodedNanos = 0;
 
     /**
      * Constructor
@@ -78,75 +138,119 @@ public class PiCameraOutput extends AbstractSensorOutput<PiCameraSensor> impleme
         logger.debug("PiCameraOutput created");
     }
 
+    /**
+     * Sets the preview output fed with the decoded pictures, to be called before {@link #doInit()}
+     *
+     * @param previewOutput Preview output, null to disable the preview
+     */
+    void setPreviewOutput(PiCameraPreviewOutput previewOutput) {
+
+        this.previewOutput = previewOutput;
+    }
+
+    /**
+     * Sets the still output fed with the decoded pictures, to be called before {@link #doInit()}
+     *
+     * @param stillOutput Still output, null to disable stills
+     */
+    void setStillOutput(PiCameraStillOutput stillOutput) {
+
+        this.stillOutput = stillOutput;
+    }
+
+    /**
+     * Sets the regulator adapting the stream to its consumers, to be called before {@link #doInit()}
+     *
+     * @param regulator Regulator accounting for every published frame, null to keep the stream settings
+     * @param bitrate   Initial H.264 bitrate in bits per second, 0 for the libcamera default
+     */
+    void setRegulator(BackpressureRegulator regulator, int bitrate) {
+
+        this.regulator = regulator;
+        this.streamBitrate = bitrate;
+    }
+
+    /**
+     * Sets the recorder receiving every published frame
+     *
+     * @param clipRecorder Event clip recorder, null to disable clip recording
+     */
+    void setClipRecorder(ClipRecorder clipRecorder) {
+
+        this.clipRecorder = clipRecorder;
+    }
+
     /**
      * Initializes the data structure for the output, defining the fields, their ordering,
      * and data types.
      */
     void doInit() throws SensorException {
 
-        logger.debug("Initializing PiCameraOutput");
-
-//        try {
-////            frameGrabber = FrameGrabber.createDefault(0);
-////            frameGrabber = new OpenCVFrameGrabber("rtsp://192.168.2.136:8554/stream1");
-//
-////            frameGrabber = FrameGrabber.createDefault("/base/axi/pcie@120000.rp1/i2c@88000/imx219@10");
-//
-//            frameGrabber = new FFmpegFrameGrabber(VIDEO_STREAM_URL);
-//
-//            logger.info("Frame Grabber created {}", frameGrabber);
-//
-//        } catch (Exception e) {
-//
-//            logger.debug("Unable to connect to camera\n{}", e.getMessage());
-//
-//            throw new SensorException("Failed to establish connection with camera", e);
-//        }
-//
-//        frameGrabber.setFormat(VIDEO_FORMAT);
-//        frameGrabber.setVideoCodecName(VIDEO_FORMAT);
-//        frameGrabber.setImageHeight(parentSensor.getConfiguration().videoParameters.videoFrameHeight);
-//        frameGrabber.setImageWidth(parentSensor.getConfiguration().videoParameters.videoFrameWidth);
         logger.debug("Initializing PiCameraOutput with libcamera-vid");
 
-        try {
-            // Start libcamera-vid process
-            ProcessBuilder builder = new ProcessBuilder();
-            builder.command(
-                    "/usr/bin/libcamera-vid", "-n", "-t", "0",
-                    "--framerate", String.valueOf(parentSensor.getConfiguration().videoParameters.videoFrameRate),
-                    "--width", String.valueOf(parentSensor.getConfiguration().videoParameters.videoFrameWidth),
-                    "--height", String.valueOf(parentSensor.getConfiguration().videoParameters.videoFrameHeight),
-                    "--codec", VIDEO_FORMAT, "-o", VIDEO_STREAM_URL
-            );
-            builder.inheritIO();
-            libcameraProcess = builder.start();
-
-            logger.info("Started libcamera-vid process for video streaming");
-
-            // Initialize FFmpegFrameGrabber
-            frameGrabber = new OpenCVFrameGrabber(VIDEO_STREAM_URL);
-            frameGrabber.setFrameRate(parentSensor.getConfiguration().videoParameters.videoFrameRate);
-            frameGrabber.setFormat(VIDEO_FORMAT);
-            frameGrabber.setImageWidth(parentSensor.getConfiguration().videoParameters.videoFrameWidth);
-            frameGrabber.setImageHeight(parentSensor.getConfiguration().videoParameters.videoFrameHeight);
-            frameGrabber.setPixelFormat(AV_PIX_FMT_BGR24);
-//            frameGrabber.setOption("fifo_size", 1000000);
-//            frameGrabber.setOption("overrun_nonfatal", "1");
+        VideoParameters videoParameters = parentSensor.getConfiguration().videoParameters;
 
-            logger.info("Initialized OpenCVFrameGrabber");
-        } catch (Exception e) {
-            logger.error("Failed to initialize PiCameraOutput", e);
-            throw new SensorException("Failed to initialize libcamera and FrameGrabber", e);
-        }
+        outputMode = videoParameters.outputMode;
+
+        decoding = outputMode == OutputMode.MJPEG || previewOutput != null || stillOutput != null;
+
+        regionOfInterest = parentSensor.getConfiguration().regionOfInterest;
+
+        jpegQuality = videoParameters.jpegQuality;
+        streamFrameRate = videoParameters.videoFrameRate;
 
-        int videoFrameHeight = frameGrabber.getImageHeight();
-        int videoFrameWidth = frameGrabber.getImageWidth();
+        int videoFrameWidth = videoParameters.videoFrameWidth;
+        int videoFrameHeight = videoParameters.videoFrameHeight;
 
         // Get an instance of SWE Factory suitable to build components
         VideoCamHelper sweFactory = new VideoCamHelper();
 
-        DataStream outputDef = sweFactory.newVideoOutputMJPEG(getName(), videoFrameWidth, videoFrameHeight);
+        DataStream outputDef;
+
+        if (outputMode == OutputMode.H264) {
+
+            // Access units are published straight from the capture source dispatch thread
+            captureSource = new LibcameraCaptureSource(buildLibcameraArguments(videoParameters, regionOfInterest),
+                    videoParameters.sensorTimestamps, accessUnit -> {
+
+                lastAccessUnitNanos = System.nanoTime();
+
+                publishAccessUnit(accessUnit);
+
+                // Decoding for the preview and stills never holds back the main stream, the decoder
+                // skips to the next keyframe when it cannot keep up
+                if (decoding) {
+
+                    decoderInput.offer(accessUnit);
+                }
+            });
+
+            outputDef = sweFactory.newVideoOutputH264(getName(), videoFrameWidth, videoFrameHeight);
+
+        } else {
+
+            // Access units are replayed to the decoder running on the worker thread,
+            // the full frame is captured and the region of interest cropped before encoding
+            captureSource = new LibcameraCaptureSource(buildLibcameraArguments(videoParameters, null),
+                    videoParameters.sensorTimestamps, accessUnit -> {
+
+                lastAccessUnitNanos = System.nanoTime();
+
+                try {
+
+                    decoderInput.write(accessUnit);
+
+                } catch (InterruptedException e) {
+
+                    Thread.currentThread().interrupt();
+                }
+            });
+
+            pipeline = new FramePipeline(getName(), parentSensor.getConfiguration().pipelineParameters,
+                    this::createJpegEncoder, (frameTime, frameData) -> publishFrame(frameTime, frameData, true), telemetry);
+
+            outputDef = sweFactory.newVideoOutputMJPEG(getName(), videoFrameWidth, videoFrameHeight);
+        }
 
         dataStruct = outputDef.getElementType();
 
@@ -156,103 +260,218 @@ public class PiCameraOutput extends AbstractSensorOutput<PiCameraSensor> impleme
 
         dataEncoding = outputDef.getEncoding();
 
-        DataStream videoStream = sweFactory.newVideoOutputMJPEG(getName(), videoFrameWidth, videoFrameHeight);
-        DataComponent videoStreamOutput = videoStream.getElementType();
+        logger.debug("Initializing Output Complete");
+    }
+
+    /**
+     * Builds the libcamera-vid command line arguments from the video configuration
+     *
+     * @param videoParameters  Video configuration of the camera
+     * @param regionOfInterest Region cropped and scaled by libcamera, null for the full frame
+     * @return Arguments, not including the output destination
+     */
+    private List<String> buildLibcameraArguments(VideoParameters videoParameters, RegionOfInterest regionOfInterest) {
 
-        // TODO: Create data record description
+        List<String> arguments = new ArrayList<>();
 
-        dataStruct = sweFactory.createRecord()
-                .name(getName())
-                .definition(SENSOR_OUTPUT_LABEL)
-                .description("Video feed")
-                .addField("samplingTime", sweFactory.createTime()
-                        .asSamplingTimeIsoUTC())
-                .addField("videoFrame", videoStreamOutput)
-                .build();
+        int width = videoParameters.videoFrameWidth;
+        int height = videoParameters.videoFrameHeight;
 
-        dataEncoding = videoStream.getEncoding();
+        arguments.add("-n");
+        arguments.add("-t");
+        arguments.add("0");
+        arguments.add("--framerate");
+        arguments.add(String.valueOf(streamFrameRate));
 
-        logger.debug("Initializing Output Complete");
+        if (streamBitrate > 0) {
+
+            arguments.add("--bitrate");
+            arguments.add(String.valueOf(streamBitrate));
+        }
+
+        if (regionOfInterest != null && !regionOfInterest.isFullFrame()) {
+
+            // The ISP crops the sensor image, the encoder only sees the region at its output size
+            arguments.add("--roi");
+            arguments.add(regionOfInterest.x + "," + regionOfInterest.y + ","
+                    + regionOfInterest.width + "," + regionOfInterest.height);
+
+            width = regionOfInterest.outputWidth > 0 ? regionOfInterest.outputWidth
+                    : (int) Math.round(width * regionOfInterest.width);
+            height = regionOfInterest.outputHeight > 0 ? regionOfInterest.outputHeight
+                    : (int) Math.round(height * regionOfInterest.height);
+        }
+
+        arguments.add("--width");
+        arguments.add(String.valueOf(Math.max(2, width & ~1)));
+        arguments.add("--height");
+        arguments.add(String.valueOf(Math.max(2, height & ~1)));
+        arguments.add("--codec");
+        arguments.add(VIDEO_FORMAT);
+
+        // Repeat SPS/PPS before every IDR frame so the stream can be joined at any keyframe
+        arguments.add("--inline");
+
+        // Bounds how long a late joiner waits for its first decodable frame
+        if (videoParameters.intraPeriod > 0) {
+
+            arguments.add("--intra");
+            arguments.add(String.valueOf(videoParameters.intraPeriod));
+        }
+
+        return arguments;
     }
 
     /**
-     * Begins processing data for output
+     * Creates the JPEG encoder used by one encoder thread of the pipeline
+     *
+     * @return Encoder reusing its own native codec and conversion context for every frame
      */
-    public void doStart() throws SensorException {
+    private FramePipeline.FrameEncoder createJpegEncoder() {
 
-        // Instantiate a new worker thread
-        worker = new Thread(this, this.name);
+        MjpegEncoder encoder = new MjpegEncoder(jpegQuality);
 
-        // TODO: Perform other startup
+        return new FramePipeline.FrameEncoder() {
 
-        logger.info("Starting worker thread: {}", worker.getName());
-        logger.info("Starting frame grabber: {}", frameGrabber);
-//        logger.info("Frame grabber video codec: {}", frameGrabber.getVideoCodecName());
-//        logger.info("Frame grabber format: {}", frameGrabber.getFormat());
+            @Override
+            public byte[] encode(Frame frame) throws Exception {
 
-        if (frameGrabber != null) {
+                encoder.setQuality(jpegQuality);
 
-            try {
+                RegionOfInterest roi = regionOfInterest;
 
-                frameGrabber.start();
-                worker.start();
+                if (roi.isFullFrame()) {
 
-            } catch (FrameGrabber.Exception e) {
+                    return encoder.encode(frame);
+                }
 
-                logger.error("Failed to start FrameGrabber: {}", e.getMessage());
+                int cropX = (int) Math.round(roi.x * frame.imageWidth);
+                int cropY = (int) Math.round(roi.y * frame.imageHeight);
+                int cropWidth = (int) Math.round(roi.width * frame.imageWidth);
+                int cropHeight = (int) Math.round(roi.height * frame.imageHeight);
 
-                throw new SensorException("Failed to start FrameGrabber");
+                return encoder.encode(frame, cropX, cropY, cropWidth, cropHeight,
+                        roi.outputWidth > 0 ? roi.outputWidth : cropWidth,
+                        roi.outputHeight > 0 ? roi.outputHeight : cropHeight);
             }
 
-        } else {
+            @Override
+            public void close() {
+
+                encoder.close();
+            }
+        };
+    }
+
+    /**
+     * Begins processing data for output
+     */
+    public synchronized void doStart() throws SensorException {
+
+        synchronized (processingLock) {
+
+            stopProcessing = false;
+        }
+
+        lastAccessUnitNanos = 0;
+        lastDecodedNanos = 0;
 
-            logger.error("Failed to create FrameGrabber");
+        if (decoding) {
 
-            throw new SensorException("Failed to create FrameGrabber");
+            decoderInput = new AccessUnitInputStream(DECODER_QUEUE_CAPACITY);
         }
 
-        // Start the worker thread
-        //worker.start();
+        try {
+
+            captureSource.start();
+
+        } catch (Exception e) {
+
+            logger.error("Failed to start libcamera-vid: {}", e.getMessage());
+
+            throw new SensorException("Failed to start libcamera-vid", e);
+        }
+
+        if (pipeline != null) {
+
+            pipeline.start();
+        }
+
+        if (decoding) {
+
+            // Instantiate a new worker thread decoding the stream
+            worker = new Thread(this, this.name);
+
+            logger.info("Starting worker thread: {}", worker.getName());
+
+            worker.start();
+        }
     }
 
     /**
      * Terminates processing data for output
      */
-    public void doStop() {
+    public synchronized void doStop() {
 
         synchronized (processingLock) {
 
             stopProcessing = true;
         }
 
-//        if (frameGrabber != null) {
-//
-//            try {
-//
-//                frameGrabber.stop();
-//
-//            } catch(FrameGrabber.Exception e) {
-//
-//                logger.error("Failed to stop FrameGrabber: {}", e.getMessage());
-//
-//            }
-//
-//        }
+        // Unblocks the decoder waiting for more data
+        if (decoderInput != null) {
 
-        try {
-            if (frameGrabber != null) {
-                frameGrabber.stop();
-                logger.info("FrameGrabber stopped");
-            }
-            if (libcameraProcess != null) {
-                libcameraProcess.destroy();
-                logger.info("libcamera-vid process stopped");
+            decoderInput.close();
+        }
+
+        if (captureSource != null) {
+
+            captureSource.stop();
+        }
+
+        // Lets the decoder drain before the pipeline stops, so a quick restart starts from a clean state
+        if (worker != null && worker != Thread.currentThread()) {
+
+            try {
+
+                worker.join(WORKER_JOIN_TIMEOUT_MILLIS);
+
+            } catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
             }
-        } catch (Exception e) {
-            logger.error("Error stopping PiCameraOutput", e);
         }
 
-        // TODO: Perform other shutdown procedures
+        if (pipeline != null) {
+
+            pipeline.stop();
+        }
+    }
+
+    /**
+     * Changes the region of the frame published. In MJPEG mode the encoders apply it from the next
+     * frame on, in H.264 mode libcamera-vid is restarted to crop and scale the camera stream.
+     *
+     * @param regionOfInterest Region of the frame and output size
+     * @throws SensorException if libcamera-vid fails to restart
+     */
+    public synchronized void setRegionOfInterest(RegionOfInterest regionOfInterest) throws SensorException {
+
+        this.regionOfInterest = regionOfInterest;
+
+        if (outputMode == OutputMode.H264) {
+
+            captureSource.setArguments(buildLibcameraArguments(parentSensor.getConfiguration().videoParameters,
+                    regionOfInterest));
+
+            if (captureSource.isAlive()) {
+
+                logger.info("Restarting libcamera-vid with new region of interest");
+
+                doStop();
+                doStart();
+            }
+        }
     }
 
     /**
@@ -262,7 +481,134 @@ public class PiCameraOutput extends AbstractSensorOutput<PiCameraSensor> impleme
      */
     public boolean isAlive() {
 
-        return worker.isAlive();
+        if (!decoding) {
+
+            return captureSource.isAlive();
+        }
+
+        return worker != null && worker.isAlive() && captureSource.isAlive();
+    }
+
+    /**
+     * @return Latency histograms of the frame path, updated for every published frame
+     */
+    public LatencyTelemetry getTelemetry() {
+
+        return telemetry;
+    }
+
+    /**
+     * Retrieves the time of the latest progress of the camera stream, used to detect stalls
+     *
+     * @return {@link System#nanoTime()} of the latest access unit, or of the latest decoded picture if
+     * older when the stream is decoded, 0 if either has not arrived since the output was started
+     */
+    public long getLastFrameNanos() {
+
+        long accessUnitNanos = lastAccessUnitNanos;
+
+        if (!decoding || accessUnitNanos == 0) {
+
+            return accessUnitNanos;
+        }
+
+        long decodedNanos = lastDecodedNanos;
+
+        return decodedNanos == 0 ? 0 : Math.min(accessUnitNanos, decodedNanos);
+    }
+
+    public long getPublishedCount() {
+
+        return publishedCount;
+    }
+
+    /**
+     * @return Fill ratio of the encode queue from 0 to 1, always 0 in H.264 mode
+     */
+    public double getQueueFill() {
+
+        if (pipeline == null) {
+
+            return 0;
+        }
+
+        return pipeline.getQueueSize() / (double) Math.max(1, parentSensor.getConfiguration().pipelineParameters.queueCapacity);
+    }
+
+    /**
+     * Changes the JPEG quality and frame rate of the MJPEG stream, applied from the next decoded frame on
+     *
+     * @param quality   JPEG quality from 1 to 100
+     * @param frameRate Maximum number of frames encoded per second, frames in excess are skipped before encoding
+     */
+    public void setStreamQuality(int quality, int frameRate) {
+
+        jpegQuality = quality;
+
+        minFrameIntervalMillis = frameRate > 0 && frameRate < streamFrameRate ? 1000L / frameRate : 0;
+    }
+
+    /**
+     * Changes the bitrate and frame rate of the H.264 stream, libcamera-vid is restarted to apply them
+     *
+     * @param bitrate   Bitrate in bits per second
+     * @param frameRate Frame rate of the camera
+     * @throws SensorException if libcamera-vid fails to restart
+     */
+    public synchronized void setStreamRate(int bitrate, int frameRate) throws SensorException {
+
+        if (outputMode != OutputMode.H264) {
+
+            return;
+        }
+
+        streamBitrate = bitrate;
+        streamFrameRate = frameRate;
+
+        captureSource.setArguments(buildLibcameraArguments(parentSensor.getConfiguration().videoParameters,
+                regionOfInterest));
+
+        if (captureSource.isAlive()) {
+
+            doStop();
+            doStart();
+        }
+    }
+
+    public synchronized int getStreamBitrate() {
+
+        return streamBitrate;
+    }
+
+    public synchronized int getStreamFrameRate() {
+
+        return streamFrameRate;
+    }
+
+    /**
+     * @return Number of access units dropped by the capture source plus decoded frames dropped by the
+     * encode pipeline, the latter always 0 in H.264 mode
+     */
+    public long getDroppedCount() {
+
+        return (captureSource != null ? captureSource.getDroppedCount() : 0)
+                + (pipeline != null ? pipeline.getDroppedCount() : 0);
+    }
+
+    @Override
+    public void registerListener(IEventListener listener) {
+
+        super.registerListener(listener);
+
+        parentSensor.listenersChanged();
+    }
+
+    @Override
+    public void unregisterListener(IEventListener listener) {
+
+        super.unregisterListener(listener);
+
+        parentSensor.listenersChanged();
     }
 
     @Override
@@ -281,6 +627,7 @@ public class PiCameraOutput extends AbstractSensorOutput<PiCameraSensor> impleme
     public double getAverageSamplingPeriod() {
 
         long accumulator = 0;
+        int sampleCount;
 
         synchronized (histogramLock) {
 
@@ -288,196 +635,225 @@ public class PiCameraOutput extends AbstractSensorOutput<PiCameraSensor> impleme
 
                 accumulator += timingHistogram[idx];
             }
+
+            sampleCount = Math.min(setCount, MAX_NUM_TIMING_SAMPLES);
+        }
+
+        // Frame times are in milliseconds, the sampling period in seconds
+        return sampleCount > 0 ? accumulator / (sampleCount * 1000d) : 0;
+    }
+
+    /**
+     * Publishes an encoded access unit, the payload is handed over without any copy or transcoding
+     *
+     * @param accessUnit Complete access unit parsed from the camera byte stream
+     */
+    private void publishAccessUnit(AccessUnit accessUnit) {
+
+        publishFrame(accessUnit.getTimestamp(), accessUnit.getData(), accessUnit.isKeyFrame());
+    }
+
+    /**
+     * Populates a new record with the frame and publishes it
+     *
+     * @param frameTime Frame time in milliseconds since epoch
+     * @param frameData Encoded frame
+     * @param keyFrame  True if the frame can be decoded on its own
+     */
+    private void publishFrame(long frameTime, byte[] frameData, boolean keyFrame) {
+
+        DataBlock dataBlock;
+        if (latestRecord == null) {
+
+            dataBlock = dataStruct.createDataBlock();
+
+        } else {
+
+            dataBlock = latestRecord.renew();
+        }
+
+        updateTimingHistogram(frameTime);
+
+        // Populate sampling time
+        dataBlock.setDoubleValue(0, frameTime / 1000d);
+
+        // Populate frame data
+        AbstractDataBlock frameBlock = ((DataBlockMixed) dataBlock).getUnderlyingObject()[1];
+        frameBlock.setUnderlyingObject(frameData);
+
+        long publishStart = System.nanoTime();
+
+        // Set latest record and publish the event
+        latestRecord = dataBlock;
+        latestRecordTime = System.currentTimeMillis();
+
+        eventHandler.publish(new DataEvent(latestRecordTime, this, dataBlock));
+
+        telemetry.record(LatencyTelemetry.Stage.PUBLISH, System.nanoTime() - publishStart);
+
+        // The payload is shared with the published record, neither modifies it
+        if (clipRecorder != null) {
+
+            clipRecorder.addFrame(frameTime, frameData, keyFrame);
+        }
+        long latency = System.currentTimeMillis() - frameTime;
+
+        telemetry.recordMillis(LatencyTelemetry.Stage.TOTAL, latency);
+
+        if (regulator != null) {
+
+            regulator.recordFrame(frameData.length, latency);
+        }
+
+        ++publishedCount;
+    }
+
+    /**
+     * Decimates the decoded frames to the frame rate set by the regulator, on the grab thread only
+     */
+    private boolean isFrameDue(long frameTime) {
+
+        long interval = minFrameIntervalMillis;
+
+        if (interval == 0) {
+
+            return true;
         }
 
-        return accumulator / (double) MAX_NUM_TIMING_SAMPLES;
+        if (frameTime < nextEncodedFrameTime) {
+
+            return false;
+        }
+
+        // Keep the cadence aligned on the schedule, unless it fell behind by more than one interval
+        nextEncodedFrameTime = frameTime - nextEncodedFrameTime > interval ? frameTime + interval
+                : nextEncodedFrameTime + interval;
+
+        return true;
     }
 
+    private void updateTimingHistogram(long frameTime) {
+
+        synchronized (histogramLock) {
+
+            if (lastFrameTime > 0) {
+
+                timingHistogram[setCount % MAX_NUM_TIMING_SAMPLES] = frameTime - lastFrameTime;
+
+                ++setCount;
+            }
+
+            lastFrameTime = frameTime;
+        }
+    }
+
+    /**
+     * Grab thread decoding the access units from the capture source and feeding the encode pipeline, the preview
+     * and the stills
+     */
     @Override
     public void run() {
-        System.out.println("Running video feed display");
-//        CanvasFrame canvasFrame = new CanvasFrame("Raspberry Pi Camera");
-
-        // Set canvas size and make it visible
-//        canvasFrame.setSize(parentSensor.getConfiguration().videoParameters.videoFrameWidth,
-//                parentSensor.getConfiguration().videoParameters.videoFrameHeight);
-//        canvasFrame.setVisible(true);
 
         boolean processSets = true;
-        long lastSetTimeMillis = System.currentTimeMillis();
+
+        // A worker left behind by a restart keeps working on its own stream and grabber
+        AccessUnitInputStream input = decoderInput;
+        FrameGrabber frameGrabber = null;
 
         try {
-//            frameGrabber.start();
-//            System.out.println("Frame grabber started successfully");
+
+            frameGrabber = new FFmpegFrameGrabber(input, 0);
+            frameGrabber.setFormat(VIDEO_FORMAT);
+            frameGrabber.setPixelFormat(AV_PIX_FMT_BGR24);
+
+            // Raw H.264 needs little probing, keep startup latency low
+            frameGrabber.setOption("probesize", "32768");
+            frameGrabber.setOption("fflags", "nobuffer");
+
+            // The raw H.264 demuxer stamps its n-th packet n frame periods after the first one
+            frameGrabber.setOption("framerate", String.valueOf(DECODER_FRAME_RATE));
+
+            frameGrabber.start();
+
+            logger.info("Started H.264 decoder");
 
             while (processSets) {
-                // Grab the next frame
+
                 Frame frame = frameGrabber.grab();
-                logger.debug("Frame grabber started successfully {}", frame);
 
-                if (frame != null) {
-                    // Show the frame on the CanvasFrame
-//                    canvasFrame.showImage(frame);
+                if (frame == null) {
 
-                    // Publish data event
-                    DataBlock dataBlock;
-                    if (latestRecord == null) {
-                        dataBlock = dataStruct.createDataBlock();
-                        System.out.println("Created dataBlock");
-                    } else {
-                        dataBlock = latestRecord.renew();
-                    }
+                    logger.info("End of decoded stream");
 
-                    synchronized (histogramLock) {
-                        int setIndex = setCount % MAX_NUM_TIMING_SAMPLES;
+                    break;
+                }
 
-                        // Record sampling time
-                        timingHistogram[setIndex] = System.currentTimeMillis() - lastSetTimeMillis;
+                if (frame.image == null) {
 
-                        // Update last sampling time
-                        lastSetTimeMillis = System.currentTimeMillis();
-                    }
+                    continue;
+                }
 
-                    setCount++;
+                lastDecodedNanos = System.nanoTime();
 
-                    double timestamp = System.currentTimeMillis() / 1000d;
+                // Access units that produced no picture are skipped, rather than shifting the times of the next ones
+                long accessUnitSequence = Math.round(frameGrabber.getTimestamp() * DECODER_FRAME_RATE / 1e6);
+                long frameTime = input.pollTimestamp(accessUnitSequence);
 
-                    // Populate sampling time
-                    dataBlock.setDoubleValue(0, timestamp);
-                    System.out.println("Timestamp");
+                if (frameTime < 0) {
 
+                    frameTime = System.currentTimeMillis();
 
-                    // Extract frame data as byte array and populate videoFrame field
-                    AbstractDataBlock frameData = ((DataBlockMixed) dataBlock).getUnderlyingObject()[1];
-                    System.out.println("Extracted frame data");
+                } else {
+
+                    telemetry.recordMillis(LatencyTelemetry.Stage.GRAB, System.currentTimeMillis() - frameTime);
+                }
 
-                    BufferedImage image = new Java2DFrameConverter().convert(frame);
-                    System.out.println("Converted frame data");
+                // Encoding and publishing happen on the pipeline threads
+                if (pipeline != null && isFrameDue(frameTime)) {
 
-                    ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-                    ImageIO.write(image, "jpg", byteArrayOutputStream);
-                    byteArrayOutputStream.flush();
-                    System.out.println("Write jpg");
+                    pipeline.submit(frame, frameTime);
+                }
 
+                if (previewOutput != null) {
 
-                    byte[] imageData = byteArrayOutputStream.toByteArray();
-                    byteArrayOutputStream.close();
-                    System.out.println("Set byte array");
+                    previewOutput.submit(frame, frameTime);
+                }
 
-                    // Publish byte array to data record
-                    frameData.setUnderlyingObject(imageData);
+                if (stillOutput != null) {
 
-                    // Set latest record and publish the event
-                    latestRecord = dataBlock;
-                    latestRecordTime = System.currentTimeMillis();
+                    stillOutput.submit(frame, frameTime);
+                }
 
-                    eventHandler.publish(new DataEvent(latestRecordTime, this, dataBlock));
+                synchronized (processingLock) {
 
-                    synchronized (processingLock) {
-                        processSets = !stopProcessing;
-                    }
+                    processSets = !stopProcessing;
                 }
             }
+
         } catch (Exception e) {
-            logger.error("Error displaying video feed or processing data", e);
+
+            logger.error("Error in worker thread: {}", Thread.currentThread().getName(), e);
+
         } finally {
+
             try {
-                frameGrabber.stop();
-//                canvasFrame.dispose();
+
+                if (frameGrabber != null) {
+
+                    frameGrabber.stop();
+                    frameGrabber.release();
+                }
+
             } catch (Exception e) {
-                logger.error("Error stopping FrameGrabber or disposing CanvasFrame", e);
+
+                logger.error("Error stopping FrameGrabber", e);
             }
 
-            // Reset the flag for restarting
+            // Reset the flag so that when driver is restarted loop thread continues
+            // until doStop called on the output again
             stopProcessing = false;
+
+            logger.debug("Terminating worker thread: {}", this.name);
         }
     }
-
-//    @Override
-//    public void run() {
-//
-//        boolean processSets = true;
-//
-//        long lastSetTimeMillis = System.currentTimeMillis();
-//
-//        try {
-//
-//            while (processSets) {
-//
-//                Frame frame = frameGrabber.grab();
-//
-//                DataBlock dataBlock;
-//                if (latestRecord == null) {
-//
-//                    dataBlock = dataStruct.createDataBlock();
-//
-//                } else {
-//
-//                    dataBlock = latestRecord.renew();
-//                }
-//
-//                synchronized (histogramLock) {
-//
-//                    int setIndex = setCount % MAX_NUM_TIMING_SAMPLES;
-//
-//                    // Get a sampling time for latest set based on previous set sampling time
-//                    timingHistogram[setIndex] = System.currentTimeMillis() - lastSetTimeMillis;
-//
-//                    // Set latest sampling time to now
-//                    lastSetTimeMillis = timingHistogram[setIndex];
-//                }
-//
-//                ++setCount;
-//
-//                double timestamp = System.currentTimeMillis() / 1000d;
-//
-//                // populate sample time
-//                dataBlock.setDoubleValue(0, timestamp);
-//
-//                // extract frame data as byte array and populate videoFrame field
-//                AbstractDataBlock frameData = ((DataBlockMixed) dataBlock).getUnderlyingObject()[1];
-//
-//                BufferedImage image = new Java2DFrameConverter().convert(frame);
-//
-//                ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-//
-//                byte[] imageData;
-//
-//                ImageIO.write(image,"jpg",byteArrayOutputStream);
-//
-//                byteArrayOutputStream.flush();
-//
-//                imageData = byteArrayOutputStream.toByteArray();
-//
-//                byteArrayOutputStream.close();
-//
-//                // publish byte array to data record
-//
-//                frameData.setUnderlyingObject(imageData);
-//
-//                latestRecord = dataBlock;
-//
-//                latestRecordTime = System.currentTimeMillis();
-//
-//                eventHandler.publish(new DataEvent(latestRecordTime, com.sample.impl.sensor.rpicam.PiCameraOutput.this, dataBlock));
-//
-//                synchronized (processingLock) {
-//
-//                    processSets = !stopProcessing;
-//                }
-//            }
-//
-//        } catch (Exception e) {
-//
-//            logger.error("Error in worker thread: {}", Thread.currentThread().getName(), e);
-//
-//        } finally {
-//
-//            // Reset the flag so that when driver is restarted loop thread continues
-//            // until doStop called on the output again
-//            stopProcessing = false;
-//
-//            logger.debug("Terminating worker thread: {}", this.name);
-//        }
-//    }
 }
@@ -0,0 +1,359 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam;
+
+import com.sample.impl.sensor.rpicam.config.PreviewParameters;
+import com.sample.impl.sensor.rpicam.helpers.LatencyTelemetry;
+import com.sample.impl.utils.camera.MjpegEncoder;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataComponent;
+import net.opengis.swe.v20.DataEncoding;
+import net.opengis.swe.v20.DataStream;
+import org.bytedeco.javacv.Frame;
+import org.sensorhub.api.data.DataEvent;
+import org.sensorhub.api.event.IEventListener;
+import org.sensorhub.impl.sensor.AbstractSensorOutput;
+import org.sensorhub.impl.sensor.videocam.VideoCamHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vast.data.AbstractDataBlock;
+import org.vast.data.DataBlockMixed;
+
+/**
+ * Low resolution MJPEG preview of the {@link PiCameraOutput} video feed.
+ * <p>
+ * The preview is built from the pictures already decoded by the main output, decimated to the preview
+ * frame rate. Each selected picture is copied into a latest-frame slot, a triple buffer shared with a
+ * dedicated encoder thread, so the grab thread of the main stream never waits for the preview. While the
+ * encoder is busy, a newer picture replaces the one waiting in the slot. The encoder downscales and
+ * converts each picture in the single swscale pass of the JPEG encoder.
+ *
+ * @author your_name
+ * @since date
+ */
+public class PiCameraPreviewOutput extends AbstractSensorOutput<PiCameraSensor> {
+
+    private static final String SENSOR_OUTPUT_NAME = "PiCameraPreview";
+    private static final String SENSOR_OUTPUT_LABEL = "CameraPreview";
+    private static final String SENSOR_OUTPUT_DESCRIPTION = "Pi Camera Low Resolution Video Preview";
+
+    private static final Logger logger = LoggerFactory.getLogger(PiCameraPreviewOutput.class);
+
+    private DataComponent dataStruct;
+    private DataEncoding dataEncoding;
+
+    private static final long THREAD_JOIN_TIMEOUT_MILLIS = 2000;
+
+    /**
+     * Triple buffer: written by the grab thread, latest picture waiting, encoded by the encoder thread
+     */
+    private final Object slotLock = new Object();
+    private Frame writeFrame;
+    private Frame latestFrame;
+    private Frame workFrame;
+    private long latestFrameTime;
+    private long latestQueuedNanos;
+    private boolean hasLatest = false;
+
+    private Thread encoderThread;
+    private volatile boolean running = false;
+    private volatile long droppedCount = 0;
+
+    private final LatencyTelemetry telemetry = new LatencyTelemetry();
+
+    private long framePeriodMillis;
+    private long nextFrameTime = 0;
+
+    /**
+     * Constructor
+     *
+     * @param parentSensor Sensor driver providing this output
+     */
+    PiCameraPreviewOutput(PiCameraSensor parentSensor) {
+
+        super(SENSOR_OUTPUT_NAME, parentSensor);
+
+        logger.debug("PiCameraPreviewOutput created");
+    }
+
+    /**
+     * Initializes the data structure for the output, defining the fields, their ordering,
+     * and data types.
+     */
+    void doInit() {
+
+        logger.debug("Initializing PiCameraPreviewOutput");
+
+        PreviewParameters previewParameters = parentSensor.getConfiguration().previewParameters;
+
+        framePeriodMillis = 1000L / Math.max(1, previewParameters.previewFrameRate);
+
+        VideoCamHelper sweFactory = new VideoCamHelper();
+
+        DataStream outputDef = sweFactory.newVideoOutputMJPEG(getName(),
+                previewParameters.previewFrameWidth, previewParameters.previewFrameHeight);
+
+        dataStruct = outputDef.getElementType();
+
+        dataStruct.setLabel(SENSOR_OUTPUT_LABEL);
+
+        dataStruct.setDescription(SENSOR_OUTPUT_DESCRIPTION);
+
+        dataEncoding = outputDef.getEncoding();
+
+        logger.debug("Initializing PiCameraPreviewOutput Complete");
+    }
+
+    /**
+     * Begins accepting decoded pictures
+     */
+    public synchronized void doStart() {
+
+        if (running) {
+
+            return;
+        }
+
+        nextFrameTime = 0;
+
+        synchronized (slotLock) {
+
+            hasLatest = false;
+        }
+
+        running = true;
+
+        // A single encoder is plenty for small pictures, and only the latest picture is worth encoding
+        encoderThread = new Thread(this::encodeFrames, getName() + "-encoder");
+        encoderThread.start();
+    }
+
+    /**
+     * Stops accepting decoded pictures, the picture waiting in the slot is discarded
+     */
+    public synchronized void doStop() {
+
+        if (!running) {
+
+            return;
+        }
+
+        running = false;
+
+        synchronized (slotLock) {
+
+            slotLock.notifyAll();
+        }
+
+        try {
+
+            encoderThread.join(THREAD_JOIN_TIMEOUT_MILLIS);
+
+            if (encoderThread.isAlive()) {
+
+                encoderThread.interrupt();
+            }
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+        }
+
+        encoderThread = null;
+    }
+
+    /**
+     * Offers a picture decoded by the main output, to be called from its grab thread only. Never waits
+     * for the encoder. Pictures arriving before the next preview frame is due are ignored.
+     *
+     * @param frame     Decoded picture, copied if selected
+     * @param frameTime Frame time in milliseconds since epoch
+     */
+    void submit(Frame frame, long frameTime) {
+
+        if (!running || frameTime < nextFrameTime) {
+
+            return;
+        }
+
+        // Keep the preview cadence aligned on the schedule, unless it fell behind by more than one period
+        nextFrameTime = frameTime - nextFrameTime > framePeriodMillis ? frameTime + framePeriodMillis
+                : nextFrameTime + framePeriodMillis;
+
+        long convertStart = System.nanoTime();
+
+        writeFrame = FramePipeline.copyFrame(frame, writeFrame);
+
+        long queuedNanos = System.nanoTime();
+
+        telemetry.record(LatencyTelemetry.Stage.CONVERT, queuedNanos - convertStart);
+
+        synchronized (slotLock) {
+
+            if (hasLatest) {
+
+                // The encoder did not get to the previous picture, it is replaced by this one
+                ++droppedCount;
+            }
+
+            Frame buffer = latestFrame;
+            latestFrame = writeFrame;
+            writeFrame = buffer;
+
+            latestFrameTime = frameTime;
+            latestQueuedNanos = queuedNanos;
+            hasLatest = true;
+
+            slotLock.notifyAll();
+        }
+    }
+
+    /**
+     * @return Number of pictures replaced in the slot before the encoder got to them
+     */
+    public long getDroppedCount() {
+
+        return droppedCount;
+    }
+
+    /**
+     * @return Latency histograms of the preview encode path
+     */
+    public LatencyTelemetry getTelemetry() {
+
+        return telemetry;
+    }
+
+    @Override
+    public void registerListener(IEventListener listener) {
+
+        super.registerListener(listener);
+
+        parentSensor.listenersChanged();
+    }
+
+    @Override
+    public void unregisterListener(IEventListener listener) {
+
+        super.unregisterListener(listener);
+
+        parentSensor.listenersChanged();
+    }
+
+    @Override
+    public DataComponent getRecordDescription() {
+
+        return dataStruct;
+    }
+
+    @Override
+    public DataEncoding getRecommendedEncoding() {
+
+        return dataEncoding;
+    }
+
+    @Override
+    public double getAverageSamplingPeriod() {
+
+        return framePeriodMillis / 1000d;
+    }
+
+    private void encodeFrames() {
+
+        PreviewParameters previewParameters = parentSensor.getConfiguration().previewParameters;
+
+        MjpegEncoder encoder = new MjpegEncoder(previewParameters.previewFrameWidth,
+                previewParameters.previewFrameHeight, previewParameters.jpegQuality);
+
+        try {
+
+            while (true) {
+
+                long frameTime;
+                long queuedNanos;
+
+                synchronized (slotLock) {
+
+                    while (running && !hasLatest) {
+
+                        slotLock.wait();
+                    }
+
+                    if (!running) {
+
+                        break;
+                    }
+
+                    Frame buffer = workFrame;
+                    workFrame = latestFrame;
+                    latestFrame = buffer;
+
+                    frameTime = latestFrameTime;
+                    queuedNanos = latestQueuedNanos;
+                    hasLatest = false;
+                }
+
+                long encodeStart = System.nanoTime();
+
+                telemetry.record(LatencyTelemetry.Stage.QUEUE, encodeStart - queuedNanos);
+
+                try {
+
+                    byte[] frameData = encoder.encode(workFrame);
+
+                    telemetry.record(LatencyTelemetry.Stage.ENCODE, System.nanoTime() - encodeStart);
+
+                    publishFrame(frameTime, frameData);
+
+                } catch (Exception e) {
+
+                    logger.error("Failed to encode or publish preview frame", e);
+                }
+            }
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+
+        } finally {
+
+            encoder.close();
+        }
+
+        logger.debug("Terminating preview encoder thread");
+    }
+
+    private void publishFrame(long frameTime, byte[] frameData) {
+
+        DataBlock dataBlock;
+        if (latestRecord == null) {
+
+            dataBlock = dataStruct.createDataBlock();
+
+        } else {
+
+            dataBlock = latestRecord.renew();
+        }
+
+        dataBlock.setDoubleValue(0, frameTime / 1000d);
+
+        AbstractDataBlock frameBlock = ((DataBlockMixed) dataBlock).getUnderlyingObject()[1];
+        frameBlock.setUnderlyingObject(frameData);
+
+        latestRecord = dataBlock;
+        latestRecordTime = System.currentTimeMillis();
+
+        eventHandler.publish(new DataEvent(latestRecordTime, this, dataBlock));
+    }
+}
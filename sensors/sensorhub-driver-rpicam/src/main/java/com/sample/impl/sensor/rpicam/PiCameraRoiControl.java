@@ -0,0 +1,124 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam;
+
+import com.sample.impl.sensor.rpicam.config.RegionOfInterest;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataComponent;
+import net.opengis.swe.v20.DataRecord;
+import org.sensorhub.api.command.CommandException;
+import org.sensorhub.api.sensor.SensorException;
+import org.sensorhub.impl.sensor.AbstractSensorControl;
+import org.vast.swe.SWEHelper;
+
+/**
+ * Control input setting the region of interest of {@link PiCameraSensor} at runtime: the part of the
+ * frame to publish and the size it is scaled to.
+ *
+ * @author your_name
+ * @since date
+ */
+public class PiCameraRoiControl extends AbstractSensorControl<PiCameraSensor> {
+
+    private static final String SENSOR_CONTROL_NAME = "PiCameraRoiControl";
+
+    private DataRecord commandDataStruct;
+
+    protected PiCameraRoiControl(PiCameraSensor parentSensor) {
+
+        super(SENSOR_CONTROL_NAME, parentSensor);
+    }
+
+    @Override
+    public DataComponent getCommandDescription() {
+
+        return commandDataStruct;
+    }
+
+    @Override
+    protected boolean execCommand(DataBlock cmdData) throws CommandException {
+
+        RegionOfInterest regionOfInterest = new RegionOfInterest();
+
+        int index = 0;
+
+        regionOfInterest.x = cmdData.getDoubleValue(index++);
+        regionOfInterest.y = cmdData.getDoubleValue(index++);
+        regionOfInterest.width = cmdData.getDoubleValue(index++);
+        regionOfInterest.height = cmdData.getDoubleValue(index++);
+        regionOfInterest.outputWidth = cmdData.getIntValue(index++);
+        regionOfInterest.outputHeight = cmdData.getIntValue(index);
+
+        if (!regionOfInterest.isValid()) {
+
+            throw new CommandException("Region of interest must lie within the frame and output size cannot be negative");
+        }
+
+        try {
+
+            parentSensor.setRegionOfInterest(regionOfInterest);
+
+        } catch (SensorException e) {
+
+            throw new CommandException("Failed to apply region of interest", e);
+        }
+
+        return true;
+    }
+
+    protected void init() {
+
+        SWEHelper sweFactory = new SWEHelper();
+
+        commandDataStruct = sweFactory.createRecord()
+                .name(getName())
+                .label("Region Of Interest")
+                .updatable(true)
+                .definition(SWEHelper.getPropertyUri("RegionOfInterest"))
+                .description("Crops the published frames to a region of the sensor image and scales them")
+                .addField("x", sweFactory.createQuantity()
+                        .label("Left")
+                        .description("Left edge of the region, as a fraction of the frame width")
+                        .addAllowedInterval(0, 1)
+                        .uomCode("1")
+                        .value(0.0))
+                .addField("y", sweFactory.createQuantity()
+                        .label("Top")
+                        .description("Top edge of the region, as a fraction of the frame height")
+                        .addAllowedInterval(0, 1)
+                        .uomCode("1")
+                        .value(0.0))
+                .addField("width", sweFactory.createQuantity()
+                        .label("Width")
+                        .description("Width of the region, as a fraction of the frame width")
+                        .addAllowedInterval(0, 1)
+                        .uomCode("1")
+                        .value(1.0))
+                .addField("height", sweFactory.createQuantity()
+                        .label("Height")
+                        .description("Height of the region, as a fraction of the frame height")
+                        .addAllowedInterval(0, 1)
+                        .uomCode("1")
+                        .value(1.0))
+                .addField("outputWidth", sweFactory.createCount()
+                        .label("Output Width")
+                        .description("Width of the published frames in pixels, 0 to keep the width of the region")
+                        .value(0))
+                .addField("outputHeight", sweFactory.createCount()
+                        .label("Output Height")
+                        .description("Height of the published frames in pixels, 0 to keep the height of the region")
+                        .value(0))
+                .build();
+    }
+}
@@ -19,13 +19,23 @@ package com.sample.impl.sensor.rpicam;
 //import com.pi4j.plugin.pigpio.provider.gpio.digital.PiGpioDigitalInputProvider;
 //import com.pi4j.plugin.pigpio.provider.pwm.PiGpioPwmProvider;
 //import com.pi4j.plugin.raspberrypi.platform.RaspberryPiPlatform;
+import com.sample.impl.sensor.rpicam.config.AdaptiveParameters;
+import com.sample.impl.sensor.rpicam.config.ClipParameters;
+import com.sample.impl.sensor.rpicam.config.OnDemandParameters;
+import com.sample.impl.sensor.rpicam.config.OutputMode;
+import com.sample.impl.sensor.rpicam.config.RegionOfInterest;
 import net.opengis.sensorml.v20.PhysicalSystem;
 import org.sensorhub.api.common.SensorHubException;
+import org.sensorhub.api.event.EventUtils;
+import org.sensorhub.api.sensor.SensorException;
 import org.sensorhub.impl.sensor.AbstractSensorModule;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.vast.sensorML.SMLHelper;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static com.pi4j.plugin.pigpio.provider.gpio.digital.PiGpioDigitalOutputProvider.*;
 
 /**
@@ -41,6 +51,18 @@ public class PiCameraSensor extends AbstractSensorModule<PiCameraConfig> {
 //    Context pi4j;
 //    ServoMotor servoMotor;
     PiCameraOutput output;
+    PiCameraPreviewOutput previewOutput;
+    PiCameraStillOutput stillOutput;
+    PiCameraStillControl stillControl;
+    PiCameraTelemetryOutput telemetryOutput;
+    OnDemandCapture onDemandCapture;
+    CaptureWatchdog watchdog;
+    BackpressureRegulator regulator;
+    PiCameraRoiControl roiControl;
+    PiCameraClipOutput clipOutput;
+    ClipRecorder clipRecorder;
+    PiCameraClipControl clipControl;
+    PiCameraTimeLapseOutput timeLapseOutput;
 
     @Override
     protected void updateSensorDescription() {
@@ -77,14 +99,108 @@ public class PiCameraSensor extends AbstractSensorModule<PiCameraConfig> {
         generateUniqueID("urn:osh:sensor:", config.serialNumber);
         generateXmlID("PI_CAMERA", config.serialNumber);
 
+        // In time-lapse mode the camera is only opened for each shot, so none of the video outputs exist
+        timeLapseOutput = null;
+
+        if (config.timeLapseParameters.enabled) {
+
+            initTimeLapse();
+
+            return;
+        }
+
+        // In on-demand mode the camera only runs while the video outputs have subscribers on the event bus
+        OnDemandParameters onDemandParameters = config.onDemandParameters;
+
+        onDemandCapture = null;
+
+        if (onDemandParameters.enabled) {
+
+            onDemandCapture = new OnDemandCapture(new OnDemandCapture.CaptureControl() {
+
+                @Override
+                public void startCapture() throws SensorHubException {
+
+                    PiCameraSensor.this.startCapture();
+                }
+
+                @Override
+                public void stopCapture() {
+
+                    PiCameraSensor.this.stopCapture();
+                }
+
+            }, this::getVideoSubscriberCount, onDemandParameters.idleGracePeriod * 1000L);
+        }
+
         // Create and initialize output
         output = new PiCameraOutput(this);
 
         addOutput(output, false);
         addLocationOutput(1.0);
 
+        // Preview built from the pictures decoded for the main output, in the same camera session
+        previewOutput = null;
+
+        if (config.previewParameters.enabled) {
+
+            previewOutput = new PiCameraPreviewOutput(this);
+
+            addOutput(previewOutput, false);
+
+            previewOutput.doInit();
+        }
+
+        // Full resolution stills taken from the same camera session
+        stillOutput = null;
+        stillControl = null;
+
+        if (config.stillParameters.enabled) {
+
+            stillOutput = new PiCameraStillOutput(this);
+
+            addOutput(stillOutput, false);
+
+            stillOutput.doInit();
+
+            stillControl = new PiCameraStillControl(this);
+
+            addControlInput(stillControl);
+
+            stillControl.init();
+        }
+
+        // Lowers the stream quality while subscribers cannot keep up, starting from the highest
+        AdaptiveParameters adaptiveParameters = config.adaptiveParameters;
+
+        regulator = adaptiveParameters.enabled
+                ? new BackpressureRegulator(output, adaptiveParameters, config.videoParameters) : null;
+
+        output.setPreviewOutput(previewOutput);
+        output.setStillOutput(stillOutput);
+        output.setRegulator(regulator, null != regulator ? adaptiveParameters.maxBitrate : 0);
         output.doInit();
 
+        // Video preceding and following triggered events, kept in memory until needed
+        initClipRecorder();
+
+        // Restarts the camera session when frames stop arriving
+        watchdog = config.watchdogParameters.enabled ? new CaptureWatchdog(output, config.watchdogParameters) : null;
+
+        // Crop and scale of the published frames at runtime
+        roiControl = new PiCameraRoiControl(this);
+
+        addControlInput(roiControl);
+
+        roiControl.init();
+
+        // Latency of the frame path, reported as a status output
+        telemetryOutput = new PiCameraTelemetryOutput(this, output);
+
+        addOutput(telemetryOutput, true);
+
+        telemetryOutput.doInit();
+
         // check config for whether you connect to GPIO
 //        if(config.isGPIOConnected) {
 //
@@ -121,10 +237,23 @@ public class PiCameraSensor extends AbstractSensorModule<PiCameraConfig> {
     @Override
     public void doStart() throws SensorHubException {
 
-        if (null != output) {
+        if (null != timeLapseOutput) {
 
-            // Allocate necessary resources and start outputs
-            output.doStart();
+            timeLapseOutput.doStart();
+
+        } else if (null != onDemandCapture) {
+
+            // Capture starts as soon as there is a subscriber
+            onDemandCapture.enable();
+
+        } else {
+
+            startCapture();
+        }
+
+        if (null != telemetryOutput) {
+
+            telemetryOutput.doStart();
         }
 
     }
@@ -132,9 +261,22 @@ public class PiCameraSensor extends AbstractSensorModule<PiCameraConfig> {
     @Override
     public void doStop() throws SensorHubException {
 
-        if (null != output) {
+        if (null != telemetryOutput) {
 
-            output.doStop();
+            telemetryOutput.doStop();
+        }
+
+        if (null != timeLapseOutput) {
+
+            timeLapseOutput.doStop();
+
+        } else if (null != onDemandCapture) {
+
+            onDemandCapture.disable();
+
+        } else {
+
+            stopCapture();
         }
 
 //        servoMotor.setAngle(PiCameraControl.getMaxTiltAngle());
@@ -145,10 +287,260 @@ public class PiCameraSensor extends AbstractSensorModule<PiCameraConfig> {
     @Override
     public boolean isConnected() {
 
+        if (null != timeLapseOutput) {
+
+            return timeLapseOutput.isAlive();
+        }
+
+        // An idle on-demand camera is ready to start when a subscriber comes
+        if (null != onDemandCapture && !onDemandCapture.isCapturing()) {
+
+            return true;
+        }
+
         // Determine if sensor is connected
         return output.isAlive();
     }
 
+    /**
+     * Changes the region of the frame published by the video output
+     *
+     * @param regionOfInterest Region of the frame and output size
+     * @throws SensorException if the camera fails to restart with the new region
+     */
+    void setRegionOfInterest(RegionOfInterest regionOfInterest) throws SensorException {
+
+        logger.info("Setting region of interest to {},{} {}x{} scaled to {}x{}",
+                regionOfInterest.x, regionOfInterest.y, regionOfInterest.width, regionOfInterest.height,
+                regionOfInterest.outputWidth, regionOfInterest.outputHeight);
+
+        output.setRegionOfInterest(regionOfInterest);
+    }
+
+    /**
+     * Captures a burst of stills from the running camera session
+     *
+     * @param count Number of stills, limited to the configured maximum
+     * @return Identifier of the burst, or -1 if stills are disabled or the camera is not running
+     */
+    public int captureStills(int count) {
+
+        if (null == stillOutput) {
+
+            return -1;
+        }
+
+        return stillOutput.captureBurst(count);
+    }
+
+    /**
+     * Records a clip made of the video preceding the call and the video following it, for use by the
+     * control input or by any module reacting to an external event
+     *
+     * @param postRollMillis Video recorded after the event in milliseconds, 0 for the configured post-roll
+     * @return Identifier of the clip recording the event, or -1 if clips are disabled or the camera is not running
+     */
+    public long triggerClip(long postRollMillis) {
+
+        if (null == clipRecorder) {
+
+            return -1;
+        }
+
+        return clipRecorder.trigger(postRollMillis);
+    }
+
+    /**
+     * @return Supervisor of the camera session, null if disabled
+     */
+    CaptureWatchdog getWatchdog() {
+
+        return watchdog;
+    }
+
+    /**
+     * Called by the video outputs when a listener registers or unregisters, so that on-demand mode
+     * checks the subscribers without waiting for its next poll
+     */
+    void listenersChanged() {
+
+        if (null != onDemandCapture) {
+
+            onDemandCapture.subscribersChanged();
+        }
+    }
+
+    /**
+     * @param outputName Name of one of the outputs of this sensor
+     * @return Number of subscribers to the data stream of the output on the hub event bus, 0 outside a hub
+     */
+    private int getSubscriberCount(String outputName) {
+
+        if (null == getParentHub()) {
+
+            return 0;
+        }
+
+        var eventBus = getParentHub().getEventBus();
+
+        return eventBus.getPublisher(EventUtils.getDataStreamDataTopicID(getUniqueIdentifier(), outputName))
+                .getNumberOfSubscribers();
+    }
+
+    private int getVideoSubscriberCount() {
+
+        int count = null != output ? getSubscriberCount(output.getName()) : 0;
+
+        if (null != previewOutput) {
+
+            count += getSubscriberCount(previewOutput.getName());
+        }
+
+        return count;
+    }
+
+    private void initTimeLapse() {
+
+        onDemandCapture = null;
+        output = null;
+        previewOutput = null;
+        stillOutput = null;
+        stillControl = null;
+        telemetryOutput = null;
+        watchdog = null;
+        regulator = null;
+        roiControl = null;
+        clipOutput = null;
+        clipRecorder = null;
+        clipControl = null;
+
+        timeLapseOutput = new PiCameraTimeLapseOutput(this);
+
+        addOutput(timeLapseOutput, false);
+        addLocationOutput(1.0);
+
+        timeLapseOutput.doInit();
+    }
+
+    private void initClipRecorder() {
+
+        ClipParameters clipParameters = config.clipParameters;
+
+        clipOutput = null;
+        clipRecorder = null;
+        clipControl = null;
+
+        if (!clipParameters.enabled) {
+
+            return;
+        }
+
+        List<ClipRecorder.ClipSink> sinks = new ArrayList<>();
+
+        if (clipParameters.publishClips) {
+
+            clipOutput = new PiCameraClipOutput(this);
+
+            addOutput(clipOutput, false);
+
+            clipOutput.doInit();
+
+            sinks.add(clipOutput);
+        }
+
+        if (null != clipParameters.clipDirectory && !clipParameters.clipDirectory.trim().isEmpty()) {
+
+            String extension = config.videoParameters.outputMode == OutputMode.H264 ? "h264" : "mjpeg";
+
+            sinks.add(new ClipFileWriter(clipParameters.clipDirectory.trim(), config.serialNumber, extension));
+        }
+
+        clipRecorder = new ClipRecorder(clipParameters, sinks);
+
+        output.setClipRecorder(clipRecorder);
+
+        clipControl = new PiCameraClipControl(this);
+
+        addControlInput(clipControl);
+
+        clipControl.init();
+    }
+
+    /**
+     * Starts the camera session feeding the video and preview outputs
+     */
+    private void startCapture() throws SensorHubException {
+
+        if (null != clipRecorder) {
+
+            clipRecorder.start();
+        }
+
+        if (null != previewOutput) {
+
+            previewOutput.doStart();
+        }
+
+        if (null != stillOutput) {
+
+            stillOutput.doStart();
+        }
+
+        if (null != output) {
+
+            // Allocate necessary resources and start outputs
+            output.doStart();
+        }
+
+        if (null != watchdog) {
+
+            watchdog.start();
+        }
+
+        if (null != regulator) {
+
+            regulator.start();
+        }
+    }
+
+    /**
+     * Stops the camera session
+     */
+    private void stopCapture() {
+
+        // Waits for a restart in progress, so the session is not restarted behind our back
+        if (null != regulator) {
+
+            regulator.stop();
+        }
+
+        if (null != watchdog) {
+
+            watchdog.stop();
+        }
+
+        if (null != output) {
+
+            output.doStop();
+        }
+
+        if (null != previewOutput) {
+
+            previewOutput.doStop();
+        }
+
+        if (null != stillOutput) {
+
+            stillOutput.doStop();
+        }
+
+        // Ends the clip being recorded with the last frames of the session
+        if (null != clipRecorder) {
+
+            clipRecorder.stop();
+        }
+    }
+
 //    protected void tilt(float angle) {
 //
 //        if (servoMotor != null) {
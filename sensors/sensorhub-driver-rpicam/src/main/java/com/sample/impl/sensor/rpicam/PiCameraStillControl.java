@@ -0,0 +1,84 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam;
+
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataComponent;
+import net.opengis.swe.v20.DataRecord;
+import org.sensorhub.api.command.CommandException;
+import org.sensorhub.impl.sensor.AbstractSensorControl;
+import org.vast.swe.SWEHelper;
+
+/**
+ * Control input requesting a burst of stills from {@link PiCameraSensor}, published on the still output
+ * while the video keeps running.
+ *
+ * @author your_name
+ * @since date
+ */
+public class PiCameraStillControl extends AbstractSensorControl<PiCameraSensor> {
+
+    private static final String SENSOR_CONTROL_NAME = "PiCameraStillControl";
+
+    private DataRecord commandDataStruct;
+
+    protected PiCameraStillControl(PiCameraSensor parentSensor) {
+
+        super(SENSOR_CONTROL_NAME, parentSensor);
+    }
+
+    @Override
+    public DataComponent getCommandDescription() {
+
+        return commandDataStruct;
+    }
+
+    @Override
+    protected boolean execCommand(DataBlock cmdData) throws CommandException {
+
+        int burstCount = cmdData.getIntValue(0);
+
+        if (burstCount < 1) {
+
+            throw new CommandException("Burst must contain at least one still");
+        }
+
+        if (parentSensor.captureStills(burstCount) < 0) {
+
+            throw new CommandException("Camera is not running, no still can be captured");
+        }
+
+        return true;
+    }
+
+    protected void init() {
+
+        SWEHelper sweFactory = new SWEHelper();
+
+        int maxBurstCount = Math.max(1, parentSensor.getConfiguration().stillParameters.maxBurstCount);
+
+        commandDataStruct = sweFactory.createRecord()
+                .name(getName())
+                .label("Capture Stills")
+                .updatable(true)
+                .definition(SWEHelper.getPropertyUri("StillCapture"))
+                .description("Captures a burst of stills at the capture resolution")
+                .addField("burstCount", sweFactory.createCount()
+                        .label("Burst Count")
+                        .description("Number of consecutive stills to capture")
+                        .addAllowedInterval(1, maxBurstCount)
+                        .value(1))
+                .build();
+    }
+}
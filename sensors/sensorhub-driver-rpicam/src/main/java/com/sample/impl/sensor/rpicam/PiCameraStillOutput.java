@@ -0,0 +1,261 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam;
+
+import com.sample.impl.sensor.rpicam.config.OverflowPolicy;
+import com.sample.impl.sensor.rpicam.config.PipelineParameters;
+import com.sample.impl.sensor.rpicam.config.StillParameters;
+import com.sample.impl.sensor.rpicam.config.VideoParameters;
+import com.sample.impl.sensor.rpicam.helpers.LatencyTelemetry;
+import com.sample.impl.utils.camera.MjpegEncoder;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataComponent;
+import net.opengis.swe.v20.DataEncoding;
+import net.opengis.swe.v20.DataStream;
+import org.bytedeco.javacv.Frame;
+import org.sensorhub.api.data.DataEvent;
+import org.sensorhub.impl.sensor.AbstractSensorOutput;
+import org.sensorhub.impl.sensor.videocam.VideoCamHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vast.data.AbstractDataBlock;
+import org.vast.data.DataBlockMixed;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bursts of JPEG stills taken from the {@link PiCameraOutput} camera session while the video keeps running.
+ * <p>
+ * Stills are the consecutive pictures decoded right after the request, encoded at the capture resolution,
+ * without the region of interest crop and scaling, and with their own quality. Each still carries the
+ * capture time of its access unit. Encoding happens on dedicated threads so the video never waits for a burst.
+ *
+ * @author your_name
+ * @since date
+ */
+public class PiCameraStillOutput extends AbstractSensorOutput<PiCameraSensor> {
+
+    private static final String SENSOR_OUTPUT_NAME = "PiCameraStill";
+    private static final String SENSOR_OUTPUT_LABEL = "CameraStill";
+    private static final String SENSOR_OUTPUT_DESCRIPTION = "Pi Camera Still Bursts";
+
+    private static final Logger logger = LoggerFactory.getLogger(PiCameraStillOutput.class);
+
+    private DataComponent dataStruct;
+    private DataEncoding dataEncoding;
+
+    private FramePipeline pipeline;
+
+    private final LatencyTelemetry telemetry = new LatencyTelemetry();
+
+    private int maxBurstCount;
+
+    /**
+     * Stills left to take in the current burst, only decremented by the grab thread
+     */
+    private final AtomicInteger remainingStills = new AtomicInteger();
+    private int burstId = 0;
+    private volatile boolean running = false;
+
+    /**
+     * Constructor
+     *
+     * @param parentSensor Sensor driver providing this output
+     */
+    PiCameraStillOutput(PiCameraSensor parentSensor) {
+
+        super(SENSOR_OUTPUT_NAME, parentSensor);
+
+        logger.debug("PiCameraStillOutput created");
+    }
+
+    /**
+     * Initializes the data structure for the output, defining the fields, their ordering,
+     * and data types.
+     */
+    void doInit() {
+
+        logger.debug("Initializing PiCameraStillOutput");
+
+        StillParameters stillParameters = parentSensor.getConfiguration().stillParameters;
+        VideoParameters videoParameters = parentSensor.getConfiguration().videoParameters;
+
+        maxBurstCount = Math.max(1, stillParameters.maxBurstCount);
+
+        // A whole burst fits in the queue, the stills are never dropped nor wait for room
+        PipelineParameters pipelineParameters = new PipelineParameters();
+        pipelineParameters.encoderThreads = Math.max(1, stillParameters.encoderThreads);
+        pipelineParameters.queueCapacity = maxBurstCount;
+        pipelineParameters.overflowPolicy = OverflowPolicy.DROP_NEWEST;
+
+        pipeline = new FramePipeline(getName(), pipelineParameters, this::createJpegEncoder, this::publishStill, telemetry);
+
+        VideoCamHelper sweFactory = new VideoCamHelper();
+
+        DataStream outputDef = sweFactory.newVideoOutputMJPEG(getName(),
+                videoParameters.videoFrameWidth, videoParameters.videoFrameHeight);
+
+        dataStruct = outputDef.getElementType();
+
+        dataStruct.setLabel(SENSOR_OUTPUT_LABEL);
+
+        dataStruct.setDescription(SENSOR_OUTPUT_DESCRIPTION);
+
+        dataEncoding = outputDef.getEncoding();
+
+        logger.debug("Initializing PiCameraStillOutput Complete");
+    }
+
+    /**
+     * Begins accepting burst requests
+     */
+    public void doStart() {
+
+        remainingStills.set(0);
+
+        pipeline.start();
+
+        running = true;
+    }
+
+    /**
+     * Stops accepting burst requests, stills not yet published are discarded
+     */
+    public void doStop() {
+
+        running = false;
+
+        remainingStills.set(0);
+
+        if (pipeline != null) {
+
+            pipeline.stop();
+        }
+    }
+
+    /**
+     * Requests a burst of stills made of the next decoded pictures, replacing the remainder of a burst in progress
+     *
+     * @param count Number of stills, limited to the configured maximum
+     * @return Identifier of the burst, or -1 if the camera is not running
+     */
+    public synchronized int captureBurst(int count) {
+
+        if (!running) {
+
+            return -1;
+        }
+
+        int stills = Math.max(1, Math.min(maxBurstCount, count));
+
+        ++burstId;
+
+        logger.info("Capturing burst {} of {} still(s)", burstId, stills);
+
+        remainingStills.set(stills);
+
+        return burstId;
+    }
+
+    /**
+     * Offers a picture decoded by the main output, to be called from its grab thread.
+     * Pictures are only taken while a burst is in progress.
+     *
+     * @param frame     Decoded picture, copied if taken
+     * @param frameTime Capture time in milliseconds since epoch
+     * @throws InterruptedException if interrupted while waiting for a pooled frame
+     */
+    void submit(Frame frame, long frameTime) throws InterruptedException {
+
+        if (remainingStills.get() <= 0) {
+
+            return;
+        }
+
+        if (remainingStills.getAndDecrement() > 0) {
+
+            pipeline.submit(frame, frameTime);
+        }
+    }
+
+    /**
+     * @return Latency histograms of the still encode path
+     */
+    public LatencyTelemetry getTelemetry() {
+
+        return telemetry;
+    }
+
+    @Override
+    public DataComponent getRecordDescription() {
+
+        return dataStruct;
+    }
+
+    @Override
+    public DataEncoding getRecommendedEncoding() {
+
+        return dataEncoding;
+    }
+
+    @Override
+    public double getAverageSamplingPeriod() {
+
+        return 1d / Math.max(1, parentSensor.getConfiguration().videoParameters.videoFrameRate);
+    }
+
+    private FramePipeline.FrameEncoder createJpegEncoder() {
+
+        // Keeps the size of the decoded pictures
+        MjpegEncoder encoder = new MjpegEncoder(parentSensor.getConfiguration().stillParameters.jpegQuality);
+
+        return new FramePipeline.FrameEncoder() {
+
+            @Override
+            public byte[] encode(Frame frame) throws Exception {
+
+                return encoder.encode(frame);
+            }
+
+            @Override
+            public void close() {
+
+                encoder.close();
+            }
+        };
+    }
+
+    private void publishStill(long frameTime, byte[] frameData) {
+
+        DataBlock dataBlock;
+        if (latestRecord == null) {
+
+            dataBlock = dataStruct.createDataBlock();
+
+        } else {
+
+            dataBlock = latestRecord.renew();
+        }
+
+        dataBlock.setDoubleValue(0, frameTime / 1000d);
+
+        AbstractDataBlock frameBlock = ((DataBlockMixed) dataBlock).getUnderlyingObject()[1];
+        frameBlock.setUnderlyingObject(frameData);
+
+        latestRecord = dataBlock;
+        latestRecordTime = System.currentTimeMillis();
+
+        eventHandler.publish(new DataEvent(latestRecordTime, this, dataBlock));
+    }
+}
@@ -0,0 +1,251 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam;
+
+import com.sample.impl.sensor.rpicam.helpers.LatencyHistogram;
+import com.sample.impl.sensor.rpicam.helpers.LatencyTelemetry;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataComponent;
+import net.opengis.swe.v20.DataEncoding;
+import net.opengis.swe.v20.DataRecord;
+import org.sensorhub.api.data.DataEvent;
+import org.sensorhub.impl.sensor.AbstractSensorOutput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vast.swe.SWEHelper;
+
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Status output reporting the latency of each stage of the {@link PiCameraOutput} frame path.
+ * <p>
+ * Every record covers the interval since the previous one and holds the 50th, 95th and 99th percentiles
+ * and the maximum of each stage, along with the number of frames published and dropped. Camera restarts
+ * by the {@link CaptureWatchdog} and the mean time to recover are reported since the sensor started.
+ *
+ * @author your_name
+ * @since date
+ */
+public class PiCameraTelemetryOutput extends AbstractSensorOutput<PiCameraSensor> {
+
+    private static final String SENSOR_OUTPUT_NAME = "PiCameraTelemetry";
+    private static final String SENSOR_OUTPUT_LABEL = "Camera Telemetry";
+    private static final String SENSOR_OUTPUT_DESCRIPTION = "Latency of the stages between frame capture and publication";
+
+    private static final double[] PERCENTILES = {50, 95, 99};
+
+    private static final Logger logger = LoggerFactory.getLogger(PiCameraTelemetryOutput.class);
+
+    private final PiCameraOutput videoOutput;
+
+    private DataRecord dataStruct;
+    private DataEncoding dataEncoding;
+
+    private Timer timer;
+    private long periodMillis;
+
+    private long lastPublishedCount;
+    private long lastDroppedCount;
+
+    /**
+     * Constructor
+     *
+     * @param parentSensor Sensor driver providing this output
+     * @param videoOutput  Video output whose frame path is reported
+     */
+    PiCameraTelemetryOutput(PiCameraSensor parentSensor, PiCameraOutput videoOutput) {
+
+        super(SENSOR_OUTPUT_NAME, parentSensor);
+
+        this.videoOutput = videoOutput;
+
+        logger.debug("PiCameraTelemetryOutput created");
+    }
+
+    /**
+     * Initializes the data structure for the output, defining the fields, their ordering,
+     * and data types.
+     */
+    void doInit() {
+
+        logger.debug("Initializing PiCameraTelemetryOutput");
+
+        periodMillis = Math.max(1, parentSensor.getConfiguration().pipelineParameters.telemetryPeriod) * 1000L;
+
+        SWEHelper sweFactory = new SWEHelper();
+
+        SWEHelper.RecordBuilder recordBuilder = sweFactory.createRecord()
+                .name(getName())
+                .label(SENSOR_OUTPUT_LABEL)
+                .description(SENSOR_OUTPUT_DESCRIPTION)
+                .definition(SWEHelper.getPropertyUri("CameraTelemetry"))
+                .addField("time", sweFactory.createTime()
+                        .asSamplingTimeIsoUTC())
+                .addField("framesPublished", sweFactory.createCount()
+                        .label("Frames Published")
+                        .description("Number of frames published during the interval"))
+                .addField("framesDropped", sweFactory.createCount()
+                        .label("Frames Dropped")
+                        .description("Number of decoded frames dropped by the encode pipeline during the interval"))
+                .addField("restarts", sweFactory.createCount()
+                        .label("Camera Restarts")
+                        .description("Number of camera session restarts by the watchdog"))
+                .addField("meanTimeToRecover", sweFactory.createQuantity()
+                        .label("Mean Time To Recover")
+                        .description("Mean time from the last frame before a camera failure to the first frame after it")
+                        .uomCode("ms"));
+
+        for (LatencyTelemetry.Stage stage : LatencyTelemetry.Stage.values()) {
+
+            SWEHelper.RecordBuilder stageBuilder = sweFactory.createRecord()
+                    .label(stage.getLabel())
+                    .description(stage.getDescription())
+                    .addField("count", sweFactory.createCount()
+                            .label("Sample Count"));
+
+            for (double percentile : PERCENTILES) {
+
+                stageBuilder.addField("p" + (int) percentile, sweFactory.createQuantity()
+                        .label((int) percentile + "th Percentile")
+                        .uomCode("ms"));
+            }
+
+            stageBuilder.addField("max", sweFactory.createQuantity()
+                    .label("Maximum")
+                    .uomCode("ms"));
+
+            recordBuilder.addField(stage.getFieldName(), stageBuilder);
+        }
+
+        dataStruct = recordBuilder.build();
+
+        dataEncoding = sweFactory.newTextEncoding(",", "\n");
+
+        logger.debug("Initializing PiCameraTelemetryOutput Complete");
+    }
+
+    /**
+     * Starts publishing a record every telemetry period
+     */
+    public void doStart() {
+
+        // Values recorded while stopped are not reported
+        for (LatencyTelemetry.Stage stage : LatencyTelemetry.Stage.values()) {
+
+            videoOutput.getTelemetry().getHistogram(stage).snapshotAndReset();
+        }
+
+        lastPublishedCount = videoOutput.getPublishedCount();
+        lastDroppedCount = videoOutput.getDroppedCount();
+
+        timer = new Timer(getName(), true);
+
+        timer.scheduleAtFixedRate(new TimerTask() {
+
+            @Override
+            public void run() {
+
+                publishTelemetry();
+            }
+
+        }, periodMillis, periodMillis);
+    }
+
+    /**
+     * Stops publishing records
+     */
+    public void doStop() {
+
+        if (timer != null) {
+
+            timer.cancel();
+            timer = null;
+        }
+    }
+
+    @Override
+    public DataComponent getRecordDescription() {
+
+        return dataStruct;
+    }
+
+    @Override
+    public DataEncoding getRecommendedEncoding() {
+
+        return dataEncoding;
+    }
+
+    @Override
+    public double getAverageSamplingPeriod() {
+
+        return periodMillis / 1000d;
+    }
+
+    private void publishTelemetry() {
+
+        try {
+
+            DataBlock dataBlock;
+            if (latestRecord == null) {
+
+                dataBlock = dataStruct.createDataBlock();
+
+            } else {
+
+                dataBlock = latestRecord.renew();
+            }
+
+            long publishedCount = videoOutput.getPublishedCount();
+            long droppedCount = videoOutput.getDroppedCount();
+
+            int index = 0;
+
+            dataBlock.setDoubleValue(index++, System.currentTimeMillis() / 1000d);
+            dataBlock.setIntValue(index++, (int) (publishedCount - lastPublishedCount));
+            dataBlock.setIntValue(index++, (int) (droppedCount - lastDroppedCount));
+
+            lastPublishedCount = publishedCount;
+            lastDroppedCount = droppedCount;
+
+            CaptureWatchdog watchdog = parentSensor.getWatchdog();
+
+            dataBlock.setIntValue(index++, watchdog != null ? (int) watchdog.getRestartCount() : 0);
+            dataBlock.setDoubleValue(index++, watchdog != null ? watchdog.getMeanTimeToRecoverMillis() : 0);
+
+            for (LatencyTelemetry.Stage stage : LatencyTelemetry.Stage.values()) {
+
+                LatencyHistogram.Snapshot snapshot = videoOutput.getTelemetry().getHistogram(stage).snapshotAndReset();
+
+                dataBlock.setIntValue(index++, (int) snapshot.getCount());
+
+                for (double percentile : PERCENTILES) {
+
+                    dataBlock.setDoubleValue(index++, snapshot.getPercentile(percentile) / 1000d);
+                }
+
+                dataBlock.setDoubleValue(index++, snapshot.getMax() / 1000d);
+            }
+
+            latestRecord = dataBlock;
+            latestRecordTime = System.currentTimeMillis();
+
+            eventHandler.publish(new DataEvent(latestRecordTime, this, dataBlock));
+
+        } catch (RuntimeException e) {
+
+            logger.error("Failed to publish telemetry", e);
+        }
+    }
+}
@@ -0,0 +1,342 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam;
+
+import com.sample.impl.sensor.rpicam.config.TimeLapseParameters;
+import com.sample.impl.sensor.rpicam.config.VideoParameters;
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataComponent;
+import net.opengis.swe.v20.DataEncoding;
+import net.opengis.swe.v20.DataStream;
+import org.sensorhub.api.data.DataEvent;
+import org.sensorhub.impl.sensor.AbstractSensorOutput;
+import org.sensorhub.impl.sensor.videocam.VideoCamHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vast.data.AbstractDataBlock;
+import org.vast.data.DataBlockMixed;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time-lapse output of {@link PiCameraSensor}, taking a single still on a schedule.
+ * <p>
+ * For each shot libcamera-still opens the camera, optionally lets exposure and white balance settle,
+ * writes one JPEG to its stdout and exits, releasing the camera. Nothing runs between two shots but a
+ * sleeping scheduler thread, so the CPU and the camera stay idle most of the time.
+ *
+ * @author your_name
+ * @since date
+ */
+public class PiCameraTimeLapseOutput extends AbstractSensorOutput<PiCameraSensor> {
+
+    private static final String SENSOR_OUTPUT_NAME = "PiCameraTimeLapse";
+    private static final String SENSOR_OUTPUT_LABEL = "CameraTimeLapse";
+    private static final String SENSOR_OUTPUT_DESCRIPTION = "Pi Camera Time-Lapse Stills";
+
+    private static final String LIBCAMERA_STILL = "/usr/bin/libcamera-still";
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 2000;
+
+    private static final Logger logger = LoggerFactory.getLogger(PiCameraTimeLapseOutput.class);
+
+    private DataComponent dataStruct;
+    private DataEncoding dataEncoding;
+
+    private List<String> command;
+    private long intervalMillis;
+    private long shotTimeoutMillis;
+
+    private ScheduledExecutorService scheduler;
+    private volatile Process process;
+
+    private volatile long shotCount = 0;
+    private volatile long failedShotCount = 0;
+
+    /**
+     * Constructor
+     *
+     * @param parentSensor Sensor driver providing this output
+     */
+    PiCameraTimeLapseOutput(PiCameraSensor parentSensor) {
+
+        super(SENSOR_OUTPUT_NAME, parentSensor);
+
+        logger.debug("PiCameraTimeLapseOutput created");
+    }
+
+    /**
+     * Initializes the data structure for the output, defining the fields, their ordering,
+     * and data types.
+     */
+    void doInit() {
+
+        logger.debug("Initializing PiCameraTimeLapseOutput");
+
+        TimeLapseParameters timeLapseParameters = parentSensor.getConfiguration().timeLapseParameters;
+        VideoParameters videoParameters = parentSensor.getConfiguration().videoParameters;
+
+        intervalMillis = Math.max(1, timeLapseParameters.interval) * 1000L;
+        shotTimeoutMillis = Math.max(0, timeLapseParameters.warmUpTime) + Math.max(1000, timeLapseParameters.shotTimeout);
+
+        command = new ArrayList<>();
+        command.add(LIBCAMERA_STILL);
+        command.add("-n");
+
+        if (timeLapseParameters.warmUpTime > 0) {
+
+            command.add("-t");
+            command.add(String.valueOf(timeLapseParameters.warmUpTime));
+
+        } else {
+
+            // Skips the exposure and white balance convergence
+            command.add("--immediate");
+        }
+
+        command.add("--width");
+        command.add(String.valueOf(videoParameters.videoFrameWidth));
+        command.add("--height");
+        command.add(String.valueOf(videoParameters.videoFrameHeight));
+        command.add("-q");
+        command.add(String.valueOf(timeLapseParameters.jpegQuality));
+        command.add("-e");
+        command.add("jpg");
+        command.add("-o");
+        command.add("-");
+
+        VideoCamHelper sweFactory = new VideoCamHelper();
+
+        DataStream outputDef = sweFactory.newVideoOutputMJPEG(getName(),
+                videoParameters.videoFrameWidth, videoParameters.videoFrameHeight);
+
+        dataStruct = outputDef.getElementType();
+
+        dataStruct.setLabel(SENSOR_OUTPUT_LABEL);
+
+        dataStruct.setDescription(SENSOR_OUTPUT_DESCRIPTION);
+
+        dataEncoding = outputDef.getEncoding();
+
+        logger.debug("Initializing PiCameraTimeLapseOutput Complete");
+    }
+
+    /**
+     * Starts taking shots, the first one right away
+     */
+    public synchronized void doStart() {
+
+        if (scheduler != null) {
+
+            return;
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+
+            Thread thread = new Thread(runnable, getName() + "-scheduler");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        // Shots taking longer than the interval delay the next one rather than overlapping
+        scheduler.scheduleAtFixedRate(this::takeShot, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops taking shots, terminating a shot in progress
+     */
+    public synchronized void doStop() {
+
+        if (scheduler == null) {
+
+            return;
+        }
+
+        scheduler.shutdownNow();
+
+        Process running = process;
+
+        if (running != null) {
+
+            running.destroyForcibly();
+        }
+
+        try {
+
+            scheduler.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+        }
+
+        scheduler = null;
+    }
+
+    /**
+     * @return true while shots are scheduled
+     */
+    public synchronized boolean isAlive() {
+
+        return scheduler != null && !scheduler.isShutdown();
+    }
+
+    public long getShotCount() {
+
+        return shotCount;
+    }
+
+    public long getFailedShotCount() {
+
+        return failedShotCount;
+    }
+
+    @Override
+    public DataComponent getRecordDescription() {
+
+        return dataStruct;
+    }
+
+    @Override
+    public DataEncoding getRecommendedEncoding() {
+
+        return dataEncoding;
+    }
+
+    @Override
+    public double getAverageSamplingPeriod() {
+
+        return intervalMillis / 1000d;
+    }
+
+    /**
+     * Runs libcamera-still for a single shot and publishes the still, on the scheduler thread
+     */
+    private void takeShot() {
+
+        long startTime = System.currentTimeMillis();
+
+        try {
+
+            ProcessBuilder builder = new ProcessBuilder(command);
+            builder.redirectOutput(ProcessBuilder.Redirect.PIPE);
+            builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+
+            Process shot = builder.start();
+
+            process = shot;
+
+            // Unblocks the read if libcamera-still hangs
+            CompletableFuture.runAsync(shot::destroyForcibly,
+                    CompletableFuture.delayedExecutor(shotTimeoutMillis, TimeUnit.MILLISECONDS));
+
+            long[] captureTime = new long[1];
+            byte[] still = readStill(shot.getInputStream(), captureTime);
+
+            int exitCode = shot.waitFor();
+
+            if (exitCode != 0 || still.length == 0) {
+
+                ++failedShotCount;
+
+                logger.warn("libcamera-still failed with exit code {} after {} ms", exitCode,
+                        System.currentTimeMillis() - startTime);
+
+                return;
+            }
+
+            publishStill(captureTime[0], still);
+
+            ++shotCount;
+
+            logger.debug("Shot {} taken in {} ms", shotCount, System.currentTimeMillis() - startTime);
+
+        } catch (IOException e) {
+
+            ++failedShotCount;
+
+            logger.error("Failed to run libcamera-still", e);
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+
+        } finally {
+
+            process = null;
+        }
+    }
+
+    /**
+     * Reads the whole still written by libcamera-still
+     *
+     * @param input       Process stdout
+     * @param captureTime Receives the time the first byte arrived, the still having been exposed just before
+     * @return JPEG still, empty if none was written
+     */
+    private static byte[] readStill(InputStream input, long[] captureTime) throws IOException {
+
+        ByteArrayOutputStream still = new ByteArrayOutputStream(READ_BUFFER_SIZE);
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+
+        try (input) {
+
+            int count;
+
+            while ((count = input.read(buffer)) >= 0) {
+
+                if (still.size() == 0 && count > 0) {
+
+                    captureTime[0] = System.currentTimeMillis();
+                }
+
+                still.write(buffer, 0, count);
+            }
+        }
+
+        return still.toByteArray();
+    }
+
+    private void publishStill(long frameTime, byte[] frameData) {
+
+        DataBlock dataBlock;
+        if (latestRecord == null) {
+
+            dataBlock = dataStruct.createDataBlock();
+
+        } else {
+
+            dataBlock = latestRecord.renew();
+        }
+
+        dataBlock.setDoubleValue(0, frameTime / 1000d);
+
+        AbstractDataBlock frameBlock = ((DataBlockMixed) dataBlock).getUnderlyingObject()[1];
+        frameBlock.setUnderlyingObject(frameData);
+
+        latestRecord = dataBlock;
+        latestRecordTime = System.currentTimeMillis();
+
+        eventHandler.publish(new DataEvent(latestRecordTime, this, dataBlock));
+    }
+}
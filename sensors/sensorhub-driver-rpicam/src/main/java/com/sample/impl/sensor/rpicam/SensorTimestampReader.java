@@ -0,0 +1,442 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the sensor timestamp of every frame from the metadata libcamera-vid writes to a named pipe.
+ * <p>
+ * libcamera-vid writes the metadata of each encoded frame in order, so the n-th timestamp normally belongs
+ * to the n-th access unit of the stream. Neither carries a frame sequence number though, so a metadata line
+ * lost or merged would shift the pairing of every later frame. The delay between the capture and the
+ * arrival of each frame is therefore checked against its running average: when it is off by more than half
+ * a frame period for several frames in a row, the pairing moves to the neighbouring timestamp matching the
+ * usual delay, or restarts from the current delay if none does. Metadata may be written in batches, a frame
+ * whose timestamp was not read yet gets one extrapolated from the latest timestamp and the measured frame
+ * period.
+ *
+ * @author your_name
+ * @since date
+ */
+public class SensorTimestampReader {
+
+    private static final Logger logger = LoggerFactory.getLogger(SensorTimestampReader.class);
+
+    private static final Pattern SENSOR_TIMESTAMP = Pattern.compile("SensorTimestamp\\D*(\\d+)");
+    private static final int CAPACITY = 256;
+    private static final long THREAD_JOIN_TIMEOUT_MILLIS = 2000;
+
+    /**
+     * Weight of the latest frame interval in the frame period average
+     */
+    private static final double PERIOD_SMOOTHING = 0.05;
+
+    /**
+     * Weight of the latest capture to arrival delay in the delay average
+     */
+    private static final double DELAY_SMOOTHING = 0.05;
+
+    /**
+     * Consecutive frames with an unexpected capture to arrival delay before the pairing is checked
+     */
+    private static final int MISMATCH_LIMIT = 3;
+
+    /**
+     * Largest number of frames the pairing is moved by at once
+     */
+    private static final int MAX_REALIGNMENT = 2;
+
+    /**
+     * Whether each libcamera-vid executable supports writing metadata, probed once
+     */
+    private static final Map<String, Boolean> SUPPORT = new ConcurrentHashMap<>();
+
+    private Path pipe;
+    private Thread readerThread;
+    private volatile boolean running = false;
+    private volatile boolean opened = false;
+
+    private final long[] timestamps = new long[CAPACITY];
+    private long timestampCount = 0;
+    private double framePeriodNanos = 0;
+
+    /**
+     * Index of the timestamp of a frame minus the index of the frame, and the average capture to arrival delay
+     */
+    private long pairingOffset = 0;
+    private double averageDelayNanos = Double.NaN;
+    private int mismatchCount = 0;
+
+    /**
+     * Checks whether libcamera-vid can write its metadata, which older releases cannot
+     *
+     * @param executable Path of the libcamera-vid executable
+     * @return true if the metadata options are listed by the executable help
+     */
+    static boolean isSupported(String executable) {
+
+        return SUPPORT.computeIfAbsent(executable, SensorTimestampReader::probe);
+    }
+
+    private static boolean probe(String executable) {
+
+        try {
+
+            Process help = new ProcessBuilder(executable, "--help").redirectErrorStream(true).start();
+
+            String usage;
+
+            try (InputStream output = help.getInputStream()) {
+
+                usage = new String(output.readAllBytes(), StandardCharsets.US_ASCII);
+            }
+
+            if (!help.waitFor(THREAD_JOIN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+
+                help.destroyForcibly();
+            }
+
+            boolean supported = usage.contains("--metadata-format");
+
+            if (!supported) {
+
+                logger.warn("{} cannot write frame metadata, frames are stamped on arrival", executable);
+            }
+
+            return supported;
+
+        } catch (IOException e) {
+
+            logger.warn("Failed to probe {} for frame metadata, frames are stamped on arrival", executable, e);
+
+            return false;
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+
+            return false;
+        }
+    }
+
+    /**
+     * Creates the named pipe receiving the metadata
+     *
+     * @return Arguments making libcamera-vid write its metadata to the pipe
+     * @throws IOException if the pipe cannot be created
+     */
+    public List<String> create() throws IOException {
+
+        pipe = createPipe("libcamera-metadata-");
+
+        return Arrays.asList("--metadata", pipe.toString(), "--metadata-format", "txt");
+    }
+
+    /**
+     * Creates a named pipe in the temporary directory
+     *
+     * @param prefix Prefix of the pipe file name
+     * @return Path of the new pipe
+     * @throws IOException if the pipe cannot be created
+     */
+    static Path createPipe(String prefix) throws IOException {
+
+        Path path = Files.createTempFile(prefix, ".fifo");
+
+        Files.delete(path);
+
+        try {
+
+            Process mkfifo = new ProcessBuilder("mkfifo", path.toString()).start();
+
+            if (!mkfifo.waitFor(THREAD_JOIN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS) || mkfifo.exitValue() != 0) {
+
+                mkfifo.destroyForcibly();
+
+                throw new IOException("mkfifo failed for " + path);
+            }
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+
+            throw new IOException("Interrupted while creating " + path, e);
+        }
+
+        return path;
+    }
+
+    /**
+     * Starts reading the pipe, to be called before libcamera-vid is started
+     */
+    public synchronized void start() {
+
+        synchronized (timestamps) {
+
+            timestampCount = 0;
+            framePeriodNanos = 0;
+            pairingOffset = 0;
+            averageDelayNanos = Double.NaN;
+            mismatchCount = 0;
+        }
+
+        opened = false;
+        running = true;
+
+        readerThread = new Thread(this::readMetadata, "libcamera-metadata");
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    /**
+     * Stops reading and removes the pipe, to be called once libcamera-vid has exited
+     */
+    public synchronized void stop() {
+
+        running = false;
+
+        if (readerThread != null) {
+
+            // Opening the pipe blocks until a writer shows up, be that writer if libcamera-vid never was
+            if (!opened) {
+
+                try (FileOutputStream unblock = new FileOutputStream(pipe.toFile())) {
+
+                    logger.debug("Unblocked metadata reader");
+
+                } catch (IOException e) {
+
+                    logger.debug("Failed to unblock metadata reader", e);
+                }
+            }
+
+            try {
+
+                readerThread.join(THREAD_JOIN_TIMEOUT_MILLIS);
+
+            } catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+            }
+
+            readerThread = null;
+        }
+
+        try {
+
+            Files.deleteIfExists(pipe);
+
+        } catch (IOException e) {
+
+            logger.warn("Failed to delete {}", pipe, e);
+        }
+    }
+
+    /**
+     * Retrieves the sensor timestamp of a frame, frames being retrieved in stream order
+     *
+     * @param frameIndex   Index of the frame in the stream, starting at 0
+     * @param arrivalNanos {@link System#nanoTime()} when the frame reached the driver
+     * @return Sensor timestamp in microseconds, extrapolated if not read yet, or -1 if no timestamp was read so far
+     */
+    public long getSensorMicros(long frameIndex, long arrivalNanos) {
+
+        synchronized (timestamps) {
+
+            if (timestampCount == 0) {
+
+                return -1;
+            }
+
+            checkPairing(frameIndex + pairingOffset, arrivalNanos);
+
+            return getTimestampNanos(frameIndex + pairingOffset) / 1000;
+        }
+    }
+
+    /**
+     * @return true if the timestamp of the given index was read and is still held
+     */
+    private boolean isRead(long index) {
+
+        return index >= 0 && index < timestampCount && index >= timestampCount - CAPACITY;
+    }
+
+    /**
+     * @return Timestamp of the given index in nanoseconds, extrapolated from the latest one if not held
+     */
+    private long getTimestampNanos(long index) {
+
+        if (isRead(index)) {
+
+            return timestamps[(int) (index % CAPACITY)];
+        }
+
+        long lastIndex = timestampCount - 1;
+        long lastTimestamp = timestamps[(int) (lastIndex % CAPACITY)];
+
+        return Math.round(lastTimestamp + (index - lastIndex) * framePeriodNanos);
+    }
+
+    /**
+     * Compares the capture to arrival delay of a frame with the average delay, and realigns the pairing of
+     * frames and timestamps when it stays off
+     *
+     * @param index        Index of the timestamp currently paired with the frame, read or not
+     * @param arrivalNanos {@link System#nanoTime()} when the frame reached the driver
+     */
+    private void checkPairing(long index, long arrivalNanos) {
+
+        // Timestamps cannot be told apart before the frame period is known
+        if (framePeriodNanos == 0) {
+
+            return;
+        }
+
+        double delay = arrivalNanos - getTimestampNanos(index);
+        double tolerance = framePeriodNanos / 2;
+
+        if (Double.isNaN(averageDelayNanos) || Math.abs(delay - averageDelayNanos) <= tolerance) {
+
+            averageDelayNanos = Double.isNaN(averageDelayNanos) ? delay
+                    : averageDelayNanos + DELAY_SMOOTHING * (delay - averageDelayNanos);
+            mismatchCount = 0;
+
+            return;
+        }
+
+        if (++mismatchCount < MISMATCH_LIMIT) {
+
+            return;
+        }
+
+        mismatchCount = 0;
+
+        // A lost or merged metadata line shows up as a neighbouring timestamp having the usual delay
+        int bestShift = 0;
+        double bestError = tolerance;
+
+        for (int shift = -MAX_REALIGNMENT; shift <= MAX_REALIGNMENT; ++shift) {
+
+            if (shift != 0 && index + shift >= Math.max(0, timestampCount - CAPACITY)) {
+
+                double shiftedDelay = arrivalNanos - getTimestampNanos(index + shift);
+                double error = Math.abs(shiftedDelay - averageDelayNanos);
+
+                if (error <= bestError) {
+
+                    bestError = error;
+                    bestShift = shift;
+                }
+            }
+        }
+
+        if (bestShift != 0) {
+
+            pairingOffset += bestShift;
+
+            logger.warn("Sensor timestamps out of step with the frames, pairing moved by {} frames", bestShift);
+
+        } else {
+
+            // The pipeline latency changed rather than the pairing
+            averageDelayNanos = delay;
+
+            logger.debug("Capture to arrival delay changed to {} ms", Math.round(delay / 1e6));
+        }
+    }
+
+    private void readMetadata() {
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(pipe.toFile()), StandardCharsets.US_ASCII))) {
+
+            opened = true;
+
+            String line;
+
+            while (running && (line = reader.readLine()) != null) {
+
+                Matcher matcher = SENSOR_TIMESTAMP.matcher(line);
+
+                if (matcher.find()) {
+
+                    addTimestamp(Long.parseLong(matcher.group(1)));
+                }
+            }
+
+        } catch (IOException | NumberFormatException e) {
+
+            if (running) {
+
+                logger.error("Error reading libcamera-vid metadata", e);
+            }
+
+        } finally {
+
+            opened = true;
+
+            logger.debug("Terminating metadata reader thread");
+        }
+    }
+
+    /**
+     * Records the timestamp of the next frame, called by the reader thread
+     *
+     * @param timestampNanos Sensor timestamp in nanoseconds
+     */
+    void addTimestamp(long timestampNanos) {
+
+        synchronized (timestamps) {
+
+            if (timestampCount > 0) {
+
+                long interval = timestampNanos - timestamps[(int) ((timestampCount - 1) % CAPACITY)];
+
+                if (framePeriodNanos == 0) {
+
+                    framePeriodNanos = interval;
+
+                } else if (Math.abs(interval - framePeriodNanos) <= framePeriodNanos / 2) {
+
+                    // Intervals around a lost or extra metadata line are not frame periods
+                    framePeriodNanos += PERIOD_SMOOTHING * (interval - framePeriodNanos);
+                }
+            }
+
+            timestamps[(int) (timestampCount % CAPACITY)] = timestampNanos;
+
+            ++timestampCount;
+        }
+    }
+}
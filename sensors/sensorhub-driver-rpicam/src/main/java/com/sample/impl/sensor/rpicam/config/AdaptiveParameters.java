@@ -0,0 +1,34 @@
+package com.sample.impl.sensor.rpicam.config;
+
+import org.sensorhub.api.config.DisplayInfo;
+
+public class AdaptiveParameters {
+
+    @DisplayInfo(desc = "Lower quality, bitrate and frame rate while subscribers cannot keep up, raise them again once they do")
+    public boolean enabled = false;
+
+    @DisplayInfo(desc = "Period between two adjustments, in milliseconds")
+    public int adjustPeriod = 1000;
+
+    @DisplayInfo(desc = "Latency from capture to publication above which the stream backs off, in milliseconds")
+    public int targetLatency = 500;
+
+    @DisplayInfo(desc = "Bitrate of the published stream above which it backs off, in kilobits per second, 0 for no limit")
+    public int bandwidthLimit = 0;
+
+    @DisplayInfo(desc = "Lowest JPEG quality in MJPEG mode, the highest being the configured video quality")
+    public int minJpegQuality = 30;
+
+    @DisplayInfo(desc = "Lowest bitrate in H264 mode, in bits per second")
+    public int minBitrate = 1000000;
+
+    @DisplayInfo(desc = "Highest bitrate in H264 mode, in bits per second")
+    public int maxBitrate = 10000000;
+
+    @DisplayInfo(desc = "Lowest frame rate, the highest being the configured video frame rate")
+    public int minFrameRate = 5;
+
+    @DisplayInfo(desc = "Minimum time between two restarts of the camera to apply a new H264 bitrate or frame rate, in seconds")
+    public int restartHoldoff = 30;
+
+}
@@ -0,0 +1,25 @@
+package com.sample.impl.sensor.rpicam.config;
+
+import org.sensorhub.api.config.DisplayInfo;
+
+public class ClipParameters {
+
+    @DisplayInfo(desc = "Keep the latest encoded frames in memory and record clips around triggered events")
+    public boolean enabled = false;
+
+    @DisplayInfo(desc = "Video kept in memory before an event and included at the start of the clip, in seconds")
+    public int preRollDuration = 10;
+
+    @DisplayInfo(desc = "Maximum size of the video kept in memory before an event, in kilobytes")
+    public int preRollSize = 32768;
+
+    @DisplayInfo(desc = "Video recorded after the latest event, in seconds")
+    public int postRollDuration = 10;
+
+    @DisplayInfo(desc = "Directory the clips are written to, leave empty to not write clip files")
+    public String clipDirectory = "";
+
+    @DisplayInfo(desc = "Publish the clips on the clip output, to be stored in place of the continuous video")
+    public boolean publishClips = true;
+
+}
@@ -0,0 +1,13 @@
+package com.sample.impl.sensor.rpicam.config;
+
+import org.sensorhub.api.config.DisplayInfo;
+
+public class OnDemandParameters {
+
+    @DisplayInfo(desc = "Run the camera only while the video or preview output has subscribers")
+    public boolean enabled = false;
+
+    @DisplayInfo(desc = "Time the camera keeps running after the last subscriber left, in seconds")
+    public int idleGracePeriod = 30;
+
+}
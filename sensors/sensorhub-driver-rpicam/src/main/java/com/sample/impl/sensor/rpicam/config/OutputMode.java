@@ -0,0 +1,17 @@
+package com.sample.impl.sensor.rpicam.config;
+
+/**
+ * Encoding of the frames published by the camera output
+ */
+public enum OutputMode {
+
+    /**
+     * H.264 stream from libcamera-vid is decoded and each frame re-encoded as JPEG
+     */
+    MJPEG,
+
+    /**
+     * H.264 access units from libcamera-vid are published as-is, without decoding
+     */
+    H264
+}
@@ -0,0 +1,22 @@
+package com.sample.impl.sensor.rpicam.config;
+
+/**
+ * Behavior of a bounded pipeline queue when a frame arrives while it is full
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Discard the oldest queued frame to make room for the new one, favoring latency
+     */
+    DROP_OLDEST,
+
+    /**
+     * Discard the incoming frame, keeping the frames already queued
+     */
+    DROP_NEWEST,
+
+    /**
+     * Wait for room in the queue, slowing down the producing stage
+     */
+    BLOCK
+}
@@ -0,0 +1,22 @@
+package com.sample.impl.sensor.rpicam.config;
+
+import org.sensorhub.api.config.DisplayInfo;
+
+public class PipelineParameters {
+
+    @DisplayInfo.Required
+    @DisplayInfo(desc = "Number of worker threads encoding frames in parallel")
+    public int encoderThreads = 3;
+
+    @DisplayInfo.Required
+    @DisplayInfo(desc = "Maximum number of decoded frames waiting for an encoder")
+    public int queueCapacity = 4;
+
+    @DisplayInfo.Required
+    @DisplayInfo(desc = "Action taken when a decoded frame arrives while the encoder queue is full")
+    public OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+
+    @DisplayInfo(desc = "Interval between two records of the latency telemetry output, in seconds")
+    public int telemetryPeriod = 5;
+
+}
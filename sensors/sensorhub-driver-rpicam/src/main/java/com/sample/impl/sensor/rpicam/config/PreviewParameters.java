@@ -0,0 +1,25 @@
+package com.sample.impl.sensor.rpicam.config;
+
+import org.sensorhub.api.config.DisplayInfo;
+
+public class PreviewParameters {
+
+    @DisplayInfo(desc = "Publish a low resolution MJPEG preview stream next to the main stream")
+    public boolean enabled = true;
+
+    @DisplayInfo.Required
+    @DisplayInfo(desc = "Width of preview frames")
+    public int previewFrameWidth = 320;
+
+    @DisplayInfo.Required
+    @DisplayInfo(desc = "Height of preview frames")
+    public int previewFrameHeight = 240;
+
+    @DisplayInfo.Required
+    @DisplayInfo(desc = "Rate of preview frames, at most the rate of video frames")
+    public int previewFrameRate = 5;
+
+    @DisplayInfo(desc = "Quality of the JPEG preview frames, from 1 to 100")
+    public int jpegQuality = 70;
+
+}
@@ -0,0 +1,36 @@
+package com.sample.impl.sensor.rpicam.config;
+
+import org.sensorhub.api.config.DisplayInfo;
+
+public class RegionOfInterest {
+
+    @DisplayInfo(desc = "Left edge of the region, as a fraction of the frame width")
+    public double x = 0;
+
+    @DisplayInfo(desc = "Top edge of the region, as a fraction of the frame height")
+    public double y = 0;
+
+    @DisplayInfo(desc = "Width of the region, as a fraction of the frame width")
+    public double width = 1;
+
+    @DisplayInfo(desc = "Height of the region, as a fraction of the frame height")
+    public double height = 1;
+
+    @DisplayInfo(desc = "Width of the published frames, 0 to keep the width of the region at the configured frame size")
+    public int outputWidth = 0;
+
+    @DisplayInfo(desc = "Height of the published frames, 0 to keep the height of the region at the configured frame size")
+    public int outputHeight = 0;
+
+    public boolean isValid() {
+
+        return x >= 0 && y >= 0 && width > 0 && height > 0 && x + width <= 1 && y + height <= 1
+                && outputWidth >= 0 && outputHeight >= 0;
+    }
+
+    public boolean isFullFrame() {
+
+        return x == 0 && y == 0 && width == 1 && height == 1 && outputWidth == 0 && outputHeight == 0;
+    }
+
+}
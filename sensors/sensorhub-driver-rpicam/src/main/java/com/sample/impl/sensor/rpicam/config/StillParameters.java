@@ -0,0 +1,19 @@
+package com.sample.impl.sensor.rpicam.config;
+
+import org.sensorhub.api.config.DisplayInfo;
+
+public class StillParameters {
+
+    @DisplayInfo(desc = "Provide still bursts at the capture resolution, in H.264 mode this keeps the stream decoded at all times")
+    public boolean enabled = false;
+
+    @DisplayInfo(desc = "Maximum number of stills in a burst, each one held uncompressed until encoded")
+    public int maxBurstCount = 10;
+
+    @DisplayInfo(desc = "JPEG quality of the stills, from 1 to 100")
+    public int jpegQuality = 95;
+
+    @DisplayInfo(desc = "Number of threads encoding the stills of a burst")
+    public int encoderThreads = 2;
+
+}
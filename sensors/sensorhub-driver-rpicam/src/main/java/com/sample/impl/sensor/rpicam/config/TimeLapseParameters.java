@@ -0,0 +1,22 @@
+package com.sample.impl.sensor.rpicam.config;
+
+import org.sensorhub.api.config.DisplayInfo;
+
+public class TimeLapseParameters {
+
+    @DisplayInfo(desc = "Take single stills on a schedule instead of streaming video, the camera is released between shots")
+    public boolean enabled = false;
+
+    @DisplayInfo(desc = "Time between two shots, in seconds")
+    public int interval = 30;
+
+    @DisplayInfo(desc = "Time the camera runs before each shot to settle exposure and white balance, in milliseconds, 0 to shoot immediately")
+    public int warmUpTime = 1000;
+
+    @DisplayInfo(desc = "Quality of the JPEG stills, from 1 to 100")
+    public int jpegQuality = 90;
+
+    @DisplayInfo(desc = "Time allowed for a shot to complete, in milliseconds")
+    public int shotTimeout = 10000;
+
+}
@@ -16,4 +16,17 @@ public class VideoParameters {
     @DisplayInfo(desc = "Rate of video frames")
     public int videoFrameRate = 30;
 
+    @DisplayInfo.Required
+    @DisplayInfo(desc = "Encoding of published frames: MJPEG re-encodes every decoded frame, H264 passes the camera stream through")
+    public OutputMode outputMode = OutputMode.MJPEG;
+
+    @DisplayInfo(desc = "Quality of the JPEG frames published in MJPEG mode, from 1 to 100")
+    public int jpegQuality = 80;
+
+    @DisplayInfo(desc = "Number of frames between two keyframes of the camera stream, 0 for the libcamera default")
+    public int intraPeriod = 30;
+
+    @DisplayInfo(desc = "Stamp frames with the time the sensor captured them, read from the libcamera-vid metadata, instead of the time they reach the driver")
+    public boolean sensorTimestamps = true;
+
 }
@@ -0,0 +1,22 @@
+package com.sample.impl.sensor.rpicam.config;
+
+import org.sensorhub.api.config.DisplayInfo;
+
+public class WatchdogParameters {
+
+    @DisplayInfo(desc = "Restart the camera session automatically when frames stop arriving")
+    public boolean enabled = true;
+
+    @DisplayInfo(desc = "Time without a new frame after which the camera session is considered stalled, in milliseconds")
+    public int stallTimeout = 2000;
+
+    @DisplayInfo(desc = "Time allowed for the first frame to arrive after a (re)start, in milliseconds")
+    public int startupTimeout = 5000;
+
+    @DisplayInfo(desc = "Delay before the second restart attempt, doubled for each further attempt, in milliseconds")
+    public int initialBackoff = 500;
+
+    @DisplayInfo(desc = "Maximum delay between two restart attempts, in milliseconds")
+    public int maxBackoff = 30000;
+
+}
@@ -0,0 +1,69 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam.helpers;
+
+/**
+ * A complete H.264 access unit (all NAL units of one coded picture) in Annex-B byte stream format,
+ * as produced by {@link AnnexBParser}.
+ *
+ * @author your_name
+ * @since date
+ */
+public class AccessUnit {
+
+    /**
+     * Annex-B encoded NAL units, each preceded by a 4 byte start code
+     */
+    private final byte[] data;
+
+    /**
+     * True if the access unit contains an IDR slice
+     */
+    private final boolean keyFrame;
+
+    /**
+     * Time at which the frame was captured if known, otherwise the time the first byte of the access unit
+     * was received, in milliseconds since epoch
+     */
+    private final long timestamp;
+
+    /**
+     * Constructor
+     *
+     * @param data      Annex-B encoded NAL units of the access unit
+     * @param keyFrame  True if the access unit contains an IDR slice
+     * @param timestamp Time of the access unit, in milliseconds since epoch
+     */
+    public AccessUnit(byte[] data, boolean keyFrame, long timestamp) {
+
+        this.data = data;
+        this.keyFrame = keyFrame;
+        this.timestamp = timestamp;
+    }
+
+    public byte[] getData() {
+
+        return data;
+    }
+
+    public boolean isKeyFrame() {
+
+        return keyFrame;
+    }
+
+    public long getTimestamp() {
+
+        return timestamp;
+    }
+}
@@ -0,0 +1,218 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam.helpers;
+
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Input stream replaying queued access units as a continuous Annex-B byte stream, used to feed
+ * a decoder with the access units parsed from the camera stream.
+ * <p>
+ * The access units handed to the reader are numbered in order and their timestamps kept, so each decoded
+ * picture can be matched with the time of its own access unit, see {@link #pollTimestamp(long)}.
+ *
+ * @author your_name
+ * @since date
+ */
+public class AccessUnitInputStream extends InputStream {
+
+    private static final AccessUnit END_OF_STREAM = new AccessUnit(new byte[0], false, 0);
+
+    /**
+     * Timestamp of an access unit handed to the reader, along with its sequence number
+     */
+    private static final class PendingTimestamp {
+
+        private final long sequence;
+        private final long timestamp;
+
+        private PendingTimestamp(long sequence, long timestamp) {
+
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+        }
+    }
+
+    private final BlockingQueue<AccessUnit> accessUnits;
+    private final BlockingQueue<PendingTimestamp> timestamps;
+
+    private AccessUnit current;
+    private long sequence = -1;
+    private int offset;
+    private volatile boolean closed = false;
+    private boolean resyncing = false;
+
+    /**
+     * Constructor
+     *
+     * @param capacity Maximum number of access units waiting to be read
+     */
+    public AccessUnitInputStream(int capacity) {
+
+        accessUnits = new ArrayBlockingQueue<>(capacity);
+        timestamps = new ArrayBlockingQueue<>(capacity * 2);
+    }
+
+    /**
+     * Queues an access unit, waiting for the reader to catch up if the queue is full
+     *
+     * @param accessUnit Access unit to append to the stream
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void write(AccessUnit accessUnit) throws InterruptedException {
+
+        if (!closed) {
+
+            accessUnits.put(accessUnit);
+        }
+    }
+
+    /**
+     * Queues an access unit without waiting. Once an access unit has been refused because the queue
+     * is full, the following ones are refused as well until the next keyframe, so the decoder always
+     * resumes on a picture it can decode.
+     *
+     * @param accessUnit Access unit to append to the stream
+     * @return true if the access unit was queued
+     */
+    public boolean offer(AccessUnit accessUnit) {
+
+        if (closed) {
+
+            return false;
+        }
+
+        if (resyncing && !accessUnit.isKeyFrame()) {
+
+            return false;
+        }
+
+        resyncing = !accessUnits.offer(accessUnit);
+
+        return !resyncing;
+    }
+
+    /**
+     * Retrieves the timestamp of an access unit handed to the reader. The timestamps of earlier access units
+     * not matched yet are discarded, these access units did not produce any picture.
+     *
+     * @param accessUnitSequence Sequence number of the access unit, counted from 0 in the order the reader got them
+     * @return Access unit time in milliseconds since epoch, or -1 if not pending
+     */
+    public long pollTimestamp(long accessUnitSequence) {
+
+        PendingTimestamp pending;
+
+        while ((pending = timestamps.peek()) != null && pending.sequence < accessUnitSequence) {
+
+            timestamps.poll();
+        }
+
+        if (pending != null && pending.sequence == accessUnitSequence) {
+
+            timestamps.poll();
+
+            return pending.timestamp;
+        }
+
+        return -1;
+    }
+
+    @Override
+    public int read() throws InterruptedIOException {
+
+        byte[] single = new byte[1];
+
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws InterruptedIOException {
+
+        if (len == 0) {
+
+            return 0;
+        }
+
+        if (current == null || offset == current.getData().length) {
+
+            if (!nextAccessUnit()) {
+
+                return -1;
+            }
+        }
+
+        int count = Math.min(len, current.getData().length - offset);
+
+        System.arraycopy(current.getData(), offset, b, off, count);
+
+        offset += count;
+
+        return count;
+    }
+
+    @Override
+    public int available() {
+
+        return current != null ? current.getData().length - offset : 0;
+    }
+
+    @Override
+    public void close() {
+
+        closed = true;
+
+        accessUnits.clear();
+        accessUnits.offer(END_OF_STREAM);
+    }
+
+    private boolean nextAccessUnit() throws InterruptedIOException {
+
+        if (current == END_OF_STREAM) {
+
+            return false;
+        }
+
+        try {
+
+            current = accessUnits.take();
+            offset = 0;
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Interrupted while waiting for access unit");
+        }
+
+        if (current == END_OF_STREAM) {
+
+            return false;
+        }
+
+        PendingTimestamp pending = new PendingTimestamp(++sequence, current.getTimestamp());
+
+        // Oldest timestamps are dropped if the decoder does not consume them
+        if (!timestamps.offer(pending)) {
+
+            timestamps.poll();
+            timestamps.offer(pending);
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,371 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam.helpers;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Incremental parser splitting an H.264 Annex-B byte stream into access units.
+ * <p>
+ * Data can be fed in arbitrarily sized chunks, start codes split across chunks are handled.
+ * An access unit is emitted once the first NAL unit of the next access unit is seen
+ * (ITU-T H.264 section 7.4.1.2.3), or when {@link #flush()} is called at end of stream.
+ * <p>
+ * Start codes are searched by probing every third byte, and the bytes between two start codes are copied
+ * in bulk straight into the access unit being assembled. The access unit is classified as soon as the
+ * header of each of its NAL units is known, so only the few bytes read so far are moved when a NAL unit
+ * turns out to start the next access unit.
+ *
+ * @author your_name
+ * @since date
+ */
+public class AnnexBParser {
+
+    /**
+     * Receives the access units found in the byte stream
+     */
+    public interface AccessUnitListener {
+
+        void onAccessUnit(AccessUnit accessUnit);
+    }
+
+    public static final int NAL_SLICE = 1;
+    public static final int NAL_SLICE_IDR = 5;
+    public static final int NAL_SEI = 6;
+    public static final int NAL_SPS = 7;
+    public static final int NAL_PPS = 8;
+    public static final int NAL_AUD = 9;
+
+    private static final byte[] START_CODE = {0, 0, 0, 1};
+    private static final int INITIAL_AU_CAPACITY = 256 * 1024;
+
+    /**
+     * Bytes of a NAL unit needed to tell whether it starts an access unit, the header and the first byte
+     * of the slice header
+     */
+    private static final int NAL_HEADER_LENGTH = 2;
+
+    private final AccessUnitListener listener;
+
+    /**
+     * Number of zero bytes ending the data parsed so far, up to 2, to find start codes split across chunks
+     */
+    private int zeroCount = 0;
+
+    private boolean inNal = false;
+    private boolean nalClassified = false;
+    private int nalStart;
+    private long nalStartTime;
+
+    private byte[] auBuffer = new byte[INITIAL_AU_CAPACITY];
+    private int auLength = 0;
+    private boolean auHasSlice = false;
+    private boolean auKeyFrame = false;
+    private long auStartTime;
+
+    /**
+     * Constructor
+     *
+     * @param listener Listener notified of each complete access unit, called on the parsing thread
+     */
+    public AnnexBParser(AccessUnitListener listener) {
+
+        this.listener = listener;
+    }
+
+    /**
+     * Parses the remaining bytes of the given buffer. The buffer position is advanced to its limit.
+     *
+     * @param data Chunk of the Annex-B byte stream
+     */
+    public void parse(ByteBuffer data) {
+
+        long now = System.currentTimeMillis();
+
+        int chunkStart = data.position();
+        int limit = data.limit();
+        int position = chunkStart;
+
+        // Start code begun with the zeros ending the previous chunk
+        int splitLength = 0;
+
+        if (zeroCount >= 2 && position < limit && data.get(position) == 1) {
+
+            splitLength = 1;
+
+        } else if (zeroCount >= 1 && position + 1 < limit && data.get(position) == 0 && data.get(position + 1) == 1) {
+
+            splitLength = 2;
+        }
+
+        if (splitLength > 0) {
+
+            startNal(now);
+
+            position += splitLength;
+        }
+
+        while (position < limit) {
+
+            int startCode = findStartCode(data, position, limit);
+
+            if (startCode < 0) {
+
+                appendToNal(data, position, limit);
+
+                break;
+            }
+
+            appendToNal(data, position, startCode);
+
+            startNal(now);
+
+            position = startCode + 3;
+        }
+
+        updateZeroCount(data, chunkStart, limit);
+
+        data.position(limit);
+    }
+
+    /**
+     * Emits the access unit currently being assembled, to be called once the end of the stream is reached.
+     */
+    public void flush() {
+
+        if (inNal) {
+
+            finishNal();
+        }
+
+        zeroCount = 0;
+
+        emitAccessUnit(auLength);
+    }
+
+    /**
+     * Discards any partially parsed data, e.g. after the source stream was restarted.
+     */
+    public void reset() {
+
+        inNal = false;
+        nalClassified = false;
+        zeroCount = 0;
+        auLength = 0;
+        auHasSlice = false;
+        auKeyFrame = false;
+    }
+
+    /**
+     * Searches a start code prefix (0x000001) by probing every third byte: a byte above 1 rules out a start
+     * code at the three positions ending on it
+     *
+     * @return Position of the first zero of the prefix, or -1 if there is none in the range
+     */
+    static int findStartCode(ByteBuffer data, int from, int to) {
+
+        int index = from;
+
+        while (index + 2 < to) {
+
+            byte probe = data.get(index + 2);
+
+            if (probe == 0) {
+
+                ++index;
+
+            } else if (probe == 1 && data.get(index + 1) == 0 && data.get(index) == 0) {
+
+                return index;
+
+            } else {
+
+                index += 3;
+            }
+        }
+
+        return -1;
+    }
+
+    private void updateZeroCount(ByteBuffer data, int from, int to) {
+
+        int trailingZeros = 0;
+
+        while (trailingZeros < 2 && to - trailingZeros > from && data.get(to - trailingZeros - 1) == 0) {
+
+            ++trailingZeros;
+        }
+
+        zeroCount = (trailingZeros == to - from) ? Math.min(2, zeroCount + trailingZeros) : trailingZeros;
+    }
+
+    /**
+     * Ends the current NAL unit if any and starts a new one right after a start code
+     */
+    private void startNal(long now) {
+
+        if (inNal) {
+
+            finishNal();
+        }
+
+        if (auLength == 0) {
+
+            auStartTime = now;
+        }
+
+        ensureCapacity(START_CODE.length);
+
+        System.arraycopy(START_CODE, 0, auBuffer, auLength, START_CODE.length);
+        auLength += START_CODE.length;
+
+        inNal = true;
+        nalClassified = false;
+        nalStart = auLength;
+        nalStartTime = now;
+    }
+
+    /**
+     * Copies a range of the stream to the current NAL unit, classifying it once its header is known
+     */
+    private void appendToNal(ByteBuffer data, int from, int to) {
+
+        if (!inNal || from >= to) {
+
+            return;
+        }
+
+        int position = from;
+
+        if (!nalClassified) {
+
+            int headerBytes = Math.min(to - position, NAL_HEADER_LENGTH - (auLength - nalStart));
+
+            copyToAccessUnit(data, position, headerBytes);
+            position += headerBytes;
+
+            if (auLength - nalStart >= NAL_HEADER_LENGTH) {
+
+                classifyNal();
+            }
+        }
+
+        copyToAccessUnit(data, position, to - position);
+    }
+
+    private void copyToAccessUnit(ByteBuffer data, int from, int length) {
+
+        if (length <= 0) {
+
+            return;
+        }
+
+        ensureCapacity(length);
+
+        data.position(from);
+        data.get(auBuffer, auLength, length);
+
+        auLength += length;
+    }
+
+    private void ensureCapacity(int length) {
+
+        if (auLength + length > auBuffer.length) {
+
+            auBuffer = Arrays.copyOf(auBuffer, Math.max(auBuffer.length * 2, auLength + length));
+        }
+    }
+
+    private void finishNal() {
+
+        inNal = false;
+
+        // Zeros before a start code are part of it (or trailing_zero_8bits), not NAL payload
+        while (auLength > nalStart && auBuffer[auLength - 1] == 0) {
+
+            --auLength;
+        }
+
+        if (auLength == nalStart) {
+
+            // Empty NAL unit, drop its start code
+            auLength -= START_CODE.length;
+
+            return;
+        }
+
+        if (!nalClassified) {
+
+            classifyNal();
+        }
+    }
+
+    /**
+     * Emits the access unit preceding the current NAL unit if the latter starts a new one
+     */
+    private void classifyNal() {
+
+        nalClassified = true;
+
+        int nalType = auBuffer[nalStart] & 0x1F;
+        int nalStartCode = nalStart - START_CODE.length;
+
+        if (nalType >= NAL_SLICE && nalType <= NAL_SLICE_IDR) {
+
+            // first_mb_in_slice is the first ue(v) of the slice header, a leading 1 bit means it is 0
+            boolean firstSliceOfPicture = auLength - nalStart > 1 && (auBuffer[nalStart + 1] & 0x80) != 0;
+
+            if (firstSliceOfPicture && auHasSlice) {
+
+                emitAccessUnit(nalStartCode);
+            }
+
+            auHasSlice = true;
+            auKeyFrame |= nalType == NAL_SLICE_IDR;
+
+        } else if (nalType == NAL_AUD || nalType == NAL_SPS || nalType == NAL_PPS || nalType == NAL_SEI
+                || (nalType >= 14 && nalType <= 18)) {
+
+            // These NAL units can only precede the first slice of a picture
+            if (auHasSlice) {
+
+                emitAccessUnit(nalStartCode);
+            }
+        }
+    }
+
+    /**
+     * Emits the first bytes of the access unit buffer and keeps the rest as the start of the next access unit
+     *
+     * @param length Length of the access unit to emit
+     */
+    private void emitAccessUnit(int length) {
+
+        if (length > 0 && auHasSlice) {
+
+            listener.onAccessUnit(new AccessUnit(Arrays.copyOf(auBuffer, length), auKeyFrame, auStartTime));
+        }
+
+        int remaining = auLength - length;
+
+        System.arraycopy(auBuffer, length, auBuffer, 0, remaining);
+
+        auLength = remaining;
+        nalStart -= length;
+        auStartTime = nalStartTime;
+        auHasSlice = false;
+        auKeyFrame = false;
+    }
+}
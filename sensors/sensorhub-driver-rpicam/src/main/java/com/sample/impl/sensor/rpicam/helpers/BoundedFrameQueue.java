@@ -0,0 +1,245 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam.helpers;
+
+import com.sample.impl.sensor.rpicam.config.OverflowPolicy;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Bounded FIFO queue between two pipeline stages, applying an {@link OverflowPolicy} when full.
+ * <p>
+ * Every item that does not make it to a consumer, whether dropped on overflow or left over when the
+ * queue is closed, is passed to the discard handler so its resources can be recycled.
+ *
+ * @param <T> Type of queued items
+ * @author your_name
+ * @since date
+ */
+public class BoundedFrameQueue<T> {
+
+    private final ArrayDeque<T> items;
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final Consumer<T> discardHandler;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    private boolean closed = false;
+    private boolean finished = false;
+    private long droppedCount = 0;
+
+    /**
+     * Constructor
+     *
+     * @param capacity       Maximum number of queued items
+     * @param overflowPolicy Action taken when an item is offered while the queue is full
+     * @param discardHandler Receives every item that is dropped or never consumed
+     */
+    public BoundedFrameQueue(int capacity, OverflowPolicy overflowPolicy, Consumer<T> discardHandler) {
+
+        this.capacity = Math.max(1, capacity);
+        this.overflowPolicy = overflowPolicy;
+        this.discardHandler = discardHandler;
+
+        items = new ArrayDeque<>(this.capacity);
+    }
+
+    /**
+     * Appends an item, applying the overflow policy if the queue is full
+     *
+     * @param item Item to queue
+     * @return true if the item was queued, false if it was discarded
+     * @throws InterruptedException if interrupted while waiting with the {@link OverflowPolicy#BLOCK} policy
+     */
+    public boolean put(T item) throws InterruptedException {
+
+        T evicted = null;
+        boolean accepted = true;
+
+        lock.lockInterruptibly();
+
+        try {
+
+            if (!closed && !finished && items.size() >= capacity) {
+
+                switch (overflowPolicy) {
+
+                    case DROP_OLDEST:
+                        evicted = items.pollFirst();
+                        ++droppedCount;
+                        break;
+
+                    case DROP_NEWEST:
+                        accepted = false;
+                        ++droppedCount;
+                        break;
+
+                    case BLOCK:
+                        while (!closed && !finished && items.size() >= capacity) {
+
+                            notFull.await();
+                        }
+                        break;
+                }
+            }
+
+            accepted &= !closed && !finished;
+
+            if (accepted) {
+
+                items.addLast(item);
+                notEmpty.signal();
+            }
+
+        } finally {
+
+            lock.unlock();
+        }
+
+        if (evicted != null) {
+
+            discardHandler.accept(evicted);
+        }
+
+        if (!accepted) {
+
+            discardHandler.accept(item);
+        }
+
+        return accepted;
+    }
+
+    /**
+     * Removes the oldest item, waiting until one is available
+     *
+     * @return The oldest item, or null once the queue is closed, or finished and empty
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public T take() throws InterruptedException {
+
+        lock.lockInterruptibly();
+
+        try {
+
+            while (!closed && !finished && items.isEmpty()) {
+
+                notEmpty.await();
+            }
+
+            T item = items.pollFirst();
+
+            if (item != null) {
+
+                notFull.signal();
+            }
+
+            return item;
+
+        } finally {
+
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Rejects further items while letting consumers take the items left in the queue
+     */
+    public void finish() {
+
+        lock.lock();
+
+        try {
+
+            finished = true;
+
+            notEmpty.signalAll();
+            notFull.signalAll();
+
+        } finally {
+
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Rejects further items, wakes up all waiting threads and discards the items left in the queue
+     */
+    public void close() {
+
+        List<T> remaining;
+
+        lock.lock();
+
+        try {
+
+            closed = true;
+
+            remaining = new ArrayList<>(items);
+            items.clear();
+
+            notEmpty.signalAll();
+            notFull.signalAll();
+
+        } finally {
+
+            lock.unlock();
+        }
+
+        remaining.forEach(discardHandler);
+    }
+
+    public int size() {
+
+        lock.lock();
+
+        try {
+
+            return items.size();
+
+        } finally {
+
+            lock.unlock();
+        }
+    }
+
+    public int getCapacity() {
+
+        return capacity;
+    }
+
+    /**
+     * @return Number of items dropped because the queue was full
+     */
+    public long getDroppedCount() {
+
+        lock.lock();
+
+        try {
+
+            return droppedCount;
+
+        } finally {
+
+            lock.unlock();
+        }
+    }
+}
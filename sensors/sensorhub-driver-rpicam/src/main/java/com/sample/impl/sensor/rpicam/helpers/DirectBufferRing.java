@@ -0,0 +1,151 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam.helpers;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Fixed pool of direct byte buffers cycling between a producer filling them and a consumer draining them.
+ * <p>
+ * All buffers are allocated once, so steady state operation does not allocate. When the consumer
+ * falls behind and every buffer is filled, the producer blocks in {@link #acquire()}.
+ *
+ * @author your_name
+ * @since date
+ */
+public class DirectBufferRing {
+
+    /**
+     * Marker submitted by the producer once the end of the stream is reached
+     */
+    public static final ByteBuffer END_OF_STREAM = ByteBuffer.allocate(0);
+
+    private final BlockingQueue<ByteBuffer> freeBuffers;
+    private final BlockingQueue<ByteBuffer> filledBuffers;
+    private final int bufferCount;
+
+    private volatile int maxFilledCount = 0;
+
+    /**
+     * Constructor
+     *
+     * @param bufferCount Number of buffers in the ring
+     * @param bufferSize  Capacity of each buffer in bytes
+     */
+    public DirectBufferRing(int bufferCount, int bufferSize) {
+
+        this.bufferCount = bufferCount;
+
+        freeBuffers = new ArrayBlockingQueue<>(bufferCount);
+
+        // One extra slot so the end of stream marker can always be queued
+        filledBuffers = new ArrayBlockingQueue<>(bufferCount + 1);
+
+        for (int idx = 0; idx < bufferCount; ++idx) {
+
+            freeBuffers.add(ByteBuffer.allocateDirect(bufferSize));
+        }
+    }
+
+    /**
+     * Takes an empty buffer from the pool, waiting for the consumer to release one if needed
+     *
+     * @return A cleared buffer ready to be written into
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public ByteBuffer acquire() throws InterruptedException {
+
+        ByteBuffer buffer = freeBuffers.take();
+
+        buffer.clear();
+
+        return buffer;
+    }
+
+    /**
+     * Hands a buffer written by the producer over to the consumer
+     *
+     * @param buffer Buffer obtained from {@link #acquire()}, flipped by this method
+     */
+    public void submit(ByteBuffer buffer) {
+
+        buffer.flip();
+
+        filledBuffers.add(buffer);
+
+        maxFilledCount = Math.max(maxFilledCount, filledBuffers.size());
+    }
+
+    /**
+     * Signals the consumer that no more data will be submitted
+     */
+    public void submitEndOfStream() {
+
+        filledBuffers.offer(END_OF_STREAM);
+    }
+
+    /**
+     * Waits for the next buffer filled by the producer
+     *
+     * @return The next buffer to consume, or {@link #END_OF_STREAM}
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public ByteBuffer take() throws InterruptedException {
+
+        return filledBuffers.take();
+    }
+
+    /**
+     * Returns a consumed buffer to the pool
+     *
+     * @param buffer Buffer obtained from {@link #take()}
+     */
+    public void release(ByteBuffer buffer) {
+
+        if (buffer != END_OF_STREAM) {
+
+            freeBuffers.offer(buffer);
+        }
+    }
+
+    /**
+     * Returns all buffers to the pool, only to be called while neither producer nor consumer is running
+     */
+    public void reset() {
+
+        ByteBuffer buffer;
+
+        while ((buffer = filledBuffers.poll()) != null) {
+
+            release(buffer);
+        }
+
+        maxFilledCount = 0;
+    }
+
+    public int getBufferCount() {
+
+        return bufferCount;
+    }
+
+    /**
+     * @return Highest number of buffers waiting for the consumer since the last reset
+     */
+    public int getMaxFilledCount() {
+
+        return maxFilledCount;
+    }
+}
@@ -0,0 +1,155 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam.helpers;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Lock-free latency histogram with logarithmic buckets, cheap enough to be updated for every frame.
+ * <p>
+ * Values are recorded in microseconds. Each power of two is split in {@value #SUB_BUCKETS} linear
+ * sub-buckets, so percentiles are reported with a relative error below 12.5% over the whole range
+ * of a long. Readers take a snapshot of the counts recorded since the previous snapshot.
+ *
+ * @author your_name
+ * @since date
+ */
+public class LatencyHistogram {
+
+    /**
+     * Values recorded and snapshot of the counts for one reporting interval
+     */
+    public static class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long max) {
+
+            this.counts = counts;
+            this.count = count;
+            this.max = max;
+        }
+
+        public long getCount() {
+
+            return count;
+        }
+
+        /**
+         * @return Highest recorded value in microseconds
+         */
+        public long getMax() {
+
+            return max;
+        }
+
+        /**
+         * Retrieves the value below which the given percentage of the recorded values fall
+         *
+         * @param percentile Percentile between 0 and 100
+         * @return Upper bound of the bucket holding the percentile in microseconds, 0 if nothing was recorded
+         */
+        public long getPercentile(double percentile) {
+
+            if (count == 0) {
+
+                return 0;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long cumulative = 0;
+
+            for (int idx = 0; idx < counts.length; ++idx) {
+
+                cumulative += counts[idx];
+
+                if (cumulative >= rank) {
+
+                    return Math.min(upperBound(idx), max);
+                }
+            }
+
+            return max;
+        }
+    }
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a value
+     *
+     * @param micros Value in microseconds, negative values are recorded as 0
+     */
+    public void record(long micros) {
+
+        long value = Math.max(0, micros);
+
+        counts.incrementAndGet(indexOf(value));
+        max.accumulate(value);
+    }
+
+    /**
+     * Takes a snapshot of the values recorded since the previous snapshot and starts a new interval
+     *
+     * @return Snapshot of the interval
+     */
+    public Snapshot snapshotAndReset() {
+
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+
+        for (int idx = 0; idx < BUCKET_COUNT; ++idx) {
+
+            snapshot[idx] = counts.getAndSet(idx, 0);
+            total += snapshot[idx];
+        }
+
+        return new Snapshot(snapshot, total, max.getThenReset());
+    }
+
+    private static int indexOf(long value) {
+
+        if (value < SUB_BUCKETS) {
+
+            return (int) value;
+        }
+
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBound(int index) {
+
+        if (index < SUB_BUCKETS) {
+
+            return index;
+        }
+
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int shift = exponent - SUB_BUCKET_BITS;
+        long lowerBound = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+
+        return lowerBound + (1L << shift) - 1;
+    }
+}
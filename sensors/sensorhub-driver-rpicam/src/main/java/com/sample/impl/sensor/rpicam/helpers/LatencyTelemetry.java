@@ -0,0 +1,107 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam.helpers;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Latency histograms of the stages a frame goes through between its capture and its publication.
+ * Grab and total latencies start at the sensor timestamp of the frame, or at its arrival in the driver
+ * when sensor timestamps are not available.
+ *
+ * @author your_name
+ * @since date
+ */
+public class LatencyTelemetry {
+
+    /**
+     * Stages of the frame path, in the order a frame goes through them
+     */
+    public enum Stage {
+
+        GRAB("grab", "Grab", "Time from the sensor capture of the frame to its decoded picture"),
+        CONVERT("convert", "Convert", "Time to copy the decoded picture into the pipeline"),
+        QUEUE("queue", "Queue", "Time waiting for an encoder"),
+        ENCODE("encode", "Encode", "Time to encode the picture"),
+        PUBLISH("publish", "Publish", "Time to publish the data event"),
+        TOTAL("total", "Total", "Time from the sensor capture of the frame to the end of its publication");
+
+        private final String fieldName;
+        private final String label;
+        private final String description;
+
+        Stage(String fieldName, String label, String description) {
+
+            this.fieldName = fieldName;
+            this.label = label;
+            this.description = description;
+        }
+
+        public String getFieldName() {
+
+            return fieldName;
+        }
+
+        public String getLabel() {
+
+            return label;
+        }
+
+        public String getDescription() {
+
+            return description;
+        }
+    }
+
+    private final Map<Stage, LatencyHistogram> histograms = new EnumMap<>(Stage.class);
+
+    /**
+     * Constructor
+     */
+    public LatencyTelemetry() {
+
+        for (Stage stage : Stage.values()) {
+
+            histograms.put(stage, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * Records the duration of a stage measured with {@link System#nanoTime()}
+     *
+     * @param stage Stage
+     * @param nanos Duration in nanoseconds
+     */
+    public void record(Stage stage, long nanos) {
+
+        histograms.get(stage).record(nanos / 1000);
+    }
+
+    /**
+     * Records the duration of a stage measured with {@link System#currentTimeMillis()}
+     *
+     * @param stage  Stage
+     * @param millis Duration in milliseconds
+     */
+    public void recordMillis(Stage stage, long millis) {
+
+        histograms.get(stage).record(millis * 1000);
+    }
+
+    public LatencyHistogram getHistogram(Stage stage) {
+
+        return histograms.get(stage);
+    }
+}
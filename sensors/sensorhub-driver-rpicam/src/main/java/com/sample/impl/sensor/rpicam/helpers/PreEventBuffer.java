@@ -0,0 +1,149 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam.helpers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ring of the latest encoded frames, bounded both by size and by duration, providing the video that
+ * preceded an event.
+ * <p>
+ * The oldest frames are evicted first, along with the frames depending on them, so the buffer always
+ * starts with a keyframe and its content can be decoded on its own. Frames are held by reference,
+ * the encoded payloads must not be modified once added.
+ * <p>
+ * Not thread safe, the owner serializes additions and reads.
+ *
+ * @author your_name
+ * @since date
+ */
+public class PreEventBuffer {
+
+    /**
+     * Encoded frame held by the buffer
+     */
+    public static class BufferedFrame {
+
+        private final long frameTime;
+        private final byte[] frameData;
+        private final boolean keyFrame;
+
+        BufferedFrame(long frameTime, byte[] frameData, boolean keyFrame) {
+
+            this.frameTime = frameTime;
+            this.frameData = frameData;
+            this.keyFrame = keyFrame;
+        }
+
+        /**
+         * @return Frame time in milliseconds since epoch
+         */
+        public long getFrameTime() {
+
+            return frameTime;
+        }
+
+        public byte[] getFrameData() {
+
+            return frameData;
+        }
+
+        public boolean isKeyFrame() {
+
+            return keyFrame;
+        }
+    }
+
+    private final long maxBytes;
+    private final long maxDurationMillis;
+    private final ArrayDeque<BufferedFrame> frames = new ArrayDeque<>();
+    private long size = 0;
+
+    /**
+     * Constructor
+     *
+     * @param maxBytes          Maximum size of the buffered frames
+     * @param maxDurationMillis Maximum time between the oldest and the newest buffered frame
+     */
+    public PreEventBuffer(long maxBytes, long maxDurationMillis) {
+
+        this.maxBytes = maxBytes;
+        this.maxDurationMillis = maxDurationMillis;
+    }
+
+    /**
+     * Appends an encoded frame, evicting the oldest frames beyond the size or duration limit
+     *
+     * @param frameTime Frame time in milliseconds since epoch
+     * @param frameData Encoded frame, held by reference
+     * @param keyFrame  True if the frame can be decoded on its own
+     */
+    public void add(long frameTime, byte[] frameData, boolean keyFrame) {
+
+        // Nothing decodable to append to
+        if (!keyFrame && frames.isEmpty()) {
+
+            return;
+        }
+
+        frames.addLast(new BufferedFrame(frameTime, frameData, keyFrame));
+        size += frameData.length;
+
+        while (!frames.isEmpty()
+                && (size > maxBytes || frameTime - frames.peekFirst().frameTime > maxDurationMillis)) {
+
+            evictOldest();
+
+            // Frames up to the next keyframe cannot be decoded without the evicted one
+            while (!frames.isEmpty() && !frames.peekFirst().keyFrame) {
+
+                evictOldest();
+            }
+        }
+    }
+
+    /**
+     * @return Buffered frames in capture order, starting with a keyframe, empty if none is available
+     */
+    public List<BufferedFrame> getFrames() {
+
+        return new ArrayList<>(frames);
+    }
+
+    /**
+     * @return Time between the oldest and the newest buffered frame, in milliseconds
+     */
+    public long getDuration() {
+
+        return frames.isEmpty() ? 0 : frames.peekLast().frameTime - frames.peekFirst().frameTime;
+    }
+
+    public long getSize() {
+
+        return size;
+    }
+
+    public void clear() {
+
+        frames.clear();
+        size = 0;
+    }
+
+    private void evictOldest() {
+
+        size -= frames.pollFirst().frameData.length;
+    }
+}
@@ -0,0 +1,204 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam;
+
+import com.sample.impl.sensor.rpicam.config.WatchdogParameters;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TestCaptureWatchdog {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long FRAME_PERIOD_NANOS = 33 * MILLIS;
+
+    private final WatchdogParameters parameters = new WatchdogParameters();
+    private final FakeSession session = new FakeSession();
+
+    private long now = 1_000_000 * MILLIS;
+
+    private CaptureWatchdog watchdog;
+
+    @Before
+    public void setup() {
+
+        parameters.stallTimeout = 2000;
+        parameters.startupTimeout = 5000;
+        parameters.initialBackoff = 500;
+        parameters.maxBackoff = 4000;
+
+        watchdog = new CaptureWatchdog(session, parameters, () -> now);
+
+        // Takes the session start time, the checks are then driven by the test
+        watchdog.start();
+        watchdog.stop();
+    }
+
+    @Test
+    public void testLeavesHealthySessionAlone() {
+
+        for (int frame = 0; frame < 300; ++frame) {
+
+            now += FRAME_PERIOD_NANOS;
+            session.lastFrameNanos = now;
+
+            watchdog.check();
+        }
+
+        assertEquals(0, watchdog.getRestartCount());
+        assertEquals(0, session.starts);
+    }
+
+    @Test
+    public void testRestartsAfterStallTimeout() {
+
+        session.lastFrameNanos = now;
+
+        advance(parameters.stallTimeout);
+
+        assertEquals(0, watchdog.getRestartCount());
+
+        advance(1);
+
+        assertEquals(1, watchdog.getRestartCount());
+        assertEquals(1, session.stops);
+        assertEquals(1, session.starts);
+    }
+
+    @Test
+    public void testRestartsAfterStartupTimeout() {
+
+        advance(parameters.startupTimeout);
+
+        assertEquals(0, watchdog.getRestartCount());
+
+        advance(1);
+
+        assertEquals(1, watchdog.getRestartCount());
+
+        // The new session gets the whole startup timeout again
+        advance(parameters.startupTimeout);
+
+        assertEquals(1, watchdog.getRestartCount());
+    }
+
+    @Test
+    public void testBacksOffRepeatedRestarts() {
+
+        session.alive = false;
+
+        // First restart for a failure is immediate, and so is the second one
+        advance(0);
+        advance(0);
+
+        assertEquals(2, watchdog.getRestartCount());
+
+        long[] backoffs = {500, 1000, 2000, 4000, 4000};
+
+        for (long backoff : backoffs) {
+
+            long restarts = watchdog.getRestartCount();
+
+            advance(backoff - 1);
+
+            assertEquals(restarts, watchdog.getRestartCount());
+
+            advance(1);
+
+            assertEquals(restarts + 1, watchdog.getRestartCount());
+        }
+
+        assertEquals(session.starts, watchdog.getRestartCount());
+        assertEquals(0, watchdog.getRecoveryCount());
+    }
+
+    @Test
+    public void testMeasuresRecoveryAndResetsBackoff() {
+
+        long lastFrameNanos = now;
+        session.lastFrameNanos = lastFrameNanos;
+
+        advance(parameters.stallTimeout + 1);
+        advance(parameters.startupTimeout + 1);
+
+        assertEquals(2, watchdog.getRestartCount());
+
+        // The camera comes back 8 s after the last frame
+        now = lastFrameNanos + 8000 * MILLIS;
+        session.lastFrameNanos = now;
+
+        watchdog.check();
+
+        assertEquals(1, watchdog.getRecoveryCount());
+        assertEquals(8000, watchdog.getLastTimeToRecoverMillis(), 1e-6);
+        assertEquals(8000, watchdog.getMeanTimeToRecoverMillis(), 1e-6);
+
+        // A new failure is restarted right away again
+        session.alive = false;
+
+        advance(0);
+
+        assertEquals(3, watchdog.getRestartCount());
+    }
+
+    private void advance(long millis) {
+
+        now += millis * MILLIS;
+
+        watchdog.check();
+    }
+
+    private static class FakeSession implements CaptureWatchdog.Session {
+
+        volatile boolean alive = true;
+        volatile long lastFrameNanos = 0;
+        int starts = 0;
+        int stops = 0;
+
+        @Override
+        public String getName() {
+
+            return "video";
+        }
+
+        @Override
+        public boolean isAlive() {
+
+            return alive;
+        }
+
+        @Override
+        public long getLastFrameNanos() {
+
+            return lastFrameNanos;
+        }
+
+        @Override
+        public void doStart() {
+
+            ++starts;
+
+            lastFrameNanos = 0;
+        }
+
+        @Override
+        public void doStop() {
+
+            ++stops;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam;
+
+import com.sample.impl.sensor.rpicam.config.ClipParameters;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestClipRecorder {
+
+    private static final long FRAME_PERIOD_MILLIS = 100;
+    private static final int GOP_LENGTH = 10;
+
+    // Frame times ahead of the system clock, so events are timed by the latest frame
+    private static final long BASE_TIME = System.currentTimeMillis() + 3_600_000;
+
+    private final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+    private final ClipParameters parameters = new ClipParameters();
+
+    private ClipRecorder recorder;
+    private int nextFrame = 0;
+
+    @Before
+    public void setup() {
+
+        parameters.preRollDuration = 2;
+        parameters.postRollDuration = 1;
+
+        recorder = new ClipRecorder(parameters, Collections.singletonList(new ClipRecorder.ClipSink() {
+
+            @Override
+            public void beginClip(long clipId, long startTime) {
+
+                calls.add("begin " + clipId + " " + (startTime - BASE_TIME));
+            }
+
+            @Override
+            public void writeFrame(long frameTime, byte[] frameData) {
+
+                calls.add("frame " + (frameTime - BASE_TIME));
+            }
+
+            @Override
+            public void endClip() {
+
+                calls.add("end");
+            }
+        }));
+
+        recorder.start();
+    }
+
+    @After
+    public void cleanup() {
+
+        recorder.stop();
+    }
+
+    @Test
+    public void testClipStartsWithTrimmedPreRoll() {
+
+        addFrames(50);
+
+        assertEquals(1900, recorder.getPreRollDuration());
+        assertEquals(1, recorder.trigger(0));
+        assertTrue(recorder.isRecording());
+
+        // Post-roll ends with the frame at 5.9 s
+        addFrames(9);
+
+        assertTrue(recorder.isRecording());
+
+        addFrames(1);
+
+        assertFalse(recorder.isRecording());
+
+        recorder.stop();
+
+        List<String> expected = new ArrayList<>();
+        expected.add("begin 1 3000");
+
+        for (long time = 3000; time <= 5900; time += FRAME_PERIOD_MILLIS) {
+
+            expected.add("frame " + time);
+        }
+
+        expected.add("end");
+
+        assertEquals(expected, calls);
+    }
+
+    @Test
+    public void testEventDuringClipExtendsIt() {
+
+        addFrames(10);
+
+        long clipId = recorder.trigger(0);
+
+        addFrames(5);
+
+        assertEquals(clipId, recorder.trigger(2000));
+
+        // Ends 2 s after the frame at 1.4 s rather than 1 s after the one at 0.9 s
+        addFrames(19);
+
+        assertTrue(recorder.isRecording());
+
+        addFrames(1);
+
+        assertFalse(recorder.isRecording());
+
+        // The next event starts a new clip
+        assertEquals(clipId + 1, recorder.trigger(0));
+    }
+
+    @Test
+    public void testStopEndsClip() {
+
+        addFrames(5);
+
+        recorder.trigger(0);
+        recorder.stop();
+
+        assertFalse(recorder.isRecording());
+        assertEquals("end", calls.get(calls.size() - 1));
+        assertEquals(-1, recorder.trigger(0));
+    }
+
+    @Test
+    public void testRestartDropsPreRoll() {
+
+        addFrames(20);
+
+        recorder.stop();
+        recorder.start();
+
+        assertEquals(0, recorder.getPreRollDuration());
+
+        recorder.trigger(0);
+        recorder.stop();
+
+        assertEquals(2, calls.size());
+        assertTrue(calls.get(0).startsWith("begin"));
+        assertEquals("end", calls.get(1));
+    }
+
+    private void addFrames(int count) {
+
+        for (int idx = 0; idx < count; ++idx, ++nextFrame) {
+
+            recorder.addFrame(BASE_TIME + nextFrame * FRAME_PERIOD_MILLIS, new byte[16], nextFrame % GOP_LENGTH == 0);
+        }
+    }
+}
@@ -0,0 +1,299 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam;
+
+import com.sample.impl.sensor.rpicam.config.OverflowPolicy;
+import com.sample.impl.sensor.rpicam.config.PipelineParameters;
+import com.sample.impl.sensor.rpicam.helpers.LatencyTelemetry;
+import org.bytedeco.javacv.Frame;
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+public class TestFramePipeline {
+
+    private final List<Long> publishedTimes = Collections.synchronizedList(new ArrayList<>());
+    private final List<Byte> publishedValues = Collections.synchronizedList(new ArrayList<>());
+    private final Frame frame = new Frame(4, 2, Frame.DEPTH_UBYTE, 3);
+
+    private FramePipeline pipeline;
+
+    @After
+    public void cleanup() {
+
+        if (pipeline != null) {
+
+            pipeline.stop();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testPublishesInCaptureOrder() throws Exception {
+
+        Random random = new Random(0);
+
+        // Encoders taking random times finish out of order
+        pipeline = createPipeline(3, 4, OverflowPolicy.BLOCK, () -> encodingFrame -> {
+
+            Thread.sleep(random.nextInt(5));
+
+            return encode(encodingFrame);
+        });
+
+        pipeline.start();
+
+        for (int idx = 0; idx < 50; ++idx) {
+
+            assertTrue(submit(idx));
+        }
+
+        awaitPublished(50);
+
+        for (int idx = 0; idx < 50; ++idx) {
+
+            assertEquals(idx, (long) publishedTimes.get(idx));
+            assertEquals((byte) idx, (byte) publishedValues.get(idx));
+        }
+
+        assertEquals(0, pipeline.getDroppedCount());
+    }
+
+    @Test(timeout = 10000)
+    public void testSubmittedFrameIsCopied() throws Exception {
+
+        CountDownLatch release = new CountDownLatch(1);
+
+        pipeline = createPipeline(1, 2, OverflowPolicy.BLOCK, () -> encodingFrame -> {
+
+            release.await();
+
+            return encode(encodingFrame);
+        });
+
+        pipeline.start();
+
+        submit(7);
+
+        // The grabber reuses its frame as soon as submit returns
+        setValue(frame, 99);
+
+        release.countDown();
+
+        awaitPublished(1);
+
+        assertEquals((byte) 7, (byte) publishedValues.get(0));
+    }
+
+    @Test(timeout = 10000)
+    public void testPoolExhaustionDropsWithoutBlocking() throws Exception {
+
+        CountDownLatch release = new CountDownLatch(1);
+
+        pipeline = createPipeline(1, 2, OverflowPolicy.DROP_NEWEST, () -> encodingFrame -> {
+
+            release.await();
+
+            return encode(encodingFrame);
+        });
+
+        pipeline.start();
+
+        // The stalled encoder holds one frame, the others fill the queue and the pool
+        int accepted = 0;
+
+        for (int idx = 0; idx < 20; ++idx) {
+
+            if (submit(idx)) {
+
+                ++accepted;
+            }
+        }
+
+        assertTrue(accepted >= 2 && accepted <= 4);
+        assertEquals(20 - accepted, pipeline.getDroppedCount());
+
+        release.countDown();
+
+        awaitPublished(accepted);
+
+        assertIncreasing(publishedTimes);
+
+        // Recycled frames are available again once published
+        assertTrue(submit(20));
+
+        awaitPublished(accepted + 1);
+    }
+
+    @Test(timeout = 10000)
+    public void testSlowPublisherDoesNotBlockSubmit() throws Exception {
+
+        CountDownLatch release = new CountDownLatch(1);
+
+        pipeline = new FramePipeline("test", parameters(2, 2, OverflowPolicy.DROP_OLDEST),
+                () -> this::encode, (frameTime, frameData) -> {
+
+            try {
+
+                release.await();
+
+            } catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+            }
+
+            publishedTimes.add(frameTime);
+
+        }, new LatencyTelemetry());
+
+        pipeline.start();
+
+        for (int idx = 0; idx < 100; ++idx) {
+
+            submit(idx);
+
+            Thread.sleep(1);
+        }
+
+        assertTrue(pipeline.getDroppedCount() > 0);
+
+        release.countDown();
+
+        // Frames still being encoded may be dropped too, every frame ends up published or dropped
+        while (publishedTimes.size() + pipeline.getDroppedCount() < 100) {
+
+            Thread.sleep(5);
+        }
+
+        assertEquals(100, publishedTimes.size() + pipeline.getDroppedCount());
+        assertIncreasing(publishedTimes);
+    }
+
+    @Test(timeout = 10000)
+    public void testFailedEncodeLeavesGap() throws Exception {
+
+        pipeline = createPipeline(2, 4, OverflowPolicy.BLOCK, () -> encodingFrame -> {
+
+            if (getValue(encodingFrame) == 2) {
+
+                throw new IllegalStateException("Test failure");
+            }
+
+            return encode(encodingFrame);
+        });
+
+        pipeline.start();
+
+        for (int idx = 0; idx < 5; ++idx) {
+
+            submit(idx);
+        }
+
+        awaitPublished(4);
+
+        assertEquals(List.of(0L, 1L, 3L, 4L), new ArrayList<>(publishedTimes));
+        assertEquals(1, pipeline.getDroppedCount());
+    }
+
+    @Test
+    public void testCopyFrameReusesMatchingDestination() {
+
+        setValue(frame, 5);
+
+        Frame copy = FramePipeline.copyFrame(frame, null);
+
+        assertNotSame(frame, copy);
+        assertEquals(5, getValue(copy));
+
+        setValue(frame, 6);
+
+        assertSame(copy, FramePipeline.copyFrame(frame, copy));
+        assertEquals(6, getValue(copy));
+
+        Frame other = new Frame(8, 2, Frame.DEPTH_UBYTE, 3);
+
+        assertNotSame(other, FramePipeline.copyFrame(frame, other));
+    }
+
+    private FramePipeline createPipeline(int encoderThreads, int queueCapacity, OverflowPolicy overflowPolicy,
+                                         Supplier<FramePipeline.FrameEncoder> encoderFactory) {
+
+        return new FramePipeline("test", parameters(encoderThreads, queueCapacity, overflowPolicy), encoderFactory,
+                (frameTime, frameData) -> {
+
+                    publishedTimes.add(frameTime);
+                    publishedValues.add(frameData[0]);
+
+                }, new LatencyTelemetry());
+    }
+
+    private static PipelineParameters parameters(int encoderThreads, int queueCapacity, OverflowPolicy overflowPolicy) {
+
+        PipelineParameters parameters = new PipelineParameters();
+        parameters.encoderThreads = encoderThreads;
+        parameters.queueCapacity = queueCapacity;
+        parameters.overflowPolicy = overflowPolicy;
+
+        return parameters;
+    }
+
+    private boolean submit(int value) throws InterruptedException {
+
+        setValue(frame, value);
+
+        return pipeline.submit(frame, value);
+    }
+
+    private byte[] encode(Frame encodingFrame) {
+
+        return new byte[]{(byte) getValue(encodingFrame)};
+    }
+
+    private void awaitPublished(long count) throws InterruptedException {
+
+        while (publishedTimes.size() < count) {
+
+            Thread.sleep(5);
+        }
+    }
+
+    private static void assertIncreasing(List<Long> values) {
+
+        synchronized (values) {
+
+            for (int idx = 1; idx < values.size(); ++idx) {
+
+                assertTrue("Out of order at " + idx, values.get(idx) > values.get(idx - 1));
+            }
+        }
+    }
+
+    private static void setValue(Frame frame, int value) {
+
+        ((ByteBuffer) frame.image[0]).put(0, (byte) value);
+    }
+
+    private static int getValue(Frame frame) {
+
+        return ((ByteBuffer) frame.image[0]).get(0);
+    }
+}
@@ -0,0 +1,222 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class TestOnDemandCapture {
+
+    private static final long GRACE_PERIOD_MILLIS = 5000;
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final AtomicInteger starts = new AtomicInteger();
+    private final AtomicInteger stops = new AtomicInteger();
+    private final AtomicBoolean failStart = new AtomicBoolean();
+
+    private OnDemandCapture capture;
+
+    @Before
+    public void setup() {
+
+        capture = new OnDemandCapture(new OnDemandCapture.CaptureControl() {
+
+            @Override
+            public void startCapture() throws Exception {
+
+                starts.incrementAndGet();
+
+                if (failStart.get()) {
+
+                    throw new Exception("Camera busy");
+                }
+            }
+
+            @Override
+            public void stopCapture() {
+
+                stops.incrementAndGet();
+            }
+
+        }, subscribers::get, GRACE_PERIOD_MILLIS, now::get);
+    }
+
+    @After
+    public void cleanup() {
+
+        capture.disable();
+    }
+
+    @Test(timeout = 10000)
+    public void testStartsWithFirstSubscriberAndStopsAfterGracePeriod() {
+
+        capture.enable();
+
+        assertFalse(capture.isCapturing());
+        assertEquals(0, starts.get());
+
+        subscribers.set(2);
+        capture.awaitReconcile();
+
+        assertTrue(capture.isCapturing());
+        assertEquals(1, starts.get());
+
+        // One subscriber leaving changes nothing
+        subscribers.set(1);
+        capture.awaitReconcile();
+
+        assertTrue(capture.isCapturing());
+        assertEquals(1, starts.get());
+
+        subscribers.set(0);
+        capture.awaitReconcile();
+        advance(GRACE_PERIOD_MILLIS - 1);
+
+        assertTrue(capture.isCapturing());
+        assertEquals(0, stops.get());
+
+        advance(1);
+
+        assertFalse(capture.isCapturing());
+        assertEquals(1, stops.get());
+    }
+
+    @Test(timeout = 10000)
+    public void testSubscriberReturningWithinGracePeriodKeepsCapture() {
+
+        subscribers.set(1);
+        capture.enable();
+
+        subscribers.set(0);
+        capture.awaitReconcile();
+        advance(GRACE_PERIOD_MILLIS - 1000);
+
+        subscribers.set(1);
+        capture.awaitReconcile();
+
+        // The grace period starts over when the new subscriber leaves
+        subscribers.set(0);
+        capture.awaitReconcile();
+        advance(GRACE_PERIOD_MILLIS - 1000);
+
+        assertTrue(capture.isCapturing());
+        assertEquals(1, starts.get());
+        assertEquals(0, stops.get());
+    }
+
+    @Test(timeout = 10000)
+    public void testEnableStartsAndDisableStopsAtOnce() {
+
+        subscribers.set(1);
+        capture.enable();
+
+        assertTrue(capture.isCapturing());
+        assertEquals(1, starts.get());
+
+        capture.disable();
+
+        assertFalse(capture.isCapturing());
+        assertEquals(1, stops.get());
+    }
+
+    @Test(timeout = 10000)
+    public void testRetriesFailedStartWithBackoff() {
+
+        failStart.set(true);
+        subscribers.set(1);
+        capture.enable();
+
+        assertFalse(capture.isCapturing());
+        assertEquals(1, starts.get());
+
+        // A failed start is cleaned up like a stop
+        assertEquals(1, stops.get());
+
+        long[] delays = {1000, 2000, 4000, 8000, 16000, 30000, 30000};
+
+        for (long delay : delays) {
+
+            int attempts = starts.get();
+
+            advance(delay - 1);
+
+            assertEquals(attempts, starts.get());
+
+            advance(1);
+
+            assertEquals(attempts + 1, starts.get());
+        }
+
+        // Success resets the backoff
+        failStart.set(false);
+        advance(30000);
+
+        assertTrue(capture.isCapturing());
+    }
+
+    @Test(timeout = 10000)
+    public void testBackoffResetsWhenSubscribersLeave() {
+
+        failStart.set(true);
+        subscribers.set(1);
+        capture.enable();
+
+        advance(1000);
+        advance(2000);
+
+        assertEquals(3, starts.get());
+
+        subscribers.set(0);
+        capture.awaitReconcile();
+
+        // The next subscriber starts the camera right away
+        failStart.set(false);
+        subscribers.set(1);
+        capture.awaitReconcile();
+
+        assertTrue(capture.isCapturing());
+        assertEquals(4, starts.get());
+    }
+
+    @Test(timeout = 10000)
+    public void testNegativeSubscriberCountMeansNone() {
+
+        subscribers.set(1);
+        capture.enable();
+
+        subscribers.set(-1);
+
+        assertEquals(0, capture.getSubscriberCount());
+
+        capture.awaitReconcile();
+        advance(GRACE_PERIOD_MILLIS);
+
+        assertFalse(capture.isCapturing());
+    }
+
+    private void advance(long millis) {
+
+        now.addAndGet(millis);
+
+        capture.awaitReconcile();
+    }
+}
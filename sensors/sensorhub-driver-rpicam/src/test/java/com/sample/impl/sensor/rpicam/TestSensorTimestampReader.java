@@ -0,0 +1,120 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TestSensorTimestampReader {
+
+    private static final long PERIOD_NANOS = 33_333_333L;
+    private static final long DELAY_NANOS = 50_000_000L;
+    private static final long START_NANOS = 1_000_000_000_000L;
+
+    private final SensorTimestampReader reader = new SensorTimestampReader();
+    private final Random random = new Random(0);
+
+    @Test
+    public void testPairsFramesInOrder() {
+
+        for (int frame = 0; frame < 100; ++frame) {
+
+            reader.addTimestamp(captureNanos(frame));
+
+            assertEquals(captureNanos(frame) / 1000, reader.getSensorMicros(frame, arrivalNanos(frame, DELAY_NANOS)));
+        }
+    }
+
+    @Test
+    public void testRealignsAfterLostMetadata() {
+
+        for (int frame = 0; frame < 100; ++frame) {
+
+            if (frame != 40) {
+
+                reader.addTimestamp(captureNanos(frame));
+            }
+
+            long sensorMicros = reader.getSensorMicros(frame, arrivalNanos(frame, DELAY_NANOS));
+
+            // The frames before the mismatch is confirmed keep the shifted pairing
+            if (frame < 40 || frame > 42) {
+
+                assertEquals("Frame " + frame, captureNanos(frame) / 1000, sensorMicros);
+            }
+        }
+    }
+
+    @Test
+    public void testRealignsAfterExtraMetadata() {
+
+        for (int frame = 0; frame < 100; ++frame) {
+
+            reader.addTimestamp(captureNanos(frame));
+
+            if (frame == 60) {
+
+                reader.addTimestamp(captureNanos(frame) + PERIOD_NANOS / 3);
+            }
+
+            long sensorMicros = reader.getSensorMicros(frame, arrivalNanos(frame, DELAY_NANOS));
+
+            if (frame < 61 || frame > 62) {
+
+                assertEquals("Frame " + frame, captureNanos(frame) / 1000, sensorMicros);
+            }
+        }
+    }
+
+    @Test
+    public void testKeepsPairingWhenLatencyChanges() {
+
+        for (int frame = 0; frame < 100; ++frame) {
+
+            reader.addTimestamp(captureNanos(frame));
+
+            long delay = frame < 50 ? DELAY_NANOS : DELAY_NANOS + 4 * PERIOD_NANOS;
+
+            assertEquals(captureNanos(frame) / 1000, reader.getSensorMicros(frame, arrivalNanos(frame, delay)));
+        }
+    }
+
+    @Test
+    public void testExtrapolatesTimestampsNotReadYet() {
+
+        assertEquals(-1, reader.getSensorMicros(0, arrivalNanos(0, DELAY_NANOS)));
+
+        for (int frame = 0; frame < 10; ++frame) {
+
+            reader.addTimestamp(captureNanos(frame));
+        }
+
+        long sensorMicros = reader.getSensorMicros(12, arrivalNanos(12, DELAY_NANOS));
+
+        assertEquals(captureNanos(12) / 1000d, sensorMicros, 1);
+    }
+
+    private long captureNanos(int frame) {
+
+        return START_NANOS + frame * PERIOD_NANOS;
+    }
+
+    private long arrivalNanos(int frame, long delay) {
+
+        return captureNanos(frame) + delay + random.nextInt(8_000_000);
+    }
+}
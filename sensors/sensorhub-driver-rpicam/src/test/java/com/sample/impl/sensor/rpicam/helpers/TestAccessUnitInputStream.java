@@ -0,0 +1,96 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam.helpers;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestAccessUnitInputStream {
+
+    @Test
+    public void testReplaysAccessUnitsAsOneStream() throws Exception {
+
+        AccessUnitInputStream input = new AccessUnitInputStream(4);
+
+        input.write(new AccessUnit(new byte[]{1, 2}, true, 100));
+        input.write(new AccessUnit(new byte[]{3}, false, 133));
+
+        byte[] data = new byte[8];
+
+        assertEquals(2, input.read(data, 0, 8));
+        assertEquals(3, input.read());
+        assertEquals(1, data[0]);
+        assertEquals(2, data[1]);
+
+        input.close();
+
+        assertEquals(-1, input.read(data, 0, 8));
+    }
+
+    @Test
+    public void testMatchesTimestampsBySequence() throws Exception {
+
+        AccessUnitInputStream input = new AccessUnitInputStream(8);
+
+        for (int idx = 0; idx < 4; ++idx) {
+
+            input.write(new AccessUnit(new byte[]{(byte) idx}, idx == 0, 1000 + idx));
+        }
+
+        for (int idx = 0; idx < 4; ++idx) {
+
+            input.read();
+        }
+
+        assertEquals(1000, input.pollTimestamp(0));
+
+        // The second access unit produced no picture, its timestamp must not stamp the next picture
+        assertEquals(1002, input.pollTimestamp(2));
+        assertEquals(-1, input.pollTimestamp(1));
+        assertEquals(1003, input.pollTimestamp(3));
+        assertEquals(-1, input.pollTimestamp(4));
+    }
+
+    @Test
+    public void testTimestampNotReadYet() throws Exception {
+
+        AccessUnitInputStream input = new AccessUnitInputStream(8);
+
+        input.write(new AccessUnit(new byte[]{0}, true, 1000));
+        input.write(new AccessUnit(new byte[]{1}, false, 1001));
+
+        input.read();
+
+        assertEquals(1000, input.pollTimestamp(0));
+        assertEquals(-1, input.pollTimestamp(1));
+
+        input.read();
+
+        assertEquals(1001, input.pollTimestamp(1));
+    }
+
+    @Test
+    public void testRefusesUntilKeyframeOnceFull() {
+
+        AccessUnitInputStream input = new AccessUnitInputStream(1);
+
+        assertTrue(input.offer(new AccessUnit(new byte[]{0}, true, 0)));
+        assertFalse(input.offer(new AccessUnit(new byte[]{1}, false, 1)));
+
+        input.close();
+
+        assertFalse(input.offer(new AccessUnit(new byte[]{2}, true, 2)));
+    }
+}
@@ -0,0 +1,271 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam.helpers;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestAnnexBParser {
+
+    private static final byte[] START_CODE = {0, 0, 0, 1};
+    private static final byte[] SHORT_START_CODE = {0, 0, 1};
+
+    private static final byte[] AUD = {0x09, (byte) 0xF0};
+    private static final byte[] SPS = {0x67, 0x42, 0x00, 0x1F, (byte) 0xE9};
+    private static final byte[] PPS = {0x68, (byte) 0xCE, 0x38, (byte) 0x80};
+    private static final byte[] IDR_SLICE = {0x65, (byte) 0x88, (byte) 0x84, 0x00, 0x33, 0x7F};
+    private static final byte[] SLICE = {0x41, (byte) 0x9A, 0x02, 0x00, 0x00, 0x03, 0x01, 0x55};
+    private static final byte[] SECOND_SLICE = {0x41, 0x3A, 0x21, 0x77};
+
+    private final List<AccessUnit> accessUnits = new ArrayList<>();
+    private AnnexBParser parser;
+
+    @Before
+    public void init() {
+
+        accessUnits.clear();
+        parser = new AnnexBParser(accessUnits::add);
+    }
+
+    @Test
+    public void testSingleAccessUnitEmittedOnFlush() {
+
+        parser.parse(ByteBuffer.wrap(stream(START_CODE, SPS, START_CODE, PPS, START_CODE, IDR_SLICE)));
+
+        assertEquals(0, accessUnits.size());
+
+        parser.flush();
+
+        assertEquals(1, accessUnits.size());
+        assertTrue(accessUnits.get(0).isKeyFrame());
+        assertArrayEquals(stream(START_CODE, SPS, START_CODE, PPS, START_CODE, IDR_SLICE), accessUnits.get(0).getData());
+    }
+
+    @Test
+    public void testAccessUnitBoundaries() {
+
+        byte[] data = stream(START_CODE, AUD, START_CODE, SPS, START_CODE, PPS, START_CODE, IDR_SLICE,
+                START_CODE, AUD, START_CODE, SLICE, START_CODE, SECOND_SLICE,
+                START_CODE, SLICE);
+
+        parser.parse(ByteBuffer.wrap(data));
+        parser.flush();
+
+        assertEquals(3, accessUnits.size());
+
+        assertTrue(accessUnits.get(0).isKeyFrame());
+        assertArrayEquals(stream(START_CODE, AUD, START_CODE, SPS, START_CODE, PPS, START_CODE, IDR_SLICE),
+                accessUnits.get(0).getData());
+
+        // A slice not starting at the first macroblock belongs to the same picture
+        assertFalse(accessUnits.get(1).isKeyFrame());
+        assertArrayEquals(stream(START_CODE, AUD, START_CODE, SLICE, START_CODE, SECOND_SLICE),
+                accessUnits.get(1).getData());
+
+        assertArrayEquals(stream(START_CODE, SLICE), accessUnits.get(2).getData());
+    }
+
+    @Test
+    public void testShortStartCodesAndTrailingZeros() {
+
+        byte[] data = stream(new byte[]{0, 0}, SHORT_START_CODE, SPS, SHORT_START_CODE, IDR_SLICE, new byte[]{0, 0},
+                START_CODE, SLICE, new byte[]{0, 0, 0});
+
+        parser.parse(ByteBuffer.wrap(data));
+        parser.flush();
+
+        assertEquals(2, accessUnits.size());
+        assertArrayEquals(stream(START_CODE, SPS, START_CODE, IDR_SLICE), accessUnits.get(0).getData());
+        assertArrayEquals(stream(START_CODE, SLICE), accessUnits.get(1).getData());
+    }
+
+    @Test
+    public void testBytesBeforeFirstStartCodeIgnored() {
+
+        parser.parse(ByteBuffer.wrap(stream(new byte[]{0x12, 0x00, 0x34}, START_CODE, IDR_SLICE)));
+        parser.flush();
+
+        assertEquals(1, accessUnits.size());
+        assertArrayEquals(stream(START_CODE, IDR_SLICE), accessUnits.get(0).getData());
+    }
+
+    @Test
+    public void testEverySplitPosition() {
+
+        byte[] data = stream(START_CODE, SPS, SHORT_START_CODE, PPS, START_CODE, IDR_SLICE,
+                SHORT_START_CODE, SLICE, START_CODE, SECOND_SLICE, START_CODE, AUD, SHORT_START_CODE, SLICE);
+
+        List<byte[]> expected = parseWhole(data);
+
+        assertEquals(3, expected.size());
+
+        // Start codes and NAL headers split between two chunks at every possible position
+        for (int split = 1; split < data.length; ++split) {
+
+            init();
+
+            parser.parse(ByteBuffer.wrap(data, 0, split));
+            parser.parse(ByteBuffer.wrap(data, split, data.length - split));
+            parser.flush();
+
+            assertAccessUnits("split at " + split, expected);
+        }
+    }
+
+    @Test
+    public void testSingleByteChunksFromDirectBuffer() {
+
+        byte[] data = stream(START_CODE, SPS, START_CODE, PPS, SHORT_START_CODE, IDR_SLICE, START_CODE, SLICE,
+                new byte[]{0}, START_CODE, SLICE);
+
+        List<byte[]> expected = parseWhole(data);
+
+        init();
+
+        ByteBuffer chunk = ByteBuffer.allocateDirect(1);
+
+        for (byte b : data) {
+
+            chunk.clear();
+            chunk.put(b);
+            chunk.flip();
+
+            parser.parse(chunk);
+
+            assertFalse(chunk.hasRemaining());
+        }
+
+        parser.flush();
+
+        assertAccessUnits("single byte chunks", expected);
+    }
+
+    @Test
+    public void testParseConsumesBufferFromItsPosition() {
+
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        buffer.put(new byte[]{0x01, 0x01, 0x01});
+        buffer.put(stream(START_CODE, IDR_SLICE));
+        buffer.flip();
+        buffer.position(3);
+
+        parser.parse(buffer);
+        parser.flush();
+
+        assertEquals(buffer.limit(), buffer.position());
+        assertEquals(1, accessUnits.size());
+        assertArrayEquals(stream(START_CODE, IDR_SLICE), accessUnits.get(0).getData());
+    }
+
+    @Test
+    public void testLargeAccessUnit() {
+
+        // Larger than the initial buffer, without any start code emulation
+        byte[] payload = new byte[600 * 1024];
+
+        for (int idx = 0; idx < payload.length; ++idx) {
+
+            payload[idx] = (byte) (0x20 + idx % 200);
+        }
+
+        payload[0] = 0x65;
+        payload[1] = (byte) 0x88;
+
+        byte[] data = stream(START_CODE, payload, START_CODE, SLICE);
+
+        for (int offset = 0; offset < data.length; offset += 64 * 1024) {
+
+            parser.parse(ByteBuffer.wrap(data, offset, Math.min(64 * 1024, data.length - offset)));
+        }
+
+        parser.flush();
+
+        assertEquals(2, accessUnits.size());
+        assertArrayEquals(stream(START_CODE, payload), accessUnits.get(0).getData());
+        assertArrayEquals(stream(START_CODE, SLICE), accessUnits.get(1).getData());
+    }
+
+    @Test
+    public void testResetDiscardsPartialAccessUnit() {
+
+        parser.parse(ByteBuffer.wrap(stream(START_CODE, SPS, START_CODE, IDR_SLICE, new byte[]{0, 0})));
+
+        parser.reset();
+
+        parser.parse(ByteBuffer.wrap(stream(new byte[]{1}, START_CODE, SLICE)));
+        parser.flush();
+
+        // The 0x01 following the reset is not taken for the end of a start code
+        assertEquals(1, accessUnits.size());
+        assertFalse(accessUnits.get(0).isKeyFrame());
+        assertArrayEquals(stream(START_CODE, SLICE), accessUnits.get(0).getData());
+    }
+
+    @Test
+    public void testFindStartCode() {
+
+        ByteBuffer data = ByteBuffer.wrap(new byte[]{0x05, 0x00, 0x00, 0x02, 0x00, 0x00, 0x00, 0x01, 0x07});
+
+        assertEquals(5, AnnexBParser.findStartCode(data, 0, data.limit()));
+        assertEquals(5, AnnexBParser.findStartCode(data, 5, data.limit()));
+        assertEquals(-1, AnnexBParser.findStartCode(data, 6, data.limit()));
+        assertEquals(-1, AnnexBParser.findStartCode(data, 0, 7));
+    }
+
+    private List<byte[]> parseWhole(byte[] data) {
+
+        parser.parse(ByteBuffer.wrap(data));
+        parser.flush();
+
+        List<byte[]> result = new ArrayList<>();
+
+        for (AccessUnit accessUnit : accessUnits) {
+
+            result.add(accessUnit.getData());
+        }
+
+        return result;
+    }
+
+    private void assertAccessUnits(String message, List<byte[]> expected) {
+
+        assertEquals(message, expected.size(), accessUnits.size());
+
+        for (int idx = 0; idx < expected.size(); ++idx) {
+
+            assertTrue(message + ", access unit " + idx,
+                    Arrays.equals(expected.get(idx), accessUnits.get(idx).getData()));
+        }
+    }
+
+    private static byte[] stream(byte[]... parts) {
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        for (byte[] part : parts) {
+
+            output.writeBytes(part);
+        }
+
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,159 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam.helpers;
+
+import com.sample.impl.sensor.rpicam.config.OverflowPolicy;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TestBoundedFrameQueue {
+
+    private final List<Integer> discarded = new ArrayList<>();
+
+    @Test
+    public void testDropOldest() throws Exception {
+
+        BoundedFrameQueue<Integer> queue = new BoundedFrameQueue<>(2, OverflowPolicy.DROP_OLDEST, discarded::add);
+
+        assertTrue(queue.put(1));
+        assertTrue(queue.put(2));
+        assertTrue(queue.put(3));
+
+        assertEquals(Arrays.asList(1), discarded);
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals(Integer.valueOf(2), queue.take());
+        assertEquals(Integer.valueOf(3), queue.take());
+    }
+
+    @Test
+    public void testDropNewest() throws Exception {
+
+        BoundedFrameQueue<Integer> queue = new BoundedFrameQueue<>(2, OverflowPolicy.DROP_NEWEST, discarded::add);
+
+        assertTrue(queue.put(1));
+        assertTrue(queue.put(2));
+        assertFalse(queue.put(3));
+
+        assertEquals(Arrays.asList(3), discarded);
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals(Integer.valueOf(1), queue.take());
+        assertEquals(Integer.valueOf(2), queue.take());
+    }
+
+    @Test(timeout = 5000)
+    public void testBlockWaitsForRoom() throws Exception {
+
+        BoundedFrameQueue<Integer> queue = new BoundedFrameQueue<>(1, OverflowPolicy.BLOCK, discarded::add);
+
+        queue.put(1);
+
+        CountDownLatch queued = new CountDownLatch(1);
+
+        Thread producer = new Thread(() -> {
+
+            try {
+
+                queue.put(2);
+                queued.countDown();
+
+            } catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        producer.start();
+
+        assertFalse(queued.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(Integer.valueOf(1), queue.take());
+        assertTrue(queued.await(2, TimeUnit.SECONDS));
+        assertEquals(Integer.valueOf(2), queue.take());
+        assertEquals(0, queue.getDroppedCount());
+
+        producer.join();
+    }
+
+    @Test(timeout = 5000)
+    public void testCloseDiscardsQueuedItems() throws Exception {
+
+        BoundedFrameQueue<Integer> queue = new BoundedFrameQueue<>(4, OverflowPolicy.BLOCK, discarded::add);
+
+        queue.put(1);
+        queue.put(2);
+        queue.close();
+
+        assertEquals(Arrays.asList(1, 2), discarded);
+        assertNull(queue.take());
+
+        // Rejected once closed, and handed to the discard handler
+        assertFalse(queue.put(3));
+        assertEquals(Arrays.asList(1, 2, 3), discarded);
+    }
+
+    @Test(timeout = 5000)
+    public void testFinishDrainsQueuedItems() throws Exception {
+
+        BoundedFrameQueue<Integer> queue = new BoundedFrameQueue<>(4, OverflowPolicy.DROP_NEWEST, discarded::add);
+
+        queue.put(1);
+        queue.put(2);
+        queue.finish();
+
+        assertFalse(queue.put(3));
+        assertEquals(Integer.valueOf(1), queue.take());
+        assertEquals(Integer.valueOf(2), queue.take());
+        assertNull(queue.take());
+        assertEquals(Arrays.asList(3), discarded);
+    }
+
+    @Test(timeout = 5000)
+    public void testCloseWakesUpConsumer() throws Exception {
+
+        BoundedFrameQueue<Integer> queue = new BoundedFrameQueue<>(1, OverflowPolicy.BLOCK, discarded::add);
+
+        CountDownLatch done = new CountDownLatch(1);
+
+        Thread consumer = new Thread(() -> {
+
+            try {
+
+                if (queue.take() == null) {
+
+                    done.countDown();
+                }
+
+            } catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        consumer.start();
+
+        Thread.sleep(100);
+
+        queue.close();
+
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+
+        consumer.join();
+    }
+}
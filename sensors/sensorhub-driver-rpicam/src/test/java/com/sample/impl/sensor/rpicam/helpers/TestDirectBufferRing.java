@@ -0,0 +1,151 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam.helpers;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class TestDirectBufferRing {
+
+    @Test
+    public void testBuffersAreDirectAndCleared() throws Exception {
+
+        DirectBufferRing ring = new DirectBufferRing(2, 16);
+
+        ByteBuffer buffer = ring.acquire();
+
+        assertTrue(buffer.isDirect());
+        assertEquals(16, buffer.capacity());
+        assertEquals(0, buffer.position());
+        assertEquals(16, buffer.limit());
+
+        buffer.put((byte) 1);
+
+        ring.submit(buffer);
+        ring.release(ring.take());
+
+        // Whichever buffer comes next, it is cleared
+        assertEquals(0, ring.acquire().position());
+        assertEquals(0, ring.acquire().position());
+    }
+
+    @Test
+    public void testFilledBuffersKeepOrder() throws Exception {
+
+        DirectBufferRing ring = new DirectBufferRing(4, 8);
+
+        for (byte value = 0; value < 3; ++value) {
+
+            ByteBuffer buffer = ring.acquire();
+            buffer.put(value);
+            ring.submit(buffer);
+        }
+
+        for (byte value = 0; value < 3; ++value) {
+
+            ByteBuffer buffer = ring.take();
+
+            // Submitted buffers are flipped, ready to be read
+            assertEquals(1, buffer.remaining());
+            assertEquals(value, buffer.get());
+
+            ring.release(buffer);
+        }
+
+        assertEquals(3, ring.getMaxFilledCount());
+    }
+
+    @Test
+    public void testEndOfStream() throws Exception {
+
+        DirectBufferRing ring = new DirectBufferRing(1, 8);
+
+        ByteBuffer buffer = ring.acquire();
+        ring.submit(buffer);
+
+        // Still queued with every buffer filled
+        ring.submitEndOfStream();
+
+        assertSame(buffer, ring.take());
+        assertSame(DirectBufferRing.END_OF_STREAM, ring.take());
+
+        // Releasing the marker does not add it to the pool
+        ring.release(DirectBufferRing.END_OF_STREAM);
+        ring.release(buffer);
+
+        assertSame(buffer, ring.acquire());
+    }
+
+    @Test(timeout = 5000)
+    public void testProducerWaitsForReleasedBuffer() throws Exception {
+
+        DirectBufferRing ring = new DirectBufferRing(2, 8);
+
+        ring.submit(ring.acquire());
+        ring.submit(ring.acquire());
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        AtomicReference<ByteBuffer> acquiredBuffer = new AtomicReference<>();
+
+        Thread producer = new Thread(() -> {
+
+            try {
+
+                acquiredBuffer.set(ring.acquire());
+                acquired.countDown();
+
+            } catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        producer.start();
+
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+
+        ByteBuffer released = ring.take();
+        ring.release(released);
+
+        assertTrue(acquired.await(2, TimeUnit.SECONDS));
+        assertSame(released, acquiredBuffer.get());
+
+        producer.join();
+    }
+
+    @Test
+    public void testResetReturnsFilledBuffers() throws Exception {
+
+        DirectBufferRing ring = new DirectBufferRing(2, 8);
+
+        ring.submit(ring.acquire());
+        ring.submit(ring.acquire());
+
+        assertEquals(2, ring.getMaxFilledCount());
+
+        ring.reset();
+
+        assertEquals(0, ring.getMaxFilledCount());
+
+        // Both buffers are available again without any consumer
+        assertNotNull(ring.acquire());
+        assertNotNull(ring.acquire());
+    }
+}
@@ -0,0 +1,156 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam.helpers;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestLatencyHistogram {
+
+    private static final double MAX_RELATIVE_ERROR = 0.125;
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    @Test
+    public void testEmptySnapshot() {
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshotAndReset();
+
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getMax());
+        assertEquals(0, snapshot.getPercentile(50));
+        assertEquals(0, snapshot.getPercentile(100));
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+
+        for (long value = 1; value <= 8; ++value) {
+
+            histogram.record(value);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshotAndReset();
+
+        assertEquals(8, snapshot.getCount());
+        assertEquals(1, snapshot.getPercentile(0));
+        assertEquals(1, snapshot.getPercentile(12.5));
+        assertEquals(4, snapshot.getPercentile(50));
+        assertEquals(6, snapshot.getPercentile(75));
+        assertEquals(8, snapshot.getPercentile(100));
+    }
+
+    @Test
+    public void testPercentilesWithinRelativeError() {
+
+        int count = 100000;
+
+        // Recorded out of order, percentiles do not depend on it
+        for (long value = count; value >= 1; --value) {
+
+            histogram.record(value);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshotAndReset();
+
+        assertEquals(count, snapshot.getCount());
+        assertEquals(count, snapshot.getMax());
+
+        for (double percentile : new double[] {1, 10, 50, 90, 99, 99.9, 99.99}) {
+
+            long expected = (long) Math.ceil(percentile / 100 * count);
+            long reported = snapshot.getPercentile(percentile);
+
+            // Upper bound of the bucket, so never below the exact value
+            assertTrue(percentile + ": " + reported, reported >= expected);
+            assertTrue(percentile + ": " + reported, reported <= expected * (1 + MAX_RELATIVE_ERROR));
+        }
+
+        assertEquals(count, snapshot.getPercentile(100));
+    }
+
+    @Test
+    public void testPercentileCappedAtMax() {
+
+        histogram.record(1000);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshotAndReset();
+
+        // 1000 falls in the bucket from 960 to 1023
+        assertEquals(1000, snapshot.getPercentile(50));
+        assertEquals(1000, snapshot.getMax());
+    }
+
+    @Test
+    public void testExtremeValues() {
+
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshotAndReset();
+
+        assertEquals(0, snapshot.getPercentile(50));
+        assertEquals(Long.MAX_VALUE, snapshot.getPercentile(100));
+        assertEquals(Long.MAX_VALUE, snapshot.getMax());
+    }
+
+    @Test
+    public void testSnapshotStartsNewInterval() {
+
+        histogram.record(500);
+        histogram.snapshotAndReset();
+
+        histogram.record(20);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshotAndReset();
+
+        assertEquals(1, snapshot.getCount());
+        assertEquals(20, snapshot.getMax());
+        assertEquals(20, snapshot.getPercentile(99));
+    }
+
+    @Test(timeout = 10000)
+    public void testConcurrentRecording() throws Exception {
+
+        int perThread = 100000;
+        Thread[] threads = new Thread[4];
+
+        for (int idx = 0; idx < threads.length; ++idx) {
+
+            long value = (idx + 1) * 100;
+
+            threads[idx] = new Thread(() -> {
+
+                for (int count = 0; count < perThread; ++count) {
+
+                    histogram.record(value);
+                }
+            });
+
+            threads[idx].start();
+        }
+
+        for (Thread thread : threads) {
+
+            thread.join();
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshotAndReset();
+
+        assertEquals(threads.length * perThread, snapshot.getCount());
+        assertEquals(400, snapshot.getMax());
+        assertEquals(400, snapshot.getPercentile(100));
+    }
+}
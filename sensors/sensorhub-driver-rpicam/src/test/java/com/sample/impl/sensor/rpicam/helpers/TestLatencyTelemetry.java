@@ -0,0 +1,46 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam.helpers;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestLatencyTelemetry {
+
+    private final LatencyTelemetry telemetry = new LatencyTelemetry();
+
+    @Test
+    public void testRecordsInMicroseconds() {
+
+        telemetry.record(LatencyTelemetry.Stage.ENCODE, 2_500_000);
+        telemetry.recordMillis(LatencyTelemetry.Stage.TOTAL, 3);
+
+        assertEquals(2500, telemetry.getHistogram(LatencyTelemetry.Stage.ENCODE).snapshotAndReset().getMax());
+        assertEquals(3000, telemetry.getHistogram(LatencyTelemetry.Stage.TOTAL).snapshotAndReset().getMax());
+    }
+
+    @Test
+    public void testStagesHaveSeparateHistograms() {
+
+        telemetry.record(LatencyTelemetry.Stage.QUEUE, 1000);
+
+        for (LatencyTelemetry.Stage stage : LatencyTelemetry.Stage.values()) {
+
+            long expected = stage == LatencyTelemetry.Stage.QUEUE ? 1 : 0;
+
+            assertEquals(stage.getFieldName(), expected, telemetry.getHistogram(stage).snapshotAndReset().getCount());
+        }
+    }
+}
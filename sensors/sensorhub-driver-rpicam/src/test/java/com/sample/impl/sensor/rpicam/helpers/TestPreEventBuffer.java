@@ -0,0 +1,131 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.sensor.rpicam.helpers;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestPreEventBuffer {
+
+    private static final long FRAME_PERIOD_MILLIS = 100;
+    private static final int GOP_LENGTH = 10;
+    private static final int FRAME_SIZE = 100;
+
+    @Test
+    public void testDropsFramesBeforeFirstKeyframe() {
+
+        PreEventBuffer buffer = new PreEventBuffer(Long.MAX_VALUE, Long.MAX_VALUE);
+
+        buffer.add(0, new byte[FRAME_SIZE], false);
+        buffer.add(100, new byte[FRAME_SIZE], false);
+
+        assertTrue(buffer.getFrames().isEmpty());
+        assertEquals(0, buffer.getSize());
+
+        buffer.add(200, new byte[FRAME_SIZE], true);
+        buffer.add(300, new byte[FRAME_SIZE], false);
+
+        List<PreEventBuffer.BufferedFrame> frames = buffer.getFrames();
+
+        assertEquals(2, frames.size());
+        assertEquals(200, frames.get(0).getFrameTime());
+        assertTrue(frames.get(0).isKeyFrame());
+    }
+
+    @Test
+    public void testTrimsToDurationAtKeyframes() {
+
+        PreEventBuffer buffer = new PreEventBuffer(Long.MAX_VALUE, 3000);
+
+        addFrames(buffer, 60);
+
+        List<PreEventBuffer.BufferedFrame> frames = buffer.getFrames();
+
+        // Latest frame at 5.9 s, the pre-roll starts at the first keyframe within 3 s of it
+        assertEquals(3000, frames.get(0).getFrameTime());
+        assertTrue(frames.get(0).isKeyFrame());
+        assertEquals(30, frames.size());
+        assertEquals(2900, buffer.getDuration());
+
+        for (int idx = 1; idx < frames.size(); ++idx) {
+
+            assertEquals(frames.get(idx - 1).getFrameTime() + FRAME_PERIOD_MILLIS, frames.get(idx).getFrameTime());
+        }
+    }
+
+    @Test
+    public void testTrimsToSizeAtKeyframes() {
+
+        PreEventBuffer buffer = new PreEventBuffer(15 * FRAME_SIZE, Long.MAX_VALUE);
+
+        addFrames(buffer, 30);
+
+        List<PreEventBuffer.BufferedFrame> frames = buffer.getFrames();
+
+        assertEquals(10 * FRAME_SIZE, buffer.getSize());
+        assertEquals(10, frames.size());
+        assertEquals(2000, frames.get(0).getFrameTime());
+        assertTrue(frames.get(0).isKeyFrame());
+    }
+
+    @Test
+    public void testGroupLargerThanBufferIsDropped() {
+
+        PreEventBuffer buffer = new PreEventBuffer(FRAME_SIZE * 5 / 2, Long.MAX_VALUE);
+
+        buffer.add(0, new byte[FRAME_SIZE], true);
+        buffer.add(100, new byte[FRAME_SIZE], false);
+
+        assertEquals(2, buffer.getFrames().size());
+
+        // The group no longer fits, and its remaining frames cannot be decoded alone
+        buffer.add(200, new byte[FRAME_SIZE], false);
+
+        assertTrue(buffer.getFrames().isEmpty());
+        assertEquals(0, buffer.getSize());
+
+        buffer.add(300, new byte[FRAME_SIZE], false);
+
+        assertTrue(buffer.getFrames().isEmpty());
+
+        buffer.add(400, new byte[FRAME_SIZE], true);
+
+        assertEquals(1, buffer.getFrames().size());
+        assertEquals(FRAME_SIZE, buffer.getSize());
+    }
+
+    @Test
+    public void testClear() {
+
+        PreEventBuffer buffer = new PreEventBuffer(Long.MAX_VALUE, Long.MAX_VALUE);
+
+        addFrames(buffer, 15);
+        buffer.clear();
+
+        assertTrue(buffer.getFrames().isEmpty());
+        assertEquals(0, buffer.getSize());
+        assertEquals(0, buffer.getDuration());
+    }
+
+    private static void addFrames(PreEventBuffer buffer, int count) {
+
+        for (int idx = 0; idx < count; ++idx) {
+
+            buffer.add(idx * FRAME_PERIOD_MILLIS, new byte[FRAME_SIZE], idx % GOP_LENGTH == 0);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+ 
+Copyright (C) 2012-2015 Sensia Software LLC. All Rights Reserved.
+ 
+******************************* END LICENSE BLOCK ***************************/
+
+
+package org.sensorhub.impl.sensor.v4l;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+
+/**
+ * <p>
+ * Spreads the bandwidth of a USB bus between the cameras attached to it.
+ * The bandwidth of each camera is estimated from its resolution, frame rate
+ * and image format. While the bus is over-subscribed, the most demanding
+ * camera is stepped down, lowering its frame rate first and then its
+ * resolution along the usual UVC frame rates and sizes.
+ * </p>
+ *
+ * @since Oct 18, 2026
+ */
+public class V4LBandwidthAllocator
+{
+    static final int[] FRAME_RATES = {60, 30, 25, 20, 15, 10, 5, 2, 1};
+    static final int[][] RESOLUTIONS = {
+        {3840, 2160}, {2592, 1944}, {1920, 1080}, {1600, 1200}, {1280, 960},
+        {1280, 720}, {1024, 768}, {800, 600}, {640, 480}, {424, 240}, {320, 240}, {160, 120}
+    };
+    
+    final double busBandwidth;
+    final double compressedBytesPerPixel;
+    final int minFrameRate;
+    
+    
+    /**
+     * @param busBandwidth usable bandwidth of the bus in bytes/s
+     * @param compressedBytesPerPixel average size of a MJPEG or H264 pixel in bytes
+     * @param minFrameRate frame rate under which cameras are not slowed down
+     */
+    public V4LBandwidthAllocator(double busBandwidth, double compressedBytesPerPixel, int minFrameRate)
+    {
+        this.busBandwidth = busBandwidth;
+        this.compressedBytesPerPixel = compressedBytesPerPixel;
+        this.minFrameRate = Math.max(1, minFrameRate);
+    }
+    
+    
+    /**
+     * Adjusts the params of the cameras sharing the bus until they fit its bandwidth
+     * @param cameras params of all cameras on the bus, modified in place
+     * @return true if the cameras fit, false if the bus is still over-subscribed at the lowest settings
+     */
+    public boolean allocate(Collection<V4LCameraParams> cameras)
+    {
+        List<V4LCameraParams> candidates = new ArrayList<>(cameras);
+        double total = getTotalBandwidth(cameras);
+        
+        while (total > busBandwidth && !candidates.isEmpty())
+        {
+            V4LCameraParams largest = candidates.get(0);
+            for (V4LCameraParams params: candidates)
+            {
+                if (getBandwidth(params) > getBandwidth(largest))
+                    largest = params;
+            }
+            
+            double before = getBandwidth(largest);
+            if (stepDown(largest))
+                total += getBandwidth(largest) - before;
+            else
+                candidates.remove(largest);
+        }
+        
+        return total <= busBandwidth;
+    }
+    
+    
+    protected boolean stepDown(V4LCameraParams params)
+    {
+        // keep resolution as long as possible
+        if (params.frameRate > minFrameRate)
+        {
+            int frameRate = minFrameRate;
+            for (int rate: FRAME_RATES)
+            {
+                if (rate < params.frameRate && rate >= minFrameRate)
+                {
+                    frameRate = rate;
+                    break;
+                }
+            }
+            
+            params.frameRate = frameRate;
+            return true;
+        }
+        
+        int area = params.imgWidth * params.imgHeight;
+        for (int[] res: RESOLUTIONS)
+        {
+            if (res[0] * res[1] < area)
+            {
+                params.imgWidth = res[0];
+                params.imgHeight = res[1];
+                return true;
+            }
+        }
+        
+        return false;
+    }
+    
+    
+    public double getTotalBandwidth(Collection<V4LCameraParams> cameras)
+    {
+        double total = 0;
+        for (V4LCameraParams params: cameras)
+            total += getBandwidth(params);
+        return total;
+    }
+    
+    
+    /**
+     * @return estimated bandwidth used by a camera in bytes/s
+     */
+    public double getBandwidth(V4LCameraParams params)
+    {
+        return (double)params.imgWidth * params.imgHeight * params.frameRate * getBytesPerPixel(params.imgFormat);
+    }
+    
+    
+    protected double getBytesPerPixel(String imgFormat)
+    {
+        if (imgFormat == null)
+            return 2;
+        
+        switch (imgFormat.toUpperCase())
+        {
+            case "MJPEG":
+            case "JPEG":
+            case "H264":
+                return compressedBytesPerPixel;
+                
+            case "RGB24":
+            case "BGR24":
+                return 3;
+                
+            case "GREY":
+                return 1;
+                
+            // YUYV and other packed 4:2:2 formats
+            default:
+                return 2;
+        }
+    }
+}
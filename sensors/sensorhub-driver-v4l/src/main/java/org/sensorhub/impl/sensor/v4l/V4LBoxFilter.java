@@ -0,0 +1,122 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+ 
+Copyright (C) 2012-2015 Sensia Software LLC. All Rights Reserved.
+ 
+******************************* END LICENSE BLOCK ***************************/
+
+
+package org.sensorhub.impl.sensor.v4l;
+
+
+/**
+ * <p>
+ * Downscales 8-bit interleaved images by an integer factor, averaging each
+ * block of factor x factor pixels. Source rows are first summed into a row
+ * of int accumulators with plain sequential loops the JIT can vectorize,
+ * then each block sum is scaled with a fixed point multiply instead of a
+ * division. Edge pixels not filling a whole block are ignored.<br/>
+ * Not thread safe, each instance keeps its own accumulators.
+ * </p>
+ *
+ * @since Oct 18, 2026
+ */
+public class V4LBoxFilter
+{
+    static final int SCALE_BITS = 16;
+    
+    final int width;
+    final int channels;
+    final int factor;
+    final int outWidth;
+    final int outHeight;
+    final int scale;
+    final int[] rowSums;
+    
+    
+    /**
+     * @param width source image width in pixels
+     * @param height source image height in pixels
+     * @param channels number of interleaved bytes per pixel (e.g. 3 for RGB)
+     * @param factor downscaling factor
+     */
+    public V4LBoxFilter(int width, int height, int channels, int factor)
+    {
+        if (factor < 1 || width < factor || height < factor)
+            throw new IllegalArgumentException("Invalid downscaling factor " + factor + " for " + width + "x" + height + " image");
+        
+        this.width = width;
+        this.channels = channels;
+        this.factor = factor;
+        this.outWidth = width / factor;
+        this.outHeight = height / factor;
+        this.scale = (1 << SCALE_BITS) / (factor * factor);
+        this.rowSums = new int[outWidth * factor * channels];
+    }
+    
+    
+    /**
+     * @param src source image, rows packed without padding
+     * @param dst destination image of at least {@link #getOutputSize()} bytes
+     */
+    public void downscale(byte[] src, byte[] dst)
+    {
+        final int rowLength = rowSums.length;
+        final int srcStride = width * channels;
+        final int blockLength = factor * channels;
+        final int round = 1 << (SCALE_BITS - 1);
+        int dstIndex = 0;
+        
+        for (int oy = 0; oy < outHeight; oy++)
+        {
+            // vertical pass over the factor rows of the block
+            int srcIndex = oy * factor * srcStride;
+            for (int i = 0; i < rowLength; i++)
+                rowSums[i] = src[srcIndex + i] & 0xFF;
+            
+            for (int k = 1; k < factor; k++)
+            {
+                srcIndex += srcStride;
+                for (int i = 0; i < rowLength; i++)
+                    rowSums[i] += src[srcIndex + i] & 0xFF;
+            }
+            
+            // horizontal pass over each block
+            for (int blockStart = 0; blockStart < rowLength; blockStart += blockLength)
+            {
+                for (int c = 0; c < channels; c++)
+                {
+                    int sum = 0;
+                    for (int i = blockStart + c; i < blockStart + blockLength; i += channels)
+                        sum += rowSums[i];
+                    dst[dstIndex++] = (byte)((sum * scale + round) >>> SCALE_BITS);
+                }
+            }
+        }
+    }
+    
+    
+    public int getOutputWidth()
+    {
+        return outWidth;
+    }
+    
+    
+    public int getOutputHeight()
+    {
+        return outHeight;
+    }
+    
+    
+    public int getOutputSize()
+    {
+        return outWidth * outHeight * channels;
+    }
+}
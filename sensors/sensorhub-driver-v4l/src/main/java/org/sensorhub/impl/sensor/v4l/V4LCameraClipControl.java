@@ -0,0 +1,93 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+ 
+Copyright (C) 2012-2015 Sensia Software LLC. All Rights Reserved.
+ 
+******************************* END LICENSE BLOCK ***************************/
+
+package org.sensorhub.impl.sensor.v4l;
+
+import java.util.concurrent.CompletableFuture;
+import net.opengis.swe.v20.DataComponent;
+import net.opengis.swe.v20.DataRecord;
+import net.opengis.swe.v20.DataType;
+import net.opengis.swe.v20.Quantity;
+import org.sensorhub.api.command.CommandException;
+import org.sensorhub.api.command.CommandStatus;
+import org.sensorhub.api.command.ICommandData;
+import org.sensorhub.api.command.ICommandStatus;
+import org.sensorhub.impl.sensor.AbstractSensorControl;
+import org.vast.data.SWEFactory;
+
+
+/**
+ * <p>
+ * Control interface triggering the recording of a clip around an event
+ * </p>
+ *
+ * @since Oct 18, 2026
+ */
+public class V4LCameraClipControl extends AbstractSensorControl<V4LCameraDriver>
+{
+    DataRecord commandData;
+    
+    
+    protected V4LCameraClipControl(V4LCameraDriver driver)
+    {
+        super("clipTrigger", driver);
+    }
+    
+    
+    protected void init()
+    {
+        SWEFactory fac = new SWEFactory();
+        
+        this.commandData = fac.newDataRecord();
+        commandData.setName(getName());
+        commandData.setUpdatable(true);
+        
+        // post-roll duration, 0 for configured value
+        Quantity postRollVal = fac.newQuantity(DataType.DOUBLE);
+        postRollVal.setLabel("Post-Roll Duration");
+        postRollVal.setDescription("Video recorded after the event, 0 for the configured duration");
+        postRollVal.getUom().setCode("s");
+        commandData.addComponent("postRollDuration", postRollVal);
+    }
+
+
+    @Override
+    public DataComponent getCommandDescription()
+    {
+        return commandData;
+    }
+
+
+    @Override
+    public CompletableFuture<ICommandStatus> submitCommand(ICommandData command)
+    {
+        double postRoll = command.getParams().getDoubleValue(0);
+        
+        ICommandStatus status;
+        if (parentSensor.triggerClip((long)(postRoll * 1000)) < 0)
+            status = CommandStatus.failed(command.getID(), "Video capture is not running");
+        else
+            status = CommandStatus.completed(command.getID());
+        
+        return CompletableFuture.completedFuture(status);
+    }
+
+
+    @Override
+    public void validateCommand(ICommandData command) throws CommandException
+    {
+        if (command.getParams().getDoubleValue(0) < 0)
+            throw new CommandException("Post-roll duration cannot be negative");
+    }
+}
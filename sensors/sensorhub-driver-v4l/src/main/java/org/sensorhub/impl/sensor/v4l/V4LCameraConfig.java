@@ -47,6 +47,27 @@ public class V4LCameraConfig extends SensorConfig
     @DisplayInfo(desc="Default camera params to use on startup. These can then be changed with the control interface")
     public V4LCameraParams defaultParams = new V4LCameraParams();
     
+    @DisplayInfo(desc="Publish a copy of each raw RGB frame on the video output (used when the default image format is RGB24 or the camera has no compressed format), can be disabled when raw frames are only read in process by raw frame listeners")
+    public boolean publishRawFrames = true;
+    
+    @DisplayInfo(desc="Downscaling factor of the thumbnail output computed from the raw RGB frames (up to 16), 0 to disable")
+    public int thumbnailScale = 0;
+    
+    @DisplayInfo(desc="Recording of the video preceding and following triggered events")
+    public V4LClipConfig clipConfig = new V4LClipConfig();
+    
+    @DisplayInfo(desc="Maximum number of captured frames waiting to be processed (also limited by the number of V4L buffers)")
+    public int frameQueueSize = 2;
+    
+    @DisplayInfo(desc="Frame dropped when the processing queue is full, or BLOCK_CAPTURE to hold the capture thread until there is room")
+    public V4LFrameQueue.DropPolicy dropPolicy = V4LFrameQueue.DropPolicy.DROP_NEWEST;
+    
+    @DisplayInfo(desc="Name of a processing pool shared with other V4L cameras, leave empty to process frames on a dedicated thread")
+    public String processingPool;
+    
+    @DisplayInfo(desc="Number of threads of the shared processing pool, used by the first camera creating it")
+    public int processingThreads = 2;
+    
     @DisplayInfo(desc="Camera geographic position")
     public PositionConfig position = new PositionConfig();
     
@@ -27,10 +27,10 @@ import org.sensorhub.api.command.CommandStatus;
 import org.sensorhub.api.command.CommandException;
 import org.sensorhub.api.command.ICommandStatus;
 import org.sensorhub.api.command.ICommandData;
-import org.sensorhub.api.sensor.SensorException;
 import org.sensorhub.impl.sensor.AbstractSensorControl;
 import org.vast.data.DataValue;
 import org.vast.data.SWEFactory;
+import com.sample.impl.utils.camera.CoalescingCommandExecutor;
 import au.edu.jcu.v4l4j.DeviceInfo;
 import au.edu.jcu.v4l4j.FrameInterval;
 import au.edu.jcu.v4l4j.FrameInterval.DiscreteInterval;
@@ -51,11 +51,13 @@ public class V4LCameraControl extends AbstractSensorControl<V4LCameraDriver>
 {
     V4LCameraParams camParams;
     DataComponent commandData;
+    CoalescingCommandExecutor executor;
     
     
     protected V4LCameraControl(V4LCameraDriver driver)
     {
         super("camParams", driver);
+        this.executor = new CoalescingCommandExecutor(getName(), driver.getLogger());
     }
     
     
@@ -163,40 +165,50 @@ public class V4LCameraControl extends AbstractSensorControl<V4LCameraDriver>
         DataComponent commandMsg = commandData.copy();
         commandMsg.setData(command.getParams());
         
-        // parse command (TODO should we assume it has already been validated?)        
-        // image format
-        camParams.imgFormat = commandMsg.getComponent("imageFormat").getData().getStringValue();
+        // parse command into a copy (TODO should we assume it has already been validated?)
+        // so params in use are only changed by the executor thread
+        V4LCameraParams newParams = camParams.clone();
         
-        // image width and height
-        DataValue imgSize = (DataValue)commandMsg.getComponent("imageSize");
-        if (imgSize != null)
-        {
-            String resText = imgSize.getData().getStringValue();
-            String[] tokens = resText.split("x");
-            camParams.imgWidth = Integer.parseInt(tokens[0]);
-            camParams.imgHeight = Integer.parseInt(tokens[1]);
-        }
-        else
-        {
-            camParams.imgWidth = commandMsg.getComponent("imageWidth").getData().getIntValue();
-            camParams.imgHeight = commandMsg.getComponent("imageHeight").getData().getIntValue();
-        }
-        
-        // frame rate
-        camParams.frameRate = commandMsg.getComponent("frameRate").getData().getIntValue();
-        
-        // update driver with new params
         try
         {
-            parentSensor.updateParams(camParams);
-            var status = CommandStatus.completed(command.getID());
-            return CompletableFuture.completedFuture(status);
+            // image format
+            newParams.imgFormat = commandMsg.getComponent("imageFormat").getData().getStringValue();
+            
+            // image width and height
+            DataValue imgSize = (DataValue)commandMsg.getComponent("imageSize");
+            if (imgSize != null)
+            {
+                String resText = imgSize.getData().getStringValue();
+                String[] tokens = resText.split("x");
+                newParams.imgWidth = Integer.parseInt(tokens[0]);
+                newParams.imgHeight = Integer.parseInt(tokens[1]);
+            }
+            else
+            {
+                newParams.imgWidth = commandMsg.getComponent("imageWidth").getData().getIntValue();
+                newParams.imgHeight = commandMsg.getComponent("imageHeight").getData().getIntValue();
+            }
+            
+            // frame rate
+            newParams.frameRate = commandMsg.getComponent("frameRate").getData().getIntValue();
         }
-        catch (SensorException e)
+        catch (RuntimeException e)
         {
-            var status = CommandStatus.failed(command.getID(), e.getMessage());
+            var status = CommandStatus.failed(command.getID(), "Invalid camera parameters: " + e.getMessage());
             return CompletableFuture.completedFuture(status);
         }
+        
+        // update driver with new params, switching capture only for the latest of a burst of commands
+        return executor.submit(getName(), command, () -> parentSensor.updateParams(newParams));
+    }
+    
+    
+    /**
+     * @return executor running the commands, giving access to queue and latency statistics
+     */
+    public CoalescingCommandExecutor getExecutor()
+    {
+        return executor;
     }
 
 
@@ -210,7 +222,7 @@ public class V4LCameraControl extends AbstractSensorControl<V4LCameraDriver>
 
     public void stop()
     {
-        
+        executor.stop();
     }
 
 }
@@ -14,6 +14,8 @@ Copyright (C) 2012-2015 Sensia Software LLC. All Rights Reserved.
 
 package org.sensorhub.impl.sensor.v4l;
 
+import java.util.ArrayList;
+import java.util.List;
 import org.sensorhub.api.common.SensorHubException;
 import org.sensorhub.api.sensor.SensorException;
 import org.sensorhub.impl.sensor.AbstractSensorModule;
@@ -39,6 +41,10 @@ public class V4LCameraDriver extends AbstractSensorModule<V4LCameraConfig>
     VideoDevice videoDevice;
     V4LCameraOutput dataInterface;
     V4LCameraControl controlInterface;
+    V4LCameraOutputClip clipOutput;
+    V4LCameraOutputThumbnail thumbnailOutput;
+    V4LClipRecorder clipRecorder;
+    V4LCameraClipControl clipControl;
     
     
     static
@@ -79,19 +85,22 @@ public class V4LCameraDriver extends AbstractSensorModule<V4LCameraConfig>
         if (nativeFormats == null || nativeFormats.isEmpty())
             throw new SensorException("Video device " + config.deviceName + " cannot be used for capture");
         
-        // init video output
-        for (ImageFormat fmt: nativeFormats)
+        // init video output, compressed unless raw RGB is requested
+        if (!"RGB24".equalsIgnoreCase(camParams.imgFormat))
         {
-            if ("MJPEG".equals(fmt.getName()))
+            for (ImageFormat fmt: nativeFormats)
             {
-                getLogger().debug("Creating MJPEG output");
-                dataInterface = new V4LCameraOutputMJPEG(this, fmt);
+                if ("MJPEG".equals(fmt.getName()))
+                {
+                    getLogger().debug("Creating MJPEG output");
+                    dataInterface = new V4LCameraOutputMJPEG(this, fmt);
+                }
+                else if ("H264".equals(fmt.getName()))
+                {
+                    getLogger().debug("Creating H264 output");
+                    dataInterface = new V4LCameraOutputH264(this, fmt);
+                }            
             }
-            else if ("H264".equals(fmt.getName()))
-            {
-                getLogger().debug("Creating H264 output");
-                dataInterface = new V4LCameraOutputH264(this, fmt);
-            }            
         }
         
         if (dataInterface == null)
@@ -103,10 +112,67 @@ public class V4LCameraDriver extends AbstractSensorModule<V4LCameraConfig>
         dataInterface.init(deviceInfo);
         addOutput(dataInterface, false);
         
+        if (dataInterface instanceof V4LCameraOutputRGB)
+            initRawOutput((V4LCameraOutputRGB)dataInterface);
+        else if (config.thumbnailScale > 1)
+            getLogger().warn("Thumbnails are only available with the raw RGB output");
+        
         // init control interface
         this.controlInterface = new V4LCameraControl(this);
         controlInterface.init(deviceInfo);
         addControlInput(controlInterface);
+        
+        // init event clip recording
+        if (config.clipConfig.enabled)
+            initClipRecorder();
+    }
+    
+    
+    protected void initRawOutput(V4LCameraOutputRGB rgbOutput)
+    {
+        rgbOutput.publishFrames = config.publishRawFrames;
+        
+        if (config.thumbnailScale > 1)
+        {
+            thumbnailOutput = new V4LCameraOutputThumbnail(this);
+            thumbnailOutput.init(config.thumbnailScale);
+            addOutput(thumbnailOutput, false);
+            rgbOutput.thumbnailOutput = thumbnailOutput;
+        }
+    }
+    
+    
+    protected void initClipRecorder()
+    {
+        V4LClipConfig clipConfig = config.clipConfig;
+        
+        // raw RGB frames are too large to be kept in memory
+        if (dataInterface instanceof V4LCameraOutputRGB)
+        {
+            getLogger().warn("Clip recording requires a MJPEG or H264 capable camera");
+            return;
+        }
+        
+        boolean h264 = dataInterface instanceof V4LCameraOutputH264;
+        List<V4LClipRecorder.ClipSink> sinks = new ArrayList<>();
+        
+        if (clipConfig.publishClips)
+        {
+            clipOutput = new V4LCameraOutputClip(this);
+            clipOutput.init(h264);
+            addOutput(clipOutput, false);
+            sinks.add(clipOutput);
+        }
+        
+        if (clipConfig.clipDirectory != null && !clipConfig.clipDirectory.trim().isEmpty())
+            sinks.add(new V4LClipRecorder.FileSink(clipConfig.clipDirectory.trim(), "v4l-" + config.serialNumber, h264 ? "h264" : "mjpeg", getLogger()));
+        
+        clipRecorder = new V4LClipRecorder(clipConfig, sinks, getLogger());
+        dataInterface.clipRecorder = clipRecorder;
+        
+        clipControl = new V4LCameraClipControl(this);
+        clipControl.init();
+        addControlInput(clipControl);
     }
     
     
@@ -130,6 +196,9 @@ public class V4LCameraDriver extends AbstractSensorModule<V4LCameraConfig>
         if (videoDevice == null)
             initVideoDevice();
             
+        if (clipRecorder != null)
+            clipRecorder.start();
+        
         // start video streaming
         if (dataInterface != null)
             dataInterface.start();
@@ -142,6 +211,10 @@ public class V4LCameraDriver extends AbstractSensorModule<V4LCameraConfig>
         if (dataInterface != null)
             dataInterface.stop();
         
+        // ends clip being recorded with the last frames
+        if (clipRecorder != null)
+            clipRecorder.stop();
+        
         if (controlInterface != null)
             controlInterface.stop();
         
@@ -155,9 +228,23 @@ public class V4LCameraDriver extends AbstractSensorModule<V4LCameraConfig>
     
     public void updateParams(V4LCameraParams params) throws SensorException
     {
-        // cleanup framegrabber and restart video output
-        dataInterface.stop();
-        dataInterface.start();
+        // switch video output in place, keeping the device open
+        dataInterface.reconfigure(params);
+    }
+    
+    
+    /**
+     * Records a clip made of the video preceding the call and the video following it.
+     * Can be called by the control interface or by any module reacting to an external event.
+     * @param postRollMillis video recorded after the event, 0 for the configured post-roll
+     * @return ID of the clip recording the event, or -1 if clips are disabled or capture is not running
+     */
+    public long triggerClip(long postRollMillis)
+    {
+        if (clipRecorder == null)
+            return -1;
+        
+        return clipRecorder.trigger(postRollMillis);
     }
     
     
@@ -17,12 +17,13 @@ package org.sensorhub.impl.sensor.v4l;
 import net.opengis.swe.v20.DataComponent;
 import net.opengis.swe.v20.DataEncoding;
 import net.opengis.swe.v20.DataStream;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.Executor;
 import org.sensorhub.api.sensor.SensorException;
 import org.sensorhub.impl.sensor.AbstractSensorOutput;
 import au.edu.jcu.v4l4j.CaptureCallback;
 import au.edu.jcu.v4l4j.DeviceInfo;
 import au.edu.jcu.v4l4j.FrameGrabber;
+import au.edu.jcu.v4l4j.FrameInterval;
 import au.edu.jcu.v4l4j.VideoFrame;
 import au.edu.jcu.v4l4j.exceptions.V4L4JException;
 
@@ -40,8 +41,16 @@ public abstract class V4LCameraOutput extends AbstractSensorOutput<V4LCameraDriv
     DataStream dataStream;
     FrameGrabber frameGrabber;
     long systemTimeOffset = -1L;
-    AtomicBoolean processingFrame = new AtomicBoolean();
+    V4LFrameQueue frameQueue;
+    V4LProcessingPool processingPool;
     boolean started, firstFrame;
+    V4LClipRecorder clipRecorder;
+    
+    static final long SWITCH_IDLE_TIMEOUT_MS = 1000;
+    volatile long lastFrameNanos;
+    volatile long switchStartNanos = -1;
+    volatile long lastSwitchMillis = -1;
+    volatile long lastFrameGapMillis = -1;
     
     
     public V4LCameraOutput(String name, V4LCameraDriver parentSensor)
@@ -57,16 +66,36 @@ public abstract class V4LCameraOutput extends AbstractSensorOutput<V4LCameraDriv
     protected abstract void processFrame(VideoFrame frame);
     
     
-    protected void start() throws SensorException
+    /**
+     * Updates the output structure after the image size changed
+     */
+    protected abstract void updateDataStream();
+    
+    
+    protected synchronized void start() throws SensorException
     {
         try
         {
             initFrameGrabber(parentSensor.camParams);            
             frameGrabber.setCaptureCallback(this);
-            processingFrame.set(false);
+            
+            // queued frames hold V4L buffers until recycled, so keep one for capture
+            V4LCameraConfig config = parentSensor.getConfiguration();
+            int queueSize = Math.min(config.frameQueueSize, frameGrabber.getNumberOfVideoFrames() - 1);
+            Executor executor = null;
+            if (config.processingPool != null && !config.processingPool.trim().isEmpty())
+            {
+                processingPool = V4LProcessingPool.acquire(config.processingPool.trim(), config.processingThreads);
+                executor = processingPool.getExecutor();
+            }
+            
+            frameQueue = new V4LFrameQueue(getName(), queueSize, config.dropPolicy, this::processFrame, executor, getLogger());
+            frameQueue.start();
+            
             started = false;
             firstFrame = true;
             frameGrabber.startCapture();
+            started = true;
             parentSensor.getLogger().debug("V4L frame capture started");
         }
         catch (V4L4JException e)
@@ -76,14 +105,27 @@ public abstract class V4LCameraOutput extends AbstractSensorOutput<V4LCameraDriv
     }
 
     
-    protected void stop()
+    protected synchronized void stop()
     {
-        if (frameGrabber != null)
+        if (frameGrabber != null && started)
         {
-            if (started)
-                frameGrabber.stopCapture();
+            frameGrabber.stopCapture();
+            started = false;
             parentSensor.getLogger().debug("V4L capture stopped");
-            
+        }
+        
+        // recycle pending frames before the buffers are released
+        if (frameQueue != null)
+            frameQueue.stop();
+        
+        if (processingPool != null)
+        {
+            processingPool.release();
+            processingPool = null;
+        }
+        
+        if (frameGrabber != null)
+        {
             parentSensor.videoDevice.releaseFrameGrabber();
             parentSensor.videoDevice.releaseControlList();            
             frameGrabber = null;
@@ -91,6 +133,215 @@ public abstract class V4LCameraOutput extends AbstractSensorOutput<V4LCameraDriv
     }
     
     
+    /**
+     * Switches capture to new params without closing the video device.
+     * A frame rate change alone is first applied while capturing, then with
+     * capture paused if the driver rejects it, the frame grabber and its buffers
+     * being kept either way. Otherwise the grabber is replaced, and capture resumes
+     * with the previous params if the new ones cannot be applied.
+     * @param newParams requested params, the image format is fixed by the output
+     */
+    protected synchronized void reconfigure(V4LCameraParams newParams) throws SensorException
+    {
+        V4LCameraParams camParams = parentSensor.camParams;
+        boolean sameSize = newParams.imgWidth == camParams.imgWidth && newParams.imgHeight == camParams.imgHeight;
+        
+        if (newParams.imgFormat != null && !newParams.imgFormat.equals(camParams.imgFormat))
+            getLogger().warn("Image format cannot be changed from {} while running", camParams.imgFormat);
+        
+        if (sameSize && newParams.frameRate == camParams.frameRate)
+            return;
+        
+        long startTime = System.nanoTime();
+        V4LCameraParams oldParams = camParams.clone();
+        boolean capturing = started;
+        
+        if (sameSize && capturing && setFrameRate(newParams.frameRate))
+        {
+            camParams.frameRate = newParams.frameRate;
+            readFrameRate(camParams);
+            lastSwitchMillis = (System.nanoTime() - startTime) / 1000000;
+            getLogger().info("Switched to {} fps without stopping capture in {} ms", camParams.frameRate, lastSwitchMillis);
+            return;
+        }
+        
+        // frames keep flowing at the old settings until here
+        if (capturing)
+            pauseCapture();
+        
+        try
+        {
+            camParams.imgWidth = newParams.imgWidth;
+            camParams.imgHeight = newParams.imgHeight;
+            camParams.frameRate = newParams.frameRate;
+            
+            // without a grabber yet, params are used on next start
+            if (frameGrabber != null)
+            {
+                // a new grabber sets up its frame interval before capturing, which some drivers require
+                if (sameSize && setFrameRate(camParams.frameRate))
+                    readFrameRate(camParams);
+                else
+                    replaceFrameGrabber(camParams);
+            }
+            
+            if (capturing)
+                resumeCapture();
+        }
+        catch (V4L4JException | RuntimeException e)
+        {
+            restoreParams(oldParams, sameSize, capturing);
+            throw new SensorException("Cannot switch to " + newParams.imgWidth + "x" + newParams.imgHeight + " @ " + newParams.frameRate + " fps", e);
+        }
+        
+        if (capturing)
+        {
+            lastSwitchMillis = (System.nanoTime() - startTime) / 1000000;
+            getLogger().info("Switched to {}x{} @ {} fps in {} ms", camParams.imgWidth, camParams.imgHeight, camParams.frameRate, lastSwitchMillis);
+        }
+    }
+    
+    
+    protected void pauseCapture()
+    {
+        switchStartNanos = lastFrameNanos;
+        
+        if (started)
+        {
+            frameGrabber.stopCapture();
+            started = false;
+        }
+        
+        // frames still queued hold the grabber buffers
+        try
+        {
+            if (!frameQueue.awaitIdle(SWITCH_IDLE_TIMEOUT_MS))
+                getLogger().warn("Frames still processed after {} ms", SWITCH_IDLE_TIMEOUT_MS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    
+    protected void resumeCapture() throws V4L4JException
+    {
+        firstFrame = true;
+        frameGrabber.startCapture();
+        started = true;
+    }
+    
+    
+    protected void replaceFrameGrabber(V4LCameraParams camParams) throws V4L4JException
+    {
+        // control list and device info are kept
+        parentSensor.videoDevice.releaseFrameGrabber();
+        frameGrabber = null;
+        
+        initFrameGrabber(camParams);
+        frameGrabber.setCaptureCallback(this);
+        
+        // adjust params to what was actually set up by V4L
+        camParams.imgWidth = frameGrabber.getWidth();
+        camParams.imgHeight = frameGrabber.getHeight();
+        readFrameRate(camParams);
+        updateDataStream();
+    }
+    
+    
+    protected void restoreParams(V4LCameraParams oldParams, boolean sameSize, boolean capturing)
+    {
+        V4LCameraParams camParams = parentSensor.camParams;
+        camParams.imgWidth = oldParams.imgWidth;
+        camParams.imgHeight = oldParams.imgHeight;
+        camParams.frameRate = oldParams.frameRate;
+        
+        try
+        {
+            if (started)
+            {
+                frameGrabber.stopCapture();
+                started = false;
+            }
+            
+            if (sameSize)
+                applyFrameRate(camParams);
+            else
+                replaceFrameGrabber(camParams);
+            
+            if (capturing)
+                resumeCapture();
+        }
+        catch (V4L4JException | RuntimeException e)
+        {
+            getLogger().error("Cannot restore previous params", e);
+        }
+    }
+    
+    
+    /**
+     * @return duration of the latest params switch in ms, or -1 if params were never switched
+     */
+    public long getLastSwitchTime()
+    {
+        return lastSwitchMillis;
+    }
+    
+    
+    /**
+     * @return time between the last frame captured before the latest params switch
+     * and the first frame captured after it in ms, or -1 if not known yet
+     */
+    public long getLastFrameGap()
+    {
+        return lastFrameGapMillis;
+    }
+    
+    
+    protected void applyFrameRate(V4LCameraParams camParams)
+    {
+        // not all cameras let us select the frame interval
+        setFrameRate(camParams.frameRate);
+    }
+    
+    
+    /**
+     * @return true if the driver accepted the frame interval of the given frame rate
+     */
+    protected boolean setFrameRate(int frameRate)
+    {
+        try
+        {
+            frameGrabber.setFrameInterval(1, frameRate);
+            return true;
+        }
+        catch (Exception e)
+        {
+            getLogger().debug("Cannot set frame rate to {} fps{}: {}", frameRate, started ? " while capturing" : "", e.getMessage());
+            return false;
+        }
+    }
+    
+    
+    /*
+     * Keeps the requested frame rate if the camera doesn't report its frame interval
+     */
+    protected void readFrameRate(V4LCameraParams camParams)
+    {
+        try
+        {
+            FrameInterval.DiscreteInterval interval = frameGrabber.getFrameInterval();
+            if (interval != null && interval.numerator > 0 && interval.denominator > 0)
+                camParams.frameRate = interval.denominator / interval.numerator;
+        }
+        catch (Exception e)
+        {
+            getLogger().debug("Cannot read frame interval, assuming {} fps: {}", camParams.frameRate, e.getMessage());
+        }
+    }
+    
+    
     @Override
     public void exceptionReceived(V4L4JException e)
     {
@@ -101,33 +352,43 @@ public abstract class V4LCameraOutput extends AbstractSensorOutput<V4LCameraDriv
     @Override
     public void nextFrame(VideoFrame frame)
     {
-        if (processingFrame.compareAndSet(false, true))
+        long now = System.nanoTime();
+        if (switchStartNanos > 0)
         {
-            try
-            {
-                // discard first frame because capture time is wrong
-                if (firstFrame)
-                    firstFrame = false;
-                else            
-                    processFrame(frame);
-                
-                frame.recycle();                
-            }
-            catch (Exception e)
-            {
-                getLogger().error("Error decoding frame, ts=" + frame.getCaptureTime());
-            }
-            finally
-            {
-                processingFrame.set(false);
-            }
+            lastFrameGapMillis = (now - switchStartNanos) / 1000000;
+            switchStartNanos = -1;
+            getLogger().debug("{} ms without frames during params switch", lastFrameGapMillis);
         }
+        lastFrameNanos = now;
         
-        // else skip frame if we're lagging behind
-        else
+        // discard first frame because capture time is wrong
+        if (firstFrame)
         {
-            parentSensor.getLogger().debug("Frame skipped, ts=" + frame.getCaptureTime());
+            firstFrame = false;
+            frame.recycle();
         }
+        
+        // queue or drop frame if we're lagging behind
+        else
+            frameQueue.submit(frame);
+    }
+    
+    
+    public long getReceivedFrameCount()
+    {
+        return frameQueue != null ? frameQueue.getReceivedCount() : 0;
+    }
+    
+    
+    public long getProcessedFrameCount()
+    {
+        return frameQueue != null ? frameQueue.getProcessedCount() : 0;
+    }
+    
+    
+    public long getDroppedFrameCount()
+    {
+        return frameQueue != null ? frameQueue.getDroppedCount() : 0;
     }
         
     
@@ -0,0 +1,112 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+ 
+Copyright (C) 2012-2015 Sensia Software LLC. All Rights Reserved.
+ 
+******************************* END LICENSE BLOCK ***************************/
+
+package org.sensorhub.impl.sensor.v4l;
+
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataComponent;
+import net.opengis.swe.v20.DataEncoding;
+import net.opengis.swe.v20.DataStream;
+import org.sensorhub.api.data.DataEvent;
+import org.sensorhub.impl.sensor.AbstractSensorOutput;
+import org.sensorhub.impl.sensor.videocam.VideoCamHelper;
+import org.vast.data.DataBlockMixed;
+
+
+/**
+ * <p>
+ * Output publishing the clips recorded around triggered events, with the
+ * original frame time stamps. A storage attached to this output only keeps
+ * the video surrounding events instead of the continuous stream.
+ * </p>
+ *
+ * @since Oct 18, 2026
+ */
+public class V4LCameraOutputClip extends AbstractSensorOutput<V4LCameraDriver> implements V4LClipRecorder.ClipSink
+{
+    DataStream dataStream;
+    
+    
+    protected V4LCameraOutputClip(V4LCameraDriver driver)
+    {
+        super("camOutput_Clip", driver);
+    }
+    
+    
+    protected void init(boolean h264)
+    {
+        V4LCameraParams camParams = parentSensor.camParams;
+        
+        // same structure as the video output
+        VideoCamHelper fac = new VideoCamHelper();
+        if (h264)
+            dataStream = fac.newVideoOutputH264(getName(), camParams.imgWidth, camParams.imgHeight);
+        else
+            dataStream = fac.newVideoOutputMJPEG(getName(), camParams.imgWidth, camParams.imgHeight);
+    }
+    
+    
+    @Override
+    public void beginClip(long clipId, long startTime)
+    {
+        parentSensor.getLogger().debug("Publishing clip " + clipId);
+    }
+    
+    
+    @Override
+    public void writeFrame(long frameTime, byte[] frameData)
+    {
+        DataBlock dataBlock;
+        if (latestRecord == null)
+            dataBlock = dataStream.getElementType().createDataBlock();
+        else
+            dataBlock = latestRecord.renew();
+        
+        dataBlock.setDoubleValue(frameTime / 1000.);
+        ((DataBlockMixed)dataBlock).getUnderlyingObject()[1].setUnderlyingObject(frameData);
+        
+        // update latest record and send event
+        latestRecord = dataBlock;
+        latestRecordTime = System.currentTimeMillis();
+        eventHandler.publish(new DataEvent(latestRecordTime, this, dataBlock));
+    }
+    
+    
+    @Override
+    public void endClip()
+    {
+        parentSensor.getLogger().debug("Clip published");
+    }
+    
+    
+    @Override
+    public DataEncoding getRecommendedEncoding()
+    {
+        return dataStream.getEncoding();
+    }
+
+
+    @Override
+    public double getAverageSamplingPeriod()
+    {
+        return 1.0 / Math.max(1, parentSensor.camParams.frameRate);
+    }
+
+
+    @Override
+    public DataComponent getRecordDescription()
+    {
+        return dataStream.getElementType();
+    }
+}
@@ -60,7 +60,7 @@ public class V4LCameraOutputH264 extends V4LCameraOutput implements CaptureCallb
             // adjust params to what was actually set up by V4L
             camParams.imgWidth = frameGrabber.getWidth();
             camParams.imgHeight = frameGrabber.getHeight();
-            camParams.frameRate = frameGrabber.getFrameInterval().denominator / frameGrabber.getFrameInterval().numerator;
+            readFrameRate(camParams);
             camParams.imgFormat = frameGrabber.getImageFormat().getName();
             
             // create SWE output structure
@@ -80,11 +80,21 @@ public class V4LCameraOutputH264 extends V4LCameraOutput implements CaptureCallb
         {
             frameGrabber = parentSensor.videoDevice.getRawFrameGrabber(camParams.imgWidth, camParams.imgHeight, 0, V4L4JConstants.STANDARD_WEBCAM, imgFormat);
             //frameGrabber = parentSensor.videoDevice.getJPEGFrameGrabber(camParams.imgWidth, camParams.imgHeight, 0, V4L4JConstants.STANDARD_WEBCAM, 80);
-            //frameGrabber.setFrameInterval(1, camParams.frameRate);
+            applyFrameRate(camParams);
         }
     }
 
 
+    @Override
+    protected void updateDataStream()
+    {
+        V4LCameraParams camParams = parentSensor.camParams;
+        VideoCamHelper fac = new VideoCamHelper();
+        dataStream = fac.newVideoOutputH264(getName(), camParams.imgWidth, camParams.imgHeight);
+        latestRecord = null;
+    }
+    
+    
     @Override
     public void processFrame(VideoFrame frame)
     {
@@ -95,7 +105,8 @@ public class V4LCameraOutputH264 extends V4LCameraOutput implements CaptureCallb
             dataBlock = latestRecord.renew();
         
         // time stamp
-        dataBlock.setDoubleValue(getJulianTimeStamp(frame.getCaptureTime()));
+        double timeStamp = getJulianTimeStamp(frame.getCaptureTime());
+        dataBlock.setDoubleValue(timeStamp);
         
         // either compressed or RGB data
         byte[] frameData = new byte[frame.getFrameLength()];
@@ -106,5 +117,30 @@ public class V4LCameraOutputH264 extends V4LCameraOutput implements CaptureCallb
         latestRecord = dataBlock;
         latestRecordTime = System.currentTimeMillis();
         eventHandler.publish(new DataEvent(latestRecordTime, this, dataBlock));
+        
+        // frame data is never modified once published so it is shared with the clip recorder
+        if (clipRecorder != null)
+            clipRecorder.addFrame(Math.round(timeStamp * 1000), frameData, isKeyFrame(frameData));
+    }
+    
+    
+    /*
+     * Checks if the access unit contains an IDR slice or parameter sets,
+     * meaning decoding can start from it
+     */
+    protected static boolean isKeyFrame(byte[] frameData)
+    {
+        for (int i = 2; i < frameData.length - 1; i++)
+        {
+            // NAL unit header follows a 00 00 01 start code
+            if (frameData[i] == 1 && frameData[i-1] == 0 && frameData[i-2] == 0)
+            {
+                int nalType = frameData[i+1] & 0x1F;
+                if (nalType == 5 || nalType == 7)
+                    return true;
+            }
+        }
+        
+        return false;
     }
 }
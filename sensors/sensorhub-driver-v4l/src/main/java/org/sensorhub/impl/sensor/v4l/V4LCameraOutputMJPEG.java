@@ -60,7 +60,7 @@ public class V4LCameraOutputMJPEG extends V4LCameraOutput implements CaptureCall
             // adjust params to what was actually set up by V4L
             camParams.imgWidth = frameGrabber.getWidth();
             camParams.imgHeight = frameGrabber.getHeight();
-            camParams.frameRate = frameGrabber.getFrameInterval().denominator / frameGrabber.getFrameInterval().numerator;
+            readFrameRate(camParams);
             camParams.imgFormat = frameGrabber.getImageFormat().getName();
             
             // create SWE output structure
@@ -79,11 +79,21 @@ public class V4LCameraOutputMJPEG extends V4LCameraOutput implements CaptureCall
         if (frameGrabber == null)
         {
             frameGrabber = parentSensor.videoDevice.getRawFrameGrabber(camParams.imgWidth, camParams.imgHeight, 0, V4L4JConstants.STANDARD_WEBCAM, imgFormat);
-            //frameGrabber.setFrameInterval(1, camParams.frameRate);
+            applyFrameRate(camParams);
         }
     }
 
 
+    @Override
+    protected void updateDataStream()
+    {
+        V4LCameraParams camParams = parentSensor.camParams;
+        VideoCamHelper fac = new VideoCamHelper();
+        dataStream = fac.newVideoOutputMJPEG(getName(), camParams.imgWidth, camParams.imgHeight);
+        latestRecord = null;
+    }
+    
+    
     @Override
     public void processFrame(VideoFrame frame)
     {
@@ -94,7 +104,8 @@ public class V4LCameraOutputMJPEG extends V4LCameraOutput implements CaptureCall
             dataBlock = latestRecord.renew();
         
         // time stamp
-        dataBlock.setDoubleValue(getJulianTimeStamp(frame.getCaptureTime()));
+        double timeStamp = getJulianTimeStamp(frame.getCaptureTime());
+        dataBlock.setDoubleValue(timeStamp);
         
         // either compressed or RGB data
         byte[] frameData = new byte[frame.getFrameLength()];
@@ -105,5 +116,9 @@ public class V4LCameraOutputMJPEG extends V4LCameraOutput implements CaptureCall
         latestRecord = dataBlock;
         latestRecordTime = System.currentTimeMillis();
         eventHandler.publish(new DataEvent(latestRecordTime, this, dataBlock));
+        
+        // frame data is never modified once published so it is shared with the clip recorder
+        if (clipRecorder != null)
+            clipRecorder.addFrame(Math.round(timeStamp * 1000), frameData, true);
     }
 }
@@ -14,12 +14,13 @@ Copyright (C) 2012-2015 Sensia Software LLC. All Rights Reserved.
 
 package org.sensorhub.impl.sensor.v4l;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import net.opengis.swe.v20.DataBlock;
-import net.opengis.swe.v20.DataComponent;
 import org.sensorhub.api.data.DataEvent;
 import org.sensorhub.api.sensor.SensorException;
 import org.sensorhub.impl.sensor.videocam.VideoCamHelper;
-import org.vast.data.DataBlockByte;
+import org.vast.data.DataBlockMixed;
 import au.edu.jcu.v4l4j.CaptureCallback;
 import au.edu.jcu.v4l4j.DeviceInfo;
 import au.edu.jcu.v4l4j.V4L4JConstants;
@@ -29,7 +30,10 @@ import au.edu.jcu.v4l4j.exceptions.V4L4JException;
 
 /**
  * <p>
- * Implementation of RGB video output for V4L sensor
+ * Implementation of RGB video output for V4L sensor.<br/>
+ * Raw frame listeners registered in process read each frame directly in
+ * the V4L buffer, while the published records carry their own copy since
+ * events may be delivered after the buffer is reused.
  * </p>
  *
  * @author Alex Robin
@@ -37,7 +41,19 @@ import au.edu.jcu.v4l4j.exceptions.V4L4JException;
  */
 public class V4LCameraOutputRGB extends V4LCameraOutput implements CaptureCallback
 {
-    DataComponent camDataStruct;
+    public interface RawFrameListener
+    {
+        /**
+         * Called on the processing thread for each frame, the frame view
+         * is only valid until this method returns
+         */
+        void frameReceived(V4LRawFrame frame);
+    }
+    
+    
+    List<RawFrameListener> rawFrameListeners = new CopyOnWriteArrayList<>();
+    V4LCameraOutputThumbnail thumbnailOutput;
+    boolean publishFrames = true;
     
     
     protected V4LCameraOutputRGB(V4LCameraDriver driver)
@@ -59,7 +75,7 @@ public class V4LCameraOutputRGB extends V4LCameraOutput implements CaptureCallba
             // adjust params to what was actually set up by V4L
             camParams.imgWidth = frameGrabber.getWidth();
             camParams.imgHeight = frameGrabber.getHeight();
-            camParams.frameRate = frameGrabber.getFrameInterval().denominator / frameGrabber.getFrameInterval().numerator;
+            readFrameRate(camParams);
             camParams.imgFormat = frameGrabber.getImageFormat().getName();
             
             // create SWE output structure
@@ -76,24 +92,86 @@ public class V4LCameraOutputRGB extends V4LCameraOutput implements CaptureCallba
     protected void initFrameGrabber(V4LCameraParams camParams) throws V4L4JException
     {        
         if (frameGrabber == null)
+        {
             frameGrabber = parentSensor.videoDevice.getRGBFrameGrabber(camParams.imgWidth, camParams.imgHeight, 0, V4L4JConstants.STANDARD_WEBCAM);
+            applyFrameRate(camParams);
+        }
+    }
+
+
+    @Override
+    protected void updateDataStream()
+    {
+        V4LCameraParams camParams = parentSensor.camParams;
+        VideoCamHelper fac = new VideoCamHelper();
+        dataStream = fac.newVideoOutputRGB(getName(), camParams.imgWidth, camParams.imgHeight);
+        latestRecord = null;
+        
+        if (thumbnailOutput != null)
+            thumbnailOutput.updateDataStream();
+    }
+    
+    
+    public void addRawFrameListener(RawFrameListener listener)
+    {
+        rawFrameListeners.add(listener);
+    }
+    
+    
+    public void removeRawFrameListener(RawFrameListener listener)
+    {
+        rawFrameListeners.remove(listener);
     }
 
 
     @Override
     public void processFrame(VideoFrame frame)
     {
-        //double samplingTime = frame.getCaptureTime() / 1000.;
+        V4LCameraParams camParams = parentSensor.camParams;
+        double timeStamp = getJulianTimeStamp(frame.getCaptureTime());
+        byte[] frameBytes = frame.getBytes();
+        int frameLength = frame.getFrameLength();
+        
+        // zero-copy access for in-process consumers
+        if (!rawFrameListeners.isEmpty())
+        {
+            V4LRawFrame rawFrame = new V4LRawFrame(timeStamp, camParams.imgWidth, camParams.imgHeight, camParams.imgFormat, frameBytes, frameLength);
+            for (RawFrameListener listener: rawFrameListeners)
+            {
+                try
+                {
+                    listener.frameReceived(rawFrame);
+                }
+                catch (RuntimeException e)
+                {
+                    getLogger().error("Error in raw frame listener", e);
+                }
+            }
+            rawFrame.invalidate();
+        }
+        
+        if (thumbnailOutput != null)
+            thumbnailOutput.processFrame(timeStamp, frameBytes);
+        
+        if (!publishFrames)
+            return;
+        
         DataBlock dataBlock;
         if (latestRecord == null)
-            dataBlock = camDataStruct.createDataBlock();
+            dataBlock = dataStream.getElementType().createDataBlock();
         else
             dataBlock = latestRecord.renew();
-        ((DataBlockByte)dataBlock).setUnderlyingObject(frame.getBytes());
+        
+        dataBlock.setDoubleValue(timeStamp);
+        
+        // V4L4J reuses the frame buffer once recycled
+        byte[] frameData = new byte[frameLength];
+        System.arraycopy(frameBytes, 0, frameData, 0, frameLength);
+        ((DataBlockMixed)dataBlock).getUnderlyingObject()[1].setUnderlyingObject(frameData);
         
         // update latest record and send event
         latestRecord = dataBlock;
         latestRecordTime = System.currentTimeMillis();
-        eventHandler.publish(new DataEvent(latestRecordTime, this, dataBlock));    
+        eventHandler.publish(new DataEvent(latestRecordTime, this, dataBlock));
     }
 }
@@ -0,0 +1,119 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+ 
+Copyright (C) 2012-2015 Sensia Software LLC. All Rights Reserved.
+ 
+******************************* END LICENSE BLOCK ***************************/
+
+
+package org.sensorhub.impl.sensor.v4l;
+
+import net.opengis.swe.v20.DataBlock;
+import net.opengis.swe.v20.DataComponent;
+import net.opengis.swe.v20.DataEncoding;
+import net.opengis.swe.v20.DataStream;
+import org.sensorhub.api.data.DataEvent;
+import org.sensorhub.impl.sensor.AbstractSensorOutput;
+import org.sensorhub.impl.sensor.videocam.VideoCamHelper;
+import org.vast.data.DataBlockMixed;
+
+
+/**
+ * <p>
+ * Output publishing RGB thumbnails downscaled from the raw video frames
+ * with a box filter, for previews and lightweight analytics
+ * </p>
+ *
+ * @since Oct 18, 2026
+ */
+public class V4LCameraOutputThumbnail extends AbstractSensorOutput<V4LCameraDriver>
+{
+    static final int MAX_SCALE = 16;
+    
+    DataStream dataStream;
+    V4LBoxFilter boxFilter;
+    int scale;
+    
+    
+    protected V4LCameraOutputThumbnail(V4LCameraDriver driver)
+    {
+        super("camOutput_Thumbnail", driver);
+    }
+    
+    
+    protected void init(int scale)
+    {
+        this.scale = Math.min(scale, MAX_SCALE);
+        updateDataStream();
+    }
+    
+    
+    /**
+     * Updates the filter and output structure to the video output size
+     */
+    protected void updateDataStream()
+    {
+        V4LCameraParams camParams = parentSensor.camParams;
+        
+        boxFilter = new V4LBoxFilter(camParams.imgWidth, camParams.imgHeight, 3, scale);
+        
+        VideoCamHelper fac = new VideoCamHelper();
+        dataStream = fac.newVideoOutputRGB(getName(), boxFilter.getOutputWidth(), boxFilter.getOutputHeight());
+        latestRecord = null;
+    }
+    
+    
+    /**
+     * Publishes the thumbnail of a raw frame, called from the video output
+     * while the frame is still held in the V4L buffer
+     * @param timeStamp julian time stamp of the frame
+     * @param rgbData RGB24 frame with the size of the video output
+     */
+    protected void processFrame(double timeStamp, byte[] rgbData)
+    {
+        DataBlock dataBlock;
+        if (latestRecord == null)
+            dataBlock = dataStream.getElementType().createDataBlock();
+        else
+            dataBlock = latestRecord.renew();
+        
+        dataBlock.setDoubleValue(timeStamp);
+        
+        byte[] thumbnail = new byte[boxFilter.getOutputSize()];
+        boxFilter.downscale(rgbData, thumbnail);
+        ((DataBlockMixed)dataBlock).getUnderlyingObject()[1].setUnderlyingObject(thumbnail);
+        
+        // update latest record and send event
+        latestRecord = dataBlock;
+        latestRecordTime = System.currentTimeMillis();
+        eventHandler.publish(new DataEvent(latestRecordTime, this, dataBlock));
+    }
+    
+    
+    @Override
+    public DataEncoding getRecommendedEncoding()
+    {
+        return dataStream.getEncoding();
+    }
+
+
+    @Override
+    public double getAverageSamplingPeriod()
+    {
+        return 1.0 / Math.max(1, parentSensor.camParams.frameRate);
+    }
+
+
+    @Override
+    public DataComponent getRecordDescription()
+    {
+        return dataStream.getElementType();
+    }
+}
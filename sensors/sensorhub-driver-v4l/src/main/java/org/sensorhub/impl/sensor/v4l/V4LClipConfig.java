@@ -0,0 +1,47 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+ 
+Copyright (C) 2012-2015 Sensia Software LLC. All Rights Reserved.
+ 
+******************************* END LICENSE BLOCK ***************************/
+
+package org.sensorhub.impl.sensor.v4l;
+
+import org.sensorhub.api.config.DisplayInfo;
+
+
+/**
+ * <p>
+ * Configuration of the event clips recorded from the compressed
+ * (MJPEG or H264) video output
+ * </p>
+ *
+ * @since Oct 18, 2026
+ */
+public class V4LClipConfig
+{
+    @DisplayInfo(desc="Keep the latest frames in memory and record clips around triggered events")
+    public boolean enabled = false;
+    
+    @DisplayInfo(desc="Video kept in memory before an event and included at the start of the clip, in seconds")
+    public int preRollDuration = 10;
+    
+    @DisplayInfo(desc="Maximum size of the video kept in memory before an event, in kilobytes")
+    public int preRollSize = 32768;
+    
+    @DisplayInfo(desc="Video recorded after the latest event, in seconds")
+    public int postRollDuration = 10;
+    
+    @DisplayInfo(desc="Directory the clips are written to, leave empty to not write clip files")
+    public String clipDirectory = "";
+    
+    @DisplayInfo(desc="Publish the clips on the clip output, to be stored in place of the continuous video")
+    public boolean publishClips = true;
+}
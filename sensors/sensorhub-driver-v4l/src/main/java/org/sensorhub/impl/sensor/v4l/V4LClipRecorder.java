@@ -0,0 +1,349 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+ 
+Copyright (C) 2012-2015 Sensia Software LLC. All Rights Reserved.
+ 
+******************************* END LICENSE BLOCK ***************************/
+
+package org.sensorhub.impl.sensor.v4l;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+
+
+/**
+ * <p>
+ * Records clips made of the video preceding an event and the video following it.
+ * Encoded frames are kept in a ring bounded by size and duration, always starting
+ * with a keyframe. When an event is triggered, the ring content is flushed to the
+ * clip sinks followed by the live frames until the post-roll has elapsed. An event
+ * occurring during a clip extends it.<br/>
+ * Sinks are called on a dedicated writer thread so they never hold back the capture.
+ * </p>
+ *
+ * @since Oct 18, 2026
+ */
+public class V4LClipRecorder
+{
+    static final long WRITER_TERMINATION_TIMEOUT = 5000L;
+    
+    
+    /**
+     * Receives the frames of the recorded clips, on the writer thread
+     */
+    public interface ClipSink
+    {
+        void beginClip(long clipId, long startTime) throws Exception;
+        
+        void writeFrame(long frameTime, byte[] frameData) throws Exception;
+        
+        void endClip() throws Exception;
+    }
+    
+    
+    static class BufferedFrame
+    {
+        final long frameTime;
+        final byte[] frameData;
+        final boolean keyFrame;
+        
+        BufferedFrame(long frameTime, byte[] frameData, boolean keyFrame)
+        {
+            this.frameTime = frameTime;
+            this.frameData = frameData;
+            this.keyFrame = keyFrame;
+        }
+    }
+    
+    
+    final Logger logger;
+    final List<ClipSink> sinks;
+    final long maxBytes;
+    final long maxDuration;
+    final long postRoll;
+    final ArrayDeque<BufferedFrame> preRollFrames = new ArrayDeque<>();
+    long preRollSize;
+    ExecutorService writer;
+    boolean recording;
+    long clipId;
+    long clipEndTime;
+    long lastFrameTime;
+    
+    
+    public V4LClipRecorder(V4LClipConfig config, List<ClipSink> sinks, Logger logger)
+    {
+        this.logger = logger;
+        this.sinks = new ArrayList<>(sinks);
+        this.maxBytes = Math.max(0, config.preRollSize) * 1024L;
+        this.maxDuration = Math.max(0, config.preRollDuration) * 1000L;
+        this.postRoll = Math.max(0, config.postRollDuration) * 1000L;
+    }
+    
+    
+    public synchronized void start()
+    {
+        if (writer != null)
+            return;
+        
+        clearPreRoll();
+        writer = Executors.newSingleThreadExecutor(r -> new Thread(r, "v4l-clip-writer"));
+    }
+    
+    
+    /**
+     * Ends the clip being recorded, if any, and waits for pending frames to be written
+     */
+    public void stop()
+    {
+        ExecutorService executor;
+        
+        synchronized (this)
+        {
+            if (writer == null)
+                return;
+            
+            if (recording)
+                endClip();
+            
+            clearPreRoll();
+            executor = writer;
+            writer = null;
+        }
+        
+        executor.shutdown();
+        
+        try
+        {
+            if (!executor.awaitTermination(WRITER_TERMINATION_TIMEOUT, TimeUnit.MILLISECONDS))
+            {
+                logger.warn("Clip writer did not terminate, discarding pending frames");
+                executor.shutdownNow();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    
+    /**
+     * Records the buffered pre-roll, then the live frames until the post-roll has elapsed.
+     * Extends the clip being recorded, if any.
+     * @param postRollMillis video recorded after the event, 0 or less for the configured post-roll
+     * @return ID of the clip recording the event, or -1 if capture is not running
+     */
+    public synchronized long trigger(long postRollMillis)
+    {
+        if (writer == null)
+            return -1;
+        
+        long eventTime = Math.max(System.currentTimeMillis(), lastFrameTime);
+        long endTime = eventTime + (postRollMillis > 0 ? postRollMillis : postRoll);
+        
+        if (recording)
+        {
+            clipEndTime = Math.max(clipEndTime, endTime);
+            logger.info("Clip {} extended to {}", clipId, clipEndTime);
+            return clipId;
+        }
+        
+        List<BufferedFrame> frames = new ArrayList<>(preRollFrames);
+        long id = ++clipId;
+        long startTime = frames.isEmpty() ? eventTime : frames.get(0).frameTime;
+        
+        recording = true;
+        clipEndTime = endTime;
+        logger.info("Recording clip {} with {} ms of pre-roll", id, getPreRollDuration());
+        
+        dispatch(sink -> sink.beginClip(id, startTime));
+        for (BufferedFrame frame: frames)
+            dispatch(sink -> sink.writeFrame(frame.frameTime, frame.frameData));
+        
+        return id;
+    }
+    
+    
+    /**
+     * Adds a frame to the pre-roll and to the clip being recorded, if any.
+     * The frame data is held by reference and must not be modified afterwards.
+     */
+    public synchronized void addFrame(long frameTime, byte[] frameData, boolean keyFrame)
+    {
+        if (writer == null)
+            return;
+        
+        lastFrameTime = frameTime;
+        
+        // frames can only be appended to a keyframe
+        if (keyFrame || !preRollFrames.isEmpty())
+        {
+            preRollFrames.addLast(new BufferedFrame(frameTime, frameData, keyFrame));
+            preRollSize += frameData.length;
+            
+            // evict oldest frames along with the frames depending on them
+            while (!preRollFrames.isEmpty() &&
+                   (preRollSize > maxBytes || frameTime - preRollFrames.peekFirst().frameTime > maxDuration))
+            {
+                do { preRollSize -= preRollFrames.pollFirst().frameData.length; }
+                while (!preRollFrames.isEmpty() && !preRollFrames.peekFirst().keyFrame);
+            }
+        }
+        
+        if (recording)
+        {
+            dispatch(sink -> sink.writeFrame(frameTime, frameData));
+            if (frameTime >= clipEndTime)
+                endClip();
+        }
+    }
+    
+    
+    public synchronized boolean isRecording()
+    {
+        return recording;
+    }
+    
+    
+    public synchronized long getPreRollDuration()
+    {
+        if (preRollFrames.isEmpty())
+            return 0;
+        return preRollFrames.peekLast().frameTime - preRollFrames.peekFirst().frameTime;
+    }
+    
+    
+    protected void endClip()
+    {
+        recording = false;
+        logger.info("Clip {} complete", clipId);
+        dispatch(ClipSink::endClip);
+    }
+    
+    
+    protected void clearPreRoll()
+    {
+        preRollFrames.clear();
+        preRollSize = 0;
+    }
+    
+    
+    protected void dispatch(SinkCall call)
+    {
+        // a failing sink does not affect the others
+        writer.execute(() -> {
+            for (ClipSink sink: sinks)
+            {
+                try
+                {
+                    call.apply(sink);
+                }
+                catch (Exception e)
+                {
+                    logger.error("Failed to write clip to " + sink.getClass().getSimpleName(), e);
+                }
+            }
+        });
+    }
+    
+    
+    interface SinkCall
+    {
+        void apply(ClipSink sink) throws Exception;
+    }
+    
+    
+    /**
+     * Writes each clip to its own file as a raw MJPEG or H264 elementary stream
+     */
+    public static class FileSink implements ClipSink
+    {
+        static final DateTimeFormatter FILE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
+        
+        final Logger logger;
+        final Path directory;
+        final String prefix;
+        final String extension;
+        OutputStream clipStream;
+        Path clipFile;
+        
+        
+        public FileSink(String directory, String prefix, String extension, Logger logger)
+        {
+            this.directory = Paths.get(directory);
+            this.prefix = prefix;
+            this.extension = extension;
+            this.logger = logger;
+        }
+        
+        
+        @Override
+        public void beginClip(long clipId, long startTime) throws IOException
+        {
+            Files.createDirectories(directory);
+            clipFile = directory.resolve(prefix + "-" + FILE_TIME_FORMAT.format(Instant.ofEpochMilli(startTime)) + "-" + clipId + "." + extension);
+            clipStream = new BufferedOutputStream(Files.newOutputStream(clipFile), 256*1024);
+            logger.info("Writing clip {} to {}", clipId, clipFile);
+        }
+        
+        
+        @Override
+        public void writeFrame(long frameTime, byte[] frameData) throws IOException
+        {
+            // skip frames if the clip could not be opened
+            if (clipStream == null)
+                return;
+            
+            try
+            {
+                clipStream.write(frameData);
+            }
+            catch (IOException e)
+            {
+                // give up on this clip rather than failing on every frame
+                endClip();
+                throw e;
+            }
+        }
+        
+        
+        @Override
+        public void endClip() throws IOException
+        {
+            if (clipStream == null)
+                return;
+            
+            try
+            {
+                clipStream.close();
+                logger.info("Clip file {} complete", clipFile);
+            }
+            finally
+            {
+                clipStream = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+ 
+Copyright (C) 2012-2015 Sensia Software LLC. All Rights Reserved.
+ 
+******************************* END LICENSE BLOCK ***************************/
+
+
+package org.sensorhub.impl.sensor.v4l;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+
+/**
+ * <p>
+ * Lists the V4L capture devices from sysfs and finds the USB bus and port
+ * each one is attached to. Only the first node of each device is listed,
+ * UVC cameras also expose a metadata node that cannot capture video.
+ * </p>
+ *
+ * @since Oct 18, 2026
+ */
+public class V4LDeviceDiscovery
+{
+    static final Pattern VIDEO_NODE = Pattern.compile("video\\d+");
+    static final Pattern USB_BUS = Pattern.compile("usb\\d+");
+    
+    final Path sysfsDir;
+    final Path devDir;
+    
+    
+    public static class Device
+    {
+        public String deviceName;
+        public String usbBus;
+        public String usbPort;
+        
+        
+        /**
+         * @return USB port the camera is plugged in, or device node name if not on USB
+         */
+        public String getLocation()
+        {
+            return usbPort != null ? usbPort : Paths.get(deviceName).getFileName().toString();
+        }
+    }
+    
+    
+    public V4LDeviceDiscovery()
+    {
+        this(Paths.get("/sys/class/video4linux"), Paths.get("/dev"));
+    }
+    
+    
+    public V4LDeviceDiscovery(Path sysfsDir, Path devDir)
+    {
+        this.sysfsDir = sysfsDir;
+        this.devDir = devDir;
+    }
+    
+    
+    /**
+     * @return capture devices ordered by node number
+     */
+    public List<Device> listDevices() throws IOException
+    {
+        List<Device> devices = new ArrayList<>();
+        if (!Files.isDirectory(sysfsDir))
+            return devices;
+        
+        List<String> nodes = new ArrayList<>();
+        try (Stream<Path> entries = Files.list(sysfsDir))
+        {
+            entries.map(p -> p.getFileName().toString())
+                .filter(n -> VIDEO_NODE.matcher(n).matches())
+                .forEach(nodes::add);
+        }
+        
+        nodes.sort(Comparator.comparingInt(n -> Integer.parseInt(n.substring(5))));
+        for (String node: nodes)
+        {
+            if (isCaptureNode(node))
+                devices.add(getDevice(node));
+        }
+        
+        return devices;
+    }
+    
+    
+    /**
+     * @param deviceName device file, possibly a udev link such as /dev/v4l/by-path/...
+     */
+    public Device getDevice(String deviceName)
+    {
+        String node = Paths.get(deviceName).getFileName().toString();
+        
+        try
+        {
+            node = Paths.get(deviceName).toRealPath().getFileName().toString();
+        }
+        catch (IOException e)
+        {
+            // keep name as given
+        }
+        
+        Device device = new Device();
+        device.deviceName = deviceName.startsWith("/") ? deviceName : devDir.resolve(node).toString();
+        
+        try
+        {
+            // e.g. /sys/devices/pci0000:00/0000:00:14.0/usb1/1-1/1-1.2/1-1.2:1.0
+            Path devicePath = sysfsDir.resolve(node).resolve("device").toRealPath();
+            for (Path part: devicePath)
+            {
+                String name = part.toString();
+                if (USB_BUS.matcher(name).matches())
+                    device.usbBus = name;
+            }
+            
+            // port of the USB device owning the video interface
+            if (device.usbBus != null && devicePath.getFileName().toString().contains(":"))
+                device.usbPort = devicePath.getParent().getFileName().toString();
+        }
+        catch (IOException e)
+        {
+            // not a sysfs device
+        }
+        
+        return device;
+    }
+    
+    
+    protected boolean isCaptureNode(String node)
+    {
+        try
+        {
+            Path index = sysfsDir.resolve(node).resolve("index");
+            return !Files.exists(index) || "0".equals(new String(Files.readAllBytes(index)).trim());
+        }
+        catch (IOException e)
+        {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,385 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+ 
+Copyright (C) 2012-2015 Sensia Software LLC. All Rights Reserved.
+ 
+******************************* END LICENSE BLOCK ***************************/
+
+
+package org.sensorhub.impl.sensor.v4l;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import au.edu.jcu.v4l4j.VideoFrame;
+
+
+/**
+ * <p>
+ * Bounded queue handing captured frames from the V4L4J capture thread to a
+ * processing thread, so slow listeners never run on the capture thread.
+ * When the queue is full, the drop policy decides whether the new frame or
+ * the oldest queued frame is dropped, or whether capture waits for room.
+ * Frames are recycled to V4L4J once processed or dropped.<br/>
+ * Frames are processed either by a dedicated thread or by short drain tasks
+ * run on an executor shared with other cameras, never more than one task
+ * per queue at a time so frames of a camera stay in order.<br/>
+ * Dropped frames are counted and reported periodically.
+ * </p>
+ *
+ * @since Oct 18, 2026
+ */
+public class V4LFrameQueue
+{
+    static final long POLL_TIMEOUT_MS = 100;
+    static final long JOIN_TIMEOUT_MS = 5000;
+    static final long DROP_LOG_PERIOD_MS = 10000;
+    
+    
+    public enum DropPolicy
+    {
+        DROP_NEWEST,
+        DROP_OLDEST,
+        BLOCK_CAPTURE
+    }
+    
+    
+    public interface FrameProcessor
+    {
+        void processFrame(VideoFrame frame) throws Exception;
+    }
+    
+    
+    final String name;
+    final Logger log;
+    final FrameProcessor processor;
+    final DropPolicy policy;
+    final BlockingQueue<VideoFrame> queue;
+    final Executor executor;
+    final AtomicBoolean drainScheduled = new AtomicBoolean();
+    volatile boolean running;
+    boolean started;
+    Thread worker;
+    
+    final AtomicLong receivedCount = new AtomicLong();
+    final AtomicLong processedCount = new AtomicLong();
+    final AtomicLong droppedCount = new AtomicLong();
+    final AtomicLong heldCount = new AtomicLong();
+    long lastDropLogTime;
+    long lastDropLogCount;
+    
+    
+    public V4LFrameQueue(String name, int capacity, DropPolicy policy, FrameProcessor processor, Logger log)
+    {
+        this(name, capacity, policy, processor, null, log);
+    }
+    
+    
+    /**
+     * @param executor shared executor running the processing, or null to use a dedicated thread
+     */
+    public V4LFrameQueue(String name, int capacity, DropPolicy policy, FrameProcessor processor, Executor executor, Logger log)
+    {
+        this.name = name;
+        this.policy = policy != null ? policy : DropPolicy.DROP_NEWEST;
+        this.processor = processor;
+        this.executor = executor;
+        this.log = log;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+    }
+    
+    
+    public synchronized void start()
+    {
+        if (started)
+            return;
+        
+        started = true;
+        running = true;
+        
+        if (executor == null)
+        {
+            worker = new Thread(this::processFrames, name + "-frames");
+            worker.start();
+        }
+    }
+    
+    
+    /**
+     * Stops the processing thread once the current frame is processed,
+     * frames still queued are recycled and counted as dropped
+     */
+    public void stop()
+    {
+        Thread thread;
+        
+        synchronized (this)
+        {
+            if (!started)
+                return;
+            
+            started = false;
+            running = false;
+            thread = worker;
+            worker = null;
+        }
+        
+        try
+        {
+            if (thread != null)
+                thread.join(JOIN_TIMEOUT_MS);
+            else
+                waitForDrain();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        
+        VideoFrame frame;
+        while ((frame = queue.poll()) != null)
+            drop(frame);
+        
+        log.debug("{} frames: {} received, {} processed, {} dropped", name, getReceivedCount(), getProcessedCount(), getDroppedCount());
+    }
+    
+    
+    /**
+     * Queues a captured frame according to the drop policy, to be called from the capture thread
+     * @param frame frame to process, recycled by the queue
+     */
+    public void submit(VideoFrame frame)
+    {
+        receivedCount.incrementAndGet();
+        heldCount.incrementAndGet();
+        
+        if (!running)
+        {
+            drop(frame);
+            return;
+        }
+        
+        switch (policy)
+        {
+            case DROP_OLDEST:
+                while (!queue.offer(frame))
+                {
+                    VideoFrame oldest = queue.poll();
+                    if (oldest != null)
+                        drop(oldest);
+                }
+                scheduleDrain();
+                break;
+                
+            case BLOCK_CAPTURE:
+                try
+                {
+                    // V4L4J skips frames while no buffer is recycled
+                    while (running)
+                    {
+                        if (queue.offer(frame, POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS))
+                        {
+                            scheduleDrain();
+                            return;
+                        }
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                drop(frame);
+                break;
+                
+            default:
+                if (queue.offer(frame))
+                    scheduleDrain();
+                else
+                    drop(frame);
+        }
+    }
+    
+    
+    /**
+     * Waits until all queued frames are processed, while capture is paused.
+     * Frames still queued after the timeout are recycled and counted as dropped.
+     * @param timeoutMillis maximum time to wait
+     * @return true if all frames were processed
+     */
+    public boolean awaitIdle(long timeoutMillis) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        // frames are held from submission until recycled
+        while (heldCount.get() > 0)
+        {
+            if (System.currentTimeMillis() >= deadline)
+            {
+                VideoFrame frame;
+                while ((frame = queue.poll()) != null)
+                    drop(frame);
+                return false;
+            }
+            
+            Thread.sleep(1);
+        }
+        
+        return true;
+    }
+    
+    
+    protected void processFrames()
+    {
+        while (running)
+        {
+            VideoFrame frame;
+            
+            try
+            {
+                frame = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (frame == null)
+                    continue;
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            
+            process(frame);
+        }
+    }
+    
+    
+    protected void scheduleDrain()
+    {
+        if (executor == null || !drainScheduled.compareAndSet(false, true))
+            return;
+        
+        try
+        {
+            executor.execute(this::drainFrames);
+        }
+        catch (RejectedExecutionException e)
+        {
+            drainScheduled.set(false);
+            log.error("{}: processing pool is shut down", name);
+        }
+    }
+    
+    
+    protected void drainFrames()
+    {
+        try
+        {
+            // limit batch so cameras sharing the executor take turns
+            int count = queue.remainingCapacity() + queue.size();
+            VideoFrame frame;
+            while (running && count-- > 0 && (frame = queue.poll()) != null)
+                process(frame);
+        }
+        finally
+        {
+            synchronized (drainScheduled)
+            {
+                drainScheduled.set(false);
+                drainScheduled.notifyAll();
+            }
+        }
+        
+        // frame may have been queued after the last poll
+        if (running && !queue.isEmpty())
+            scheduleDrain();
+    }
+    
+    
+    protected void waitForDrain() throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + JOIN_TIMEOUT_MS;
+        
+        synchronized (drainScheduled)
+        {
+            long remaining;
+            while (drainScheduled.get() && (remaining = deadline - System.currentTimeMillis()) > 0)
+                drainScheduled.wait(remaining);
+        }
+    }
+    
+    
+    protected void process(VideoFrame frame)
+    {
+        try
+        {
+            processor.processFrame(frame);
+            processedCount.incrementAndGet();
+        }
+        catch (Exception e)
+        {
+            log.error("Error processing frame, ts=" + frame.getCaptureTime(), e);
+            droppedCount.incrementAndGet();
+        }
+        finally
+        {
+            frame.recycle();
+            heldCount.decrementAndGet();
+        }
+    }
+    
+    
+    protected void drop(VideoFrame frame)
+    {
+        frame.recycle();
+        heldCount.decrementAndGet();
+        long dropped = droppedCount.incrementAndGet();
+        
+        // report drops without flooding the log
+        synchronized (droppedCount)
+        {
+            long now = System.currentTimeMillis();
+            if (now - lastDropLogTime >= DROP_LOG_PERIOD_MS)
+            {
+                log.warn("{}: {} frames dropped since last report, {} total, policy {}", name, dropped - lastDropLogCount, dropped, policy);
+                lastDropLogTime = now;
+                lastDropLogCount = dropped;
+            }
+        }
+    }
+    
+    
+    public int getQueueSize()
+    {
+        return queue.size();
+    }
+    
+    
+    public long getReceivedCount()
+    {
+        return receivedCount.get();
+    }
+    
+    
+    public long getProcessedCount()
+    {
+        return processedCount.get();
+    }
+    
+    
+    /**
+     * @return frames dropped because the queue was full, capture was stopping, or processing failed
+     */
+    public long getDroppedCount()
+    {
+        return droppedCount.get();
+    }
+}
@@ -0,0 +1,61 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+ 
+Copyright (C) 2012-2015 Sensia Software LLC. All Rights Reserved.
+ 
+******************************* END LICENSE BLOCK ***************************/
+
+
+package org.sensorhub.impl.sensor.v4l;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.sensorhub.api.config.DisplayInfo;
+import org.sensorhub.api.config.DisplayInfo.Required;
+import org.sensorhub.api.module.ModuleConfig;
+
+
+/**
+ * <p>
+ * Configuration of the module managing a group of Video4Linux cameras
+ * </p>
+ *
+ * @since Oct 18, 2026
+ */
+public class V4LMultiCameraConfig extends ModuleConfig
+{
+    @Required
+    @DisplayInfo(desc="Serial number prefix, each camera adds the USB port it is plugged in")
+    public String serialNumber = "01";
+    
+    @DisplayInfo(desc="Video devices to open (e.g. /dev/v4l/by-path/...), leave empty to open all capture devices found")
+    public List<String> deviceNames = new ArrayList<>();
+    
+    @DisplayInfo(desc="Camera params requested for every camera, lowered if the USB bus cannot carry all cameras")
+    public V4LCameraParams defaultParams = new V4LCameraParams();
+    
+    @DisplayInfo(desc="Number of threads processing the frames of all cameras")
+    public int processingThreads = 4;
+    
+    @DisplayInfo(desc="Maximum number of captured frames waiting to be processed, for each camera")
+    public int frameQueueSize = 2;
+    
+    @DisplayInfo(desc="Frame dropped when the processing queue of a camera is full")
+    public V4LFrameQueue.DropPolicy dropPolicy = V4LFrameQueue.DropPolicy.DROP_NEWEST;
+    
+    @DisplayInfo(label="USB Bandwidth", desc="Bandwidth available to the cameras on each USB bus, in MB/s (USB 2.0 allows at most about 48 MB/s of isochronous traffic)")
+    public double usbBandwidth = 40;
+    
+    @DisplayInfo(desc="Estimated average size of a compressed (MJPEG or H264) pixel, in bytes")
+    public double compressedBytesPerPixel = 0.3;
+    
+    @DisplayInfo(desc="Frame rate cameras are slowed down to before their resolution is lowered")
+    public int minFrameRate = 5;
+}
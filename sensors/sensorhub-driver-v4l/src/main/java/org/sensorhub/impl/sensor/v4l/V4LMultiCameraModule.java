@@ -0,0 +1,177 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+ 
+Copyright (C) 2012-2015 Sensia Software LLC. All Rights Reserved.
+ 
+******************************* END LICENSE BLOCK ***************************/
+
+
+package org.sensorhub.impl.sensor.v4l;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.sensorhub.api.common.SensorHubException;
+import org.sensorhub.api.sensor.SensorException;
+import org.sensorhub.impl.module.AbstractModule;
+
+
+/**
+ * <p>
+ * Module opening several Video4Linux cameras at once. Each camera found is
+ * loaded as a separate V4L camera module, with camera params negotiated so
+ * the cameras sharing a USB bus do not exceed its bandwidth, and with all
+ * frames processed by one shared, fixed size thread pool.
+ * </p>
+ *
+ * @since Oct 18, 2026
+ */
+public class V4LMultiCameraModule extends AbstractModule<V4LMultiCameraConfig>
+{
+    V4LDeviceDiscovery discovery = new V4LDeviceDiscovery();
+    Map<String, V4LCameraConfig> memberConfigs = new LinkedHashMap<>();
+    List<String> loadedMembers = new ArrayList<>();
+    
+    
+    @Override
+    protected void doInit() throws SensorHubException
+    {
+        super.doInit();
+        
+        List<V4LDeviceDiscovery.Device> devices = findDevices();
+        if (devices.isEmpty())
+            throw new SensorException("No video capture device found");
+        
+        // negotiate camera params bus by bus
+        Map<String, List<V4LCameraParams>> buses = new LinkedHashMap<>();
+        memberConfigs.clear();
+        for (V4LDeviceDiscovery.Device device: devices)
+        {
+            V4LCameraConfig memberConfig = createMemberConfig(device);
+            memberConfigs.put(memberConfig.id, memberConfig);
+            
+            if (device.usbBus != null)
+                buses.computeIfAbsent(device.usbBus, k -> new ArrayList<>()).add(memberConfig.defaultParams);
+        }
+        
+        V4LBandwidthAllocator allocator = new V4LBandwidthAllocator(config.usbBandwidth * 1e6, config.compressedBytesPerPixel, config.minFrameRate);
+        for (Map.Entry<String, List<V4LCameraParams>> bus: buses.entrySet())
+        {
+            List<V4LCameraParams> cameras = bus.getValue();
+            if (!allocator.allocate(cameras))
+                getLogger().warn("USB bus {} is over-subscribed even at the lowest camera settings", bus.getKey());
+            
+            getLogger().info("USB bus {}: {} cameras using {} MB/s", bus.getKey(), cameras.size(),
+                String.format("%.1f", allocator.getTotalBandwidth(cameras) / 1e6));
+        }
+        
+        for (V4LCameraConfig memberConfig: memberConfigs.values())
+        {
+            V4LCameraParams params = memberConfig.defaultParams;
+            getLogger().info("Camera {} on {}: {}x{} @ {} fps", memberConfig.serialNumber, memberConfig.deviceName,
+                params.imgWidth, params.imgHeight, params.frameRate);
+        }
+    }
+    
+    
+    protected List<V4LDeviceDiscovery.Device> findDevices() throws SensorException
+    {
+        if (config.deviceNames == null || config.deviceNames.isEmpty())
+        {
+            try
+            {
+                return discovery.listDevices();
+            }
+            catch (IOException e)
+            {
+                throw new SensorException("Cannot list video devices", e);
+            }
+        }
+        
+        List<V4LDeviceDiscovery.Device> devices = new ArrayList<>();
+        for (String deviceName: config.deviceNames)
+            devices.add(discovery.getDevice(deviceName.trim()));
+        return devices;
+    }
+    
+    
+    protected V4LCameraConfig createMemberConfig(V4LDeviceDiscovery.Device device)
+    {
+        // USB port keeps camera IDs stable when device nodes are renumbered
+        String location = device.getLocation().replaceAll("[^A-Za-z0-9]", "_");
+        
+        V4LCameraConfig memberConfig = new V4LCameraConfig();
+        memberConfig.id = config.id + "_" + location;
+        memberConfig.name = config.name + " " + device.getLocation();
+        memberConfig.moduleClass = V4LCameraDriver.class.getCanonicalName();
+        memberConfig.autoStart = true;
+        memberConfig.serialNumber = config.serialNumber + "-" + location;
+        memberConfig.deviceName = device.deviceName;
+        memberConfig.defaultParams = config.defaultParams.clone();
+        memberConfig.frameQueueSize = config.frameQueueSize;
+        memberConfig.dropPolicy = config.dropPolicy;
+        memberConfig.processingPool = config.id;
+        memberConfig.processingThreads = config.processingThreads;
+        return memberConfig;
+    }
+    
+    
+    @Override
+    protected void doStart() throws SensorHubException
+    {
+        var moduleRegistry = getParentHub().getModuleRegistry();
+        
+        // a camera failing to start does not prevent the others from running
+        for (V4LCameraConfig memberConfig: memberConfigs.values())
+        {
+            try
+            {
+                moduleRegistry.loadModule(memberConfig);
+                loadedMembers.add(memberConfig.id);
+            }
+            catch (Exception e)
+            {
+                reportError("Cannot load camera " + memberConfig.deviceName, e);
+            }
+        }
+    }
+    
+    
+    @Override
+    protected void doStop() throws SensorHubException
+    {
+        var moduleRegistry = getParentHub().getModuleRegistry();
+        
+        for (String id: loadedMembers)
+        {
+            try
+            {
+                moduleRegistry.unloadModule(id);
+            }
+            catch (Exception e)
+            {
+                getLogger().error("Cannot unload camera module " + id, e);
+            }
+        }
+        
+        loadedMembers.clear();
+    }
+    
+    
+    /**
+     * @return configurations of the camera modules, with the negotiated camera params
+     */
+    public Map<String, V4LCameraConfig> getMemberConfigs()
+    {
+        return memberConfigs;
+    }
+}
@@ -0,0 +1,122 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+ 
+Copyright (C) 2012-2015 Sensia Software LLC. All Rights Reserved.
+ 
+******************************* END LICENSE BLOCK ***************************/
+
+
+package org.sensorhub.impl.sensor.v4l;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * <p>
+ * Fixed size pool of worker threads shared by the frame queues of several
+ * V4L cameras, so the number of processing threads stays bounded whatever
+ * the number of cameras. Pools are shared by name and shut down when the
+ * last camera using them releases them.<br/>
+ * The task queue is bounded as well since each frame queue has at most one
+ * drain task pending.
+ * </p>
+ *
+ * @since Oct 18, 2026
+ */
+public class V4LProcessingPool
+{
+    static final long SHUTDOWN_TIMEOUT_MS = 5000;
+    static final Map<String, V4LProcessingPool> sharedPools = new HashMap<>();
+    
+    final String name;
+    final int numThreads;
+    final ExecutorService executor;
+    int refCount;
+    
+    
+    V4LProcessingPool(String name, int numThreads)
+    {
+        this.name = name;
+        this.numThreads = Math.max(1, numThreads);
+        
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.numThreads,
+            r -> new Thread(r, "v4l-" + name + "-" + threadCount.incrementAndGet()));
+    }
+    
+    
+    /**
+     * Gets the pool with the given name, creating it if needed
+     * @param name name shared by all cameras using the pool
+     * @param numThreads number of worker threads, only used when the pool is created
+     * @return the shared pool, to be released when the camera stops
+     */
+    public static V4LProcessingPool acquire(String name, int numThreads)
+    {
+        synchronized (sharedPools)
+        {
+            V4LProcessingPool pool = sharedPools.computeIfAbsent(name, n -> new V4LProcessingPool(n, numThreads));
+            pool.refCount++;
+            return pool;
+        }
+    }
+    
+    
+    /**
+     * Releases the pool, threads are stopped once no camera uses it anymore
+     */
+    public void release()
+    {
+        synchronized (sharedPools)
+        {
+            if (refCount <= 0 || --refCount > 0)
+                return;
+            
+            sharedPools.remove(name);
+        }
+        
+        executor.shutdown();
+        
+        try
+        {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS))
+                executor.shutdownNow();
+        }
+        catch (InterruptedException e)
+        {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    
+    public Executor getExecutor()
+    {
+        return executor;
+    }
+    
+    
+    public String getName()
+    {
+        return name;
+    }
+    
+    
+    public int getNumThreads()
+    {
+        return numThreads;
+    }
+}
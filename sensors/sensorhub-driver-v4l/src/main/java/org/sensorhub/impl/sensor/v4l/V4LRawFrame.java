@@ -0,0 +1,121 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+ 
+Copyright (C) 2012-2015 Sensia Software LLC. All Rights Reserved.
+ 
+******************************* END LICENSE BLOCK ***************************/
+
+
+package org.sensorhub.impl.sensor.v4l;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * <p>
+ * Read-only view of a raw frame still held in the V4L4J capture buffer.
+ * The view is only valid while the listener it is passed to is running,
+ * the buffer is reused for another frame as soon as the listener returns.
+ * Listeners keeping the image longer must call {@link #copy()}.
+ * </p>
+ *
+ * @since Oct 18, 2026
+ */
+public class V4LRawFrame
+{
+    final double timeStamp;
+    final int width;
+    final int height;
+    final String format;
+    final ByteBuffer buffer;
+    volatile boolean valid = true;
+    
+    
+    V4LRawFrame(double timeStamp, int width, int height, String format, byte[] data, int length)
+    {
+        this.timeStamp = timeStamp;
+        this.width = width;
+        this.height = height;
+        this.format = format;
+        this.buffer = ByteBuffer.wrap(data, 0, length).slice().asReadOnlyBuffer();
+    }
+    
+    
+    /**
+     * @return view of the image, positioned at the first byte
+     * @throws IllegalStateException if called after the listener returned
+     */
+    public ByteBuffer getBuffer()
+    {
+        checkValid();
+        return buffer.duplicate();
+    }
+    
+    
+    /**
+     * @return copy of the image that can be kept after the listener returns
+     */
+    public byte[] copy()
+    {
+        checkValid();
+        byte[] data = new byte[buffer.remaining()];
+        buffer.duplicate().get(data);
+        return data;
+    }
+    
+    
+    void invalidate()
+    {
+        valid = false;
+    }
+    
+    
+    protected void checkValid()
+    {
+        if (!valid)
+            throw new IllegalStateException("Raw frame was already recycled");
+    }
+    
+    
+    /**
+     * @return capture time as julian time in seconds
+     */
+    public double getTimeStamp()
+    {
+        return timeStamp;
+    }
+    
+    
+    public int getWidth()
+    {
+        return width;
+    }
+    
+    
+    public int getHeight()
+    {
+        return height;
+    }
+    
+    
+    /**
+     * @return V4L4J name of the pixel format (e.g. RGB24)
+     */
+    public String getFormat()
+    {
+        return format;
+    }
+    
+    
+    public int getLength()
+    {
+        return buffer.capacity();
+    }
+}
@@ -0,0 +1,113 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+ 
+Copyright (C) 2012-2015 Sensia Software LLC. All Rights Reserved.
+ 
+******************************* END LICENSE BLOCK ***************************/
+
+
+package org.sensorhub.test.impl.sensor.v4l;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.sensorhub.impl.sensor.v4l.V4LBandwidthAllocator;
+import org.sensorhub.impl.sensor.v4l.V4LCameraParams;
+import static org.junit.Assert.*;
+
+
+public class TestV4LBandwidthAllocator
+{
+    
+    V4LCameraParams newParams(String format, int width, int height, int frameRate)
+    {
+        V4LCameraParams params = new V4LCameraParams();
+        params.imgFormat = format;
+        params.imgWidth = width;
+        params.imgHeight = height;
+        params.frameRate = frameRate;
+        return params;
+    }
+    
+    
+    @Test
+    public void testUnchangedWhenBusNotFull()
+    {
+        V4LBandwidthAllocator allocator = new V4LBandwidthAllocator(40e6, 0.3, 5);
+        V4LCameraParams cam1 = newParams("MJPEG", 1280, 720, 30);
+        V4LCameraParams cam2 = newParams("MJPEG", 1280, 720, 30);
+        
+        assertTrue(allocator.allocate(List.of(cam1, cam2)));
+        assertEquals(30, cam1.frameRate);
+        assertEquals(1280, cam2.imgWidth);
+    }
+    
+    
+    @Test
+    public void testFrameRateLoweredFirst()
+    {
+        // 8 cameras at 8.3 MB/s each
+        V4LBandwidthAllocator allocator = new V4LBandwidthAllocator(40e6, 0.3, 5);
+        List<V4LCameraParams> cameras = new ArrayList<>();
+        for (int i = 0; i < 8; i++)
+            cameras.add(newParams("MJPEG", 1280, 720, 30));
+        
+        assertTrue(allocator.allocate(cameras));
+        assertTrue(allocator.getTotalBandwidth(cameras) <= 40e6);
+        for (V4LCameraParams cam: cameras)
+        {
+            assertEquals(1280, cam.imgWidth);
+            assertEquals(720, cam.imgHeight);
+            assertTrue(cam.frameRate >= 10 && cam.frameRate <= 20);
+        }
+    }
+    
+    
+    @Test
+    public void testResolutionLoweredAtMinFrameRate()
+    {
+        // raw 1080p cannot fit even at min frame rate
+        V4LBandwidthAllocator allocator = new V4LBandwidthAllocator(40e6, 0.3, 5);
+        V4LCameraParams cam1 = newParams("YUYV", 1920, 1080, 30);
+        V4LCameraParams cam2 = newParams("YUYV", 1920, 1080, 30);
+        V4LCameraParams cam3 = newParams("YUYV", 1920, 1080, 30);
+        V4LCameraParams cam4 = newParams("YUYV", 1920, 1080, 30);
+        
+        assertTrue(allocator.allocate(List.of(cam1, cam2, cam3, cam4)));
+        assertEquals(5, cam1.frameRate);
+        assertTrue(cam1.imgWidth < 1920 || cam4.imgWidth < 1920);
+    }
+    
+    
+    @Test
+    public void testLargestCameraSteppedDown()
+    {
+        V4LBandwidthAllocator allocator = new V4LBandwidthAllocator(10e6, 0.3, 5);
+        V4LCameraParams small = newParams("MJPEG", 640, 480, 15);
+        V4LCameraParams large = newParams("MJPEG", 1920, 1080, 30);
+        
+        assertTrue(allocator.allocate(List.of(small, large)));
+        assertEquals(15, small.frameRate);
+        assertEquals(640, small.imgWidth);
+        assertTrue(large.frameRate < 30);
+    }
+    
+    
+    @Test
+    public void testOverSubscribed()
+    {
+        V4LBandwidthAllocator allocator = new V4LBandwidthAllocator(1000, 0.3, 5);
+        V4LCameraParams cam = newParams("YUYV", 640, 480, 30);
+        
+        assertFalse(allocator.allocate(List.of(cam)));
+        assertEquals(5, cam.frameRate);
+        assertEquals(160, cam.imgWidth);
+        assertEquals(120, cam.imgHeight);
+    }
+}
@@ -0,0 +1,98 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+ 
+Copyright (C) 2012-2015 Sensia Software LLC. All Rights Reserved.
+ 
+******************************* END LICENSE BLOCK ***************************/
+
+
+package org.sensorhub.test.impl.sensor.v4l;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import org.sensorhub.impl.sensor.v4l.V4LBoxFilter;
+import static org.junit.Assert.*;
+
+
+public class TestV4LBoxFilter
+{
+    
+    @Test
+    public void testUniformImage()
+    {
+        byte[] src = new byte[64*48*3];
+        Arrays.fill(src, (byte)200);
+        
+        V4LBoxFilter filter = new V4LBoxFilter(64, 48, 3, 4);
+        assertEquals(16, filter.getOutputWidth());
+        assertEquals(12, filter.getOutputHeight());
+        
+        byte[] dst = new byte[filter.getOutputSize()];
+        filter.downscale(src, dst);
+        for (byte b: dst)
+            assertEquals(200, b & 0xFF);
+    }
+    
+    
+    @Test
+    public void testBlockAverage()
+    {
+        // 4x2 RGB image, each 2x2 block averaged
+        byte[] src = {
+            10, 20, 30,   20, 30, 40,   (byte)250, 0, 0,   (byte)255, 0, 1,
+            30, 40, 50,   40, 50, 60,   (byte)250, 0, 0,   (byte)255, 0, 1
+        };
+        
+        V4LBoxFilter filter = new V4LBoxFilter(4, 2, 3, 2);
+        byte[] dst = new byte[filter.getOutputSize()];
+        filter.downscale(src, dst);
+        
+        assertArrayEquals(new byte[] {25, 35, 45, (byte)253, 0, 1}, dst);
+    }
+    
+    
+    @Test
+    public void testMatchesReference()
+    {
+        int width = 101, height = 77, factor = 3;
+        byte[] src = new byte[width*height*3];
+        new Random(42).nextBytes(src);
+        
+        V4LBoxFilter filter = new V4LBoxFilter(width, height, 3, factor);
+        byte[] dst = new byte[filter.getOutputSize()];
+        filter.downscale(src, dst);
+        
+        int outWidth = width / factor;
+        for (int oy = 0; oy < height / factor; oy++)
+        {
+            for (int ox = 0; ox < outWidth; ox++)
+            {
+                for (int c = 0; c < 3; c++)
+                {
+                    int sum = 0;
+                    for (int y = oy*factor; y < (oy+1)*factor; y++)
+                        for (int x = ox*factor; x < (ox+1)*factor; x++)
+                            sum += src[(y*width + x)*3 + c] & 0xFF;
+                    
+                    double expected = sum / (double)(factor*factor);
+                    int actual = dst[(oy*outWidth + ox)*3 + c] & 0xFF;
+                    assertEquals(expected, actual, 1.0);
+                }
+            }
+        }
+    }
+    
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testFactorLargerThanImage()
+    {
+        new V4LBoxFilter(8, 8, 3, 16);
+    }
+}
@@ -0,0 +1,151 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+ 
+Copyright (C) 2012-2015 Sensia Software LLC. All Rights Reserved.
+ 
+******************************* END LICENSE BLOCK ***************************/
+
+package org.sensorhub.test.impl.sensor.v4l;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.sensorhub.impl.sensor.v4l.V4LClipConfig;
+import org.sensorhub.impl.sensor.v4l.V4LClipRecorder;
+import org.slf4j.LoggerFactory;
+import static org.junit.Assert.*;
+
+
+public class TestV4LClipRecorder implements V4LClipRecorder.ClipSink
+{
+    V4LClipConfig config;
+    List<Long> clipIds = new ArrayList<>();
+    List<Long> frameTimes = new ArrayList<>();
+    int endedClips;
+    
+    
+    @Before
+    public void init()
+    {
+        config = new V4LClipConfig();
+        config.enabled = true;
+        config.preRollDuration = 1;
+        config.preRollSize = 1;
+        config.postRollDuration = 1;
+    }
+    
+    
+    private V4LClipRecorder newRecorder()
+    {
+        return new V4LClipRecorder(config, Arrays.asList(this), LoggerFactory.getLogger(getClass()));
+    }
+    
+    
+    @Test
+    public void testPreRollBoundedByDuration() throws Exception
+    {
+        V4LClipRecorder recorder = newRecorder();
+        recorder.start();
+        
+        // keyframe every 5 frames, 100ms apart
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 30; i++)
+            recorder.addFrame(now - 3000 + i*100, new byte[10], i % 5 == 0);
+        
+        assertTrue(recorder.getPreRollDuration() <= 1000);
+        
+        long clipId = recorder.trigger(0);
+        recorder.stop();
+        
+        assertEquals(1, clipId);
+        assertEquals(1, endedClips);
+        
+        // pre-roll starts with the oldest keyframe within the last second
+        assertEquals(now - 3000 + 2000, (long)frameTimes.get(0));
+        assertEquals(now - 3000 + 2900, (long)frameTimes.get(frameTimes.size()-1));
+    }
+    
+    
+    @Test
+    public void testPreRollBoundedBySize() throws Exception
+    {
+        V4LClipRecorder recorder = newRecorder();
+        recorder.start();
+        
+        // 1KB holds 5 frames of 200 bytes, eviction goes up to the next keyframe
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++)
+            recorder.addFrame(now + i, new byte[200], i % 3 == 0);
+        
+        recorder.trigger(0);
+        recorder.stop();
+        
+        assertEquals(Arrays.asList(now + 6, now + 7, now + 8, now + 9), frameTimes);
+    }
+    
+    
+    @Test
+    public void testPostRollAndRetrigger() throws Exception
+    {
+        config.preRollDuration = 0;
+        V4LClipRecorder recorder = newRecorder();
+        recorder.start();
+        
+        long now = System.currentTimeMillis();
+        recorder.addFrame(now, new byte[10], true);
+        assertEquals(1, recorder.trigger(500));
+        
+        // second event extends the clip being recorded
+        recorder.addFrame(now + 400, new byte[10], false);
+        assertEquals(1, recorder.trigger(500));
+        recorder.addFrame(now + 600, new byte[10], false);
+        assertTrue(recorder.isRecording());
+        recorder.addFrame(now + 5000, new byte[10], true);
+        assertFalse(recorder.isRecording());
+        recorder.addFrame(now + 5100, new byte[10], false);
+        
+        recorder.stop();
+        
+        assertEquals(Arrays.asList(1L), clipIds);
+        assertEquals(Arrays.asList(now, now + 400, now + 600, now + 5000), frameTimes);
+        assertEquals(1, endedClips);
+    }
+    
+    
+    @Test
+    public void testNoClipWhenStopped()
+    {
+        V4LClipRecorder recorder = newRecorder();
+        assertEquals(-1, recorder.trigger(0));
+    }
+
+
+    @Override
+    public void beginClip(long clipId, long startTime)
+    {
+        clipIds.add(clipId);
+    }
+
+
+    @Override
+    public void writeFrame(long frameTime, byte[] frameData)
+    {
+        frameTimes.add(frameTime);
+    }
+
+
+    @Override
+    public void endClip()
+    {
+        endedClips++;
+    }
+}
@@ -0,0 +1,98 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+ 
+Copyright (C) 2012-2015 Sensia Software LLC. All Rights Reserved.
+ 
+******************************* END LICENSE BLOCK ***************************/
+
+
+package org.sensorhub.test.impl.sensor.v4l;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sensorhub.impl.sensor.v4l.V4LDeviceDiscovery;
+import org.sensorhub.impl.sensor.v4l.V4LDeviceDiscovery.Device;
+import static org.junit.Assert.*;
+
+
+public class TestV4LDeviceDiscovery
+{
+    Path rootDir;
+    Path sysfsDir;
+    
+    
+    @Before
+    public void setup() throws IOException
+    {
+        rootDir = Files.createTempDirectory("v4l-sysfs");
+        sysfsDir = Files.createDirectories(rootDir.resolve("class/video4linux"));
+    }
+    
+    
+    void addNode(String node, String devicePath, int index) throws IOException
+    {
+        Path deviceDir = Files.createDirectories(rootDir.resolve(devicePath));
+        Path nodeDir = Files.createDirectories(sysfsDir.resolve(node));
+        Files.createSymbolicLink(nodeDir.resolve("device"), deviceDir);
+        Files.write(nodeDir.resolve("index"), (index + "\n").getBytes());
+    }
+    
+    
+    @Test
+    public void testListUsbCameras() throws IOException
+    {
+        addNode("video0", "devices/pci0000:00/0000:00:14.0/usb1/1-1/1-1:1.0", 0);
+        addNode("video1", "devices/pci0000:00/0000:00:14.0/usb1/1-1/1-1:1.0", 1);
+        addNode("video10", "devices/pci0000:00/0000:00:14.0/usb2/2-1/2-1.3/2-1.3:1.0", 0);
+        addNode("video2", "devices/pci0000:00/0000:00:14.0/usb1/1-2/1-2:1.0", 0);
+        
+        List<Device> devices = new V4LDeviceDiscovery(sysfsDir, Path.of("/dev")).listDevices();
+        assertEquals(3, devices.size());
+        
+        assertEquals("/dev/video0", devices.get(0).deviceName);
+        assertEquals("usb1", devices.get(0).usbBus);
+        assertEquals("1-1", devices.get(0).usbPort);
+        
+        assertEquals("/dev/video2", devices.get(1).deviceName);
+        assertEquals("usb1", devices.get(1).usbBus);
+        assertEquals("1-2", devices.get(1).usbPort);
+        
+        assertEquals("/dev/video10", devices.get(2).deviceName);
+        assertEquals("usb2", devices.get(2).usbBus);
+        assertEquals("2-1.3", devices.get(2).getLocation());
+    }
+    
+    
+    @Test
+    public void testNonUsbCamera() throws IOException
+    {
+        addNode("video0", "devices/platform/soc/csi0", 0);
+        
+        List<Device> devices = new V4LDeviceDiscovery(sysfsDir, Path.of("/dev")).listDevices();
+        assertEquals(1, devices.size());
+        assertNull(devices.get(0).usbBus);
+        assertEquals("video0", devices.get(0).getLocation());
+    }
+    
+    
+    @After
+    public void cleanup() throws IOException
+    {
+        try (var paths = Files.walk(rootDir))
+        {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+The contents of this file are subject to the Mozilla Public License, v. 2.0.
+If a copy of the MPL was not distributed with this file, You can obtain one
+at http://mozilla.org/MPL/2.0/.
+
+Software distributed under the License is distributed on an "AS IS" basis,
+WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+for the specific language governing rights and limitations under the License.
+ 
+Copyright (C) 2012-2015 Sensia Software LLC. All Rights Reserved.
+ 
+******************************* END LICENSE BLOCK ***************************/
+
+
+package org.sensorhub.test.impl.sensor.v4l;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.sensorhub.impl.sensor.v4l.V4LFrameQueue;
+import org.sensorhub.impl.sensor.v4l.V4LFrameQueue.DropPolicy;
+import org.sensorhub.impl.sensor.v4l.V4LProcessingPool;
+import org.slf4j.LoggerFactory;
+import au.edu.jcu.v4l4j.VideoFrame;
+import static org.junit.Assert.*;
+
+
+public class TestV4LFrameQueue
+{
+    List<Long> processed = new CopyOnWriteArrayList<>();
+    List<Long> recycled = new CopyOnWriteArrayList<>();
+    CountDownLatch firstFrameStarted = new CountDownLatch(1);
+    CountDownLatch releaseProcessing = new CountDownLatch(1);
+    
+    
+    VideoFrame newFrame(long seq)
+    {
+        return (VideoFrame)Proxy.newProxyInstance(VideoFrame.class.getClassLoader(), new Class<?>[] {VideoFrame.class}, (proxy, method, args) -> {
+            switch (method.getName())
+            {
+                case "getSequenceNumber": return seq;
+                case "getCaptureTime": return seq * 1000;
+                case "recycle": recycled.add(seq); return null;
+                case "hashCode": return (int)seq;
+                case "equals": return proxy == args[0];
+                case "toString": return "frame " + seq;
+                default: return null;
+            }
+        });
+    }
+    
+    
+    V4LFrameQueue newQueue(int capacity, DropPolicy policy)
+    {
+        return new V4LFrameQueue("test", capacity, policy, frame -> {
+            firstFrameStarted.countDown();
+            releaseProcessing.await();
+            processed.add(frame.getSequenceNumber());
+        }, LoggerFactory.getLogger(TestV4LFrameQueue.class));
+    }
+    
+    
+    void submitWhileBlocked(V4LFrameQueue queue, int count) throws Exception
+    {
+        queue.start();
+        queue.submit(newFrame(0));
+        assertTrue(firstFrameStarted.await(1, TimeUnit.SECONDS));
+        for (long i = 1; i < count; i++)
+            queue.submit(newFrame(i));
+    }
+    
+    
+    void waitProcessed(V4LFrameQueue queue, long count) throws Exception
+    {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (queue.getProcessedCount() + queue.getDroppedCount() < count && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+    }
+    
+    
+    @Test
+    public void testDropNewest() throws Exception
+    {
+        V4LFrameQueue queue = newQueue(2, DropPolicy.DROP_NEWEST);
+        submitWhileBlocked(queue, 6);
+        assertEquals(3, queue.getDroppedCount());
+        
+        releaseProcessing.countDown();
+        waitProcessed(queue, 6);
+        queue.stop();
+        
+        assertEquals(List.of(0L, 1L, 2L), processed);
+        assertEquals(6, queue.getReceivedCount());
+        assertEquals(3, queue.getProcessedCount());
+        assertEquals(6, recycled.size());
+    }
+    
+    
+    @Test
+    public void testDropOldest() throws Exception
+    {
+        V4LFrameQueue queue = newQueue(2, DropPolicy.DROP_OLDEST);
+        submitWhileBlocked(queue, 6);
+        assertEquals(List.of(1L, 2L, 3L), recycled);
+        
+        releaseProcessing.countDown();
+        waitProcessed(queue, 6);
+        queue.stop();
+        
+        assertEquals(List.of(0L, 4L, 5L), processed);
+        assertEquals(3, queue.getDroppedCount());
+        assertEquals(6, recycled.size());
+    }
+    
+    
+    @Test
+    public void testBlockCapture() throws Exception
+    {
+        V4LFrameQueue queue = newQueue(1, DropPolicy.BLOCK_CAPTURE);
+        submitWhileBlocked(queue, 2);
+        
+        Thread capture = new Thread(() -> queue.submit(newFrame(2)));
+        capture.start();
+        capture.join(300);
+        assertTrue("Capture should wait for room in the queue", capture.isAlive());
+        
+        releaseProcessing.countDown();
+        capture.join(1000);
+        assertFalse(capture.isAlive());
+        waitProcessed(queue, 3);
+        queue.stop();
+        
+        assertEquals(List.of(0L, 1L, 2L), processed);
+        assertEquals(0, queue.getDroppedCount());
+    }
+    
+    
+    @Test
+    public void testStopRecyclesQueuedFrames() throws Exception
+    {
+        V4LFrameQueue queue = newQueue(2, DropPolicy.DROP_NEWEST);
+        submitWhileBlocked(queue, 3);
+        
+        Thread stopper = new Thread(queue::stop);
+        stopper.start();
+        Thread.sleep(50);
+        releaseProcessing.countDown();
+        stopper.join(2000);
+        
+        assertEquals(List.of(0L), processed);
+        assertEquals(3, recycled.size());
+        assertEquals(2, queue.getDroppedCount());
+        
+        queue.submit(newFrame(3));
+        assertEquals(4, recycled.size());
+        assertEquals(4, queue.getReceivedCount());
+    }
+    
+    
+    @Test
+    public void testAwaitIdle() throws Exception
+    {
+        V4LFrameQueue queue = newQueue(2, DropPolicy.DROP_NEWEST);
+        submitWhileBlocked(queue, 3);
+        assertFalse(queue.awaitIdle(50));
+        assertEquals(List.of(1L, 2L), recycled);
+        
+        releaseProcessing.countDown();
+        assertTrue(queue.awaitIdle(1000));
+        assertEquals(List.of(0L), processed);
+        assertEquals(3, recycled.size());
+        
+        // queue still running after waiting
+        queue.submit(newFrame(3));
+        assertTrue(queue.awaitIdle(1000));
+        assertEquals(List.of(0L, 3L), processed);
+        queue.stop();
+    }
+    
+    
+    @Test
+    public void testSharedPool() throws Exception
+    {
+        releaseProcessing.countDown();
+        V4LProcessingPool pool = V4LProcessingPool.acquire("test", 2);
+        List<Long> processed1 = new CopyOnWriteArrayList<>();
+        List<Long> processed2 = new CopyOnWriteArrayList<>();
+        V4LFrameQueue queue1 = new V4LFrameQueue("cam1", 4, DropPolicy.BLOCK_CAPTURE,
+            frame -> processed1.add(frame.getSequenceNumber()), pool.getExecutor(), LoggerFactory.getLogger(TestV4LFrameQueue.class));
+        V4LFrameQueue queue2 = new V4LFrameQueue("cam2", 4, DropPolicy.BLOCK_CAPTURE,
+            frame -> processed2.add(frame.getSequenceNumber()), pool.getExecutor(), LoggerFactory.getLogger(TestV4LFrameQueue.class));
+        assertSame(pool, V4LProcessingPool.acquire("test", 2));
+        
+        queue1.start();
+        queue2.start();
+        for (long i = 0; i < 100; i++)
+        {
+            queue1.submit(newFrame(i));
+            queue2.submit(newFrame(i));
+        }
+        
+        waitProcessed(queue1, 100);
+        waitProcessed(queue2, 100);
+        queue1.stop();
+        queue2.stop();
+        pool.release();
+        pool.release();
+        
+        // frames of each camera processed in order
+        assertEquals(100, processed1.size());
+        assertEquals(100, processed2.size());
+        for (int i = 0; i < 100; i++)
+        {
+            assertEquals(i, (long)processed1.get(i));
+            assertEquals(i, (long)processed2.get(i));
+        }
+        assertEquals(200, recycled.size());
+        
+        V4LProcessingPool newPool = V4LProcessingPool.acquire("test", 2);
+        assertNotSame(pool, newPool);
+        newPool.release();
+    }
+}
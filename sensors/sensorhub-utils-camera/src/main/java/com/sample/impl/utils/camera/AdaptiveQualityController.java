@@ -0,0 +1,201 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.utils.camera;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Feedback controller lowering the quality of a video stream while its consumers cannot keep up and
+ * raising it again once the pressure clears.
+ * <p>
+ * The controller tracks a level from 0 to 1, 1 being the best quality. Each evaluation period it
+ * compares the frames published during the period with the targets: any sign of pressure, a queue
+ * filling up, frames dropped, latency above target or bitrate above the bandwidth limit, cuts the level
+ * multiplicatively while a clear period raises it additively, so the stream backs off quickly and probes
+ * its way back up slowly. Periods that are neither leave the level unchanged.
+ * <p>
+ * The upper half of the level drives the quality of the frames (JPEG quality or bitrate), the lower half
+ * the frame rate, so frames are only skipped once their quality has reached its minimum.
+ * <p>
+ * Thread safe, frames are recorded from the publishing thread and the evaluation runs on any other.
+ *
+ * @author your_name
+ * @since date
+ */
+public class AdaptiveQualityController {
+
+    private static final double DECREASE_FACTOR = 0.7;
+    private static final double INCREASE_STEP = 0.05;
+    private static final double MIN_LEVEL = 0.01;
+    private static final double HIGH_QUEUE_FILL = 0.5;
+    private static final double LOW_QUEUE_FILL = 0.1;
+    private static final double CLEAR_LATENCY_RATIO = 0.5;
+    private static final double CLEAR_BANDWIDTH_RATIO = 0.8;
+
+    private final long targetLatencyMillis;
+    private final long bandwidthLimit;
+    private final LongSupplier clock;
+
+    private double level = 1;
+
+    // Frames published in the current period
+    private long frameCount = 0;
+    private long byteCount = 0;
+    private long latencySum = 0;
+    private long periodStartNanos;
+
+    private double latency = 0;
+    private double bitrate = 0;
+
+    /**
+     * Constructor
+     *
+     * @param targetLatencyMillis Latency from capture to publication above which the stream backs off
+     * @param bandwidthLimit      Bitrate above which the stream backs off in bits per second, 0 for no limit
+     */
+    public AdaptiveQualityController(long targetLatencyMillis, long bandwidthLimit) {
+
+        this(targetLatencyMillis, bandwidthLimit, System::nanoTime);
+    }
+
+    /**
+     * Constructor with a given clock, for tests
+     *
+     * @param targetLatencyMillis Latency from capture to publication above which the stream backs off
+     * @param bandwidthLimit      Bitrate above which the stream backs off in bits per second, 0 for no limit
+     * @param clock               Current time in nanoseconds
+     */
+    AdaptiveQualityController(long targetLatencyMillis, long bandwidthLimit, LongSupplier clock) {
+
+        this.targetLatencyMillis = Math.max(1, targetLatencyMillis);
+        this.bandwidthLimit = Math.max(0, bandwidthLimit);
+        this.clock = clock;
+
+        periodStartNanos = clock.getAsLong();
+    }
+
+    /**
+     * Accounts for a published frame
+     *
+     * @param frameSize     Size of the encoded frame in bytes
+     * @param latencyMillis Time from capture to publication
+     */
+    public synchronized void recordFrame(int frameSize, long latencyMillis) {
+
+        ++frameCount;
+        byteCount += frameSize;
+        latencySum += Math.max(0, latencyMillis);
+    }
+
+    /**
+     * Evaluates the period elapsed since the previous evaluation and adjusts the level
+     *
+     * @param queueFill     Fill ratio of the queue feeding the publisher, from 0 to 1, 0 if there is none
+     * @param droppedFrames Number of frames dropped during the period
+     * @return true if the level changed
+     */
+    public synchronized boolean update(double queueFill, long droppedFrames) {
+
+        long now = clock.getAsLong();
+        double periodSeconds = Math.max(1e-3, (now - periodStartNanos) / 1e9);
+
+        latency = frameCount > 0 ? latencySum / (double) frameCount : 0;
+        bitrate = byteCount * 8 / periodSeconds;
+
+        frameCount = 0;
+        byteCount = 0;
+        latencySum = 0;
+        periodStartNanos = now;
+
+        boolean pressure = queueFill > HIGH_QUEUE_FILL
+                || droppedFrames > 0
+                || latency > targetLatencyMillis
+                || (bandwidthLimit > 0 && bitrate > bandwidthLimit);
+
+        boolean clear = queueFill <= LOW_QUEUE_FILL
+                && latency < targetLatencyMillis * CLEAR_LATENCY_RATIO
+                && (bandwidthLimit == 0 || bitrate < bandwidthLimit * CLEAR_BANDWIDTH_RATIO);
+
+        double previousLevel = level;
+
+        if (pressure) {
+
+            level = Math.max(MIN_LEVEL, level * DECREASE_FACTOR);
+
+        } else if (clear) {
+
+            level = Math.min(1, level + INCREASE_STEP);
+        }
+
+        return level != previousLevel;
+    }
+
+    /**
+     * @return Current level, from 0 to 1
+     */
+    public synchronized double getLevel() {
+
+        return level;
+    }
+
+    /**
+     * @return Position of the quality between its configured minimum (0) and maximum (1)
+     */
+    public synchronized double getQualityFactor() {
+
+        return Math.max(0, Math.min(1, (level - 0.5) * 2));
+    }
+
+    /**
+     * @return Position of the frame rate between its configured minimum (0) and maximum (1)
+     */
+    public synchronized double getFrameRateFactor() {
+
+        return Math.min(1, level * 2);
+    }
+
+    /**
+     * @return Mean latency of the frames published during the last evaluated period, in milliseconds
+     */
+    public synchronized double getLatency() {
+
+        return latency;
+    }
+
+    /**
+     * @return Bitrate of the frames published during the last evaluated period, in bits per second
+     */
+    public synchronized double getBitrate() {
+
+        return bitrate;
+    }
+
+    /**
+     * Maps a factor between a minimum and a maximum value
+     *
+     * @param factor Factor from 0 to 1
+     * @param min    Value for factor 0
+     * @param max    Value for factor 1
+     * @return Rounded value, max if below min
+     */
+    public static int interpolate(double factor, int min, int max) {
+
+        if (max <= min) {
+
+            return max;
+        }
+
+        return (int) Math.round(min + (max - min) * factor);
+    }
+}
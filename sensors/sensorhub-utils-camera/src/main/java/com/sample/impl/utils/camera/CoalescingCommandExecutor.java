@@ -0,0 +1,306 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.utils.camera;
+
+import org.sensorhub.api.command.CommandStatus;
+import org.sensorhub.api.command.ICommandData;
+import org.sensorhub.api.command.ICommandStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Executes control commands one at a time on a dedicated thread, so the threads submitting commands
+ * never wait for the hardware.
+ * <p>
+ * Commands are queued by key. A command still waiting when a newer one with the same key arrives is
+ * superseded: its future completes as rejected and the newer command takes its place in the queue.
+ * Queue and latency statistics are available through the getters and logged when the executor stops.
+ *
+ * @author your_name
+ * @since date
+ */
+public class CoalescingCommandExecutor {
+
+    /**
+     * Action carrying out a command
+     */
+    public interface CommandTask {
+
+        void execute() throws Exception;
+    }
+
+    private static class PendingCommand {
+
+        final ICommandData command;
+        final CommandTask task;
+        final CompletableFuture<ICommandStatus> future = new CompletableFuture<>();
+        final long submitNanos = System.nanoTime();
+
+        PendingCommand(ICommandData command, CommandTask task) {
+
+            this.command = command;
+            this.task = task;
+        }
+    }
+
+    private static final long THREAD_JOIN_TIMEOUT_MILLIS = 2000;
+
+    private final String name;
+    private final Logger logger;
+    private final Map<String, PendingCommand> queue = new LinkedHashMap<>();
+    private Thread worker;
+
+    private long submittedCount = 0;
+    private long executedCount = 0;
+    private long supersededCount = 0;
+    private long failedCount = 0;
+    private int maxQueueSize = 0;
+    private long totalLatencyNanos = 0;
+    private long maxLatencyNanos = 0;
+
+    /**
+     * Constructor
+     *
+     * @param name Name used for the executor thread
+     */
+    public CoalescingCommandExecutor(String name) {
+
+        this(name, LoggerFactory.getLogger(CoalescingCommandExecutor.class));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param name   Name used for the executor thread
+     * @param logger Logger of the module owning the commands
+     */
+    public CoalescingCommandExecutor(String name, Logger logger) {
+
+        this.name = name;
+        this.logger = logger;
+    }
+
+    /**
+     * Queues a command, starting the executor thread if needed
+     *
+     * @param key     Commands with the same key supersede each other
+     * @param command Command data, used to build the command status
+     * @param task    Action carrying out the command
+     * @return Future completed with the command status once the command is executed or superseded
+     */
+    public CompletableFuture<ICommandStatus> submit(String key, ICommandData command, CommandTask task) {
+
+        PendingCommand newCommand = new PendingCommand(command, task);
+        PendingCommand superseded;
+
+        synchronized (this) {
+
+            if (worker == null) {
+
+                worker = new Thread(this::processCommands, name + "-commands");
+                worker.setDaemon(true);
+                worker.start();
+            }
+
+            ++submittedCount;
+
+            // Replacing the value keeps the queue position of the superseded command
+            superseded = queue.put(key, newCommand);
+
+            if (superseded != null) {
+
+                ++supersededCount;
+            }
+
+            maxQueueSize = Math.max(maxQueueSize, queue.size());
+
+            notifyAll();
+        }
+
+        if (superseded != null) {
+
+            superseded.future.complete(CommandStatus.rejected(superseded.command.getID(), "Superseded by a newer command"));
+        }
+
+        return newCommand.future;
+    }
+
+    /**
+     * Stops the executor thread once the current command completes, commands still queued are rejected
+     */
+    public void stop() {
+
+        Thread thread;
+
+        synchronized (this) {
+
+            if (worker == null) {
+
+                return;
+            }
+
+            thread = worker;
+            worker = null;
+
+            notifyAll();
+        }
+
+        try {
+
+            thread.join(THREAD_JOIN_TIMEOUT_MILLIS);
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+
+            for (PendingCommand pending : queue.values()) {
+
+                pending.future.complete(CommandStatus.rejected(pending.command.getID(), "Control stopped"));
+            }
+
+            queue.clear();
+        }
+
+        logger.debug("{} commands: {} submitted, {} executed, {} superseded, {} failed, max queue {}, mean latency {} ms, max latency {} ms",
+                name, getSubmittedCount(), getExecutedCount(), getSupersededCount(), getFailedCount(),
+                getMaxQueueSize(), getMeanLatencyMillis(), getMaxLatencyMillis());
+    }
+
+    public synchronized int getQueueSize() {
+
+        return queue.size();
+    }
+
+    public synchronized int getMaxQueueSize() {
+
+        return maxQueueSize;
+    }
+
+    public synchronized long getSubmittedCount() {
+
+        return submittedCount;
+    }
+
+    public synchronized long getExecutedCount() {
+
+        return executedCount;
+    }
+
+    public synchronized long getSupersededCount() {
+
+        return supersededCount;
+    }
+
+    public synchronized long getFailedCount() {
+
+        return failedCount;
+    }
+
+    /**
+     * @return Mean time from submission to completion of the executed commands, in milliseconds
+     */
+    public synchronized double getMeanLatencyMillis() {
+
+        return executedCount > 0 ? totalLatencyNanos / (executedCount * 1e6) : 0;
+    }
+
+    /**
+     * @return Longest time from submission to completion of an executed command, in milliseconds
+     */
+    public synchronized double getMaxLatencyMillis() {
+
+        return maxLatencyNanos / 1e6;
+    }
+
+    private void processCommands() {
+
+        Thread current = Thread.currentThread();
+
+        while (true) {
+
+            PendingCommand pending;
+
+            synchronized (this) {
+
+                // A thread replaced after a stop must not compete with the new one
+                while (worker == current && queue.isEmpty()) {
+
+                    try {
+
+                        wait();
+
+                    } catch (InterruptedException e) {
+
+                        Thread.currentThread().interrupt();
+
+                        return;
+                    }
+                }
+
+                if (worker != current) {
+
+                    break;
+                }
+
+                Iterator<PendingCommand> iterator = queue.values().iterator();
+                pending = iterator.next();
+                iterator.remove();
+            }
+
+            ICommandStatus status;
+            boolean failed = false;
+
+            try {
+
+                pending.task.execute();
+
+                status = CommandStatus.completed(pending.command.getID());
+
+            } catch (Exception e) {
+
+                logger.error("Failed to execute command", e);
+
+                status = CommandStatus.failed(pending.command.getID(), e.getMessage());
+                failed = true;
+            }
+
+            long latency = System.nanoTime() - pending.submitNanos;
+
+            synchronized (this) {
+
+                ++executedCount;
+
+                if (failed) {
+
+                    ++failedCount;
+                }
+
+                totalLatencyNanos += latency;
+                maxLatencyNanos = Math.max(maxLatencyNanos, latency);
+            }
+
+            pending.future.complete(status);
+        }
+
+        logger.debug("Terminating command thread: {}", current.getName());
+    }
+}
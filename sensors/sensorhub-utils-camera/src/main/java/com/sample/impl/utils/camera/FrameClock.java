@@ -0,0 +1,163 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.utils.camera;
+
+import java.util.Arrays;
+
+/**
+ * Maps the timestamps given by the camera to each frame to UTC, one instance per stream.
+ * <p>
+ * Camera timestamps are taken when the sensor delivers the frame, so unlike the time a frame reaches the
+ * driver they carry neither the latency nor the jitter of the encode and transfer path. Timestamps read
+ * from the monotonic clock, as the kernel stamps V4L2 buffers, are converted by the {@link MonotonicClock}
+ * model. Timestamps counted from an unknown origin, such as the start of the stream, are first anchored
+ * to the monotonic clock on the lowest delay observed between capture and arrival over a sliding window,
+ * which is the frame that went through the pipeline the fastest.
+ * <p>
+ * libcamera stamps frames with CLOCK_BOOTTIME, while {@link System#nanoTime()} reads CLOCK_MONOTONIC on Linux.
+ * Both clocks agree until the system is suspended, after which the boot time runs ahead by the time spent
+ * suspended. Camera timestamps ahead of their arrival therefore mean the camera clock is not the monotonic
+ * clock, and such a stream is anchored instead, the anchoring absorbing the offset between the two clocks.
+ *
+ * @author your_name
+ * @since date
+ */
+public class FrameClock {
+
+    /**
+     * Largest delay between capture and arrival for a timestamp to be taken as read from the monotonic clock
+     */
+    private static final long MAX_MONOTONIC_DELAY_MICROS = 5_000_000L;
+
+    /**
+     * Largest advance of a camera timestamp on its arrival put down to reading jitter rather than another clock
+     */
+    private static final long MAX_CLOCK_SKEW_MICROS = 1000;
+
+    private static final int DELAY_BUCKETS = 30;
+    private static final long DELAY_BUCKET_MICROS = 1_000_000L;
+
+    private final MonotonicClock monotonicClock = new MonotonicClock();
+
+    private Boolean monotonic;
+    private long lastSensorMicros;
+
+    private final long[] minDelays = new long[DELAY_BUCKETS];
+    private int currentBucket;
+    private long bucketStartMicros;
+    private long anchorMicros;
+
+    public FrameClock() {
+
+        reset();
+    }
+
+    /**
+     * Maps the timestamp of a frame to UTC
+     *
+     * @param sensorMicros Camera timestamp of the frame in microseconds
+     * @param arrivalNanos {@link System#nanoTime()} when the frame reached the driver
+     * @return Frame time in milliseconds since epoch, the arrival time if the camera timestamp is not usable
+     */
+    public synchronized long toUtcMillis(long sensorMicros, long arrivalNanos) {
+
+        long arrivalMicros = arrivalNanos / 1000;
+
+        // Missing or repeated timestamps cannot be trusted
+        if (sensorMicros <= 0 || sensorMicros <= lastSensorMicros) {
+
+            return Math.round(monotonicClock.toUtcMillis(arrivalNanos));
+        }
+
+        lastSensorMicros = sensorMicros;
+
+        long delay = arrivalMicros - sensorMicros;
+
+        if (monotonic == null) {
+
+            monotonic = delay >= -MAX_CLOCK_SKEW_MICROS && delay < MAX_MONOTONIC_DELAY_MICROS;
+
+        } else if (monotonic && delay < -MAX_CLOCK_SKEW_MICROS) {
+
+            // The camera clock went ahead of the monotonic clock, as boot time does across a suspend
+            monotonic = false;
+        }
+
+        long monotonicMicros;
+
+        if (monotonic) {
+
+            // A timestamp in the future would only come from a clock mismatch
+            monotonicMicros = Math.min(sensorMicros, arrivalMicros);
+
+        } else {
+
+            updateAnchor(sensorMicros, delay);
+
+            monotonicMicros = sensorMicros + anchorMicros;
+        }
+
+        return Math.round(monotonicClock.toUtcMillis(monotonicMicros * 1000));
+    }
+
+    /**
+     * @return true once the camera timestamps were found to be read from the monotonic clock
+     */
+    public synchronized boolean isMonotonic() {
+
+        return Boolean.TRUE.equals(monotonic);
+    }
+
+    /**
+     * Forgets the camera timestamps seen so far, to be called when the stream is restarted
+     */
+    public synchronized void reset() {
+
+        monotonic = null;
+        lastSensorMicros = 0;
+
+        Arrays.fill(minDelays, Long.MAX_VALUE);
+        currentBucket = 0;
+        bucketStartMicros = Long.MIN_VALUE;
+        anchorMicros = Long.MAX_VALUE;
+    }
+
+    /**
+     * Keeps the lowest delay of each bucket of the window, the anchor being the lowest of all
+     */
+    private void updateAnchor(long sensorMicros, long delay) {
+
+        if (bucketStartMicros == Long.MIN_VALUE) {
+
+            bucketStartMicros = sensorMicros;
+
+        } else if (sensorMicros - bucketStartMicros >= DELAY_BUCKET_MICROS) {
+
+            currentBucket = (currentBucket + 1) % DELAY_BUCKETS;
+            minDelays[currentBucket] = Long.MAX_VALUE;
+            bucketStartMicros = sensorMicros;
+
+            // The oldest bucket left the window
+            anchorMicros = Long.MAX_VALUE;
+
+            for (long minDelay : minDelays) {
+
+                anchorMicros = Math.min(anchorMicros, minDelay);
+            }
+        }
+
+        minDelays[currentBucket] = Math.min(minDelays[currentBucket], delay);
+        anchorMicros = Math.min(anchorMicros, delay);
+    }
+}
@@ -0,0 +1,346 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.utils.camera;
+
+import org.bytedeco.ffmpeg.avcodec.AVCodec;
+import org.bytedeco.ffmpeg.avcodec.AVCodecContext;
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.ffmpeg.avutil.AVFrame;
+import org.bytedeco.ffmpeg.avutil.AVRational;
+import org.bytedeco.ffmpeg.swscale.SwsContext;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.DoublePointer;
+import org.bytedeco.javacpp.IntPointer;
+import org.bytedeco.javacpp.PointerPointer;
+import org.bytedeco.javacv.Frame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static org.bytedeco.ffmpeg.global.avcodec.*;
+import static org.bytedeco.ffmpeg.global.avutil.*;
+import static org.bytedeco.ffmpeg.global.swscale.*;
+
+/**
+ * JPEG encoder built on the FFmpeg MJPEG codec, meant to be owned by a single thread.
+ * <p>
+ * The codec context, the YUV picture, the scaler context and the packet are allocated once and reused
+ * for every frame, so encoding a frame only allocates the returned JPEG payload. Frames are cropped,
+ * converted from their packed pixel format and scaled in a single swscale pass. The codec is reopened
+ * only when the size of the encoded pictures changes.
+ *
+ * @author your_name
+ * @since date
+ */
+public class MjpegEncoder implements AutoCloseable {
+
+    public static final int MIN_QUALITY = 1;
+    public static final int MAX_QUALITY = 100;
+
+    /**
+     * Range of the MJPEG quantizer scale, lower is better
+     */
+    private static final int MIN_QSCALE = 2;
+    private static final int MAX_QSCALE = 31;
+
+    /**
+     * Bound on cached pointers to source buffers, frames normally come from a small pool
+     */
+    private static final int MAX_CACHED_SOURCES = 64;
+
+    private final int outputWidth;
+    private final int outputHeight;
+    private volatile int quality;
+
+    private AVCodecContext codecContext;
+    private AVFrame picture;
+    private AVPacket packet;
+    private SwsContext swsContext;
+
+    private final PointerPointer<BytePointer> sourceData = new PointerPointer<>(4);
+    private final IntPointer sourceStride = new IntPointer(4);
+    private final Map<ByteBuffer, BytePointer> sourcePointers = new IdentityHashMap<>();
+
+    private int width;
+    private int height;
+    private long pts = 0;
+
+    /**
+     * Constructor for an encoder keeping the size of the frames
+     *
+     * @param quality JPEG quality from {@link #MIN_QUALITY} to {@link #MAX_QUALITY}
+     */
+    public MjpegEncoder(int quality) {
+
+        this(0, 0, quality);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param outputWidth  Width of the encoded pictures, 0 to keep the width of the frames
+     * @param outputHeight Height of the encoded pictures, 0 to keep the height of the frames
+     * @param quality      JPEG quality from {@link #MIN_QUALITY} to {@link #MAX_QUALITY}
+     */
+    public MjpegEncoder(int outputWidth, int outputHeight, int quality) {
+
+        this.outputWidth = outputWidth;
+        this.outputHeight = outputHeight;
+
+        setQuality(quality);
+    }
+
+    /**
+     * Changes the quality applied from the next encoded frame on, can be called from any thread
+     *
+     * @param quality JPEG quality from {@link #MIN_QUALITY} to {@link #MAX_QUALITY}
+     */
+    public void setQuality(int quality) {
+
+        this.quality = Math.max(MIN_QUALITY, Math.min(MAX_QUALITY, quality));
+    }
+
+    public int getQuality() {
+
+        return quality;
+    }
+
+    /**
+     * Encodes a frame with 8-bit packed BGR or gray pixels, at the size given to the constructor
+     *
+     * @param frame Frame to encode
+     * @return JPEG image
+     * @throws IOException if the codec cannot be opened or fails to encode the frame
+     */
+    public byte[] encode(Frame frame) throws IOException {
+
+        return encode(frame, 0, 0, frame.imageWidth, frame.imageHeight,
+                outputWidth > 0 ? outputWidth : frame.imageWidth, outputHeight > 0 ? outputHeight : frame.imageHeight);
+    }
+
+    /**
+     * Encodes a region of a frame with 8-bit packed BGR or gray pixels, scaled to the given size
+     *
+     * @param frame      Frame to encode
+     * @param cropX      Left edge of the region in pixels
+     * @param cropY      Top edge of the region in pixels
+     * @param cropWidth  Width of the region in pixels
+     * @param cropHeight Height of the region in pixels
+     * @param width      Width of the encoded picture, rounded down to an even value
+     * @param height     Height of the encoded picture, rounded down to an even value
+     * @return JPEG image
+     * @throws IOException if the codec cannot be opened or fails to encode the frame
+     */
+    public byte[] encode(Frame frame, int cropX, int cropY, int cropWidth, int cropHeight, int width, int height)
+            throws IOException {
+
+        if (frame.imageDepth != Frame.DEPTH_UBYTE || (frame.imageChannels != 3 && frame.imageChannels != 1)) {
+
+            throw new IOException("Unsupported frame format: depth " + frame.imageDepth
+                    + ", " + frame.imageChannels + " channels");
+        }
+
+        int sourceFormat = frame.imageChannels == 3 ? AV_PIX_FMT_BGR24 : AV_PIX_FMT_GRAY8;
+
+        // Keep the region inside the frame
+        cropX = Math.max(0, Math.min(cropX, frame.imageWidth - 1));
+        cropY = Math.max(0, Math.min(cropY, frame.imageHeight - 1));
+        cropWidth = Math.max(1, Math.min(cropWidth, frame.imageWidth - cropX));
+        cropHeight = Math.max(1, Math.min(cropHeight, frame.imageHeight - cropY));
+
+        // 4:2:0 chroma subsampling needs even picture dimensions
+        width = Math.max(2, width & ~1);
+        height = Math.max(2, height & ~1);
+
+        if (codecContext == null || width != this.width || height != this.height) {
+
+            closeCodec();
+            open(width, height);
+        }
+
+        // Returns the cached context as long as the source geometry does not change
+        swsContext = sws_getCachedContext(swsContext, cropWidth, cropHeight, sourceFormat,
+                width, height, AV_PIX_FMT_YUVJ420P, SWS_BILINEAR, null, null, (DoublePointer) null);
+
+        if (swsContext == null) {
+
+            throw new IOException("Cannot initialize the conversion context");
+        }
+
+        if (av_frame_make_writable(picture) < 0) {
+
+            throw new IOException("Cannot make picture writable");
+        }
+
+        BytePointer source = getSourcePointer((ByteBuffer) frame.image[0]);
+        source.position((long) cropY * frame.imageStride + (long) cropX * frame.imageChannels);
+
+        sourceData.put(0, source);
+        sourceStride.put(0, frame.imageStride);
+
+        sws_scale(swsContext, sourceData, sourceStride, 0, cropHeight, picture.data(), picture.linesize());
+
+        int qscale = toQscale(quality);
+
+        picture.pts(pts++);
+        picture.quality(FF_QP2LAMBDA * qscale);
+
+        int ret = avcodec_send_frame(codecContext, picture);
+
+        if (ret < 0) {
+
+            throw new IOException("Error sending frame to encoder: " + ret);
+        }
+
+        ret = avcodec_receive_packet(codecContext, packet);
+
+        if (ret < 0) {
+
+            throw new IOException("Error receiving packet from encoder: " + ret);
+        }
+
+        try {
+
+            // The payload is handed over to the data block, so it is the only per-frame allocation
+            byte[] jpeg = new byte[packet.size()];
+
+            packet.data().get(jpeg);
+
+            return jpeg;
+
+        } finally {
+
+            av_packet_unref(packet);
+        }
+    }
+
+    /**
+     * Releases the native codec, picture, packet and scaler
+     */
+    @Override
+    public void close() {
+
+        closeCodec();
+
+        if (swsContext != null) {
+
+            sws_freeContext(swsContext);
+            swsContext = null;
+        }
+
+        sourcePointers.clear();
+    }
+
+    private void closeCodec() {
+
+        if (packet != null) {
+
+            av_packet_free(packet);
+            packet = null;
+        }
+
+        if (picture != null) {
+
+            av_frame_free(picture);
+            picture = null;
+        }
+
+        if (codecContext != null) {
+
+            avcodec_free_context(codecContext);
+            codecContext = null;
+        }
+    }
+
+    private void open(int width, int height) throws IOException {
+
+        AVCodec codec = avcodec_find_encoder(AV_CODEC_ID_MJPEG);
+
+        if (codec == null) {
+
+            throw new IOException("MJPEG encoder not available");
+        }
+
+        codecContext = avcodec_alloc_context3(codec);
+
+        AVRational timeBase = new AVRational();
+        timeBase.num(1);
+        timeBase.den(30);
+
+        codecContext.width(width);
+        codecContext.height(height);
+        codecContext.pix_fmt(AV_PIX_FMT_YUVJ420P);
+        codecContext.time_base(timeBase);
+        codecContext.thread_count(1);
+
+        // Fixed quantizer scale taken from the quality set on each picture
+        codecContext.flags(codecContext.flags() | AV_CODEC_FLAG_QSCALE);
+        codecContext.global_quality(FF_QP2LAMBDA * toQscale(quality));
+
+        int ret = avcodec_open2(codecContext, codec, (PointerPointer) null);
+
+        if (ret < 0) {
+
+            closeCodec();
+
+            throw new IOException("Cannot open MJPEG encoder: " + ret);
+        }
+
+        picture = av_frame_alloc();
+        picture.format(AV_PIX_FMT_YUVJ420P);
+        picture.width(width);
+        picture.height(height);
+
+        if (av_frame_get_buffer(picture, 32) < 0) {
+
+            closeCodec();
+
+            throw new IOException("Cannot allocate picture buffer");
+        }
+
+        packet = av_packet_alloc();
+
+        this.width = width;
+        this.height = height;
+    }
+
+    private BytePointer getSourcePointer(ByteBuffer buffer) {
+
+        BytePointer pointer = sourcePointers.get(buffer);
+
+        if (pointer == null) {
+
+            if (sourcePointers.size() >= MAX_CACHED_SOURCES) {
+
+                sourcePointers.clear();
+            }
+
+            pointer = new BytePointer(buffer.duplicate().clear());
+
+            sourcePointers.put(buffer, pointer);
+        }
+
+        return pointer;
+    }
+
+    /**
+     * Maps a JPEG quality to the MJPEG quantizer scale, 100 giving the finest quantizer
+     */
+    private static int toQscale(int quality) {
+
+        return MAX_QSCALE - Math.round((quality - MIN_QUALITY) * (MAX_QSCALE - MIN_QSCALE) / (float) (MAX_QUALITY - MIN_QUALITY));
+    }
+}
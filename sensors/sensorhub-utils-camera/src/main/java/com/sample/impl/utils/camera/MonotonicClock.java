@@ -0,0 +1,174 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.utils.camera;
+
+import java.time.Instant;
+
+/**
+ * Mapping of the monotonic clock of {@link System#nanoTime()} to UTC, refitted as time goes by.
+ * <p>
+ * The clocks are read together at most once per sample period, keeping the reading bracketed by the
+ * shortest pair of monotonic reads. An offset and a drift are fitted by least squares over the latest
+ * samples, so the mapping follows the slewing of the system clock. A sample away from the fitted line
+ * by more than the step threshold means the system clock was stepped, and the fit starts over.
+ *
+ * @author your_name
+ * @since date
+ */
+public class MonotonicClock {
+
+    private static final int MAX_SAMPLES = 64;
+    private static final int READ_ATTEMPTS = 3;
+    private static final long SAMPLE_PERIOD_NANOS = 1_000_000_000L;
+    private static final double STEP_THRESHOLD_MICROS = 2000;
+
+    private final long[] sampleNanos = new long[MAX_SAMPLES];
+    private final double[] sampleOffsets = new double[MAX_SAMPLES];
+    private int sampleCount = 0;
+    private int nextSample = 0;
+    private long lastSampleNanos;
+
+    /**
+     * Fitted model, UTC in microseconds is monotonic / 1000 + offset + drift * (monotonic - reference) / 1000
+     */
+    private long referenceNanos;
+    private double referenceOffsetMicros;
+    private double offsetMicros;
+    private double drift;
+
+    /**
+     * Maps a monotonic time to UTC
+     *
+     * @param nanos Time read from {@link System#nanoTime()}, or from the same clock by another process
+     * @return UTC time in milliseconds since epoch
+     */
+    public synchronized double toUtcMillis(long nanos) {
+
+        if (sampleCount == 0 || System.nanoTime() - lastSampleNanos >= SAMPLE_PERIOD_NANOS) {
+
+            sample();
+        }
+
+        double elapsedMicros = (nanos - referenceNanos) / 1000d;
+
+        return (nanos / 1000d + referenceOffsetMicros + offsetMicros + drift * elapsedMicros) / 1000d;
+    }
+
+    /**
+     * @return Drift of UTC relative to the monotonic clock, in parts per million
+     */
+    public synchronized double getDriftPpm() {
+
+        return drift * 1e6;
+    }
+
+    /**
+     * Discards the samples, the next mapping starts a new fit
+     */
+    public synchronized void reset() {
+
+        sampleCount = 0;
+        nextSample = 0;
+    }
+
+    private void sample() {
+
+        long bestNanos = 0;
+        long bestWidth = Long.MAX_VALUE;
+        double bestUtcMicros = 0;
+
+        // The narrowest bracket gives the best estimate of the monotonic time of the UTC read
+        for (int attempt = 0; attempt < READ_ATTEMPTS; ++attempt) {
+
+            long before = System.nanoTime();
+            Instant utc = Instant.now();
+            long after = System.nanoTime();
+
+            if (after - before < bestWidth) {
+
+                bestWidth = after - before;
+                bestNanos = before + (after - before) / 2;
+                bestUtcMicros = utc.getEpochSecond() * 1e6 + utc.getNano() / 1000d;
+            }
+        }
+
+        lastSampleNanos = bestNanos;
+
+        if (sampleCount == 0) {
+
+            referenceNanos = bestNanos;
+            referenceOffsetMicros = bestUtcMicros - bestNanos / 1000d;
+            offsetMicros = 0;
+            drift = 0;
+        }
+
+        double sampleOffset = bestUtcMicros - bestNanos / 1000d - referenceOffsetMicros;
+
+        double predicted = offsetMicros + drift * (bestNanos - referenceNanos) / 1000d;
+
+        if (Math.abs(sampleOffset - predicted) > STEP_THRESHOLD_MICROS) {
+
+            // The system clock was stepped, earlier samples no longer apply
+            sampleCount = 0;
+            nextSample = 0;
+            referenceNanos = bestNanos;
+            referenceOffsetMicros = bestUtcMicros - bestNanos / 1000d;
+            sampleOffset = 0;
+        }
+
+        sampleNanos[nextSample] = bestNanos;
+        sampleOffsets[nextSample] = sampleOffset;
+        nextSample = (nextSample + 1) % MAX_SAMPLES;
+        sampleCount = Math.min(sampleCount + 1, MAX_SAMPLES);
+
+        fit();
+    }
+
+    private void fit() {
+
+        if (sampleCount < 2) {
+
+            offsetMicros = sampleOffsets[(nextSample + MAX_SAMPLES - 1) % MAX_SAMPLES];
+            drift = 0;
+
+            return;
+        }
+
+        double sumX = 0;
+        double sumY = 0;
+
+        for (int idx = 0; idx < sampleCount; ++idx) {
+
+            sumX += (sampleNanos[idx] - referenceNanos) / 1000d;
+            sumY += sampleOffsets[idx];
+        }
+
+        double meanX = sumX / sampleCount;
+        double meanY = sumY / sampleCount;
+
+        double covariance = 0;
+        double variance = 0;
+
+        for (int idx = 0; idx < sampleCount; ++idx) {
+
+            double dx = (sampleNanos[idx] - referenceNanos) / 1000d - meanX;
+
+            covariance += dx * (sampleOffsets[idx] - meanY);
+            variance += dx * dx;
+        }
+
+        drift = variance > 0 ? covariance / variance : 0;
+        offsetMicros = meanY - drift * meanX;
+    }
+}
@@ -0,0 +1,152 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.utils.camera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestAdaptiveQualityController {
+
+    private static final long TARGET_LATENCY_MILLIS = 100;
+    private static final long BANDWIDTH_LIMIT = 1_000_000;
+    private static final int FRAMES_PER_PERIOD = 10;
+    private static final double EPSILON = 1e-9;
+
+    private long now = 0;
+
+    private final AdaptiveQualityController controller =
+            new AdaptiveQualityController(TARGET_LATENCY_MILLIS, BANDWIDTH_LIMIT, () -> now);
+
+    @Test
+    public void testBacksOffMultiplicatively() {
+
+        assertEquals(1, controller.getLevel(), 0);
+
+        assertTrue(period(150, 0, 0, 0));
+        assertEquals(0.7, controller.getLevel(), EPSILON);
+
+        assertTrue(period(150, 0, 0, 0));
+        assertEquals(0.49, controller.getLevel(), EPSILON);
+
+        for (int idx = 0; idx < 20; ++idx) {
+
+            period(150, 0, 0, 0);
+        }
+
+        assertEquals(0.01, controller.getLevel(), EPSILON);
+        assertFalse(period(150, 0, 0, 0));
+    }
+
+    @Test
+    public void testEverySignOfPressureBacksOff() {
+
+        // Full queue, dropped frames, and bitrate above the limit
+        assertTrue(period(10, 0, 0.6, 0));
+        assertTrue(period(10, 0, 0, 1));
+        assertTrue(period(10, 1_200_000, 0, 0));
+
+        assertEquals(0.343, controller.getLevel(), EPSILON);
+        assertEquals(1_200_000, controller.getBitrate(), EPSILON);
+    }
+
+    @Test
+    public void testRecoversAdditively() {
+
+        period(150, 0, 0, 0);
+
+        for (int idx = 1; idx <= 6; ++idx) {
+
+            assertTrue(period(10, 500_000, 0, 0));
+            assertEquals(Math.min(1, 0.7 + idx * 0.05), controller.getLevel(), EPSILON);
+        }
+
+        assertFalse(period(10, 500_000, 0, 0));
+        assertEquals(1, controller.getLevel(), 0);
+    }
+
+    @Test
+    public void testHoldsBetweenPressureAndClear() {
+
+        period(150, 0, 0, 0);
+
+        // Latency between half the target and the target
+        assertFalse(period(70, 0, 0, 0));
+
+        // Queue between the low and the high fill
+        assertFalse(period(10, 0, 0.3, 0));
+
+        // Bitrate between 80% of the limit and the limit
+        assertFalse(period(10, 900_000, 0, 0));
+
+        assertEquals(0.7, controller.getLevel(), EPSILON);
+        assertEquals(10, controller.getLatency(), EPSILON);
+        assertEquals(900_000, controller.getBitrate(), EPSILON);
+    }
+
+    @Test
+    public void testEmptyPeriodIsClear() {
+
+        period(150, 0, 0, 0);
+
+        now += 1_000_000_000L;
+
+        assertTrue(controller.update(0, 0));
+        assertEquals(0.75, controller.getLevel(), EPSILON);
+        assertEquals(0, controller.getLatency(), 0);
+    }
+
+    @Test
+    public void testQualityDegradesBeforeFrameRate() {
+
+        assertEquals(1, controller.getQualityFactor(), 0);
+        assertEquals(1, controller.getFrameRateFactor(), 0);
+
+        period(150, 0, 0, 0);
+
+        assertEquals(0.4, controller.getQualityFactor(), EPSILON);
+        assertEquals(1, controller.getFrameRateFactor(), 0);
+
+        period(150, 0, 0, 0);
+
+        assertEquals(0, controller.getQualityFactor(), 0);
+        assertEquals(0.98, controller.getFrameRateFactor(), EPSILON);
+    }
+
+    @Test
+    public void testInterpolate() {
+
+        assertEquals(15, AdaptiveQualityController.interpolate(0.5, 10, 20));
+        assertEquals(10, AdaptiveQualityController.interpolate(0, 10, 20));
+        assertEquals(20, AdaptiveQualityController.interpolate(1, 10, 20));
+        assertEquals(5, AdaptiveQualityController.interpolate(0.5, 10, 5));
+    }
+
+    /**
+     * Publishes frames with the given latency and bitrate for one second, then evaluates the period
+     */
+    private boolean period(long latencyMillis, long bitrate, double queueFill, long droppedFrames) {
+
+        int frameSize = (int) (bitrate / 8 / FRAMES_PER_PERIOD);
+
+        for (int idx = 0; idx < FRAMES_PER_PERIOD; ++idx) {
+
+            controller.recordFrame(frameSize, latencyMillis);
+        }
+
+        now += 1_000_000_000L;
+
+        return controller.update(queueFill, droppedFrames);
+    }
+}
@@ -0,0 +1,172 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.utils.camera;
+
+import net.opengis.swe.v20.DataBlock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sensorhub.api.command.ICommandData;
+import org.sensorhub.api.command.ICommandStatus;
+import org.sensorhub.api.common.BigId;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TestCoalescingCommandExecutor {
+
+    private static class TestCommand implements ICommandData {
+
+        @Override
+        public DataBlock getParams() {
+
+            return null;
+        }
+
+        @Override
+        public BigId getID() {
+
+            return null;
+        }
+    }
+
+    private CoalescingCommandExecutor executor;
+    private final List<Integer> executed = new ArrayList<>();
+
+    @Before
+    public void init() {
+
+        executor = new CoalescingCommandExecutor("test");
+    }
+
+    @After
+    public void cleanup() {
+
+        executor.stop();
+    }
+
+    @Test
+    public void testBurstCoalesced() throws Exception {
+
+        // Hold the executor busy while the burst is queued
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<ICommandStatus> blocking = executor.submit("block", new TestCommand(), () -> {
+            started.countDown();
+            release.await();
+        });
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+
+        List<CompletableFuture<ICommandStatus>> futures = new ArrayList<>();
+
+        for (int idx = 0; idx < 10; ++idx) {
+
+            futures.add(submit("params", idx));
+        }
+
+        // Superseded commands complete right away, before the executor gets to them
+        for (int idx = 0; idx < 9; ++idx) {
+
+            assertTrue(futures.get(idx).isDone());
+        }
+
+        assertFalse(futures.get(9).isDone());
+        assertEquals(1, executor.getQueueSize());
+
+        release.countDown();
+        blocking.get(1, TimeUnit.SECONDS);
+        futures.get(9).get(1, TimeUnit.SECONDS);
+
+        assertEquals(List.of(9), executed);
+        assertEquals(11, executor.getSubmittedCount());
+        assertEquals(2, executor.getExecutedCount());
+        assertEquals(9, executor.getSupersededCount());
+    }
+
+    @Test
+    public void testKeysKeepOrder() throws Exception {
+
+        CountDownLatch release = new CountDownLatch(1);
+        executor.submit("block", new TestCommand(), release::await);
+
+        submit("a", 1);
+        CompletableFuture<ICommandStatus> last = submit("b", 2);
+        submit("a", 3);
+
+        release.countDown();
+        last.get(1, TimeUnit.SECONDS);
+
+        // The newer "a" command takes the queue position of the one it superseded
+        assertEquals(List.of(3, 2), executed);
+    }
+
+    @Test
+    public void testFailureCompletesFuture() throws Exception {
+
+        CompletableFuture<ICommandStatus> future = executor.submit("fail", new TestCommand(), () -> {
+            throw new IllegalStateException("device busy");
+        });
+
+        future.get(1, TimeUnit.SECONDS);
+
+        assertEquals(1, executor.getFailedCount());
+        assertTrue(executor.getMaxLatencyMillis() >= executor.getMeanLatencyMillis());
+    }
+
+    @Test
+    public void testStopRejectsQueued() throws Exception {
+
+        CountDownLatch release = new CountDownLatch(1);
+        executor.submit("block", new TestCommand(), release::await);
+        CompletableFuture<ICommandStatus> queued = submit("params", 1);
+
+        new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            release.countDown();
+        }).start();
+
+        executor.stop();
+
+        assertTrue(queued.isDone());
+        assertTrue(executed.isEmpty());
+    }
+
+    @Test
+    public void testRestartAfterStop() throws Exception {
+
+        executor.stop();
+
+        submit("params", 1).get(1, TimeUnit.SECONDS);
+
+        assertEquals(List.of(1), executed);
+    }
+
+    private CompletableFuture<ICommandStatus> submit(String key, int value) {
+
+        return executor.submit(key, new TestCommand(), () -> {
+            synchronized (executed) {
+                executed.add(value);
+            }
+        });
+    }
+}
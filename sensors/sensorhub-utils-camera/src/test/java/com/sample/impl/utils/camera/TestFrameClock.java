@@ -0,0 +1,78 @@
+/***************************** BEGIN LICENSE BLOCK ***************************
+
+ The contents of this file are subject to the Mozilla Public License, v. 2.0.
+ If a copy of the MPL was not distributed with this file, You can obtain one
+ at http://mozilla.org/MPL/2.0/.
+
+ Software distributed under the License is distributed on an "AS IS" basis,
+ WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ for the specific language governing rights and limitations under the License.
+
+ Copyright (C) 2020-2021 Botts Innovative Research, Inc. All Rights Reserved.
+
+ ******************************* END LICENSE BLOCK ***************************/
+package com.sample.impl.utils.camera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestFrameClock {
+
+    private static final long DELAY_MICROS = 40_000;
+    private static final long PERIOD_MICROS = 33_333;
+    private static final double TOLERANCE_MILLIS = 20;
+
+    private final FrameClock frameClock = new FrameClock();
+
+    @Test
+    public void testMonotonicTimestamps() {
+
+        long arrivalNanos = System.nanoTime();
+        long frameTime = frameClock.toUtcMillis(arrivalNanos / 1000 - DELAY_MICROS, arrivalNanos);
+
+        assertTrue(frameClock.isMonotonic());
+        assertEquals(System.currentTimeMillis() - DELAY_MICROS / 1000, frameTime, TOLERANCE_MILLIS);
+    }
+
+    @Test
+    public void testBootTimeAheadAfterSuspend() {
+
+        long suspendMicros = 60_000_000;
+
+        for (int frame = 0; frame < 10; ++frame) {
+
+            long arrivalNanos = System.nanoTime();
+            long sensorMicros = arrivalNanos / 1000 - DELAY_MICROS + (frame < 5 ? 0 : suspendMicros);
+
+            long frameTime = frameClock.toUtcMillis(sensorMicros, arrivalNanos);
+
+            // Once ahead of the monotonic clock, the camera clock is anchored on the lowest delay seen since
+            assertEquals("Frame " + frame, System.currentTimeMillis() - (frame < 5 ? DELAY_MICROS / 1000 : 0),
+                    frameTime, TOLERANCE_MILLIS);
+        }
+
+        assertFalse(frameClock.isMonotonic());
+    }
+
+    @Test
+    public void testTimestampsFromStreamStart() {
+
+        long firstArrivalNanos = System.nanoTime();
+
+        for (int frame = 0; frame < 10; ++frame) {
+
+            long sensorMicros = 1 + frame * PERIOD_MICROS;
+            long arrivalNanos = firstArrivalNanos + (frame * PERIOD_MICROS + DELAY_MICROS) * 1000;
+
+            long frameTime = frameClock.toUtcMillis(sensorMicros, arrivalNanos);
+            long expected = frameClock.toUtcMillis(0, firstArrivalNanos)
+                    + (frame * PERIOD_MICROS + DELAY_MICROS) / 1000;
+
+            // Anchored on the delay of the frames, all the same, so each one is stamped with its arrival
+            assertEquals("Frame " + frame, expected, frameTime, TOLERANCE_MILLIS);
+        }
+
+        assertFalse(frameClock.isMonotonic());
+    }
+}